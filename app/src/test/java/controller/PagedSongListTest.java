@@ -0,0 +1,398 @@
+package controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javafx.collections.ListChangeListener;
+import model.SongQuery;
+import model.SongRow;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author giser
+ * Comprova {@link PagedSongList} amb un carregador de pàgines de prova, que guarda les peticions i les respon quan
+ * la prova ho indica a partir d'una llista de cançons que fa de base de dades. Per a cada operació es comprova
+ * la mida, el contingut de les posicions carregades, les peticions de pàgines (clau i salt) i els canvis que rep
+ * un {@link ListChangeListener}, que són els que fan que la taula es torni a pintar.
+ */
+class PagedSongListTest {
+
+    private static final int PAGE = PagedSongList.PAGE_SIZE;
+
+    /**
+     * @author giser
+     * Les pàgines es demanen quan es consulta una fila no carregada, continuant des de l'última clau coneguda,
+     * i quan arriben es notifiquen com una substitució de les files "carregant".
+     */
+    @Test
+    void loadsPagesOnDemand() {
+        StubLoader loader = new StubLoader(5 * PAGE);
+        PagedSongList list = loader.list(5 * PAGE);
+        List<String> events = events(list);
+
+        assertNull(list.get(0));
+        assertNull(list.get(2 * PAGE + 50));
+        assertNull(list.get(10), "La mateixa pàgina no es torna a demanar");
+        assertEquals(List.of("després de - saltant 0", "després de - saltant 400"), loader.requested());
+        loader.deliver();
+        assertEquals(List.of("substitució 0-200 (200)", "substitució 400-600 (200)"), events);
+        assertEquals(1, list.get(0).id());
+        assertEquals(2 * PAGE + 51, list.get(2 * PAGE + 50).id());
+
+        assertNull(list.get(PAGE));
+        assertNull(list.get(3 * PAGE));
+        assertEquals(List.of("després de 200 saltant 0", "després de 600 saltant 0"), loader.requested());
+        assertEquals(5 * PAGE, list.size());
+    }
+
+    /**
+     * @author giser
+     * Si es demanen més pàgines de les que es poden consultar alhora, es cancel·la la més antiga,
+     * que es torna a demanar si es torna a necessitar.
+     */
+    @Test
+    void cancelsOldestPendingPage() {
+        StubLoader loader = new StubLoader(10 * PAGE);
+        PagedSongList list = loader.list(10 * PAGE);
+        for (int page = 0; page < 5; page++) {
+            list.get(page * PAGE);
+        }
+        assertTrue(loader.requests.get(0).handle().isCancelled());
+        loader.deliver();
+        List<String> events = events(list);
+        assertNull(list.get(0));
+        assertEquals(List.of("després de - saltant 0"), loader.requested());
+        loader.deliver();
+        assertEquals(List.of("substitució 0-200 (200)"), events);
+    }
+
+    /**
+     * @author giser
+     * La primera pàgina de la memòria cau només s'aprofita si és completa.
+     */
+    @Test
+    void usesCompleteFirstPage() {
+        StubLoader loader = new StubLoader(3 * PAGE);
+        PagedSongList cached = new PagedSongList(SongQuery.of(null, null), 3 * PAGE, loader.songs.subList(0, PAGE), loader);
+        assertEquals(PAGE, cached.get(PAGE - 1).id());
+        PagedSongList partial = new PagedSongList(SongQuery.of(null, null), 3 * PAGE, loader.songs.subList(0, 10), loader);
+        assertNull(partial.get(0));
+        assertEquals(List.of("després de - saltant 0"), loader.requested());
+    }
+
+    /**
+     * @author giser
+     * Treure una cançó desplaça les pàgines carregades consecutives; la pàgina que queda incompleta i les no
+     * consecutives es descarten i es notifiquen com a "carregant", i la següent petició continua des de la nova clau.
+     */
+    @Test
+    void removesSongs() {
+        StubLoader loader = new StubLoader(5 * PAGE);
+        PagedSongList list = loader.list(5 * PAGE);
+        loader.load(list, 0, PAGE, 3 * PAGE);
+        List<String> events = events(list);
+        List<List<SongRow>> removed = removed(list);
+
+        loader.songs.remove(10);
+        assertTrue(list.removeSong(11));
+        assertEquals(List.of("eliminació 10 (1)", "substitució 600-800 (200)", "substitució 200-400 (200)"), events);
+        assertEquals(List.of(StubLoader.song(11)), removed.get(0));
+        assertEquals(5 * PAGE - 1, list.size());
+        assertEquals(12, list.get(10).id());
+        assertEquals(PAGE + 1, list.get(PAGE - 1).id(), "La primera cançó de la pàgina següent passa a l'anterior");
+
+        events.clear();
+        assertNull(list.get(PAGE));
+        assertEquals(List.of("després de 201 saltant 0"), loader.requested());
+        loader.deliver();
+        assertEquals(List.of("substitució 200-400 (200)"), events);
+        assertEquals(PAGE + 2, list.get(PAGE).id());
+
+        events.clear();
+        assertFalse(list.removeSong(3 * PAGE + 10), "Una cançó no carregada no es pot treure");
+        assertEquals(List.of(), events);
+    }
+
+    /**
+     * @author giser
+     * Una cançó nova s'afegeix al final: a la darrera pàgina si està carregada, en una pàgina nova si en comença una,
+     * o com a "carregant" si la darrera pàgina no està carregada, i llavors aquesta pàgina es demana des de l'última clau
+     * anterior. Una cançó amb un id que no és el més gran no es pot afegir.
+     */
+    @Test
+    void appendsSongs() {
+        StubLoader loader = new StubLoader(PAGE + 50);
+        PagedSongList list = loader.list(PAGE + 50);
+        loader.load(list, 0, PAGE);
+        List<String> events = events(list);
+        assertTrue(list.appendSong(StubLoader.song(PAGE + 51)));
+        assertEquals(List.of("addició 250-251"), events);
+        assertEquals(PAGE + 51, list.get(PAGE + 50).id());
+        assertFalse(list.appendSong(StubLoader.song(100)));
+        assertEquals(PAGE + 51, list.size());
+
+        loader = new StubLoader(5 * PAGE);
+        list = loader.list(5 * PAGE);
+        loader.load(list, 0);
+        events = events(list);
+        assertTrue(list.appendSong(StubLoader.song(5 * PAGE + 1)));
+        assertEquals(5 * PAGE + 1, list.get(5 * PAGE).id(), "La cançó comença una pàgina nova");
+        assertEquals(List.of("addició 1000-1001"), events);
+
+        loader = new StubLoader(4 * PAGE + 150);
+        list = loader.list(4 * PAGE + 150);
+        loader.load(list, 0);
+        loader.songs.add(StubLoader.song(4 * PAGE + 151));
+        assertTrue(list.appendSong(StubLoader.song(4 * PAGE + 151)));
+        assertNull(list.get(4 * PAGE + 150), "La darrera pàgina ja no és completa");
+        assertEquals(List.of("després de 200 saltant 600"), loader.requested());
+        loader.deliver();
+        assertEquals(4 * PAGE + 151, list.get(4 * PAGE + 150).id());
+    }
+
+    /**
+     * @author giser
+     * Una cançó modificada substitueix la carregada a la mateixa posició; una de no carregada no es toca.
+     */
+    @Test
+    void replacesSongs() {
+        StubLoader loader = new StubLoader(2 * PAGE);
+        PagedSongList list = loader.list(2 * PAGE);
+        loader.load(list, 0);
+        List<String> events = events(list);
+        List<List<SongRow>> removed = removed(list);
+        SongRow modified = new SongRow(5, 2, 2, "Modificada", 9.5, "Un altre àlbum", "Un altre artista");
+        assertTrue(list.replaceSong(modified));
+        assertEquals(List.of("substitució 4-5 (1)"), events);
+        assertEquals(List.of(StubLoader.song(5)), removed.get(0));
+        assertEquals(modified, list.get(4));
+        assertFalse(list.replaceSong(StubLoader.song(PAGE + 5)));
+        assertEquals(1, events.size());
+    }
+
+    /**
+     * @author giser
+     * Un canvi de moltes cançons descarta les pàgines a partir de la posició amb una sola notificació i conserva
+     * les anteriors; si la mida nova no hi arriba, es descarta des d'on acaba la llista.
+     */
+    @Test
+    void reloadsFromIndex() {
+        StubLoader loader = new StubLoader(5 * PAGE);
+        PagedSongList list = loader.list(5 * PAGE);
+        loader.load(list, 0, PAGE, 2 * PAGE);
+        List<String> events = events(list);
+        list.reloadFrom(2 * PAGE + 50, 3 * PAGE + 100);
+        assertEquals(List.of("substitució 400-700 (600)"), events);
+        assertEquals(3 * PAGE + 100, list.size());
+        assertEquals(2 * PAGE, list.get(2 * PAGE - 1).id(), "Les pàgines anteriors es conserven");
+        assertNull(list.get(2 * PAGE));
+        assertEquals(List.of("després de 400 saltant 0"), loader.requested());
+
+        events.clear();
+        list.reloadFrom(2 * PAGE + 50, PAGE + 100);
+        assertEquals(List.of("substitució 200-300 (500)"), events);
+        assertEquals(PAGE + 100, list.size());
+        assertEquals(PAGE, list.get(PAGE - 1).id());
+        assertNull(list.get(PAGE));
+    }
+
+    /**
+     * @author giser
+     * Si una pàgina arriba incompleta (perquè s'han eliminat cançons en una altra aplicació), la llista s'acaba
+     * a la seva última cançó i es notifica l'eliminació de les posicions que ja no existeixen.
+     */
+    @Test
+    void shrinksOnShortPage() {
+        StubLoader loader = new StubLoader(PAGE + 50);
+        PagedSongList list = loader.list(5 * PAGE);
+        loader.load(list, 0);
+        List<String> events = events(list);
+
+        assertNull(list.get(3 * PAGE + 50));
+        loader.deliver();
+        assertEquals(List.of("eliminació 600 (400)"), events);
+        assertEquals(3 * PAGE, list.size());
+
+        events.clear();
+        assertNull(list.get(PAGE));
+        loader.deliver();
+        // La substitució i l'eliminació consecutives arriben com un sol canvi
+        assertEquals(List.of("substitució 200-250 (400)"), events);
+        assertEquals(PAGE + 50, list.size());
+        assertEquals(PAGE + 50, list.get(PAGE + 49).id());
+    }
+
+    /**
+     * @author giser
+     * Una llista descartada cancel·la les peticions pendents i no en fa de noves.
+     */
+    @Test
+    void disposeCancelsRequests() {
+        StubLoader loader = new StubLoader(2 * PAGE);
+        PagedSongList list = loader.list(2 * PAGE);
+        list.get(0);
+        list.dispose();
+        assertTrue(list.isDisposed());
+        assertTrue(loader.requests.get(0).handle().isCancelled());
+        assertNull(list.get(PAGE));
+        assertEquals(1, loader.requests.size());
+    }
+
+    /**
+     * @author giser
+     * Registra els canvis que rep un observador de la llista, un per subcanvi.
+     * @param list la llista.
+     * @return la descripció dels canvis que anirà rebent.
+     */
+    private static List<String> events(PagedSongList list) {
+        List<String> events = new ArrayList<>();
+        list.addListener((ListChangeListener<SongRow>) change -> {
+            while (change.next()) {
+                if (change.wasReplaced()) {
+                    events.add("substitució " + change.getFrom() + "-" + change.getTo() + " (" + change.getRemovedSize() + ")");
+                } else if (change.wasRemoved()) {
+                    events.add("eliminació " + change.getFrom() + " (" + change.getRemovedSize() + ")");
+                } else if (change.wasAdded()) {
+                    events.add("addició " + change.getFrom() + "-" + change.getTo());
+                }
+            }
+        });
+        return events;
+    }
+
+    /**
+     * @author giser
+     * Registra les files eliminades o substituïdes de cada subcanvi que rep un observador de la llista.
+     * @param list la llista.
+     * @return les files que anirà rebent.
+     */
+    private static List<List<SongRow>> removed(PagedSongList list) {
+        List<List<SongRow>> removed = new ArrayList<>();
+        list.addListener((ListChangeListener<SongRow>) change -> {
+            while (change.next()) {
+                removed.add(List.copyOf(change.getRemoved()));
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * Carregador de pàgines de prova: guarda les peticions i les respon a partir d'una llista de cançons
+     * ordenades per id, amb la mateixa paginació per clau que el DAO.
+     */
+    private static final class StubLoader implements PagedSongList.PageLoader {
+
+        // Cançons de la "base de dades", ordenades per id.
+        final List<SongRow> songs = new ArrayList<>();
+
+        // Peticions que encara no s'han respost.
+        final List<Request> requests = new ArrayList<>();
+
+        /**
+         * Petició de pàgina.
+         */
+        record Request(SongRow after, int offset, Consumer<List<SongRow>> onLoaded, AsyncDataAccess.Request handle) {
+        }
+
+        /**
+         * @author giser
+         * Crea el carregador amb les cançons d'id 1 a <code>count</code>.
+         * @param count el nombre de cançons.
+         */
+        StubLoader(int count) {
+            for (int id = 1; id <= count; id++) {
+                songs.add(song(id));
+            }
+        }
+
+        /**
+         * @author giser
+         * Crea una cançó de prova.
+         * @param id l'id.
+         * @return la cançó.
+         */
+        static SongRow song(int id) {
+            return new SongRow(id, 1, 1, "Cançó " + id, id / 10.0, "Àlbum", "Artista");
+        }
+
+        /**
+         * @author giser
+         * Crea una llista de totes les cançons que consulta les pàgines amb aquest carregador.
+         * @param size la mida inicial de la llista.
+         * @return la llista.
+         */
+        PagedSongList list(int size) {
+            return new PagedSongList(SongQuery.of(null, null), size, List.of(), this);
+        }
+
+        /**
+         * @author giser
+         * Demana i lliura les pàgines on comencen les posicions indicades, en ordre.
+         * @param list    la llista.
+         * @param indices les posicions.
+         */
+        void load(PagedSongList list, int... indices) {
+            for (int index : indices) {
+                list.get(index);
+                deliver();
+            }
+        }
+
+        @Override
+        public AsyncDataAccess.Request load(SongRow after, int offset, Consumer<List<SongRow>> onLoaded, Consumer<Exception> onError) {
+            AsyncDataAccess.Request handle = new AsyncDataAccess.Request();
+            requests.add(new Request(after, offset, onLoaded, handle));
+            return handle;
+        }
+
+        /**
+         * @author giser
+         * Retorna les peticions pendents no cancel·lades, com a text.
+         * @return la clau i el salt de cada petició.
+         */
+        List<String> requested() {
+            List<String> requested = new ArrayList<>();
+            for (Request request : requests) {
+                if (!request.handle().isCancelled()) {
+                    requested.add("després de " + (request.after() != null ? request.after().id() : "-") + " saltant " + request.offset());
+                }
+            }
+            return requested;
+        }
+
+        /**
+         * @author giser
+         * Respon totes les peticions pendents no cancel·lades, en ordre, com ho faria el fil de JavaFX.
+         */
+        void deliver() {
+            List<Request> delivered = new ArrayList<>(requests);
+            requests.clear();
+            for (Request request : delivered) {
+                if (!request.handle().isCancelled()) {
+                    request.onLoaded().accept(page(request.after(), request.offset()));
+                }
+            }
+        }
+
+        /**
+         * @author giser
+         * Llegeix una pàgina de la "base de dades": les cançons amb id més gran que la clau, saltant-ne <code>offset</code>.
+         * @param after  l'última cançó coneguda, o <code>null</code>.
+         * @param offset les cançons que se salten.
+         * @return les cançons de la pàgina.
+         */
+        private List<SongRow> page(SongRow after, int offset) {
+            int start = 0;
+            while (after != null && start < songs.size() && songs.get(start).id() <= after.id()) {
+                start++;
+            }
+            start = Math.min(songs.size(), start + offset);
+            return new ArrayList<>(songs.subList(start, Math.min(songs.size(), start + PAGE)));
+        }
+    }
+}
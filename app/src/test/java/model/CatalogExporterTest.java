@@ -0,0 +1,268 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author giser
+ * Comprova que el catàleg exportat per {@link CatalogExporter} es pot recuperar: els fitxers CSV i JSON Lines es tornen
+ * a importar amb {@link CatalogImporter} a una base de dades nova, que ha de quedar amb les mateixes cançons, i el fitxer
+ * binari es descodifica seguint el format documentat a {@link CatalogExporter.Format#BINARY}.
+ * Al catàleg de l'script s'hi afegeixen noms amb caràcters de fora del pla bàsic, un substitut sense parella,
+ * separadors, cometes, salts de línia i caràcters de control, i un àlbum sense any.
+ */
+class CatalogExporterTest {
+
+    @TempDir
+    static Path directory;
+
+    // Cançons de la base de dades original, en l'ordre de l'exportació (per àlbum i títol).
+    private static List<Song> catalog;
+
+    /**
+     * Cançó tal com surt a l'exportació.
+     */
+    private record Song(String label, String artist, String album, int year, String title, double duration) {
+    }
+
+    /**
+     * @author giser
+     * Crea la base de dades original, hi afegeix les cançons de prova i l'exporta als tres formats.
+     * @throws IOException  si falla l'exportació.
+     * @throws SQLException si falla la creació de la base de dades.
+     */
+    @BeforeAll
+    static void exportCatalog() throws IOException, SQLException {
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + directory.resolve("music.db"));
+        DatabaseInitializer.createSchema();
+        DatabaseConnection.transaction(conn -> {
+            int label = insert(conn, "INSERT INTO record_label (name) VALUES (?) RETURNING id", "Segell ☃ 𝄞");
+            int artist = insert(conn, "INSERT INTO artist (record_label_id, name) VALUES (" + label + ", ?) RETURNING id",
+                    "Artista 🎵");
+            int album = insert(conn, "INSERT INTO album (artist_id, name, year) VALUES (" + artist + ", ?, 1999) RETURNING id",
+                    "Àlbum, \"primer\"\nvol. 1");
+            int undated = insert(conn, "INSERT INTO album (artist_id, name, year) VALUES (" + artist + ", ?, 0) RETURNING id",
+                    "Sense any");
+            insert(conn, "INSERT INTO song (album_id, name, duration) VALUES (" + album + ", ?, 215.25) RETURNING id",
+                    "Cançó 𝄞 😀");
+            insert(conn, "INSERT INTO song (album_id, name, duration) VALUES (" + album + ", ?, 0.1) RETURNING id",
+                    "Sol \uD800 substitut");
+            insert(conn, "INSERT INTO song (album_id, name, duration) VALUES (" + album + ", ?, 1e-3) RETURNING id",
+                    "Tab\t\\ barra \u0001 control");
+            insert(conn, "INSERT INTO song (album_id, name, duration) VALUES (" + undated + ", ?, 3) RETURNING id",
+                    "Sense any, però amb \"cometes\"");
+            return null;
+        });
+        catalog = DatabaseConnection.read(CatalogExporterTest::songs);
+        for (CatalogExporter.Format format : CatalogExporter.Format.values()) {
+            CatalogExporter.Result result = CatalogExporter.exportFile(file(format), format, null);
+            assertEquals(catalog.size(), result.songs(), "Cançons exportades en " + format);
+        }
+        DatabaseConnection.shutdown();
+    }
+
+    /**
+     * @author giser
+     * Tanca les connexions a l'última base de dades oberta.
+     */
+    @AfterAll
+    static void closeDatabase() {
+        DatabaseConnection.shutdown();
+    }
+
+    /**
+     * @author giser
+     * El substitut sense parella no es pot desar en UTF-8: la base de dades ja el desa com a '?',
+     * i així és com surt als tres formats.
+     */
+    @Test
+    void loneSurrogatesBecomeQuestionMarks() {
+        assertEquals(1, catalog.stream().filter(song -> song.title().equals("Sol ? substitut")).count());
+    }
+
+    /**
+     * @author giser
+     * El fitxer CSV importat a una base de dades nova hi deixa les mateixes cançons.
+     * @throws IOException  si falla la importació.
+     * @throws SQLException si falla la base de dades.
+     */
+    @Test
+    void csvRoundTrip() throws IOException, SQLException {
+        assertReimports(CatalogExporter.Format.CSV);
+    }
+
+    /**
+     * @author giser
+     * El fitxer JSON Lines importat a una base de dades nova hi deixa les mateixes cançons.
+     * @throws IOException  si falla la importació.
+     * @throws SQLException si falla la base de dades.
+     */
+    @Test
+    void jsonLinesRoundTrip() throws IOException, SQLException {
+        assertReimports(CatalogExporter.Format.JSONL);
+    }
+
+    /**
+     * @author giser
+     * El fitxer binari conté les cançons en l'ordre de l'exportació, amb cada àlbum escrit una sola vegada,
+     * i acaba amb el registre final i el nombre de cançons.
+     * @throws IOException si falla la lectura del fitxer.
+     */
+    @Test
+    void binaryFormat() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        int albums = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(CatalogExporter.Format.BINARY))))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            assertEquals("MDBX", new String(magic, StandardCharsets.US_ASCII));
+            assertEquals(1, in.readUnsignedByte(), "Versió");
+            String label = null;
+            String artist = null;
+            String album = null;
+            int year = 0;
+            int type;
+            while ((type = in.readUnsignedByte()) != 0) {
+                if (type == 1) {
+                    label = readString(in);
+                    artist = readString(in);
+                    album = readString(in);
+                    year = readVarint(in);
+                    albums++;
+                } else {
+                    assertEquals(2, type, "Tipus de registre");
+                    songs.add(new Song(label, artist, album, year, readString(in), in.readDouble()));
+                }
+            }
+            assertEquals(catalog.size(), in.readLong(), "Cançons del registre final");
+            assertEquals(-1, in.read(), "Final del fitxer");
+        }
+        assertEquals(catalog, songs);
+        assertEquals(catalog.stream().map(song -> List.of(song.label(), song.artist(), song.album())).distinct().count(), albums,
+                "Registres d'àlbum");
+    }
+
+    /**
+     * @author giser
+     * Importa un dels fitxers exportats a una base de dades nova (amb el catàleg de l'script, que queda duplicat)
+     * i comprova que les cançons siguin les mateixes que les de l'original.
+     * @param format el format del fitxer.
+     * @throws IOException  si falla la importació.
+     * @throws SQLException si falla la base de dades.
+     */
+    private static void assertReimports(CatalogExporter.Format format) throws IOException, SQLException {
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + directory.resolve(format.extension() + ".db"));
+        try {
+            DatabaseInitializer.createSchema();
+            CatalogImporter.Result result = CatalogImporter.importFile(file(format), CatalogImporter.DEFAULT_CHUNK_SIZE, null);
+            assertEquals(List.of(), result.errors(), "Errors de la importació");
+            assertEquals(catalog.size(), result.totals().read(), "Files llegides");
+            Comparator<Song> order = Comparator.comparing(Song::toString);
+            assertEquals(catalog.stream().sorted(order).toList(),
+                    DatabaseConnection.read(CatalogExporterTest::songs).stream().sorted(order).toList());
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix totes les cançons en l'ordre de l'exportació.
+     * @param conn la connexió.
+     * @return les cançons.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static List<Song> songs(Connection conn) throws SQLException {
+        List<Song> songs = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT rl.name, ar.name, al.name, al.year, s.name, s.duration FROM song s " +
+                "JOIN album al ON s.album_id = al.id " +
+                "JOIN artist ar ON al.artist_id = ar.id " +
+                "JOIN record_label rl ON ar.record_label_id = rl.id " +
+                "ORDER BY s.album_id, s.name");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                songs.add(new Song(rs.getString(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getString(5), rs.getDouble(6)));
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * @author giser
+     * Insereix una fila amb un nom.
+     * @param conn la connexió d'escriptura.
+     * @param sql  la sentència, amb el nom com a únic paràmetre i <code>RETURNING id</code>.
+     * @param name el nom.
+     * @return l'id de la fila.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static int insert(Connection conn, String sql, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna el fitxer exportat en un format.
+     * @param format el format.
+     * @return el camí del fitxer.
+     */
+    private static Path file(CatalogExporter.Format format) {
+        return directory.resolve("catalog." + format.extension());
+    }
+
+    /**
+     * @author giser
+     * Llegeix un text del format binari: la longitud en bytes (varint) i els bytes en UTF-8.
+     * @param in el fitxer.
+     * @return el text.
+     * @throws IOException si falla la lectura.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @author giser
+     * Llegeix un enter de mida variable del format binari: 7 bits per byte, començant pels de menys pes.
+     * @param in el fitxer.
+     * @return l'enter.
+     * @throws IOException si falla la lectura.
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,169 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author giser
+ * Comprova {@link CatalogImporter} sobre una base de dades temporal: el recompte de files importades, duplicades
+ * i descartades, la línia dels errors de validació i la indexació de les cançons noves per a la cerca.
+ * Cada prova fa servir artistes propis, de manera que no depèn de les altres.
+ */
+class CatalogImporterTest {
+
+    // Files de cada bloc: amb pocs blocs, la importació en fa servir uns quants.
+    private static final int CHUNK_SIZE = 2;
+
+    @TempDir
+    static Path directory;
+
+    /**
+     * @author giser
+     * Crea la base de dades temporal i hi aplica l'script i les migracions.
+     * @throws SQLException si falla la creació de la base de dades.
+     */
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + directory.resolve("music.db"));
+        DatabaseInitializer.createSchema();
+    }
+
+    /**
+     * @author giser
+     * Tanca les connexions a la base de dades temporal.
+     */
+    @AfterAll
+    static void closeDatabase() {
+        DatabaseConnection.shutdown();
+    }
+
+    /**
+     * @author giser
+     * Un CSV amb files incorrectes (una d'elles amb un camp de dues línies) i una cançó repetida: els errors porten
+     * la línia on comença cada fila i la repetida es compta com a duplicada. Importar-lo una altra vegada no insereix
+     * res i compta totes les cançons vàlides com a duplicades.
+     * @throws IOException  si falla la lectura del fitxer.
+     * @throws SQLException si falla l'escriptura a la base de dades.
+     */
+    @Test
+    void countsRejectedAndDuplicateRows() throws IOException, SQLException {
+        Path file = write("songs.csv", "artist,album,year,title,duration\n"
+                + "Import Artist,First Album,2001,One,200\n"
+                + "Import Artist,First Album,2001,\"Two, \"\"live\"\"\",180.5\n"
+                + "Import Artist,First Album,2001,Three,\n"
+                + "Import Artist,\"Second\nAlbum\",99,Four,100\n"
+                + "Import Artist,First Album,2001,One,201\n"
+                + "Import Artist,Second Album,,Five,abc\n"
+                + "Import Artist,Second Album,,Six,\"3,5\"\n"
+                + "Import Artist,Second Album,,Seven,NaN\n");
+        List<String> errors = List.of(
+                "Línia 4: falta la durada",
+                "Línia 5: l'any ha de tenir quatre xifres (99)",
+                "Línia 8: la durada ha de ser un número (abc)",
+                "Línia 10: la durada ha de ser un número positiu");
+
+        CatalogImporter.Result first = CatalogImporter.importFile(file, CHUNK_SIZE, null);
+        assertTotals(first.totals(), 8, 3, 1, 4, 1, 2);
+        assertEquals(errors, first.errors());
+        assertEquals(3, count("SELECT COUNT(*) FROM song s JOIN album al ON s.album_id = al.id "
+                + "JOIN artist ar ON al.artist_id = ar.id WHERE ar.name = 'Import Artist'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM song WHERE name = 'Two, \"live\"' AND duration = 180.5"));
+        assertEquals(1, count("SELECT COUNT(*) FROM song WHERE name = 'Six' AND duration = 3.5"));
+
+        CatalogImporter.Result second = CatalogImporter.importFile(file, CHUNK_SIZE, null);
+        assertTotals(second.totals(), 8, 0, 4, 4, 0, 0);
+        assertEquals(errors, second.errors());
+        assertSearchIndexed();
+    }
+
+    /**
+     * @author giser
+     * Un fitxer JSON Lines: els errors porten la línia de cada objecte i les cançons noves es poden cercar.
+     * @throws IOException  si falla la lectura del fitxer.
+     * @throws SQLException si falla l'escriptura a la base de dades.
+     */
+    @Test
+    void importsJsonLines() throws IOException, SQLException {
+        Path file = write("songs.jsonl", "{\"artist\": \"Json Artist\", \"album\": \"Àlbum\", \"title\": \"Cançó \\u00e0\", \"duration\": 120}\n"
+                + "{\"artist\": \"Json Artist\", \"album\": \"Àlbum\", \"title\": \"Sense durada\"}\n"
+                + "\n"
+                + "{\"artist\": \"\", \"album\": \"Àlbum\", \"title\": \"Sense artista\", \"duration\": 1}\n"
+                + "{\"artist\": \"Json Artist\", \"album\": \"Àlbum\", \"title\": \"\\ud83c\\udfb5\", \"duration\": \"90\"}\n");
+
+        CatalogImporter.Result result = CatalogImporter.importFile(file, CHUNK_SIZE, null);
+        assertTotals(result.totals(), 4, 2, 0, 2, 1, 1);
+        assertEquals(List.of("Línia 2: falta la durada", "Línia 4: falta el nom de l'artista"), result.errors());
+        assertEquals(1, count("SELECT COUNT(*) FROM song_search WHERE song_search MATCH 'artist:json AND title:cançó'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM song WHERE name = '\uD83C\uDFB5'"));
+        assertSearchIndexed();
+    }
+
+    /**
+     * @author giser
+     * Comprova els recomptes d'una importació.
+     * @param totals     l'estat final de la importació.
+     * @param read       les files llegides esperades.
+     * @param imported   les cançons inserides esperades.
+     * @param duplicates les cançons duplicades esperades.
+     * @param rejected   les files descartades esperades.
+     * @param artists    els artistes creats esperats.
+     * @param albums     els àlbums creats esperats.
+     */
+    private static void assertTotals(CatalogImporter.Progress totals, long read, long imported, long duplicates,
+                                     long rejected, int artists, int albums) {
+        assertEquals(List.of(read, imported, duplicates, rejected, (long) artists, (long) albums),
+                List.of(totals.read(), totals.imported(), totals.duplicates(), totals.rejected(),
+                        (long) totals.artists(), (long) totals.albums()),
+                "Llegides, importades, duplicades, descartades, artistes i àlbums");
+    }
+
+    /**
+     * @author giser
+     * Comprova que totes les cançons siguin a la cerca i que no quedi cap rang pendent d'indexar.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static void assertSearchIndexed() throws SQLException {
+        assertEquals(count("SELECT COUNT(*) FROM song"), count("SELECT COUNT(*) FROM song_search"), "Cançons a la cerca");
+        assertEquals(0, count("SELECT COUNT(*) FROM song_search_pending"), "Rangs pendents");
+    }
+
+    /**
+     * @author giser
+     * Escriu un fitxer d'importació al directori temporal.
+     * @param name     el nom del fitxer.
+     * @param contents el contingut.
+     * @return el camí del fitxer.
+     * @throws IOException si falla l'escriptura.
+     */
+    private static Path write(String name, String contents) throws IOException {
+        return Files.writeString(directory.resolve(name), contents, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @author giser
+     * Executa una consulta que retorna un sol número.
+     * @param sql la consulta.
+     * @return el número.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static long count(String sql) throws SQLException {
+        return DatabaseConnection.read(conn -> {
+            try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author giser
+ * Comprova la lectura de fitxers CSV d'importació amb {@link CsvImportReader}: camps entre cometes amb separadors,
+ * salts de línia i cometes duplicades, el separador punt i coma, la marca d'ordre de bytes i la línia de cada fila.
+ */
+class CsvImportReaderTest {
+
+    /**
+     * @author giser
+     * Les columnes es reconeixen pel nom, en qualsevol ordre; les desconegudes s'ignoren i les que falten són nul·les.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void mapsColumnsByName() throws IOException {
+        List<ImportRow> rows = rows("Duration,extra,TITLE,album,artist,year\n"
+                + "215.5,x,Song,Album,Artist,1999\n"
+                + "180,y,Other\n");
+        assertEquals(List.of(
+                new ImportRow(2, null, "Artist", "Album", "1999", "Song", "215.5"),
+                new ImportRow(3, null, null, null, null, "Other", "180")), rows);
+    }
+
+    /**
+     * @author giser
+     * Un camp entre cometes pot contenir el separador, salts de línia i cometes duplicades.
+     * Les files següents mantenen el número de la línia on comencen.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void readsQuotedFields() throws IOException {
+        List<ImportRow> rows = rows("artist,album,title,duration\r\n"
+                + "\"Simon, Garfunkel\",\"Album\",\"Line 1\r\nLine \"\"2\"\"\",\"3,5\"\r\n"
+                + "\"\",Album,\"\"\"\",1\r\n");
+        assertEquals(List.of(
+                new ImportRow(2, null, "Simon, Garfunkel", "Album", null, "Line 1\r\nLine \"2\"", "3,5"),
+                new ImportRow(4, null, "", "Album", null, "\"", "1")), rows);
+    }
+
+    /**
+     * @author giser
+     * Les línies buides se salten, però compten per al número de línia.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void skipsEmptyLines() throws IOException {
+        List<ImportRow> rows = rows("artist,album,title,duration\n\nA,B,C,1\n\r\n\nD,E,F,2");
+        assertEquals(List.of(
+                new ImportRow(3, null, "A", "B", null, "C", "1"),
+                new ImportRow(6, null, "D", "E", null, "F", "2")), rows);
+    }
+
+    /**
+     * @author giser
+     * Si la capçalera té punts i comes i no té comes, el separador és el punt i coma, i les comes són decimals.
+     * Les columnes també es reconeixen en català.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void detectsSemicolonSeparator() throws IOException {
+        List<ImportRow> rows = rows("segell;artista;àlbum;any;títol;durada\nLabel;Artist;Album, Vol. 1;2001;Song;3,25\n");
+        assertEquals(List.of(new ImportRow(2, "Label", "Artist", "Album, Vol. 1", "2001", "Song", "3,25")), rows);
+    }
+
+    /**
+     * @author giser
+     * La marca d'ordre de bytes a l'inici del fitxer no forma part del nom de la primera columna.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void skipsByteOrderMark() throws IOException {
+        assertEquals(List.of(new ImportRow(2, null, "A", "B", null, "C", "1")),
+                rows("\uFEFFartist,album,title,duration\nA,B,C,1\n"));
+        assertEquals(List.of(new ImportRow(2, null, "A", "B", null, "C", "1")),
+                rows("\uFEFFartista;àlbum;títol;durada\nA;B;C;1\n"));
+    }
+
+    /**
+     * @author giser
+     * Unes cometes duplicades que queden partides entre dues lectures del buffer es continuen llegint com unes cometes.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void readsDoubledQuotesAcrossBuffers() throws IOException {
+        String header = "artist,album,title,duration\n";
+        // La primera cometa del parell és l'últim caràcter del buffer de 64 KiB
+        String padding = "x".repeat(64 * 1024 - 1 - header.length() - "A,B,\"".length());
+        List<ImportRow> rows = rows(header + "A,B,\"" + padding + "\"\"\",1\nC,D,E,2\n");
+        assertEquals(2, rows.size());
+        assertEquals(padding + "\"", rows.get(0).title());
+        assertEquals("1", rows.get(0).duration());
+        assertEquals(new ImportRow(3, null, "C", "D", null, "E", "2"), rows.get(1));
+    }
+
+    /**
+     * @author giser
+     * Un fitxer buit, una capçalera sense les columnes obligatòries o unes cometes sense tancar són errors.
+     */
+    @Test
+    void rejectsMalformedFiles() {
+        assertThrows(IOException.class, () -> rows(""));
+        assertThrows(IOException.class, () -> rows("artist,album,title\nA,B,C\n"));
+        IOException e = assertThrows(IOException.class, () -> rows("artist,album,title,duration\nA,B,C,1\nA,B,\"C\n,1\n"));
+        assertTrue(e.getMessage().startsWith("Cometes sense tancar"), e.getMessage());
+    }
+
+    /**
+     * @author giser
+     * Llegeix totes les files d'un CSV.
+     * @param csv el text del fitxer.
+     * @return les files, en ordre.
+     * @throws IOException si falla la lectura.
+     */
+    private static List<ImportRow> rows(String csv) throws IOException {
+        List<ImportRow> rows = new ArrayList<>();
+        try (ImportReader reader = new CsvImportReader(new StringReader(csv))) {
+            ImportRow row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
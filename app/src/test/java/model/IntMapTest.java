@@ -0,0 +1,99 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author giser
+ * Comprova {@link IntMap} contra un {@link HashMap}: amb moltes insercions i eliminacions aleatòries sobre poques claus,
+ * les seqüències de sondeig es barregen i l'eliminació ha de desplaçar bé les entrades perquè les cerques continuïn
+ * trobant-les, també quan els vectors creixen.
+ */
+class IntMapTest {
+
+    /**
+     * @author giser
+     * Operacions aleatòries amb claus d'un rang petit (i els extrems dels enters): cada resultat coincideix amb el d'un HashMap.
+     */
+    @Test
+    void matchesHashMap() {
+        Random random = new Random(42);
+        IntMap<Integer> map = new IntMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        int[] extremes = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int operation = 0; operation < 200_000; operation++) {
+            int key = random.nextInt(10) == 0 ? extremes[random.nextInt(extremes.length)] : random.nextInt(2_000) - 1_000;
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, operation), map.put(key, operation), "put " + key);
+                case 1 -> assertEquals(expected.remove(key), map.remove(key), "remove " + key);
+                default -> {
+                    assertEquals(expected.get(key), map.get(key), "get " + key);
+                    assertEquals(expected.containsKey(key), map.containsKey(key), "containsKey " + key);
+                }
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()), "get " + entry.getKey());
+        }
+    }
+
+    /**
+     * @author giser
+     * Les entrades es mantenen en créixer els vectors, tant des de la capacitat inicial com des de la indicada.
+     */
+    @Test
+    void keepsEntriesWhenGrowing() {
+        for (IntMap<String> map : List.of(new IntMap<String>(), new IntMap<String>(1_000))) {
+            for (int key = 0; key < 100_000; key += 3) {
+                map.put(key, "v" + key);
+            }
+            assertEquals(33_334, map.size());
+            for (int key = 0; key < 100_000; key++) {
+                assertEquals(key % 3 == 0 ? "v" + key : null, map.get(key), "get " + key);
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * {@link IntMap#replaceValues} canvia tots els valors sense tocar les claus i {@link IntMap#clear()} les buida.
+     */
+    @Test
+    void replacesAndClears() {
+        IntMap<Integer> map = new IntMap<>();
+        for (int key = -50; key < 50; key++) {
+            map.put(key, key);
+        }
+        map.replaceValues(value -> value * 2);
+        for (int key = -50; key < 50; key++) {
+            assertEquals(key * 2, map.get(key));
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(0));
+        assertNull(map.put(0, 1));
+        assertTrue(map.containsKey(0));
+    }
+
+    /**
+     * @author giser
+     * Els valors nuls no s'accepten, ni en inserir-los ni en substituir-los.
+     */
+    @Test
+    void rejectsNullValues() {
+        IntMap<Integer> map = new IntMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+        map.put(1, 1);
+        assertThrows(IllegalArgumentException.class, () -> map.replaceValues(value -> null));
+    }
+}
@@ -0,0 +1,102 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author giser
+ * Comprova la lectura de fitxers JSON d'importació amb {@link JsonImportReader}: llistes i JSON Lines,
+ * valors de tots els tipus, propietats desconegudes, seqüències d'escapament i la línia de cada objecte.
+ */
+class JsonImportReaderTest {
+
+    /**
+     * @author giser
+     * Una llista d'objectes: els números, booleans i <code>null</code> es llegeixen com a text o com a nul,
+     * i les propietats desconegudes, també objectes i llistes, s'ignoren.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void readsArrays() throws IOException {
+        List<ImportRow> rows = rows("[\n"
+                + "  {\"artist\": \"Artist\", \"album\": \"Album\", \"year\": 1999, \"title\": \"Song\", \"duration\": 215.5},\n"
+                + "  {\"extra\": {\"a\": [1, {\"b\": \"}]\"}]}, \"títol\": \"Other\", \"label\": null, \"live\": true,\n"
+                + "   \"durada\": \"3,5\"},\n"
+                + "  {}\n"
+                + "]\n");
+        assertEquals(List.of(
+                new ImportRow(2, null, "Artist", "Album", "1999", "Song", "215.5"),
+                new ImportRow(3, null, null, null, null, "Other", "3,5"),
+                new ImportRow(5, null, null, null, null, null, null)), rows);
+    }
+
+    /**
+     * @author giser
+     * Un objecte per línia (JSON Lines), amb línies buides entremig i una marca d'ordre de bytes inicial.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void readsJsonLines() throws IOException {
+        List<ImportRow> rows = rows("\uFEFF{\"artist\":\"A\",\"title\":\"B\"}\n\n{\"artist\":\"C\",\"title\":\"D\"}");
+        assertEquals(List.of(
+                new ImportRow(1, null, "A", null, null, "B", null),
+                new ImportRow(3, null, "C", null, null, "D", null)), rows);
+    }
+
+    /**
+     * @author giser
+     * Les seqüències d'escapament es resolen; un parell de suplents escapats forma un sol caràcter
+     * i un suplent sol es conserva tal qual.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void resolvesEscapes() throws IOException {
+        List<ImportRow> rows = rows("{\"title\": \"\\\"q\\\" \\\\ \\/ \\b\\f\\n\\r\\t \\u00e0\\u00C7\","
+                + " \"artist\": \"\\ud83c\\udfb5 \\ud800x\"}");
+        assertEquals("\"q\" \\ / \b\f\n\r\t àÇ", rows.get(0).title());
+        assertEquals("\uD83C\uDFB5 \uD800x", rows.get(0).artist());
+        assertEquals(4, rows.get(0).artist().codePoints().count());
+    }
+
+    /**
+     * @author giser
+     * Els errors de format indiquen la línia on es produeixen.
+     */
+    @Test
+    void rejectsMalformedJson() {
+        assertEquals("S'esperava una llista o un objecte a la línia 1 del JSON",
+                assertThrows(IOException.class, () -> rows("\"text\"")).getMessage());
+        assertEquals("S'esperava ',' o '}' a la línia 2 del JSON",
+                assertThrows(IOException.class, () -> rows("[{\"title\": \"A\"},\n{\"title\": \"B\" \"duration\": 1}]")).getMessage());
+        assertEquals("Cadena sense tancar a la línia 1 del JSON",
+                assertThrows(IOException.class, () -> rows("{\"title\": \"A\n\"}")).getMessage());
+        assertEquals("Escapament \\u incorrecte a la línia 1 del JSON",
+                assertThrows(IOException.class, () -> rows("{\"title\": \"\\u00g0\"}")).getMessage());
+        assertEquals("Objecte o llista sense tancar a la línia 2 del JSON",
+                assertThrows(IOException.class, () -> rows("{\"extra\": [1,\n2")).getMessage());
+    }
+
+    /**
+     * @author giser
+     * Llegeix totes les files d'un JSON.
+     * @param json el text del fitxer.
+     * @return les files, en ordre.
+     * @throws IOException si falla la lectura.
+     */
+    private static List<ImportRow> rows(String json) throws IOException {
+        List<ImportRow> rows = new ArrayList<>();
+        try (ImportReader reader = new JsonImportReader(new StringReader(json))) {
+            ImportRow row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
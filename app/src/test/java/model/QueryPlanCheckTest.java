@@ -0,0 +1,119 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author giser
+ * Comprova amb <code>EXPLAIN QUERY PLAN</code> que les consultes de cançons de {@link MusicDAO} utilitzen índexs.
+ * Una línia del pla que comença per "SCAN" sense "USING" indica un recorregut complet d'una taula,
+ * que vol dir que falta un índex (o que l'esquema no està migrat). Les consultes ordenades per títol, durada,
+ * àlbum o artista tampoc haurien de fer servir un B-tree temporal, que voldria dir ordenar totes les cançons.
+ * Les consultes es planifiquen sobre una base de dades temporal amb l'esquema migrat i un catàleg sintètic.
+ */
+class QueryPlanCheckTest {
+
+    // Cançons del catàleg sintètic: amb poques, el planificador prefereix ordenar-les a recórrer un índex.
+    private static final int SONGS = 20_000;
+
+    @TempDir
+    static Path directory;
+
+    /**
+     * @author giser
+     * Crea la base de dades temporal, hi aplica l'script i les migracions i hi afegeix el catàleg sintètic.
+     * Després la torna a obrir: en tancar-la s'actualitzen les estadístiques del planificador (PRAGMA optimize),
+     * que les connexions noves ja fan servir.
+     * @throws SQLException si falla la creació de la base de dades.
+     */
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        String url = "jdbc:sqlite:" + directory.resolve("music.db");
+        DatabaseConnection.setDatabaseUrl(url);
+        DatabaseInitializer.createSchema();
+        CatalogGenerator.generate(CatalogGenerator.Options.forSongs(SONGS));
+        DatabaseConnection.shutdown();
+        DatabaseConnection.setDatabaseUrl(url);
+    }
+
+    /**
+     * @author giser
+     * Tanca les connexions a la base de dades temporal.
+     */
+    @AfterAll
+    static void closeDatabase() {
+        DatabaseConnection.shutdown();
+    }
+
+    /**
+     * @author giser
+     * Cap consulta filtrada (per artista, per àlbum o per tots dos) recorre una taula sencera.
+     * @throws SQLException si es produeix un error en obtenir els plans.
+     */
+    @Test
+    void filteredQueriesUseIndexes() throws SQLException {
+        List<String> fullScans = new ArrayList<>();
+        for (String sql : MusicDAO.filteredSongQueries()) {
+            for (String step : explain(sql)) {
+                // "SCAN t USING INDEX" o "USING COVERING INDEX" recorren un índex sencer, però acotat per la condició
+                if (step.startsWith("SCAN") && !step.contains("USING")) {
+                    fullScans.add(sql + " -> " + step);
+                }
+            }
+        }
+        assertEquals(List.of(), fullScans, "Recorreguts complets de taula");
+    }
+
+    /**
+     * @author giser
+     * Cap consulta ordenada ordena les cançons amb un B-tree temporal.
+     * @throws SQLException si es produeix un error en obtenir els plans.
+     */
+    @Test
+    void sortedQueriesUseIndexes() throws SQLException {
+        List<String> tempSorts = new ArrayList<>();
+        for (String sql : MusicDAO.sortedSongQueries()) {
+            for (String step : explain(sql)) {
+                if (step.startsWith("USE TEMP B-TREE")) {
+                    tempSorts.add(sql + " -> " + step);
+                }
+            }
+        }
+        assertEquals(List.of(), tempSorts, "Ordenacions temporals");
+    }
+
+    /**
+     * @author giser
+     * Obté el pla d'execució d'una consulta.
+     * @param sql la consulta, amb paràmetres; s'hi assigna el valor 1 a tots.
+     * @return les descripcions dels passos del pla.
+     * @throws SQLException si es produeix un error en obtenir el pla.
+     */
+    private static List<String> explain(String sql) throws SQLException {
+        return DatabaseConnection.read(conn -> {
+            List<String> steps = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+                int parameters = pstmt.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    pstmt.setInt(i, 1);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        steps.add(rs.getString("detail"));
+                    }
+                }
+            }
+            return steps;
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author giser
+ * Comprova que {@link SongIndex} retorna el mateix que {@link MusicDAO} després d'aplicar-hi insercions, modificacions,
+ * canvis d'àlbum i eliminacions fetes amb el DAO: per a tots els filtres (sense filtre, cada artista, cada àlbum,
+ * cada àlbum amb el seu artista i amb un altre), el nombre de cançons i les pàgines, recorrent-les per clau i saltant-ne.
+ */
+class SongIndexTest {
+
+    // Cançons del catàleg sintètic.
+    private static final int SONGS = 3_000;
+
+    // Cançons de cada pàgina; no divideix el nombre de cançons de cap filtre de manera exacta.
+    private static final int PAGE = 97;
+
+    @TempDir
+    static Path directory;
+
+    /**
+     * @author giser
+     * Crea la base de dades temporal amb el catàleg sintètic.
+     * @throws SQLException si falla la creació de la base de dades.
+     */
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + directory.resolve("music.db"));
+        DatabaseInitializer.createSchema();
+        CatalogGenerator.generate(CatalogGenerator.Options.forSongs(SONGS));
+    }
+
+    /**
+     * @author giser
+     * Descarta l'índex i tanca les connexions a la base de dades temporal.
+     */
+    @AfterAll
+    static void closeDatabase() {
+        SongIndex.invalidate();
+        SongQueryCache.invalidateAll();
+        DatabaseConnection.shutdown();
+    }
+
+    /**
+     * @author giser
+     * Després de les escriptures del DAO, l'índex continua construït i coincideix amb la base de dades en tots els filtres.
+     * @throws SQLException si falla alguna escriptura o consulta.
+     */
+    @Test
+    void followsDaoWrites() throws SQLException {
+        assertTrue(SongIndex.build(), "Construcció de l'índex");
+        List<Album> albums = MusicDAO.getAlbums();
+        Album first = albums.get(0);
+        Album other = albums.stream().filter(album -> album.artistId() != first.artistId()).findFirst().orElseThrow();
+        List<Integer> generated = MusicDAO.getSongsPage(null, null, Integer.MIN_VALUE, SONGS / 2, 4).stream()
+                .map(SongRow::id).toList();
+
+        SongRow inserted = MusicDAO.insertSong(first.id(), "Índex 𝄞 nova", 123.456);
+        SongRow moved = MusicDAO.insertSong(other.id(), "Índex canvi d'àlbum", 0.1);
+        SongRow last = MusicDAO.insertSong(other.id(), "Índex última", 61);
+        MusicDAO.updateSong(inserted.id(), first.id(), "Índex reanomenada", 200.5);
+        MusicDAO.updateSong(moved.id(), first.id(), "Índex moguda", 0.2);
+        MusicDAO.updateSong(generated.get(0), MusicDAO.getSong(generated.get(0)).orElseThrow().albumId(), "Índex modificada", 1e-3);
+        MusicDAO.deleteSong(1);
+        MusicDAO.deleteSongs(List.of(generated.get(1), generated.get(2), Integer.MAX_VALUE));
+        MusicDAO.moveSongs(List.of(inserted.id(), last.id(), generated.get(3)), albums.get(albums.size() - 1).id());
+        MusicDAO.insertSong(first.id(), "Índex després de moure", 5);
+        assertTrue(SongIndex.isBuilt(), "L'índex s'ha mantingut al dia sense reconstruir-lo");
+
+        List<String> differences = new ArrayList<>();
+        compare(null, null, true, differences);
+        for (Artist artist : MusicDAO.getArtists()) {
+            compare(artist.id(), null, true, differences);
+        }
+        for (Album album : albums) {
+            compare(null, album.id(), false, differences);
+            compare(album.artistId(), album.id(), false, differences);
+            compare(album.artistId() == first.artistId() ? other.artistId() : first.artistId(), album.id(), false, differences);
+        }
+        assertEquals(List.of(), differences, "Diferències entre l'índex i la base de dades");
+    }
+
+    /**
+     * @author giser
+     * Compara el recompte i les pàgines d'un filtre a l'índex i a la base de dades.
+     * @param artistId    l'artista del filtre, o <code>null</code>.
+     * @param albumId     l'àlbum del filtre, o <code>null</code>.
+     * @param walk        si s'han de recórrer totes les pàgines per clau; si no, només la primera i les dels salts.
+     * @param differences la llista on s'afegeixen les diferències.
+     * @throws SQLException si falla la consulta.
+     */
+    private static void compare(Integer artistId, Integer albumId, boolean walk, List<String> differences) throws SQLException {
+        String filter = "artista " + artistId + ", àlbum " + albumId;
+        int count = MusicDAO.countSongs(artistId, albumId);
+        SongQueryCache.Result first = SongIndex.firstPage(artistId, albumId, PAGE);
+        if (first.count() != count) {
+            differences.add(filter + ": " + first.count() + " cançons a l'índex i " + count + " a la base de dades");
+        }
+        List<SongRow> expected = MusicDAO.getSongsPage(artistId, albumId, Integer.MIN_VALUE, 0, PAGE);
+        if (!first.firstPage().equals(expected)) {
+            differences.add(filter + ": primera pàgina");
+        }
+        // Pàgines per clau, a partir de l'última cançó de l'anterior
+        int afterId = Integer.MIN_VALUE;
+        while (walk && !expected.isEmpty()) {
+            afterId = expected.get(expected.size() - 1).id();
+            expected = comparePage(artistId, albumId, afterId, 0, differences);
+        }
+        // Salts des del principi i des d'una cançó del mig, fins més enllà del final
+        for (int offset : new int[]{1, PAGE, count / 2, count - 1, count, count + 5}) {
+            if (offset > 0) {
+                List<SongRow> page = comparePage(artistId, albumId, Integer.MIN_VALUE, offset, differences);
+                if (offset == count / 2 && !page.isEmpty()) {
+                    comparePage(artistId, albumId, page.get(0).id(), 3, differences);
+                }
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Compara una pàgina d'un filtre a l'índex i a la base de dades.
+     * @param artistId    l'artista del filtre, o <code>null</code>.
+     * @param albumId     l'àlbum del filtre, o <code>null</code>.
+     * @param afterId     l'id de l'última cançó coneguda.
+     * @param offset      les cançons que se salten després de <code>afterId</code>.
+     * @param differences la llista on s'afegeix la diferència, si n'hi ha.
+     * @return la pàgina de la base de dades.
+     * @throws SQLException si falla la consulta.
+     */
+    private static List<SongRow> comparePage(Integer artistId, Integer albumId, int afterId, int offset,
+                                             List<String> differences) throws SQLException {
+        List<SongRow> expected = MusicDAO.getSongsPage(artistId, albumId, afterId, offset, PAGE);
+        List<SongRow> actual = SongIndex.page(artistId, albumId, afterId, offset, PAGE);
+        if (!expected.equals(actual)) {
+            differences.add("artista " + artistId + ", àlbum " + albumId + ", després de " + afterId + ", salt " + offset
+                    + ": " + actual + " a l'índex i " + expected + " a la base de dades");
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,207 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author giser
+ * Comprova {@link SongQueryCache} sobre una base de dades temporal: els encerts i fallades, el descart per mida (LRU),
+ * que una cançó només invalida els filtres que la poden contenir i que una consulta iniciada abans d'una invalidació
+ * no es guarda.
+ */
+class SongQueryCacheTest {
+
+    // Cançons del catàleg sintètic.
+    private static final int SONGS = 2_000;
+
+    // Cançons de la primera pàgina.
+    private static final int PAGE = 50;
+
+    @TempDir
+    static Path directory;
+
+    // Dos àlbums de cada un de dos artistes diferents.
+    private static Album firstA;
+    private static Album secondA;
+    private static Album firstB;
+    private static Album secondB;
+
+    /**
+     * @author giser
+     * Crea la base de dades temporal amb el catàleg sintètic i en tria els àlbums de les proves.
+     * @throws SQLException si falla la creació de la base de dades.
+     */
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + directory.resolve("music.db"));
+        DatabaseInitializer.createSchema();
+        CatalogGenerator.generate(CatalogGenerator.Options.forSongs(SONGS));
+        List<Album> albums = MusicDAO.getAlbums();
+        firstA = albums.get(0);
+        secondA = albums.stream().filter(album -> album.artistId() == firstA.artistId() && album.id() != firstA.id())
+                .findFirst().orElseThrow();
+        firstB = albums.stream().filter(album -> album.artistId() != firstA.artistId()).findFirst().orElseThrow();
+        secondB = albums.stream().filter(album -> album.artistId() == firstB.artistId() && album.id() != firstB.id())
+                .findFirst().orElseThrow();
+    }
+
+    /**
+     * @author giser
+     * Buida la memòria cau i tanca les connexions a la base de dades temporal.
+     */
+    @AfterAll
+    static void closeDatabase() {
+        SongQueryCache.invalidateAll();
+        DatabaseConnection.shutdown();
+    }
+
+    /**
+     * @author giser
+     * Cada prova comença amb la memòria cau buida.
+     */
+    @BeforeEach
+    void clearCache() {
+        SongQueryCache.invalidateAll();
+    }
+
+    /**
+     * @author giser
+     * Un resultat carregat es troba amb {@link SongQueryCache#lookup} i és el mateix que el de la base de dades;
+     * un filtre no carregat és una fallada.
+     * @throws SQLException si falla la consulta.
+     */
+    @Test
+    void storesLoadedResults() throws SQLException {
+        SongQueryCache.Stats before = SongQueryCache.stats();
+        assertNull(SongQueryCache.lookup(firstA.artistId(), null));
+        SongQueryCache.Result loaded = SongQueryCache.load(firstA.artistId(), null, PAGE);
+        assertEquals(MusicDAO.countSongs(firstA.artistId(), null), loaded.count());
+        assertEquals(MusicDAO.getSongsPage(firstA.artistId(), null, Integer.MIN_VALUE, 0, PAGE), loaded.firstPage());
+        assertEquals(loaded, SongQueryCache.lookup(firstA.artistId(), null));
+        SongQueryCache.Stats after = SongQueryCache.stats();
+        assertEquals(1, after.hits() - before.hits(), "Encerts");
+        assertEquals(1, after.misses() - before.misses(), "Fallades");
+        assertEquals(1, after.size());
+    }
+
+    /**
+     * @author giser
+     * En passar de {@link SongQueryCache#MAX_ENTRIES} filtres es descarta el que fa més temps que no s'utilitza.
+     * @throws SQLException si falla la consulta.
+     */
+    @Test
+    void evictsLeastRecentlyUsed() throws SQLException {
+        SongQueryCache.Stats before = SongQueryCache.stats();
+        for (int albumId = 1; albumId <= SongQueryCache.MAX_ENTRIES; albumId++) {
+            SongQueryCache.load(null, albumId, PAGE);
+        }
+        assertNotNull(SongQueryCache.lookup(null, 1));
+        SongQueryCache.load(null, SongQueryCache.MAX_ENTRIES + 1, PAGE);
+        SongQueryCache.Stats after = SongQueryCache.stats();
+        assertEquals(1, after.evictions() - before.evictions(), "Descarts");
+        assertEquals(SongQueryCache.MAX_ENTRIES, after.size());
+        assertNotNull(SongQueryCache.lookup(null, 1), "El filtre utilitzat fa poc es manté");
+        assertNull(SongQueryCache.lookup(null, 2), "El filtre utilitzat fa més temps es descarta");
+    }
+
+    /**
+     * @author giser
+     * Una cançó de l'àlbum A1 invalida "totes les cançons", l'artista A i els filtres de l'àlbum A1,
+     * però no els de l'altre artista ni els de l'altre àlbum de l'artista A.
+     * @throws SQLException si falla la consulta.
+     */
+    @Test
+    void invalidatesOnlyAffectedFilters() throws SQLException {
+        Integer[][] filters = {
+                {null, null}, {firstA.artistId(), null}, {null, firstA.id()}, {firstA.artistId(), firstA.id()},
+                {null, secondA.id()}, {firstA.artistId(), secondA.id()},
+                {firstB.artistId(), null}, {null, firstB.id()}, {firstB.artistId(), secondB.id()}};
+        for (Integer[] filter : filters) {
+            SongQueryCache.load(filter[0], filter[1], PAGE);
+        }
+        SongQueryCache.invalidateSong(MusicDAO.getSongsPage(null, firstA.id(), Integer.MIN_VALUE, 0, 1).get(0));
+        List<String> cached = new ArrayList<>();
+        for (Integer[] filter : filters) {
+            if (SongQueryCache.lookup(filter[0], filter[1]) != null) {
+                cached.add(filter[0] + "/" + filter[1]);
+            }
+        }
+        assertEquals(List.of(
+                null + "/" + secondA.id(), firstA.artistId() + "/" + secondA.id(),
+                firstB.artistId() + "/" + null, null + "/" + firstB.id(), firstB.artistId() + "/" + secondB.id()), cached);
+    }
+
+    /**
+     * @author giser
+     * Una consulta que ja ha començat quan s'invalida la memòria cau retorna el resultat, però no el guarda.
+     * Per fer-ho, s'ocupen totes les connexions de lectura perquè la consulta esperi després de començar.
+     * @throws Exception si falla la consulta o l'espera dels fils.
+     */
+    @Test
+    void discardsLoadsStartedBeforeInvalidation() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch readersTaken = new CountDownLatch(DatabaseConnection.READER_POOL_SIZE);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < DatabaseConnection.READER_POOL_SIZE; i++) {
+                executor.submit(() -> DatabaseConnection.read(conn -> {
+                    readersTaken.countDown();
+                    return await(release);
+                }));
+            }
+            assertTrue(readersTaken.await(10, TimeUnit.SECONDS), "Connexions de lectura ocupades");
+            AtomicReference<Thread> loader = new AtomicReference<>();
+            Future<SongQueryCache.Result> load = executor.submit(() -> {
+                loader.set(Thread.currentThread());
+                return SongQueryCache.load(firstB.artistId(), null, PAGE);
+            });
+            // La consulta espera una connexió de lectura: ja ha llegit la generació de la memòria cau
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (loader.get() == null || loader.get().getState() != Thread.State.TIMED_WAITING) {
+                assertTrue(System.nanoTime() < deadline, "La consulta no ha arribat a esperar una connexió");
+                Thread.sleep(1);
+            }
+            SongQueryCache.invalidateAll();
+            release.countDown();
+            assertEquals(MusicDAO.countSongs(firstB.artistId(), null), load.get(10, TimeUnit.SECONDS).count());
+            assertNull(SongQueryCache.lookup(firstB.artistId(), null), "El resultat antic no s'ha de guardar");
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @author giser
+     * Espera que s'obri una barrera des d'una tasca de {@link DatabaseConnection}, que només pot llençar SQLException.
+     * @param latch la barrera.
+     * @return <code>true</code> si s'ha obert abans de 10 segons.
+     * @throws SQLException si s'interromp l'espera.
+     */
+    private static boolean await(CountDownLatch latch) throws SQLException {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("S'ha interromput l'espera", e);
+        }
+    }
+}
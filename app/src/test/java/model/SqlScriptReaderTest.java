@@ -0,0 +1,145 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author giser
+ * Comprova com {@link SqlScriptReader} separa les sentències: els punts i comes dins de cadenes, identificadors
+ * entre cometes, comentaris i cossos de trigger no acaben la sentència, i els comentaris es descarten.
+ */
+class SqlScriptReaderTest {
+
+    /**
+     * @author giser
+     * Les sentències se separen per punt i coma i les buides s'ometen.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void splitsOnSemicolons() throws IOException {
+        assertEquals(List.of("CREATE TABLE a (x INTEGER)", "INSERT INTO a VALUES (1)"),
+                statements("CREATE TABLE a (x INTEGER);\n;; INSERT INTO a VALUES (1);\n"));
+    }
+
+    /**
+     * @author giser
+     * L'última sentència no necessita el punt i coma final.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void lastStatementWithoutSemicolon() throws IOException {
+        assertEquals(List.of("SELECT 1", "SELECT 2"), statements("SELECT 1;\nSELECT 2\n"));
+    }
+
+    /**
+     * @author giser
+     * Un punt i coma dins d'una cadena no acaba la sentència, tampoc després d'una cometa doblada.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void semicolonsInStrings() throws IOException {
+        assertEquals(List.of("INSERT INTO a VALUES ('x;y')", "INSERT INTO a VALUES ('it''s; here', '')", "SELECT 1"),
+                statements("INSERT INTO a VALUES ('x;y'); INSERT INTO a VALUES ('it''s; here', ''); SELECT 1;"));
+    }
+
+    /**
+     * @author giser
+     * Un punt i coma dins d'un identificador entre cometes ("...", `...` o [...]) no acaba la sentència.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void semicolonsInQuotedIdentifiers() throws IOException {
+        assertEquals(List.of("SELECT \"a;b\" FROM t", "SELECT `c;d` FROM t", "SELECT [e;f] FROM t"),
+                statements("SELECT \"a;b\" FROM t; SELECT `c;d` FROM t; SELECT [e;f] FROM t;"));
+    }
+
+    /**
+     * @author giser
+     * Els comentaris de línia i de bloc es descarten (un comentari de bloc queda com un espai), encara que
+     * continguin punts i comes o cometes.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void discardsComments() throws IOException {
+        assertEquals(List.of("SELECT 1", "SELECT   2"),
+                statements("-- comentari; amb 'cometa\nSELECT 1; /* bloc; */ SELECT /* 'x */ 2; -- final"));
+    }
+
+    /**
+     * @author giser
+     * Una cadena o un comentari de bloc sense tancar és un error.
+     */
+    @Test
+    void rejectsUnterminatedStringsAndComments() {
+        assertThrows(IOException.class, () -> statements("SELECT 'x;"));
+        assertThrows(IOException.class, () -> statements("SELECT 1 /* comentari;"));
+    }
+
+    /**
+     * @author giser
+     * El cos d'un trigger és una sola sentència, amb els punts i comes de les sentències que conté.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void keepsTriggerBodies() throws IOException {
+        String trigger = "CREATE TEMP TRIGGER t AFTER INSERT ON a\nBEGIN\n"
+                + "    INSERT INTO b VALUES (new.x);\n"
+                + "    DELETE FROM c WHERE x = new.x;\n"
+                + "END";
+        assertEquals(List.of(trigger, "SELECT 1"), statements(trigger + ";\nSELECT 1;"));
+    }
+
+    /**
+     * @author giser
+     * Un <code>CASE ... END</code> seguit de punt i coma dins del cos, o a la condició WHEN, no acaba el trigger.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void caseInsideTriggers() throws IOException {
+        String trigger = "CREATE TRIGGER IF NOT EXISTS t AFTER UPDATE ON a\n"
+                + "WHEN CASE WHEN new.x > 0 THEN 1 ELSE 0 END\n"
+                + "BEGIN\n"
+                + "    UPDATE b SET y = CASE WHEN new.x > 1 THEN 'end;' ELSE 0 END;\n"
+                + "    UPDATE b SET z = case new.x when 1 then 2 end;\n"
+                + "END";
+        assertEquals(List.of(trigger, "SELECT 1"), statements(trigger + ";\nSELECT 1"));
+    }
+
+    /**
+     * @author giser
+     * Les paraules BEGIN, CASE i END només compten fora de cadenes, identificadors i comentaris,
+     * i com a paraules senceres.
+     * @throws IOException si falla la lectura.
+     */
+    @Test
+    void ignoresKeywordsInsideOtherTokens() throws IOException {
+        String trigger = "CREATE TRIGGER t AFTER INSERT ON a\nBEGIN\n"
+                + "    INSERT INTO b (\"end\", [case], weekend) VALUES ('END', 'CASE', 1);  \n"
+                + "END";
+        assertEquals(List.of(trigger, "SELECT 1"), statements(trigger + ";\n-- END;\nSELECT 1;"));
+    }
+
+    /**
+     * @author giser
+     * Llegeix totes les sentències d'un script.
+     * @param script el text de l'script.
+     * @return les sentències, en ordre.
+     * @throws IOException si falla la lectura.
+     */
+    private static List<String> statements(String script) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (SqlScriptReader reader = new SqlScriptReader(new StringReader(script))) {
+            String sql;
+            while ((sql = reader.next()) != null) {
+                statements.add(sql);
+            }
+        }
+        return statements;
+    }
+}
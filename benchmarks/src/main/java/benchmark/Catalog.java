@@ -0,0 +1,125 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import model.Album;
+import model.CatalogGenerator;
+import model.DatabaseConnection;
+import model.DatabaseInitializer;
+import model.MusicDAO;
+import model.SchemaMigrations;
+
+/**
+ * @author giser
+ * Catàlegs sintètics per als benchmarks.
+ * Cada mida de catàleg es genera una sola vegada en una plantilla al directori temporal (amb l'esquema migrat,
+ * inclosa la cerca de text complet) i cada benchmark en treballa sobre una còpia, perquè les escriptures
+ * no afectin les mesures següents. El catàleg el genera {@link CatalogGenerator}, amb la distribució esbiaixada
+ * d'artistes, àlbums i cançons d'un catàleg real; el d'1M de cançons triga uns 20 segons la primera vegada.
+ */
+public class Catalog {
+
+    /**
+     * @author giser
+     * Base de dades oberta per a un benchmark: una còpia de la plantilla amb la llista d'àlbums, per triar filtres.
+     * @param file        el fitxer de la còpia.
+     * @param albums      els àlbums sintètics del catàleg.
+     * @param firstSongId el primer id de les cançons sintètiques (els ids són consecutius).
+     */
+    public record Opened(Path file, List<Album> albums, int firstSongId) {
+    }
+
+    /**
+     * @author giser
+     * Copia la plantilla del catàleg de la mida indicada (generant-la si cal) i obre el gestor de connexions sobre la còpia.
+     * @param songs el nombre de cançons del catàleg.
+     * @return la còpia oberta.
+     * @throws IOException  si es produeix un error en copiar la plantilla.
+     * @throws SQLException si es produeix un error en generar o obrir el catàleg.
+     */
+    public static Opened open(int songs) throws IOException, SQLException {
+        Path template = template(songs);
+        Path file = Files.createTempFile("music-bench-", ".db");
+        Files.copy(template, file, StandardCopyOption.REPLACE_EXISTING);
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + file);
+        // El generador afegeix les files a continuació de les dades inicials, amb ids consecutius
+        int firstAlbumId = maxId("album") - CatalogGenerator.Options.forSongs(songs).albums() + 1;
+        List<Album> albums = MusicDAO.getAlbums().stream().filter(album -> album.id() >= firstAlbumId).toList();
+        return new Opened(file, albums, maxId("song") - songs + 1);
+    }
+
+    /**
+     * @author giser
+     * Tanca el gestor de connexions i esborra la còpia del catàleg.
+     * @param opened la còpia oberta.
+     * @throws IOException si es produeix un error en esborrar els fitxers.
+     */
+    public static void close(Opened opened) throws IOException {
+        DatabaseConnection.shutdown();
+        delete(opened.file());
+    }
+
+    /**
+     * @author giser
+     * Retorna la plantilla del catàleg de la mida indicada, generant-la si encara no existeix.
+     * El nom inclou la versió de l'esquema perquè una migració nova obligui a regenerar-la.
+     * @param songs el nombre de cançons.
+     * @return el fitxer de la plantilla.
+     * @throws IOException  si es produeix un error amb els fitxers.
+     * @throws SQLException si es produeix un error en generar el catàleg.
+     */
+    private static Path template(int songs) throws IOException, SQLException {
+        Path template = Path.of(System.getProperty("java.io.tmpdir"),
+                "music-bench-zipf-" + songs + "-v" + SchemaMigrations.latestVersion() + ".db");
+        if (Files.exists(template)) {
+            return template;
+        }
+        System.out.println("Generant el catàleg de " + songs + " cançons a " + template + "...");
+        Path building = Files.createTempFile("music-bench-build-", ".db");
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + building);
+        try {
+            DatabaseInitializer.initialize();
+            CatalogGenerator.generate(CatalogGenerator.Options.forSongs(songs));
+        } finally {
+            // En tancar es fa el checkpoint del WAL: el fitxer principal queda complet
+            DatabaseConnection.shutdown();
+        }
+        Files.move(building, template, StandardCopyOption.REPLACE_EXISTING);
+        delete(building);
+        return template;
+    }
+
+    /**
+     * @author giser
+     * Retorna l'id més gran d'una taula del catàleg obert.
+     * @param table el nom de la taula.
+     * @return l'id més gran.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static int maxId(String table) throws SQLException {
+        return DatabaseConnection.read(conn -> {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(id) FROM " + table)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * @author giser
+     * Esborra un fitxer de base de dades amb els seus fitxers WAL i de memòria compartida.
+     * @param file el fitxer.
+     * @throws IOException si es produeix un error en esborrar-los.
+     */
+    private static void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + "-wal"));
+        Files.deleteIfExists(Path.of(file + "-shm"));
+    }
+}
@@ -0,0 +1,81 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Album;
+import model.Artist;
+import model.MusicDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author giser
+ * Benchmark de la lectura de les dades de referència: {@link MusicDAO#getArtists()} i {@link MusicDAO#getAlbums()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReferenceReadBenchmark {
+
+    // Nombre de cançons del catàleg (els artistes i àlbums en són proporcionals).
+    @Param({"10000", "100000", "1000000"})
+    public int songs;
+
+    private Catalog.Opened catalog;
+
+    /**
+     * @author giser
+     * Obre una còpia del catàleg.
+     * @throws Exception si es produeix un error en preparar el catàleg.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        catalog = Catalog.open(songs);
+    }
+
+    /**
+     * @author giser
+     * Tanca i esborra la còpia del catàleg.
+     * @throws Exception si es produeix un error en esborrar-la.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Catalog.close(catalog);
+    }
+
+    /**
+     * @author giser
+     * Llegeix tots els artistes.
+     * @return els artistes, perquè JMH no elimini la crida.
+     * @throws Exception si es produeix un error en la consulta.
+     */
+    @Benchmark
+    public List<Artist> getArtists() throws Exception {
+        return MusicDAO.getArtists();
+    }
+
+    /**
+     * @author giser
+     * Llegeix tots els àlbums.
+     * @return els àlbums, perquè JMH no elimini la crida.
+     * @throws Exception si es produeix un error en la consulta.
+     */
+    @Benchmark
+    public List<Album> getAlbums() throws Exception {
+        return MusicDAO.getAlbums();
+    }
+}
@@ -0,0 +1,187 @@
+package benchmark;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import model.Album;
+import model.DatabaseConnection;
+import model.MusicDAO;
+import model.SongRow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author giser
+ * Benchmark de les consultes de cançons de {@link MusicDAO} per a cada combinació de filtres.
+ * A cada crida es tria un àlbum (i el seu artista) a l'atzar, perquè les mesures no depenguin d'un sol filtre.
+ * {@link #getSongsUnprepared()} és la referència: el camí antic de <code>getSongs</code>, amb l'SQL concatenat
+ * i un {@link Statement} nou per crida, per comparar-lo amb les sentències preparades de {@link #getSongs()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SongReadBenchmark {
+
+    // Nombre màxim de cançons que retorna getSongs, com una pàgina gran de la llista.
+    private static final int MAX_ROWS = 1000;
+
+    // Mida de pàgina de la llista de cançons.
+    private static final int PAGE_SIZE = 200;
+
+    /**
+     * Combinacions de filtres de la consulta de cançons.
+     */
+    public enum Filter {
+        NONE, ARTIST, ALBUM, ARTIST_ALBUM
+    }
+
+    @Param({"10000", "100000", "1000000"})
+    public int songs;
+
+    @Param
+    public Filter filter;
+
+    private Catalog.Opened catalog;
+
+    /**
+     * @author giser
+     * Obre una còpia del catàleg.
+     * @throws Exception si es produeix un error en preparar el catàleg.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        catalog = Catalog.open(songs);
+    }
+
+    /**
+     * @author giser
+     * Tanca i esborra la còpia del catàleg.
+     * @throws Exception si es produeix un error en esborrar-la.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Catalog.close(catalog);
+    }
+
+    /**
+     * @author giser
+     * Llegeix com a màxim {@value #MAX_ROWS} cançons del filtre.
+     * @return les cançons.
+     * @throws Exception si es produeix un error en la consulta.
+     */
+    @Benchmark
+    public List<SongRow> getSongs() throws Exception {
+        Album album = randomAlbum();
+        return MusicDAO.getSongs(artistId(album), albumId(album), MAX_ROWS);
+    }
+
+    /**
+     * @author giser
+     * Llegeix com a màxim {@value #MAX_ROWS} cançons del filtre pel camí antic: l'SQL es construeix concatenant
+     * els filtres i s'executa amb <code>createStatement().executeQuery(query)</code>, de manera que SQLite
+     * l'analitza i el planifica a cada crida.
+     * @return les cançons.
+     * @throws Exception si es produeix un error en la consulta.
+     */
+    @Benchmark
+    public List<SongRow> getSongsUnprepared() throws Exception {
+        Album album = randomAlbum();
+        Integer artistId = artistId(album);
+        Integer albumId = albumId(album);
+        String query =
+            "SELECT s.id, s.album_id, al.artist_id, s.name AS title, s.duration, al.name AS album, ar.name AS artist " +
+            "FROM song s " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id";
+        if (artistId != null && albumId != null) {
+            query += " WHERE ar.id = " + artistId + " AND al.id = " + albumId;
+        } else if (artistId != null) {
+            query += " WHERE ar.id = " + artistId;
+        } else if (albumId != null) {
+            query += " WHERE al.id = " + albumId;
+        }
+        String sql = query;
+        return DatabaseConnection.read(conn -> {
+            List<SongRow> songs = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                while (songs.size() < MAX_ROWS && rs.next()) {
+                    songs.add(new SongRow(rs.getInt("id"), rs.getInt("album_id"), rs.getInt("artist_id"),
+                            rs.getString("title"), rs.getDouble("duration"), rs.getString("album"), rs.getString("artist")));
+                }
+            }
+            return songs;
+        });
+    }
+
+    /**
+     * @author giser
+     * Compta les cançons del filtre, com fa la llista en canviar la selecció.
+     * @return el nombre de cançons.
+     * @throws Exception si es produeix un error en la consulta.
+     */
+    @Benchmark
+    public int countSongs() throws Exception {
+        Album album = randomAlbum();
+        return MusicDAO.countSongs(artistId(album), albumId(album));
+    }
+
+    /**
+     * @author giser
+     * Llegeix una pàgina de cançons del filtre a partir d'un id a l'atzar (paginació per clau).
+     * @return les cançons de la pàgina.
+     * @throws Exception si es produeix un error en la consulta.
+     */
+    @Benchmark
+    public List<SongRow> getSongsPage() throws Exception {
+        Album album = randomAlbum();
+        int afterId = catalog.firstSongId() + ThreadLocalRandom.current().nextInt(songs);
+        return MusicDAO.getSongsPage(artistId(album), albumId(album), afterId, 0, PAGE_SIZE);
+    }
+
+    /**
+     * @author giser
+     * Tria un àlbum sintètic a l'atzar.
+     * @return l'àlbum.
+     */
+    private Album randomAlbum() {
+        return catalog.albums().get(ThreadLocalRandom.current().nextInt(catalog.albums().size()));
+    }
+
+    /**
+     * @author giser
+     * Retorna el filtre d'artista segons la combinació de filtres del benchmark.
+     * @param album l'àlbum triat.
+     * @return l'id de l'artista de l'àlbum, o <code>null</code>.
+     */
+    private Integer artistId(Album album) {
+        return filter == Filter.ARTIST || filter == Filter.ARTIST_ALBUM ? album.artistId() : null;
+    }
+
+    /**
+     * @author giser
+     * Retorna el filtre d'àlbum segons la combinació de filtres del benchmark.
+     * @param album l'àlbum triat.
+     * @return l'id de l'àlbum, o <code>null</code>.
+     */
+    private Integer albumId(Album album) {
+        return filter == Filter.ALBUM || filter == Filter.ARTIST_ALBUM ? album.id() : null;
+    }
+}
@@ -0,0 +1,259 @@
+package benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import model.Album;
+import model.DatabaseConnection;
+import model.MusicDAO;
+import model.SongRow;
+import model.SongWriteQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author giser
+ * Benchmark de les escriptures de cançons de {@link MusicDAO}: insercions, modificacions i eliminacions,
+ * una a una (una transacció per operació), en lots de {@value #BATCH} dins d'una sola transacció i, per a les insercions,
+ * a través de la cua d'escriptures ({@link SongWriteQueue}), que les agrupa i confirma cada grup amb un fsync.
+ * Les eliminacions necessiten cançons existents: es preparen abans de cada crida, fora de la mesura.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SongWriteBenchmark {
+
+    // Nombre d'operacions de cada lot.
+    private static final int BATCH = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    public int songs;
+
+    private Catalog.Opened catalog;
+
+    // Comptador per generar títols únics per a les cançons inserides.
+    private long sequence = 0;
+
+    /**
+     * @author giser
+     * Obre una còpia del catàleg.
+     * @throws Exception si es produeix un error en preparar el catàleg.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        catalog = Catalog.open(songs);
+    }
+
+    /**
+     * @author giser
+     * Tanca i esborra la còpia del catàleg.
+     * @throws Exception si es produeix un error en esborrar-la.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SongWriteQueue.shutdown();
+        Catalog.close(catalog);
+    }
+
+    /**
+     * @author giser
+     * Insereix una cançó.
+     * @return la cançó inserida.
+     * @throws Exception si es produeix un error en la inserció.
+     */
+    @Benchmark
+    public SongRow insertSingle() throws Exception {
+        return MusicDAO.insertSong(randomAlbum().id(), "Inserted " + sequence++, 3.5);
+    }
+
+    /**
+     * @author giser
+     * Insereix un lot de cançons dins d'una sola transacció.
+     * @return l'última cançó inserida.
+     * @throws Exception si es produeix un error en la inserció.
+     */
+    @Benchmark
+    public SongRow insertBatch() throws Exception {
+        return DatabaseConnection.transaction(conn -> {
+            SongRow last = null;
+            for (int i = 0; i < BATCH; i++) {
+                last = MusicDAO.insertSong(randomAlbum().id(), "Inserted " + sequence++, 3.5);
+            }
+            return last;
+        });
+    }
+
+    /**
+     * @author giser
+     * Posa un lot de cançons a la cua d'escriptures i espera que s'hagin confirmat totes.
+     * @return l'última cançó inserida.
+     * @throws Exception si es produeix un error en la inserció.
+     */
+    @Benchmark
+    public SongRow insertQueued() throws Exception {
+        List<CompletableFuture<SongRow>> inserts = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            inserts.add(SongWriteQueue.insert(randomAlbum().id(), "Inserted " + sequence++, 3.5));
+        }
+        SongRow last = null;
+        for (CompletableFuture<SongRow> insert : inserts) {
+            last = insert.join();
+        }
+        return last;
+    }
+
+    /**
+     * @author giser
+     * Modifica una cançó del catàleg triada a l'atzar.
+     * @return <code>true</code> si s'ha modificat.
+     * @throws Exception si es produeix un error en la modificació.
+     */
+    @Benchmark
+    public boolean updateSingle() throws Exception {
+        return updateRandomSong();
+    }
+
+    /**
+     * @author giser
+     * Modifica un lot de cançons del catàleg dins d'una sola transacció.
+     * @return <code>true</code> si s'han modificat totes.
+     * @throws Exception si es produeix un error en la modificació.
+     */
+    @Benchmark
+    public boolean updateBatch() throws Exception {
+        return DatabaseConnection.transaction(conn -> {
+            boolean all = true;
+            for (int i = 0; i < BATCH; i++) {
+                all &= updateRandomSong();
+            }
+            return all;
+        });
+    }
+
+    /**
+     * @author giser
+     * Elimina una cançó.
+     * @param pending la cançó a eliminar, preparada abans de la crida.
+     * @return <code>true</code> si s'ha eliminat.
+     * @throws Exception si es produeix un error en l'eliminació.
+     */
+    @Benchmark
+    public boolean deleteSingle(SingleDelete pending) throws Exception {
+        return MusicDAO.deleteSong(pending.songIds.get(0));
+    }
+
+    /**
+     * @author giser
+     * Elimina un lot de cançons dins d'una sola transacció.
+     * @param pending les cançons a eliminar, preparades abans de la crida.
+     * @return <code>true</code> si s'han eliminat totes.
+     * @throws Exception si es produeix un error en l'eliminació.
+     */
+    @Benchmark
+    public boolean deleteBatch(BatchDelete pending) throws Exception {
+        return DatabaseConnection.transaction(conn -> {
+            boolean all = true;
+            for (int songId : pending.songIds) {
+                all &= MusicDAO.deleteSong(songId);
+            }
+            return all;
+        });
+    }
+
+    /**
+     * @author giser
+     * Cançó que eliminarà la propera crida de {@link #deleteSingle}; s'insereix abans de cada crida, fora de la mesura.
+     */
+    @State(Scope.Benchmark)
+    public static class SingleDelete {
+        // Ids de les cançons a eliminar.
+        final List<Integer> songIds = new ArrayList<>();
+
+        /**
+         * @author giser
+         * Insereix la cançó abans de cada crida.
+         * @param benchmark l'estat del benchmark, amb el catàleg obert.
+         * @throws Exception si es produeix un error en la inserció.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(SongWriteBenchmark benchmark) throws Exception {
+            benchmark.insertToDelete(songIds, 1);
+        }
+    }
+
+    /**
+     * @author giser
+     * Cançons que eliminarà la propera crida de {@link #deleteBatch}; s'insereixen abans de cada crida, fora de la mesura.
+     */
+    @State(Scope.Benchmark)
+    public static class BatchDelete {
+        // Ids de les cançons a eliminar.
+        final List<Integer> songIds = new ArrayList<>();
+
+        /**
+         * @author giser
+         * Insereix el lot de cançons abans de cada crida.
+         * @param benchmark l'estat del benchmark, amb el catàleg obert.
+         * @throws Exception si es produeix un error en la inserció.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(SongWriteBenchmark benchmark) throws Exception {
+            benchmark.insertToDelete(songIds, BATCH);
+        }
+    }
+
+    /**
+     * @author giser
+     * Insereix cançons que després s'eliminaran, en una sola transacció.
+     * @param songIds la llista on es guarden els ids de les cançons inserides.
+     * @param count   el nombre de cançons.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private void insertToDelete(List<Integer> songIds, int count) throws SQLException {
+        songIds.clear();
+        DatabaseConnection.transaction(conn -> {
+            for (int i = 0; i < count; i++) {
+                songIds.add(MusicDAO.insertSong(randomAlbum().id(), "Deleted " + sequence++, 1).id());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @author giser
+     * Modifica la durada d'una cançó sintètica triada a l'atzar, mantenint el títol i l'àlbum.
+     * @return <code>true</code> si s'ha modificat.
+     * @throws SQLException si es produeix un error en la modificació.
+     */
+    private boolean updateRandomSong() throws SQLException {
+        int songId = catalog.firstSongId() + ThreadLocalRandom.current().nextInt(songs);
+        SongRow song = MusicDAO.getSong(songId).orElseThrow();
+        return MusicDAO.updateSong(songId, song.albumId(), song.title(), song.duration() + 0.01);
+    }
+
+    /**
+     * @author giser
+     * Tria un àlbum sintètic a l'atzar.
+     * @return l'àlbum.
+     */
+    private Album randomAlbum() {
+        return catalog.albums().get(ThreadLocalRandom.current().nextInt(catalog.albums().size()));
+    }
+}
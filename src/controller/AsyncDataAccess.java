@@ -0,0 +1,179 @@
+package controller;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import model.DatabaseConnection;
+
+/**
+ * @author giser
+ * Capa d'accés asíncron a les dades.
+ * Executa les consultes a la base de dades en fils de fons, fora del fil d'aplicació de JavaFX,
+ * i lliura els resultats (o els errors) de nou al fil de JavaFX mitjançant {@link Platform#runLater(Runnable)}.
+ * Les peticions es poden cancel·lar: si una petició s'ha cancel·lat, el seu resultat es descarta.
+ * Durant l'arrencada, les peticions esperen que la base de dades estigui preparada ({@link #waitFor(CompletableFuture)}).
+ */
+public class AsyncDataAccess {
+
+    /**
+     * @author giser
+     * Tasca d'accés a dades que retorna un resultat i pot llençar {@link SQLException}.
+     * @param <T> el tipus del resultat de la tasca.
+     */
+    @FunctionalInterface
+    public interface DataTask<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * @author giser
+     * Representa una petició en curs. Permet cancel·lar-la perquè el seu resultat no arribi a la interfície.
+     */
+    public static class Request {
+
+        // Indica si la petició s'ha cancel·lat
+        private volatile boolean cancelled = false;
+        // Tasca associada a l'executor
+        private Future<?> future;
+
+        /**
+         * @author giser
+         * Cancel·la la petició. Si encara no s'ha executat, no s'executarà; si ja s'està executant,
+         * el seu resultat es descartarà.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * @author giser
+         * Indica si la petició s'ha cancel·lat.
+         * @return <code>true</code> si la petició s'ha cancel·lat.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    // Executor amb fils de fons. Cada consulta obté la seva pròpia connexió de {@link DatabaseConnection},
+    // de manera que hi ha un fil per a cada connexió de lectura més un per a l'escriptura.
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(DatabaseConnection.READER_POOL_SIZE + 1, runnable -> {
+        Thread thread = new Thread(runnable, "music-db");
+        // Fil dimoni perquè no impedeixi tancar l'aplicació
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Preparació de la base de dades que han d'esperar les peticions; ja acabada si no n'hi ha cap.
+    private static volatile CompletableFuture<?> ready = CompletableFuture.completedFuture(null);
+
+    /**
+     * @author giser
+     * Fa que les peticions esperin que acabi la preparació de la base de dades abans d'executar-se.
+     * Si la preparació falla, les peticions fallen amb el mateix error.
+     * @param preparation la preparació de la base de dades.
+     */
+    public static void waitFor(CompletableFuture<?> preparation) {
+        ready = preparation;
+    }
+
+    /**
+     * @author giser
+     * Executa una tasca d'accés a dades en el fil de fons.
+     * El resultat es lliura a <code>onSuccess</code> i l'error a <code>onError</code>, sempre dins del fil de JavaFX
+     * i només si la petició no s'ha cancel·lat abans.
+     * @param task      la tasca a executar.
+     * @param onSuccess l'acció que rep el resultat al fil de JavaFX.
+     * @param onError   l'acció que rep l'error al fil de JavaFX.
+     * @param <T>       el tipus del resultat de la tasca.
+     * @return la {@link Request} que permet cancel·lar la petició.
+     */
+    public static <T> Request submit(DataTask<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        Request request = new Request();
+        request.future = EXECUTOR.submit(() -> {
+            // Si s'ha cancel·lat abans de començar, no cal consultar res
+            if (request.isCancelled()) {
+                return;
+            }
+            try {
+                awaitReady();
+                T result = task.call();
+                // La comprovació es fa al fil de JavaFX, que és on es cancel·len les peticions
+                Platform.runLater(() -> {
+                    if (!request.isCancelled()) {
+                        onSuccess.accept(result);
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (!request.isCancelled()) {
+                        onError.accept(e);
+                    }
+                });
+            }
+        });
+        return request;
+    }
+
+    /**
+     * @author giser
+     * Lliura el resultat d'una operació que ja s'està executant (per exemple, una escriptura de {@link model.SongWriteQueue})
+     * al fil de JavaFX, de la mateixa manera que {@link #submit(DataTask, Consumer, Consumer)}.
+     * @param future    l'operació.
+     * @param onSuccess l'acció que rep el resultat al fil de JavaFX.
+     * @param onError   l'acció que rep l'error al fil de JavaFX.
+     * @param <T>       el tipus del resultat.
+     */
+    public static <T> void deliver(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                onSuccess.accept(result);
+                return;
+            }
+            // Es treu l'embolcall que hi afegeixen les etapes encadenades del futur
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            onError.accept(cause instanceof Exception ? (Exception) cause : new Exception(cause));
+        }));
+    }
+
+    /**
+     * @author giser
+     * Espera que la base de dades estigui preparada. Un cop ho està, no espera gens.
+     * @throws SQLException si la preparació ha fallat o s'ha interromput l'espera (petició cancel·lada).
+     */
+    private static void awaitReady() throws SQLException {
+        try {
+            ready.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("S'ha interromput l'espera de la base de dades.", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("No s'ha pogut preparar la base de dades: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @author giser
+     * Atura l'executor: les peticions pendents es descarten i s'interromp la que s'està executant.
+     * S'ha de cridar en tancar l'aplicació, abans de tancar les connexions.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+        try {
+            // Donem un marge perquè les consultes en curs retornin la seva connexió
+            EXECUTOR.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
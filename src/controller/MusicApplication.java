@@ -1,6 +1,8 @@
 package controller;
 
-import model.DatabaseInitializer;
+import model.DatabaseChangeWatcher;
+import model.DatabaseConnection;
+import model.SongWriteQueue;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -11,39 +13,71 @@ import javafx.stage.Stage;
  * @author giser
  * Aplicació principal per a la gestió de música.
  * S'encarrega d'inicialitzar la base de dades i carregar la interfície gràfica de l'aplicació mitjançant un fitxer FXML.
+ * Les dues coses es fan alhora ({@link Startup}): la finestra es mostra de seguida i s'omple quan arriben les dades.
  */
 public class MusicApplication extends Application {
 
+    /**
+     * @author giser
+     * Mètode que JavaFX crida abans de start(), fora del fil de JavaFX.
+     * Comença a preparar la base de dades si no s'ha fet des de main() (per exemple, si un altre llançador crida directament l'aplicació).
+     */
+    @Override
+    public void init() {
+        Startup.begin();
+    }
+
     /**
      * @author giser
      * Mètode d'inicialització de l'aplicació JavaFX.
-     * Aquest mètode inicialitza la base de dades, carrega el fitxer FXML que defineix la interfície principal, configura la finestra principal
-     * i finalment la mostra.
+     * Aquest mètode carrega el fitxer FXML que defineix la interfície principal, configura la finestra principal
+     * i finalment la mostra, mentre la base de dades es prepara en segon pla.
      * @param primaryStage la finestra principal de l'aplicació.
      * @throws Exception en cas d'error durant el carregament de la interfície.
      */
     @Override
     public void start(Stage primaryStage) throws Exception {
-        // Inicialitza la base de dades
-        DatabaseInitializer.initialize();
+        Startup.mark("start");
         
-        // Carrega el fitxer FXML que defineix la interfície principal (vista)
+        // Carrega el fitxer FXML que defineix la interfície principal (vista); el controlador demana les dades en segon pla
+        long start = System.nanoTime();
         Parent root = FXMLLoader.load(getClass().getResource("/View/MainView.fxml"));
+        Startup.phase("FXML", start);
         
         // Estableix el títol de la finestra principal
         primaryStage.setTitle("Music Apllication");
         
         // Crea una nova escena amb la vista carregada i una mida determinada (640x480 píxels)
-        primaryStage.setScene(new Scene(root, 640, 480));
+        Scene scene = new Scene(root, 640, 480);
+        primaryStage.setScene(scene);
         
         // Mostra la finestra principal
+        start = System.nanoTime();
         primaryStage.show();
+        Startup.phase("mostrar la finestra", start);
+    }
+    
+    /**
+     * @author giser
+     * Mètode que JavaFX crida en tancar l'aplicació.
+     * Atura les tasques en segon pla, escriu les modificacions pendents i tanca les connexions a la base de dades.
+     * Les mètriques de les consultes queden a l'enregistrament JFR, si n'hi ha cap ({@link model.QueryMetrics}).
+     */
+    @Override
+    public void stop() {
+        DatabaseChangeWatcher.stop();
+        AsyncDataAccess.shutdown();
+        // Les escriptures pendents es confirmen abans de tancar les connexions
+        SongWriteQueue.shutdown();
+        DatabaseConnection.shutdown();
     }
     
     /**
      * Mètode principal que llança l'aplicació.
      */
     public static void main(String[] args) {
+        // La base de dades es comença a preparar mentre s'inicialitza JavaFX
+        Startup.begin();
         // Llença l'aplicació, la qual invoca internament el mètode start()
         launch(args);
     }
@@ -1,45 +1,83 @@
 package controller;
 
+import model.Album;
+import model.Artist;
+import model.CatalogExporter;
+import model.CatalogImporter;
 import model.ComboItem;
+import model.DatabaseChangeWatcher;
 import model.MusicDAO;
-import model.DatabaseConnection;
+import model.ReferenceData;
+import model.SongIndex;
+import model.SongQuery;
+import model.SongQueryCache;
+import model.SongRow;
+import model.SongSort;
+import model.SongWriteQueue;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ResourceBundle;
 import java.util.Optional;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.ComboBox;
-import javafx.scene.control.ListView;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.Label;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
 import javafx.geometry.Insets;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
 
 /**
  * @author giser
  * Controlador de la interfície que gestiona la música.
  * S'encarrega d'inicialitzar els ComboBox d'artistes i àlbums, carregar les dades des de la base de dades mitjançant
- * {@link model.MusicDAO} i actualitzar la llista de cançons en funció de la selecció realitzada.
+ * {@link model.MusicDAO} i actualitzar la llista de cançons en funció de la selecció realitzada o del text de cerca.
  */
 public class MusicController implements Initializable {
 
     /**
-     * Llista de cançons mostrada a la interfície.
+     * Taula de cançons mostrada a la interfície.
      */
     @FXML
-    private ListView<String> songListView;
+    private TableView<SongRow> songTableView;
+    
+    /**
+     * Columnes de la taula de cançons. Cada columna rep la fila sencera i en mostra un camp.
+     */
+    @FXML
+    private TableColumn<SongRow, SongRow> titleColumn;
+    @FXML
+    private TableColumn<SongRow, SongRow> durationColumn;
+    @FXML
+    private TableColumn<SongRow, SongRow> albumColumn;
+    @FXML
+    private TableColumn<SongRow, SongRow> artistColumn;
     
     /**
      * ComboBox per seleccionar artista.
@@ -53,13 +91,82 @@ public class MusicController implements Initializable {
     @FXML
     private ComboBox<ComboItem> albumComboBox;
     
-    // Llista auxiliar per emmagatzemar els identificadors de les cançons.
-    private List<Integer> songIds = new ArrayList<>();
-
+    
+    /**
+     * Etiqueta d'estat que indica si s'estan carregant dades.
+     */
+    @FXML
+    private Label statusLabel;
+    
+    /**
+     * Text que mostra la llista de cançons quan és buida.
+     */
+    @FXML
+    private Label placeholderLabel;
+    
+    /**
+     * Camp de cerca de cançons per títol, àlbum o artista.
+     */
+    @FXML
+    private TextField searchField;
+    
+    /**
+     * Camps de l'interval de durada de la llista de cançons; buits, no limiten la durada.
+     */
+    @FXML
+    private TextField minDurationField;
+    @FXML
+    private TextField maxDurationField;
+    
+    // Temps d'espera (en mil·lisegons) des de l'última tecla fins que es llança la cerca.
+    private static final int SEARCH_DELAY_MS = 150;
+    
+    // Nombre mínim de caràcters per començar a cercar.
+    private static final int SEARCH_MIN_LENGTH = 2;
+    
+    // Nombre màxim de resultats de la cerca.
+    private static final int SEARCH_LIMIT = 100;
+    
+    // Nombre màxim d'àlbums de l'artista seleccionat dels quals es precarrega la primera pàgina.
+    private static final int PREFETCH_ALBUMS = 8;
+    
+    // Nombre màxim de cançons seleccionades que es poden eliminar o moure en una sola operació.
+    private static final int MAX_SELECTED_SONGS = 10000;
+    
+    // Llista paginada de cançons que es mostra actualment.
+    private PagedSongList songs;
+    
+    // Resultats de la cerca que es mostren en lloc de la llista paginada, o null si no s'està cercant.
+    private ObservableList<SongRow> searchResults;
+    
+    // Petició de cerca en curs; es cancel·la (i s'avorta a SQLite) quan l'usuari continua escrivint.
+    private AsyncDataAccess.Request searchRequest;
+    
+    // Temporitzador que agrupa les pulsacions de tecles seguides en una sola cerca.
+    private final PauseTransition searchDelay = new PauseTransition(Duration.millis(SEARCH_DELAY_MS));
+    
+    // Temporitzador que agrupa les pulsacions de tecles seguides als camps de durada en una sola recàrrega.
+    private final PauseTransition durationDelay = new PauseTransition(Duration.millis(SEARCH_DELAY_MS));
+    
+    // Consulta (filtres i ordre) de la llista o dels resultats de cerca que es mostren, o null si encara no se n'ha mostrat cap.
+    private SongQuery shownQuery;
+    
+    // Petició de recompte de cançons en curs; es cancel·la quan arriba una selecció més nova.
+    private AsyncDataAccess.Request songsRequest;
+    
+    // Exportació en curs, o null si no se n'està fent cap; només se'n permet una alhora.
+    private AsyncDataAccess.Request exportRequest;
+    
+    // Precàrrega en curs dels àlbums de l'artista seleccionat; es cancel·la quan se selecciona un altre artista.
+    private AsyncDataAccess.Request prefetchRequest;
+    
+    // Indica que s'estan omplint els ComboBox des del codi, de manera que els canvis de selecció no recarreguen la llista.
+    private boolean fillingComboBoxes = false;
+    
     /**
      * @author giser
      * Mètode d'inicialització de la vista.
-     * Afegeix els elements per defecte als ComboBox, carrega els artistes i àlbums des de la base de dades i 
+     * Afegeix els elements per defecte als ComboBox, carrega les dades de referència (artistes i àlbums) en segon pla i 
      * configura els esdeveniments per recarregar la llista de cançons quan hi hagi un canvi en la selecció.
      * @param location  la ubicació del fitxer FXML.
      * @param resources els recursos per a la localització.
@@ -77,37 +184,54 @@ public class MusicController implements Initializable {
         // Seleccionem per defecte aquest primer element
         albumComboBox.getSelectionModel().selectFirst();
 
-        try {
-            // Obtenim els artistes
-            ResultSet rs = MusicDAO.getArtists();
-            // Iterem sobre cada registre del ResultSet
-            while (rs.next()) {
-                // Afegim cada artista al ComboBox amb el seu id i nom
-                artistComboBox.getItems().add(new ComboItem(rs.getInt("id"), rs.getString("name")));
+        // Les dades de referència (artistes i àlbums) es carreguen durant l'arrencada, en paral·lel amb la vista;
+        // els ComboBox s'omplen quan arriben
+        Startup.referenceData().whenComplete((ignored, e) -> Platform.runLater(() -> {
+            if (e != null) {
+                showAlert("Error al carregar artistes i albums: " + Startup.cause(e).getMessage());
+                return;
             }
-            rs.getStatement().close();
-        } catch (SQLException e) {
-            // Mostrem un missatge d'error en cas de problema en carregar els artistes
-            showAlert("Error al carregar artistes.");
-        }
+            fillComboBoxes();
+            Startup.viewFilled(Startup.VIEW_FILTERS);
+        }));
 
-        try {
-            // Obtenim els àlbums
-            ResultSet rs = MusicDAO.getAlbums();
-            // Iterem sobre els àlbums obtinguts
-            while (rs.next()) {
-                // Afegim cada àlbum al ComboBox amb el seu id i nom
-                albumComboBox.getItems().add(new ComboItem(rs.getInt("id"), rs.getString("title")));
+        // Cada cel·la construeix el text del seu camp només quan es mostra; les files encara no carregades són null
+        setUpColumn(titleColumn, SongSort.TITLE, SongRow::title, "Carregant...");
+        setUpColumn(durationColumn, SongSort.DURATION, song -> String.valueOf(song.duration()), "");
+        setUpColumn(albumColumn, SongSort.ALBUM, SongRow::album, "");
+        setUpColumn(artistColumn, SongSort.ARTIST, SongRow::artist, "");
+        // Es poden seleccionar moltes cançons per eliminar-les o moure-les alhora
+        songTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        // L'ordenació es fa a la base de dades: en lloc d'ordenar els elements de la taula, es torna a consultar la llista
+        songTableView.setSortPolicy(table -> {
+            sortChanged();
+            return true;
+        });
+
+        // Quan es canvia la selecció d'artistes es restringeixen els àlbums i es recarrega la llista de cançons
+        artistComboBox.setOnAction(event -> {
+            if (!fillingComboBoxes) {
+                artistChanged();
             }
-            rs.getStatement().close();
-        } catch (SQLException e) {
-            // Mostrem un missatge d'error en cas de problema en carregar els àlbums
-            showAlert("Error al carregar albums.");
-        }
-        // Quan es canvia la selecció d'artistes es recarrega la llista de cançons
-        artistComboBox.setOnAction(event -> reloadSongsList());
+        });
         // Quan es canvia la selecció d'àlbums es recarrega la llista de cançons
-        albumComboBox.setOnAction(event -> reloadSongsList());
+        albumComboBox.setOnAction(event -> {
+            if (!fillingComboBoxes) {
+                filterChanged();
+            }
+        });
+        
+        // La cerca es llança quan l'usuari deixa d'escriure durant un moment
+        searchDelay.setOnFinished(event -> runSearch());
+        searchField.textProperty().addListener((observable, oldText, newText) -> searchTextChanged());
+        
+        // L'interval de durada es torna a aplicar quan l'usuari deixa d'escriure
+        durationDelay.setOnFinished(event -> durationChanged());
+        minDurationField.textProperty().addListener((observable, oldText, newText) -> durationDelay.playFromStart());
+        maxDurationField.textProperty().addListener((observable, oldText, newText) -> durationDelay.playFromStart());
+        
+        // Els canvis que fan altres aplicacions a la mateixa base de dades s'apliquen a la llista quan es detecten
+        DatabaseChangeWatcher.setListener(changes -> Platform.runLater(() -> externalChanges(changes)));
         
         // Inicialitza la llista de cançons amb les opcions per defecte
         reloadSongsList();
@@ -115,37 +239,391 @@ public class MusicController implements Initializable {
     
     /**
      * @author giser
-     * Recarrega la llista de cançons segons la selecció actual dels ComboBox d'artista i àlbum.
-     * Neteja la llista actual de cançons i la torna a omplir amb les cançons obtingudes des de la base de dades, aplicant els filtres corresponents.
+     * Configura una columna de la taula de cançons. La columna rep la fila sencera i el text es construeix
+     * a la cel·la quan es mostra, de manera que les files que no es veuen no en creen cap.
+     * @param column  la columna.
+     * @param sort    l'ordre de la llista quan s'ordena per aquesta columna.
+     * @param text    el text de la cel·la a partir de la fila.
+     * @param loading el text de la cel·la mentre la fila s'està carregant.
+     */
+    private static void setUpColumn(TableColumn<SongRow, SongRow> column, SongSort sort,
+                                    Function<SongRow, String> text, String loading) {
+        column.setUserData(sort);
+        column.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue()));
+        column.setCellFactory(col -> new TableCell<SongRow, SongRow>() {
+            @Override
+            protected void updateItem(SongRow song, boolean empty) {
+                super.updateItem(song, empty);
+                if (empty) {
+                    setText(null);
+                } else if (song == null) {
+                    setText(loading);
+                } else {
+                    setText(text.apply(song));
+                }
+            }
+        });
+    }
+    
+    /**
+     * @author giser
+     * Retorna la consulta de la llista segons els ComboBox, els camps de durada i la columna d'ordenació de la taula.
+     * Només es té en compte la primera columna d'ordenació; sense cap, la llista s'ordena per id.
+     * Un camp de durada buit o no vàlid no limita la durada.
+     * @return la consulta.
+     */
+    private SongQuery currentQuery() {
+        SongSort sort = SongSort.ID;
+        boolean descending = false;
+        if (!songTableView.getSortOrder().isEmpty()) {
+            TableColumn<SongRow, ?> column = songTableView.getSortOrder().get(0);
+            sort = (SongSort) column.getUserData();
+            descending = column.getSortType() == TableColumn.SortType.DESCENDING;
+        }
+        return new SongQuery(artistComboBox.getValue().getId(), albumComboBox.getValue().getId(),
+                durationValue(minDurationField), durationValue(maxDurationField), sort, descending);
+    }
+    
+    /**
+     * @author giser
+     * Llegeix un camp de durada.
+     * @param field el camp.
+     * @return la durada, o <code>null</code> si el camp és buit o no és un número finit i no negatiu.
+     */
+    private static Double durationValue(TextField field) {
+        Double duration = parseDuration(field.getText());
+        // Double.valueOf accepta "NaN", "Infinity" i valors fora de rang com 1e309, que no limiten res
+        return duration != null && Double.isFinite(duration) && duration >= 0 ? duration : null;
+    }
+    
+    /**
+     * @author giser
+     * Llegeix la durada d'una cançó d'un diàleg. Com a la importació, ha de ser un número positiu i finit.
+     * @param text el text del camp.
+     * @return la durada, o <code>null</code> si no és vàlida.
+     */
+    private static Double songDuration(String text) {
+        Double duration = parseDuration(text);
+        return duration != null && Double.isFinite(duration) && duration > 0 ? duration : null;
+    }
+    
+    /**
+     * @author giser
+     * Converteix un text en número, sense validar-ne el valor.
+     * @param text el text.
+     * @return el número, o <code>null</code> si el text és buit o no és un número.
+     */
+    private static Double parseDuration(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.valueOf(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * @author giser
+     * Es crida quan l'usuari deixa d'escriure als camps de durada. Si són vàlids, torna a carregar la llista amb l'interval.
+     */
+    private void durationChanged() {
+        if (!isValidDuration(minDurationField) || !isValidDuration(maxDurationField)) {
+            statusLabel.setText("La durada ha de ser un número positiu o zero.");
+            return;
+        }
+        filterChanged();
+    }
+    
+    /**
+     * @author giser
+     * Indica si un camp de durada és buit o conté un número finit i no negatiu.
+     * @param field el camp.
+     * @return <code>true</code> si el camp és vàlid.
+     */
+    private static boolean isValidDuration(TextField field) {
+        return field.getText().isBlank() || durationValue(field) != null;
+    }
+    
+    /**
+     * @author giser
+     * Es crida quan canvia l'ordenació de la taula. La llista es torna a consultar a la base de dades en el nou ordre;
+     * els resultats de la cerca es tornen a cercar i s'ordenen en arribar, perquè en són pocs.
+     */
+    private void sortChanged() {
+        if (currentQuery().equals(shownQuery)) {
+            return;
+        }
+        if (searchResults != null) {
+            runSearch();
+        } else {
+            reloadSongsList();
+        }
+    }
+    
+    /**
+     * @author giser
+     * Omple els ComboBox d'artistes i àlbums amb les dades de referència carregades i selecciona el primer element
+     * de cada un ("Tots els artistes" i "Tots els albums"), que es conserva.
+     * No recarrega la llista de cançons.
+     */
+    private void fillComboBoxes() {
+        fillingComboBoxes = true;
+        try {
+            artistComboBox.getItems().remove(1, artistComboBox.getItems().size());
+            artistComboBox.getItems().addAll(artistItems(ReferenceData.artists()));
+            artistComboBox.getSelectionModel().selectFirst();
+        } finally {
+            fillingComboBoxes = false;
+        }
+        fillAlbumComboBox();
+    }
+    
+    /**
+     * @author giser
+     * Omple el ComboBox d'àlbums amb els àlbums de l'artista seleccionat (o tots, si no n'hi ha cap de seleccionat)
+     * i selecciona "Tots els albums". Els àlbums de cada artista surten de l'índex de {@link ReferenceData}, sense
+     * consultar la base de dades ni recórrer tots els àlbums.
+     * No recarrega la llista de cançons.
+     */
+    private void fillAlbumComboBox() {
+        Integer artistId = artistComboBox.getValue() != null ? artistComboBox.getValue().getId() : null;
+        fillingComboBoxes = true;
+        try {
+            albumComboBox.getItems().remove(1, albumComboBox.getItems().size());
+            albumComboBox.getItems().addAll(albumItems(artistId != null ? ReferenceData.albumsOf(artistId) : ReferenceData.albums()));
+            albumComboBox.getSelectionModel().selectFirst();
+        } finally {
+            fillingComboBoxes = false;
+        }
+    }
+    
+    /**
+     * @author giser
+     * Es crida quan l'usuari canvia l'artista seleccionat. Restringeix els àlbums als de l'artista, recarrega
+     * la llista de cançons i precarrega en segon pla la primera pàgina dels seus àlbums.
+     */
+    private void artistChanged() {
+        fillAlbumComboBox();
+        filterChanged();
+        prefetchAlbums();
+    }
+    
+    /**
+     * @author giser
+     * Precarrega a {@link SongQueryCache} el recompte i la primera pàgina dels primers àlbums de l'artista seleccionat,
+     * de manera que la selecció d'àlbum que probablement vindrà després es mostri a l'instant.
+     * No es fa res si l'índex de cançons ja serveix les primeres pàgines des de la memòria o si la llista
+     * té un ordre o un interval de durada que la memòria cau no guarda.
+     */
+    private void prefetchAlbums() {
+        if (prefetchRequest != null) {
+            prefetchRequest.cancel();
+            prefetchRequest = null;
+        }
+        Integer artistId = artistComboBox.getValue().getId();
+        if (artistId == null || SongIndex.isBuilt() || !currentQuery().isDefault()) {
+            return;
+        }
+        List<Album> albums = ReferenceData.albumsOf(artistId);
+        prefetchRequest = AsyncDataAccess.submit(() -> {
+            int prefetched = 0;
+            for (Album album : albums.subList(0, Math.min(PREFETCH_ALBUMS, albums.size()))) {
+                // Si s'ha seleccionat un altre artista, la resta ja no cal
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (SongQueryCache.prefetch(artistId, album.id(), PagedSongList.PAGE_SIZE)) {
+                    prefetched++;
+                }
+            }
+            return prefetched;
+        }, prefetched -> prefetchRequest = null, e -> {
+            // La precàrrega és opcional: si falla, l'àlbum es consultarà quan se seleccioni
+        });
+    }
+
+    /**
+     * @author giser
+     * Converteix una llista d'artistes en elements per a un ComboBox.
+     * @param artists la llista d'artistes.
+     * @return la llista d'elements amb l'id i el nom de cada artista.
+     */
+    private static List<ComboItem> artistItems(List<Artist> artists) {
+        List<ComboItem> items = new ArrayList<>(artists.size());
+        for (Artist artist : artists) {
+            items.add(new ComboItem(artist.id(), artist.name()));
+        }
+        return items;
+    }
+    
+    /**
+     * @author giser
+     * Converteix una llista d'àlbums en elements per a un ComboBox.
+     * @param albums la llista d'àlbums.
+     * @return la llista d'elements amb l'id i el títol de cada àlbum.
+     */
+    private static List<ComboItem> albumItems(List<Album> albums) {
+        List<ComboItem> items = new ArrayList<>(albums.size());
+        for (Album album : albums) {
+            items.add(new ComboItem(album.id(), album.title()));
+        }
+        return items;
+    }
+    
+    /**
+     * @author giser
+     * Es crida quan canvia la selecció d'un ComboBox: surt de la cerca, si n'hi havia, i mostra la llista filtrada.
+     */
+    private void filterChanged() {
+        boolean wasSearching = searchResults != null;
+        // En buidar el camp de cerca ja es recarrega la llista
+        searchField.clear();
+        if (!wasSearching) {
+            reloadSongsList();
+        }
+    }
+    
+    /**
+     * @author giser
+     * Es crida a cada canvi del text de cerca. Cancel·la la cerca en curs i la torna a programar
+     * perquè es llanci quan l'usuari deixi d'escriure; si el text és massa curt, torna a la llista filtrada.
+     */
+    private void searchTextChanged() {
+        if (searchRequest != null) {
+            searchRequest.cancel();
+        }
+        if (searchField.getText().trim().length() < SEARCH_MIN_LENGTH) {
+            searchDelay.stop();
+            if (searchResults != null) {
+                searchResults = null;
+                reloadSongsList();
+            }
+            return;
+        }
+        searchDelay.playFromStart();
+    }
+    
+    /**
+     * @author giser
+     * Llança la cerca del text actual en segon pla i en mostra els resultats quan arriben.
+     * La cerca anterior, si encara no ha acabat, es cancel·la.
+     */
+    private void runSearch() {
+        String text = searchField.getText().trim();
+        if (text.length() < SEARCH_MIN_LENGTH) {
+            return;
+        }
+        if (searchRequest != null) {
+            searchRequest.cancel();
+        }
+        statusLabel.setText("Cercant...");
+        searchRequest = AsyncDataAccess.submit(
+                () -> MusicDAO.searchSongs(text, SEARCH_LIMIT),
+                this::showSearchResults,
+                e -> {
+                    statusLabel.setText("");
+                    showAlert("Error al cercar cançons: " + e.getMessage());
+                });
+    }
+    
+    /**
+     * @author giser
+     * Mostra els resultats de la cerca a la llista en lloc de la llista filtrada.
+     * @param rows les cançons trobades, de més a menys rellevant.
+     */
+    private void showSearchResults(List<SongRow> rows) {
+        // La llista filtrada deixa de mostrar-se: s'aturen les seves càrregues
+        if (songsRequest != null) {
+            songsRequest.cancel();
+        }
+        if (songs != null) {
+            songs.dispose();
+        }
+        // Sense cap columna d'ordenació es mantenen per rellevància; si no, s'ordenen aquí (com a molt SEARCH_LIMIT files)
+        SongQuery query = currentQuery();
+        if (!query.isOrderedById()) {
+            Comparator<SongRow> comparator = query.sort().comparator();
+            rows.sort(query.descending() ? comparator.reversed() : comparator);
+        }
+        shownQuery = query;
+        searchResults = FXCollections.observableArrayList(rows);
+        songTableView.setItems(searchResults);
+        songTableView.scrollTo(0);
+        showSongCount();
+    }
+    
+    /**
+     * @author giser
+     * Recarrega la llista de cançons segons la selecció actual dels ComboBox d'artista i àlbum, l'interval de durada i l'ordenació de la taula.
+     * Cancel·la la càrrega anterior si encara no ha acabat. Si l'índex en memòria està construït o el filtre és a la memòria cau, el mostra immediatament;
+     * si no, mostra l'estat de càrrega i compta les cançons en segon pla. Quan arriba el recompte, mostra una {@link PagedSongList} que carrega les cançons per pàgines a mesura que es desplaça la llista.
+     * L'índex i la memòria cau només serveixen la llista per defecte (ordenada per id i sense interval de durada); la resta de consultes
+     * es fan a la base de dades, que filtra i ordena amb els seus índexs.
      */
     private void reloadSongsList() {
-        // Neteja la llista visual de cançons prèviament mostrades
-        songListView.getItems().clear();
-        // Neteja la llista d'identificadors
-        songIds.clear();
+        // Descartem el resultat de la càrrega anterior, que ja no correspon a la selecció actual
+        if (songsRequest != null) {
+            songsRequest.cancel();
+        }
+        if (songs != null) {
+            songs.dispose();
+        }
         
-        // Obté els elements seleccionats als ComboBox
-        ComboItem selectedArtist = artistComboBox.getValue();
-        ComboItem selectedAlbum = albumComboBox.getValue();
+        // Obté els elements seleccionats als ComboBox, els camps de durada i la columna d'ordenació
+        SongQuery query = currentQuery();
+        Integer artistId = query.artistId();
+        Integer albumId = query.albumId();
         
-        try {
-            // Obtenim les cançons que compleixen amb els filtres d'artista i àlbum
-            ResultSet rs = MusicDAO.getSongs(selectedArtist.getId(), selectedAlbum.getId());
-            // Iterem sobre el ResultSet per afegir cada cançó a la llista
-            while (rs.next()) {
-                // Afegim l'identificador de la cançó a la llista auxiliar
-                songIds.add(rs.getInt("id"));
-                // Cadena que mostra el títol, durada, àlbum i artista
-                String display = rs.getString("title") + " | " + rs.getString("duration") + " | " +
-                        rs.getString("album") + " | " + rs.getString("artist");
-                // Afegim la cadena a la ListView
-                songListView.getItems().add(display);
+        // Mostrem l'estat de càrrega en lloc de bloquejar la interfície
+        statusLabel.setText("Carregant cançons...");
+        
+        if (query.isDefault()) {
+            // Amb l'índex en memòria, el recompte i la primera pàgina s'obtenen sense accedir a la base de dades
+            SongQueryCache.Result indexed = SongIndex.firstPage(artistId, albumId, PagedSongList.PAGE_SIZE);
+            if (indexed != null) {
+                songsLoaded(query, indexed);
+                return;
+            }
+            
+            // Si el filtre ja s'ha consultat abans, es mostra el resultat guardat sense accedir a la base de dades
+            SongQueryCache.Result cached = SongQueryCache.lookup(artistId, albumId);
+            if (cached != null) {
+                songsLoaded(query, cached);
+                return;
             }
-            rs.getStatement().close();
-        } catch (SQLException e) {
-            // Mostrem un missatge d'error si hi ha problemes en carregar les cançons
-            showAlert("Error al carregar cançons.");
         }
+        
+        // Es compten les cançons i es llegeix la primera pàgina; la resta es llegeix per pàgines quan la llista les necessita
+        songsRequest = AsyncDataAccess.submit(
+                () -> query.isDefault() ? SongQueryCache.load(artistId, albumId, PagedSongList.PAGE_SIZE)
+                        : new SongQueryCache.Result(MusicDAO.countSongs(query),
+                                MusicDAO.getSongsPage(query, null, 0, PagedSongList.PAGE_SIZE)),
+                result -> songsLoaded(query, result),
+                e -> {
+                    statusLabel.setText("");
+                    // Mostrem un missatge d'error si hi ha problemes en carregar les cançons
+                    showAlert("Error al carregar cançons.");
+                });
+    }
+    
+    /**
+     * @author giser
+     * Mostra el resultat d'una consulta a la llista de cançons.
+     * @param query  la consulta (filtres i ordre).
+     * @param result el nombre de cançons i la primera pàgina de la consulta.
+     */
+    private void songsLoaded(SongQuery query, SongQueryCache.Result result) {
+        shownQuery = query;
+        songs = new PagedSongList(query, result.count(), result.firstPage());
+        songTableView.setItems(songs);
+        songTableView.scrollTo(0);
+        // Fins a la primera càrrega, la llista buida mostra "Carregant cançons..."
+        placeholderLabel.setText("No hi ha cançons.");
+        showSongCount();
+        Startup.viewFilled(Startup.VIEW_SONGS);
     }
     
     /**
@@ -164,10 +642,44 @@ public class MusicController implements Initializable {
     
     /**
      * Maneja la acció per afegir una cançó.
+     * Mostra el diàleg amb els àlbums de les dades de referència.
      * @param event l'esdeveniment generat en clicar el botó.
      */
     @FXML
     private void addSong(ActionEvent event) {
+        withAlbums(this::showAddSongDialog);
+    }
+    
+    /**
+     * @author giser
+     * Executa una acció amb la llista d'àlbums per als diàlegs.
+     * Si les dades de referència ja estan carregades l'acció s'executa immediatament, sense accedir a la base de dades;
+     * si no, es carreguen primer en segon pla.
+     * @param action l'acció que rep la llista d'àlbums.
+     */
+    private void withAlbums(Consumer<List<ComboItem>> action) {
+        if (ReferenceData.isLoaded()) {
+            action.accept(albumItems(ReferenceData.albums()));
+            return;
+        }
+        statusLabel.setText("Carregant àlbums...");
+        AsyncDataAccess.submit(() -> {
+            ReferenceData.ensureLoaded();
+            return albumItems(ReferenceData.albums());
+        }, albums -> {
+            showSongCount();
+            action.accept(albums);
+        }, e -> {
+            showSongCount();
+            showAlert("Error al carregar els àlbums.");
+        });
+    }
+    
+    /**
+     * Mostra el diàleg per afegir una cançó i, si s'accepta, la insereix en segon pla.
+     * @param albums la llista d'àlbums disponibles.
+     */
+    private void showAddSongDialog(List<ComboItem> albums) {
         // Creem un diàleg per afegir la cançó
         Dialog<ButtonType> dialog = new Dialog<>();
         dialog.setTitle("Afegir cançó");
@@ -188,16 +700,7 @@ public class MusicController implements Initializable {
 
         // Desplegable per a seleccionar l'àlbum (les dades relacionades amb altres taules)
         ComboBox<ComboItem> albumComboBoxDialog = new ComboBox<>();
-        try {
-            ResultSet rsAlbums = MusicDAO.getAlbums();
-            while (rsAlbums.next()) {
-                ComboItem item = new ComboItem(rsAlbums.getInt("id"), rsAlbums.getString("title"));
-                albumComboBoxDialog.getItems().add(item);
-            }
-            rsAlbums.getStatement().close();
-        } catch (SQLException ex) {
-            showAlert("Error al carregar els àlbums.");
-        }
+        albumComboBoxDialog.getItems().addAll(albums);
 
         grid.add(new Label("Títol:"), 0, 0);
         grid.add(titleField, 1, 0);
@@ -217,167 +720,210 @@ public class MusicController implements Initializable {
                 showAlert("Tots els camps han d'estar completats.");
                 return;
             }
-            double newDuration;
-            try {
-                newDuration = Double.parseDouble(newDurationStr);
-            } catch (NumberFormatException nfe) {
-                showAlert("La durada ha de ser un número.");
+            Double newDuration = songDuration(newDurationStr);
+            if (newDuration == null) {
+                showAlert("La durada ha de ser un número positiu.");
                 return;
             }
             ComboItem selectedAlbum = albumComboBoxDialog.getSelectionModel().getSelectedItem();
             int newAlbumId = selectedAlbum.getId();
 
-            try {
-                Connection conn = DatabaseConnection.getConnection();
-                // Obtenim un nou ID per la cançó (màxim existent + 1)
-                int newId = 1;
-                String maxSql = "SELECT MAX(id) AS maxId FROM song";
-                PreparedStatement maxStmt = conn.prepareStatement(maxSql);
-                ResultSet rsMax = maxStmt.executeQuery();
-                if (rsMax.next()) {
-                    newId = rsMax.getInt("maxId") + 1;
-                }
-                rsMax.close();
-                maxStmt.close();
+            // SQLite assigna l'id i la cançó nova es llegeix (amb el nom de l'àlbum i l'artista) en la mateixa transacció;
+            // la cua d'escriptures l'agrupa amb les altres modificacions pendents i avisa quan ja és al disc
+            AsyncDataAccess.deliver(SongWriteQueue.insert(newAlbumId, newTitle, newDuration), inserted -> {
+                // Afegim només la cançó nova a la llista, si compleix el filtre actual
+                songInserted(inserted);
+                showAlert("Cançó afegida correctament.");
+            }, e -> showAlert("Error al afegir la cançó: " + e.getMessage()));
+        }
+    }
 
-                // Inserim la nova cançó
-                String insertSql = "INSERT INTO song (id, album_id, name, duration) VALUES (?, ?, ?, ?)";
-                PreparedStatement insertStmt = conn.prepareStatement(insertSql);
-                insertStmt.setInt(1, newId);
-                insertStmt.setInt(2, newAlbumId);
-                insertStmt.setString(3, newTitle);
-                insertStmt.setDouble(4, newDuration);
-                int affected = insertStmt.executeUpdate();
-                insertStmt.close();
-                if (affected > 0) {
-                    showAlert("Cançó afegida correctament.");
-                } else {
-                    showAlert("No s'ha pogut afegir la cançó.");
-                }
-                // Actualitzem la llista de cançons després d'afegir
-                reloadSongsList();
-            } catch (SQLException e) {
-                showAlert("Error al afegir la cançó: " + e.getMessage());
-            }
+
+    /**
+     * Maneja la acció per importar cançons d'un fitxer CSV o JSON.
+     * La importació s'executa en segon pla i en mostra el progrés a la barra d'estat; en acabar es tornen a carregar
+     * els artistes, els àlbums i la llista de cançons, perquè la importació pot haver-ne creat de nous.
+     * @param event l'esdeveniment generat en clicar el botó.
+     */
+    @FXML
+    private void importSongs(ActionEvent event) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Importar cançons");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV o JSON", "*.csv", "*.json", "*.jsonl"),
+                new FileChooser.ExtensionFilter("Tots els fitxers", "*.*"));
+        File file = chooser.showOpenDialog(songTableView.getScene().getWindow());
+        if (file == null) {
+            return;
         }
+        statusLabel.setText("Important " + file.getName() + "...");
+        AsyncDataAccess.submit(() -> {
+            CatalogImporter.Result result;
+            try {
+                result = CatalogImporter.importFile(file.toPath(), CatalogImporter.DEFAULT_CHUNK_SIZE, progress ->
+                        Platform.runLater(() -> statusLabel.setText("Important " + file.getName() + ": "
+                                + progress.imported() + " cançons (" + progress.rowsPerSecond() + " files/s)")));
+            } catch (IOException e) {
+                // Les tasques de dades només declaren SQLException; l'executor rep qualsevol excepció
+                throw new UncheckedIOException(e);
+            }
+            ReferenceData.load();
+            // La importació ha invalidat l'índex: es torna a construir abans de mostrar la llista
+            SongIndex.build();
+            return result;
+        }, result -> {
+            fillComboBoxes();
+            filterChanged();
+            CatalogImporter.Progress totals = result.totals();
+            showAlert(totals.imported() + " cançons importades, " + totals.duplicates() + " repetides i "
+                    + totals.rejected() + " files descartades (" + totals.artists() + " artistes i "
+                    + totals.albums() + " àlbums nous)."
+                    + (result.errors().isEmpty() ? "" : "\n\n" + String.join("\n", result.errors().subList(0, Math.min(10, result.errors().size())))));
+        }, e -> {
+            showSongCount();
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            showAlert("Error en importar el fitxer: " + cause.getMessage());
+        });
     }
 
+    /**
+     * Maneja la acció per exportar totes les cançons a un fitxer CSV, JSON Lines o binari.
+     * L'exportació s'executa en segon pla amb la seva pròpia connexió de lectura, de manera que la interfície es pot
+     * continuar fent servir; el format es tria amb el filtre del diàleg o amb l'extensió del fitxer.
+     * @param event l'esdeveniment generat en clicar el botó.
+     */
+    @FXML
+    private void exportSongs(ActionEvent event) {
+        if (exportRequest != null) {
+            showAlert("Ja hi ha una exportació en curs.");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Exportar cançons");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl"),
+                new FileChooser.ExtensionFilter("Binari", "*.mdbx"));
+        File chosen = chooser.showSaveDialog(songTableView.getScene().getWindow());
+        if (chosen == null) {
+            return;
+        }
+        // Si el nom no té extensió, s'afegeix la del filtre seleccionat
+        File file = chosen.getName().contains(".") || chooser.getSelectedExtensionFilter() == null ? chosen
+                : new File(chosen.getPath() + chooser.getSelectedExtensionFilter().getExtensions().get(0).substring(1));
+        CatalogExporter.Format format = CatalogExporter.Format.of(file.toPath());
+        statusLabel.setText("Exportant a " + file.getName() + "...");
+        exportRequest = AsyncDataAccess.submit(() -> {
+            try {
+                return CatalogExporter.exportFile(file.toPath(), format, songs ->
+                        Platform.runLater(() -> statusLabel.setText("Exportant a " + file.getName() + ": " + songs + " cançons")));
+            } catch (IOException e) {
+                // Les tasques de dades només declaren SQLException; l'executor rep qualsevol excepció
+                throw new UncheckedIOException(e);
+            }
+        }, result -> {
+            exportRequest = null;
+            statusLabel.setText(result.songs() + " cançons exportades a " + file.getName()
+                    + " (" + result.bytes() / 1024 + " KB en " + result.millis() + " ms)");
+        }, e -> {
+            exportRequest = null;
+            showSongCount();
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            showAlert("Error en exportar les cançons: " + cause.getMessage());
+        });
+    }
 
     /**
      * Maneja la acció per modificar una cançó.
+     * Mostra el diàleg amb les dades de la cançó seleccionada a la llista i els àlbums de les dades de referència.
      * @param event l'esdeveniment generat en clicar el botó.
      */
     @FXML
     private void modifySong(ActionEvent event) {
         // Comprovem si s'ha seleccionat una cançó
-        int selectedIndex = songListView.getSelectionModel().getSelectedIndex();
-        if (selectedIndex < 0) {
+        SongRow selectedSong = songTableView.getSelectionModel().getSelectedItem();
+        if (selectedSong == null) {
             showAlert("Selecciona una cançó per modificar.");
             return;
         }
-        // Obtenim l'identificador de la cançó seleccionada
-        int songId = songIds.get(selectedIndex);
+        // La fila de la llista ja conté les dades actuals de la cançó: no cal tornar-la a consultar
+        withAlbums(albums -> showModifySongDialog(selectedSong, albums));
+    }
+    
+    /**
+     * Mostra el diàleg per modificar una cançó i, si s'accepta, l'actualitza en segon pla.
+     * @param song   les dades actuals de la cançó.
+     * @param albums la llista d'àlbums disponibles.
+     */
+    private void showModifySongDialog(SongRow song, List<ComboItem> albums) {
+        // Identificador de la cançó a modificar
+        int songId = song.id();
         
-        try {
-            // Recuperem les dades actuals de la cançó
-            Connection conn = DatabaseConnection.getConnection();
-            String sql = "SELECT name, duration, album_id FROM song WHERE id = ?";
-            PreparedStatement pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, songId);
-            ResultSet rs = pstmt.executeQuery();
-            String currentTitle = "";
-            double currentDuration = 0;
-            int currentAlbumId = -1;
-            if (rs.next()) {
-                currentTitle = rs.getString("name");
-                currentDuration = rs.getDouble("duration");
-                currentAlbumId = rs.getInt("album_id");
+        // Creem un diàleg per modificar la cançó
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Modificar cançó");
+        dialog.setHeaderText("Modifica les dades de la cançó");
+        ButtonType updateButtonType = new ButtonType("Actualitzar", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(updateButtonType, ButtonType.CANCEL);
+        
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 10));
+        
+        TextField titleField = new TextField();
+        titleField.setPromptText("Títol");
+        titleField.setText(song.title());
+        
+        TextField durationField = new TextField();
+        durationField.setPromptText("Durada");
+        durationField.setText(String.valueOf(song.duration()));
+        
+        // Desplegable per a seleccionar l'àlbum (les dades relacionades amb altres taules)
+        ComboBox<ComboItem> albumComboBoxDialog = new ComboBox<>();
+        for (ComboItem item : albums) {
+            albumComboBoxDialog.getItems().add(item);
+            if (item.getId() == song.albumId()) {
+                albumComboBoxDialog.getSelectionModel().select(item);
             }
-            rs.close();
-            pstmt.close();
-            
-            // Creem un diàleg per modificar la cançó
-            Dialog<ButtonType> dialog = new Dialog<>();
-            dialog.setTitle("Modificar cançó");
-            dialog.setHeaderText("Modifica les dades de la cançó");
-            ButtonType updateButtonType = new ButtonType("Actualitzar", ButtonBar.ButtonData.OK_DONE);
-            dialog.getDialogPane().getButtonTypes().addAll(updateButtonType, ButtonType.CANCEL);
-            
-            GridPane grid = new GridPane();
-            grid.setHgap(10);
-            grid.setVgap(10);
-            grid.setPadding(new Insets(20, 150, 10, 10));
-            
-            TextField titleField = new TextField();
-            titleField.setPromptText("Títol");
-            titleField.setText(currentTitle);
-            
-            TextField durationField = new TextField();
-            durationField.setPromptText("Durada");
-            durationField.setText(String.valueOf(currentDuration));
-            
-            // Desplegable per a seleccionar l'àlbum (les dades relacionades amb altres taules)
-            ComboBox<ComboItem> albumComboBoxDialog = new ComboBox<>();
-            try {
-                ResultSet rsAlbums = MusicDAO.getAlbums();
-                while (rsAlbums.next()) {
-                    ComboItem item = new ComboItem(rsAlbums.getInt("id"), rsAlbums.getString("title"));
-                    albumComboBoxDialog.getItems().add(item);
-                    if (rsAlbums.getInt("id") == currentAlbumId) {
-                        albumComboBoxDialog.getSelectionModel().select(item);
-                    }
-                }
-                rsAlbums.getStatement().close();
-            } catch (SQLException ex) {
-                showAlert("Error al carregar els àlbums.");
+        }
+        
+        grid.add(new Label("Títol:"), 0, 0);
+        grid.add(titleField, 1, 0);
+        grid.add(new Label("Durada:"), 0, 1);
+        grid.add(durationField, 1, 1);
+        grid.add(new Label("Àlbum:"), 0, 2);
+        grid.add(albumComboBoxDialog, 1, 2);
+        
+        dialog.getDialogPane().setContent(grid);
+        titleField.requestFocus();
+        
+        Optional<ButtonType> result = dialog.showAndWait();
+        if (result.isPresent() && result.get() == updateButtonType) {
+            String newTitle = titleField.getText().trim();
+            String newDurationStr = durationField.getText().trim();
+            if (newTitle.isEmpty() || newDurationStr.isEmpty() || albumComboBoxDialog.getSelectionModel().isEmpty()) {
+                showAlert("Tots els camps han d'estar completats.");
+                return;
             }
+            Double newDuration = songDuration(newDurationStr);
+            if (newDuration == null) {
+                showAlert("La durada ha de ser un número positiu.");
+                return;
+            }
+            ComboItem selectedAlbum = albumComboBoxDialog.getSelectionModel().getSelectedItem();
+            int newAlbumId = selectedAlbum.getId();
             
-            grid.add(new Label("Títol:"), 0, 0);
-            grid.add(titleField, 1, 0);
-            grid.add(new Label("Durada:"), 0, 1);
-            grid.add(durationField, 1, 1);
-            grid.add(new Label("Àlbum:"), 0, 2);
-            grid.add(albumComboBoxDialog, 1, 2);
-            
-            dialog.getDialogPane().setContent(grid);
-            titleField.requestFocus();
-            
-            Optional<ButtonType> result = dialog.showAndWait();
-            if (result.isPresent() && result.get() == updateButtonType) {
-                String newTitle = titleField.getText().trim();
-                String newDurationStr = durationField.getText().trim();
-                if (newTitle.isEmpty() || newDurationStr.isEmpty() || albumComboBoxDialog.getSelectionModel().isEmpty()) {
-                    showAlert("Tots els camps han d'estar completats.");
-                    return;
-                }
-                double newDuration;
-                try {
-                    newDuration = Double.parseDouble(newDurationStr);
-                } catch (NumberFormatException nfe) {
-                    showAlert("La durada ha de ser un número.");
-                    return;
-                }
-                ComboItem selectedAlbum = albumComboBoxDialog.getSelectionModel().getSelectedItem();
-                int newAlbumId = selectedAlbum.getId();
-                
-                String updateSql = "UPDATE song SET name = ?, duration = ?, album_id = ? WHERE id = ?";
-                PreparedStatement updateStmt = conn.prepareStatement(updateSql);
-                updateStmt.setString(1, newTitle);
-                updateStmt.setDouble(2, newDuration);
-                updateStmt.setInt(3, newAlbumId);
-                updateStmt.setInt(4, songId);
-                int affected = updateStmt.executeUpdate();
-                updateStmt.close();
-                if (affected > 0) {
+            // La fila modificada es llegeix en la mateixa transacció, perquè el canvi d'àlbum també canvia el nom de l'àlbum i l'artista
+            AsyncDataAccess.deliver(SongWriteQueue.update(songId, newAlbumId, newTitle, newDuration), updated -> {
+                if (updated.isPresent()) {
+                    // Actualitzem només la fila modificada
+                    songUpdated(updated.get());
                     showAlert("Cançó modificada correctament.");
                 } else {
                     showAlert("No s'ha pogut modificar la cançó.");
                 }
-                // Actualitzem la llista de cançons després de modificar
-                reloadSongsList();
-            }
-        } catch (SQLException e) {
-            showAlert("Error al recuperar les dades de la cançó: " + e.getMessage());
+            }, e -> showAlert("Error al modificar la cançó: " + e.getMessage()));
         }
     }
 
@@ -387,14 +933,19 @@ public class MusicController implements Initializable {
      */
     @FXML
     private void deleteSong(ActionEvent event) {
+        // Amb més d'una cançó seleccionada, s'eliminen totes en una sola operació
+        if (songTableView.getSelectionModel().getSelectedIndices().size() > 1) {
+            deleteSelectedSongs();
+            return;
+        }
         // Comprovem si s'ha seleccionat una cançó
-        int selectedIndex = songListView.getSelectionModel().getSelectedIndex();
-        if (selectedIndex < 0) {
+        SongRow selectedSong = songTableView.getSelectionModel().getSelectedItem();
+        if (selectedSong == null) {
             showAlert("Selecciona una cançó per eliminar.");
             return;
         }
         // Obtenim l'identificador de la cançó seleccionada
-        int songId = songIds.get(selectedIndex);
+        int songId = selectedSong.id();
         
         // Mostrem un diàleg de confirmació
         Alert confirmAlert = new Alert(AlertType.CONFIRMATION);
@@ -402,25 +953,340 @@ public class MusicController implements Initializable {
         confirmAlert.setHeaderText("Vols eliminar la cançó seleccionada?");
         Optional<ButtonType> result = confirmAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try {
-                // Obtenim la connexió a la base de dades
-                Connection conn = DatabaseConnection.getConnection();
-                // Creem la sentència preparada per eliminar la cançó
-                String sql = "DELETE FROM song WHERE id = ?";
-                PreparedStatement pstmt = conn.prepareStatement(sql);
-                pstmt.setInt(1, songId);
-                int affected = pstmt.executeUpdate();
-                pstmt.close();
-                if (affected > 0) {
+            // Executem l'eliminació en segon pla, amb la cua d'escriptures
+            AsyncDataAccess.deliver(SongWriteQueue.delete(songId), deleted -> {
+                if (deleted) {
+                    // Traiem només la fila eliminada
+                    songDeleted(songId);
                     showAlert("Cançó eliminada correctament.");
                 } else {
                     showAlert("No s'ha pogut eliminar la cançó.");
                 }
-            } catch (SQLException e) {
-                showAlert("Error al eliminar la cançó: " + e.getMessage());
+            }, e -> showAlert("Error al eliminar la cançó: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * @author giser
+     * Elimina totes les cançons seleccionades en una sola transacció, després de confirmar-ho, i actualitza la llista
+     * una sola vegada quan acaba.
+     */
+    private void deleteSelectedSongs() {
+        PagedSongList list = songs;
+        int firstIndex = Collections.min(songTableView.getSelectionModel().getSelectedIndices());
+        withSelectedSongs(selected -> {
+            Alert confirmAlert = new Alert(AlertType.CONFIRMATION);
+            confirmAlert.setTitle("Confirmació");
+            confirmAlert.setHeaderText("Vols eliminar les " + selected.size() + " cançons seleccionades?");
+            Optional<ButtonType> result = confirmAlert.showAndWait();
+            if (result.isEmpty() || result.get() != ButtonType.OK) {
+                return;
+            }
+            statusLabel.setText("Eliminant " + selected.size() + " cançons...");
+            AsyncDataAccess.deliver(SongWriteQueue.deleteSongs(songIds(selected)), deleted -> {
+                songsChanged(list, firstIndex, list != null ? list.size() - deleted : 0);
+                showAlert(deleted + " cançons eliminades correctament.");
+            }, e -> {
+                showSongCount();
+                showAlert("Error al eliminar les cançons: " + e.getMessage());
+            });
+        });
+    }
+    
+    /**
+     * Maneja l'acció per moure les cançons seleccionades a un altre àlbum.
+     * @param event l'esdeveniment generat en clicar el botó.
+     */
+    @FXML
+    private void moveSongs(ActionEvent event) {
+        if (songTableView.getSelectionModel().getSelectedIndices().isEmpty()) {
+            showAlert("Selecciona les cançons que vols moure.");
+            return;
+        }
+        PagedSongList list = songs;
+        int firstIndex = Collections.min(songTableView.getSelectionModel().getSelectedIndices());
+        withSelectedSongs(selected -> withAlbums(albums -> showMoveSongsDialog(selected, albums, list, firstIndex)));
+    }
+    
+    /**
+     * Mostra el diàleg per triar l'àlbum de destinació i, si s'accepta, hi mou totes les cançons en una sola transacció.
+     * @param selected   les cançons seleccionades.
+     * @param albums     la llista d'àlbums disponibles.
+     * @param list       la llista on s'han seleccionat les cançons.
+     * @param firstIndex la posició de la primera cançó seleccionada.
+     */
+    private void showMoveSongsDialog(List<SongRow> selected, List<ComboItem> albums, PagedSongList list, int firstIndex) {
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Moure cançons");
+        dialog.setHeaderText("Tria l'àlbum on vols moure les " + selected.size() + " cançons seleccionades");
+        ButtonType moveButtonType = new ButtonType("Moure", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(moveButtonType, ButtonType.CANCEL);
+        
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 10));
+        
+        ComboBox<ComboItem> albumComboBoxDialog = new ComboBox<>();
+        albumComboBoxDialog.getItems().addAll(albums);
+        grid.add(new Label("Àlbum:"), 0, 0);
+        grid.add(albumComboBoxDialog, 1, 0);
+        dialog.getDialogPane().setContent(grid);
+        
+        Optional<ButtonType> result = dialog.showAndWait();
+        if (result.isEmpty() || result.get() != moveButtonType) {
+            return;
+        }
+        if (albumComboBoxDialog.getSelectionModel().isEmpty()) {
+            showAlert("Selecciona un àlbum.");
+            return;
+        }
+        int albumId = albumComboBoxDialog.getSelectionModel().getSelectedItem().getId();
+        statusLabel.setText("Movent " + selected.size() + " cançons...");
+        AsyncDataAccess.deliver(SongWriteQueue.moveSongs(songIds(selected), albumId), moved -> {
+            // Les cançons que ja no compleixen el filtre surten de la llista
+            int removed = 0;
+            for (SongRow song : moved) {
+                if (list != null && !list.matches(song)) {
+                    removed++;
+                }
             }
-            // Actualitzem la llista de cançons després d'eliminar
+            // Ordenades per àlbum o artista, les cançons mogudes poden passar al davant de la primera seleccionada
+            SongSort sort = list != null ? list.query().sort() : SongSort.ID;
+            int fromIndex = sort == SongSort.ALBUM || sort == SongSort.ARTIST ? 0 : firstIndex;
+            songsChanged(list, fromIndex, list != null ? list.size() - removed : 0);
+            showAlert(moved.size() + " cançons mogudes correctament.");
+        }, e -> {
+            showSongCount();
+            showAlert("Error en moure les cançons: " + e.getMessage());
+        });
+    }
+    
+    /**
+     * @author giser
+     * Llegeix les cançons seleccionades a la taula i les passa a l'acció. Es fa a partir de les posicions seleccionades,
+     * perquè les files de les pàgines no carregades són <code>null</code>: aquestes es consulten en segon pla.
+     * @param action l'acció que rep les cançons seleccionades, en l'ordre de la llista.
+     */
+    private void withSelectedSongs(Consumer<List<SongRow>> action) {
+        List<Integer> indices = new ArrayList<>(songTableView.getSelectionModel().getSelectedIndices());
+        if (indices.size() > MAX_SELECTED_SONGS) {
+            showAlert("Es poden seleccionar com a màxim " + MAX_SELECTED_SONGS + " cançons alhora.");
+            return;
+        }
+        Collections.sort(indices);
+        if (searchResults != null) {
+            List<SongRow> selected = new ArrayList<>(indices.size());
+            for (int index : indices) {
+                selected.add(searchResults.get(index));
+            }
+            action.accept(selected);
+            return;
+        }
+        if (songs == null) {
+            return;
+        }
+        statusLabel.setText("Llegint les cançons seleccionades...");
+        AsyncDataAccess.submit(songs.songsAt(indices), selected -> {
+            showSongCount();
+            action.accept(selected);
+        }, e -> {
+            showSongCount();
+            showAlert("Error al llegir les cançons seleccionades.");
+        });
+    }
+    
+    /**
+     * @author giser
+     * Retorna els identificadors d'una llista de cançons.
+     * @param songs les cançons.
+     * @return els identificadors, en el mateix ordre.
+     */
+    private static List<Integer> songIds(List<SongRow> songs) {
+        List<Integer> ids = new ArrayList<>(songs.size());
+        for (SongRow song : songs) {
+            ids.add(song.id());
+        }
+        return ids;
+    }
+    
+    /**
+     * @author giser
+     * Aplica a la vista, amb una sola actualització, el resultat d'una operació sobre moltes cançons.
+     * Si la llista ha canviat mentre s'escrivia (un altre filtre o ordre), es torna a llegir sencera.
+     * @param list      la llista on s'han seleccionat les cançons.
+     * @param fromIndex la primera posició que pot haver canviat.
+     * @param newSize   el nombre de cançons de la llista després de l'operació.
+     */
+    private void songsChanged(PagedSongList list, int fromIndex, int newSize) {
+        // Durant una cerca es torna a cercar, perquè el canvi pot afectar els resultats i el seu ordre
+        if (searchResults != null) {
+            runSearch();
+            return;
+        }
+        songTableView.getSelectionModel().clearSelection();
+        if (list == null || list != songs || list.isDisposed()) {
+            reloadSongsList();
+            return;
+        }
+        list.reloadFrom(fromIndex, newSize);
+        showSongCount();
+    }
+    
+    /**
+     * @author giser
+     * Afegeix una cançó acabada d'inserir a la llista actual, si compleix el filtre.
+     * Si la llista no pot situar la cançó, es recarrega sencera.
+     * @param song la cançó inserida.
+     */
+    private void songInserted(SongRow song) {
+        // Durant una cerca es torna a cercar, perquè el canvi pot afectar els resultats i el seu ordre
+        if (searchResults != null) {
+            runSearch();
+            return;
+        }
+        if (songs == null || songs.isDisposed() || !songs.matches(song)) {
+            return;
+        }
+        if (!songs.appendSong(song)) {
+            reloadSongsList();
+            return;
+        }
+        showSongCount();
+    }
+    
+    /**
+     * @author giser
+     * Aplica una cançó modificada a la llista actual: la substitueix si encara compleix el filtre o la treu si ja no el compleix.
+     * Si la cançó no està carregada, es recarrega la llista sencera.
+     * @param song la cançó modificada.
+     */
+    private void songUpdated(SongRow song) {
+        // Durant una cerca es torna a cercar, perquè el canvi pot afectar els resultats i el seu ordre
+        if (searchResults != null) {
+            runSearch();
+            return;
+        }
+        if (songs == null || songs.isDisposed()) {
+            return;
+        }
+        boolean applied = songs.matches(song) ? songs.replaceSong(song) : songs.removeSong(song.id());
+        if (!applied) {
             reloadSongsList();
+            return;
+        }
+        showSongCount();
+    }
+    
+    /**
+     * @author giser
+     * Treu una cançó eliminada de la llista actual. Si la cançó no està carregada, es recarrega la llista sencera.
+     * @param songId l'identificador de la cançó eliminada.
+     */
+    private void songDeleted(int songId) {
+        // Durant una cerca es torna a cercar, perquè el canvi pot afectar els resultats i el seu ordre
+        if (searchResults != null) {
+            runSearch();
+            return;
+        }
+        if (songs == null || songs.isDisposed()) {
+            return;
+        }
+        if (!songs.removeSong(songId)) {
+            reloadSongsList();
+            return;
+        }
+        showSongCount();
+    }
+    
+    /**
+     * @author giser
+     * Aplica els canvis que una altra aplicació ha fet a la base de dades, detectats per {@link DatabaseChangeWatcher}.
+     * Les dades en memòria ja estan actualitzades: aquí només es tornen a omplir els ComboBox si han canviat els artistes
+     * o els àlbums i es modifiquen les files afectades de la llista, com amb els canvis fets des d'aquesta aplicació.
+     * @param changes els canvis detectats.
+     */
+    private void externalChanges(DatabaseChangeWatcher.Changes changes) {
+        if (changes.referenceData()) {
+            referenceDataChanged();
+        }
+        // Durant una cerca es torna a cercar, perquè el canvi pot afectar els resultats i el seu ordre
+        if (searchResults != null) {
+            runSearch();
+            return;
+        }
+        if (changes.all()) {
+            reloadSongsList();
+            return;
+        }
+        for (DatabaseChangeWatcher.SongChange change : changes.songs()) {
+            if (songs == null || songs.isDisposed()) {
+                return;
+            }
+            SongQuery query = songs.query();
+            Album oldAlbum = change.oldAlbum();
+            // Una cançó que abans era d'un àlbum del filtre pot ser a la llista (sense tenir en compte la durada)
+            boolean wasListed = oldAlbum != null
+                    && (query.artistId() == null || query.artistId() == oldAlbum.artistId())
+                    && (query.albumId() == null || query.albumId() == oldAlbum.id());
+            if (change.song() == null) {
+                if (wasListed) {
+                    songDeleted(change.songId());
+                }
+            } else if (oldAlbum == null) {
+                songInserted(change.song());
+            } else if (wasListed || songs.matches(change.song())) {
+                songUpdated(change.song());
+            }
+        }
+    }
+    
+    /**
+     * @author giser
+     * Torna a omplir els ComboBox quan han canviat els artistes o els àlbums, mantenint la selecció actual.
+     * Si l'artista o l'àlbum seleccionat ja no existeix, es recarrega la llista amb el filtre que queda.
+     */
+    private void referenceDataChanged() {
+        Integer artistId = artistComboBox.getValue().getId();
+        Integer albumId = albumComboBox.getValue().getId();
+        fillComboBoxes();
+        select(artistComboBox, artistId);
+        fillAlbumComboBox();
+        select(albumComboBox, albumId);
+        if (!Objects.equals(artistComboBox.getValue().getId(), artistId) || !Objects.equals(albumComboBox.getValue().getId(), albumId)) {
+            filterChanged();
+        }
+    }
+    
+    /**
+     * @author giser
+     * Selecciona l'element d'un ComboBox amb l'id indicat, si hi és, sense recarregar la llista de cançons.
+     * @param comboBox el ComboBox.
+     * @param id       l'id de l'element.
+     */
+    private void select(ComboBox<ComboItem> comboBox, Integer id) {
+        fillingComboBoxes = true;
+        try {
+            for (ComboItem item : comboBox.getItems()) {
+                if (Objects.equals(item.getId(), id)) {
+                    comboBox.getSelectionModel().select(item);
+                    break;
+                }
+            }
+        } finally {
+            fillingComboBoxes = false;
+        }
+    }
+    
+    /**
+     * @author giser
+     * Mostra el nombre de cançons de la llista actual (o de resultats de la cerca) a l'etiqueta d'estat.
+     */
+    private void showSongCount() {
+        if (searchResults != null) {
+            statusLabel.setText(searchResults.size() + (searchResults.size() == SEARCH_LIMIT ? " primers resultats" : " resultats"));
+            return;
         }
+        statusLabel.setText(songs != null ? songs.size() + " cançons" : "");
     }
 }
@@ -0,0 +1,551 @@
+package controller;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import javafx.collections.ObservableListBase;
+import model.MusicDAO;
+import model.SongIndex;
+import model.SongQuery;
+import model.SongRow;
+
+/**
+ * @author giser
+ * Llista observable de cançons que es carrega per pàgines a mesura que es necessiten.
+ * La mida de la llista és el nombre total de cançons del filtre, però només es guarden en memòria
+ * les últimes pàgines utilitzades. Quan la {@link javafx.scene.control.TableView} demana una fila d'una pàgina
+ * que no està carregada, es retorna <code>null</code> i la pàgina es consulta en segon pla amb paginació per clau;
+ * quan arriba, la llista notifica el canvi perquè les cel·les visibles es tornin a pintar.
+ * Les altes, modificacions i baixes es poden aplicar directament sobre les pàgines carregades, sense tornar a consultar la llista.
+ * Només s'ha d'utilitzar des del fil de JavaFX.
+ */
+public class PagedSongList extends ObservableListBase<SongRow> {
+
+    // Nombre de cançons de cada pàgina.
+    public static final int PAGE_SIZE = 200;
+
+    // Nombre màxim de pàgines que es guarden en memòria.
+    private static final int MAX_PAGES = 10;
+
+    // Nombre màxim de pàgines que es poden estar consultant alhora; les més antigues es cancel·len.
+    private static final int MAX_PENDING = 4;
+
+    // Filtres i ordre de la llista.
+    private final SongQuery query;
+
+    // Nombre total de cançons del filtre.
+    private int size;
+
+    // Pàgines carregades, ordenades per ús (LRU).
+    private final LinkedHashMap<Integer, List<SongRow>> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Última cançó de cada pàgina coneguda, que serveix de clau per consultar la pàgina següent.
+    private final TreeMap<Integer, SongRow> pageEndKeys = new TreeMap<>();
+
+    // Pàgines que s'estan consultant, en ordre de petició.
+    private final LinkedHashMap<Integer, AsyncDataAccess.Request> pending = new LinkedHashMap<>();
+
+    // Indica si la llista s'ha descartat perquè ha canviat el filtre.
+    private boolean disposed = false;
+
+    // Consulta les pàgines en segon pla.
+    private final PageLoader loader;
+
+    /**
+     * @author giser
+     * Demana una pàgina de la consulta i en lliura les cançons (o l'error) al fil de JavaFX, com
+     * {@link AsyncDataAccess#submit(AsyncDataAccess.DataTask, Consumer, Consumer)}.
+     */
+    @FunctionalInterface
+    interface PageLoader {
+        AsyncDataAccess.Request load(SongRow after, int offset, Consumer<List<SongRow>> onLoaded, Consumer<Exception> onError);
+    }
+
+    /**
+     * @author giser
+     * Crea la llista per a la consulta indicada.
+     * @param query la consulta (filtres i ordre).
+     * @param size  el nombre total de cançons de la consulta.
+     */
+    public PagedSongList(SongQuery query, int size) {
+        this(query, size, List.of());
+    }
+
+    /**
+     * @author giser
+     * Crea la llista per a la consulta indicada amb la primera pàgina ja carregada, per exemple des de la memòria cau.
+     * @param query     la consulta (filtres i ordre).
+     * @param size      el nombre total de cançons de la consulta.
+     * @param firstPage les cançons de la primera pàgina; s'ignoren si no la completen.
+     */
+    public PagedSongList(SongQuery query, int size, List<SongRow> firstPage) {
+        this(query, size, firstPage, (after, offset, onLoaded, onError) ->
+                AsyncDataAccess.submit(() -> loadPage(query, after, offset), onLoaded, onError));
+    }
+
+    /**
+     * @author giser
+     * Crea la llista amb la manera de consultar les pàgines indicada, per exemple per provar-la sense base de dades.
+     * @param query     la consulta (filtres i ordre).
+     * @param size      el nombre total de cançons de la consulta.
+     * @param firstPage les cançons de la primera pàgina; s'ignoren si no la completen.
+     * @param loader    l'objecte que consulta les pàgines.
+     */
+    PagedSongList(SongQuery query, int size, List<SongRow> firstPage, PageLoader loader) {
+        this.query = query;
+        this.size = size;
+        this.loader = loader;
+        // Només es pot aprofitar si conté exactament les files de la primera pàgina
+        if (!firstPage.isEmpty() && firstPage.size() == Math.min(size, PAGE_SIZE)) {
+            pages.put(0, new ArrayList<>(firstPage));
+            pageEndKeys.put(0, firstPage.get(firstPage.size() - 1));
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna la cançó de la posició indicada si la seva pàgina està carregada.
+     * Si no ho està, o si la pàgina carregada no arriba fins a la posició, en demana la càrrega en segon pla
+     * i retorna <code>null</code>.
+     * @param index la posició de la cançó.
+     * @return la cançó, o <code>null</code> si encara s'està carregant.
+     */
+    @Override
+    public SongRow get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int page = index / PAGE_SIZE;
+        List<SongRow> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        if (offset >= rows.size()) {
+            // La pàgina ha quedat incompleta: es torna a consultar
+            pages.remove(page);
+            requestPage(page);
+            return null;
+        }
+        return rows.get(offset);
+    }
+
+    /**
+     * @author giser
+     * Retorna el nombre total de cançons del filtre.
+     * @return el nombre de cançons.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @author giser
+     * Descarta la llista: cancel·la les consultes pendents i ignora les que arribin més tard.
+     */
+    public void dispose() {
+        disposed = true;
+        for (AsyncDataAccess.Request request : pending.values()) {
+            request.cancel();
+        }
+        pending.clear();
+    }
+
+    /**
+     * @author giser
+     * Indica si la llista s'ha descartat.
+     * @return <code>true</code> si la llista s'ha descartat perquè ha canviat el filtre.
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * @author giser
+     * Retorna la consulta de la llista.
+     * @return la consulta (filtres i ordre).
+     */
+    public SongQuery query() {
+        return query;
+    }
+
+    /**
+     * @author giser
+     * Indica si una cançó compleix els filtres de la llista.
+     * @param song la cançó.
+     * @return <code>true</code> si la cançó pertany a la llista.
+     */
+    public boolean matches(SongRow song) {
+        return query.matches(song);
+    }
+
+    /**
+     * @author giser
+     * Afegeix una cançó nova al final de la llista. La cançó ha de tenir un id més gran que totes les de la llista,
+     * com passa amb les cançons acabades d'inserir, i la llista ha d'estar ordenada per id.
+     * @param song la cançó nova, que ha de complir els filtres de la llista.
+     * @return <code>true</code> si s'ha afegit; <code>false</code> si no es pot situar i cal recarregar la llista.
+     */
+    public boolean appendSong(SongRow song) {
+        Map.Entry<Integer, SongRow> lastKey = pageEndKeys.lastEntry();
+        if (!query.isOrderedById() || (lastKey != null && song.id() <= lastKey.getValue().id())) {
+            return false;
+        }
+        int index = size;
+        int page = index / PAGE_SIZE;
+        size++;
+        cancelPending(page);
+        List<SongRow> rows = pages.get(page);
+        if (rows != null) {
+            // La darrera pàgina està carregada: hi afegim la fila
+            rows = new ArrayList<>(rows);
+            rows.add(song);
+            pages.put(page, rows);
+            pageEndKeys.put(page, song);
+        } else if (index % PAGE_SIZE == 0) {
+            // La cançó comença una pàgina nova, que només la conté a ella
+            pages.put(page, new ArrayList<>(List.of(song)));
+            pageEndKeys.put(page, song);
+        } else {
+            // La darrera pàgina no està carregada: la seva clau final ja no és vàlida
+            pageEndKeys.remove(page);
+        }
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+        trimPages();
+        return true;
+    }
+
+    /**
+     * @author giser
+     * Substitueix una cançó carregada per la seva versió modificada, mantenint-ne la posició.
+     * @param song la cançó modificada, amb el mateix id.
+     * @return <code>true</code> si s'ha substituït; <code>false</code> si la cançó no està carregada
+     *         o la modificació en canvia la posició en l'ordre de la llista.
+     */
+    public boolean replaceSong(SongRow song) {
+        int index = indexOfSong(song.id());
+        if (index < 0) {
+            return false;
+        }
+        int page = index / PAGE_SIZE;
+        List<SongRow> rows = new ArrayList<>(pages.get(page));
+        if (query.sort().comparator().compare(rows.get(index % PAGE_SIZE), song) != 0) {
+            return false;
+        }
+        SongRow old = rows.set(index % PAGE_SIZE, song);
+        pages.put(page, rows);
+        beginChange();
+        nextSet(index, old);
+        endChange();
+        return true;
+    }
+
+    /**
+     * @author giser
+     * Treu una cançó carregada de la llista. Les pàgines carregades següents es desplacen una posició;
+     * les que no es poden completar es descarten, i les seves files es notifiquen com a "carregant" perquè la vista
+     * les torni a consultar.
+     * @param songId l'id de la cançó.
+     * @return <code>true</code> si s'ha tret; <code>false</code> si la cançó no està carregada.
+     */
+    public boolean removeSong(int songId) {
+        int index = indexOfSong(songId);
+        if (index < 0) {
+            return false;
+        }
+        int page = index / PAGE_SIZE;
+        cancelPending(page);
+        List<SongRow> rows = new ArrayList<>(pages.get(page));
+        SongRow removed = rows.remove(index % PAGE_SIZE);
+        pages.put(page, rows);
+
+        // La primera fila de cada pàgina carregada següent passa a ser l'última de l'anterior
+        int next = page + 1;
+        while (pages.containsKey(next)) {
+            List<SongRow> nextRows = new ArrayList<>(pages.get(next));
+            rows.add(nextRows.remove(0));
+            pages.put(next, nextRows);
+            rows = nextRows;
+            next++;
+        }
+        size--;
+        int lastPage = (size - 1) / PAGE_SIZE;
+        int shortPage = next - 1;
+        // Les pàgines no consecutives ja no corresponen a la seva posició
+        List<Map.Entry<Integer, List<SongRow>>> dropped = new ArrayList<>();
+        Iterator<Map.Entry<Integer, List<SongRow>>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, List<SongRow>> entry = it.next();
+            if (entry.getKey() >= next) {
+                dropped.add(entry);
+                it.remove();
+            }
+        }
+        // Una pàgina incompleta que no és la darrera s'ha de tornar a consultar
+        if (rows.isEmpty() || (shortPage < lastPage && rows.size() < PAGE_SIZE)) {
+            pages.remove(shortPage);
+            dropped.add(Map.entry(shortPage, rows));
+        }
+        // Recalculem les claus finals a partir de la pàgina modificada
+        pageEndKeys.tailMap(page, true).clear();
+        for (int p = page; p < next; p++) {
+            List<SongRow> pageRows = pages.get(p);
+            if (pageRows != null && !pageRows.isEmpty()) {
+                pageEndKeys.put(p, pageRows.get(pageRows.size() - 1));
+            }
+        }
+
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+        // Les files de les pàgines descartades tornen a ser "carregant"
+        for (Map.Entry<Integer, List<SongRow>> entry : dropped) {
+            pageUnloaded(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * @author giser
+     * Prepara la lectura de les cançons de les posicions indicades, per exemple les seleccionades a la taula.
+     * Les cançons de les pàgines carregades es prenen ara; la tasca retornada consulta les pàgines que falten,
+     * en ordre i continuant cadascuna des de l'última cançó de l'anterior, i s'ha d'executar en segon pla.
+     * Les pàgines consultades no s'afegeixen a la llista.
+     * @param indices les posicions de les cançons.
+     * @return la tasca que retorna les cançons, en el mateix ordre que les posicions.
+     */
+    public AsyncDataAccess.DataTask<List<SongRow>> songsAt(List<Integer> indices) {
+        SongRow[] rows = new SongRow[indices.size()];
+        // Posicions (dins de rows) que falten de cada pàgina no carregada
+        TreeMap<Integer, List<Integer>> missing = new TreeMap<>();
+        for (int i = 0; i < rows.length; i++) {
+            int index = indices.get(i);
+            List<SongRow> pageRows = pages.get(index / PAGE_SIZE);
+            if (pageRows != null && index % PAGE_SIZE < pageRows.size()) {
+                rows[i] = pageRows.get(index % PAGE_SIZE);
+            } else {
+                missing.computeIfAbsent(index / PAGE_SIZE, page -> new ArrayList<>()).add(i);
+            }
+        }
+        TreeMap<Integer, SongRow> endKeys = new TreeMap<>(pageEndKeys);
+        return () -> {
+            for (Map.Entry<Integer, List<Integer>> entry : missing.entrySet()) {
+                int page = entry.getKey();
+                Map.Entry<Integer, SongRow> known = endKeys.floorEntry(page - 1);
+                int offset = (page - (known != null ? known.getKey() + 1 : 0)) * PAGE_SIZE;
+                List<SongRow> pageRows = loadPage(query, known != null ? known.getValue() : null, offset);
+                if (!pageRows.isEmpty()) {
+                    endKeys.put(page, pageRows.get(pageRows.size() - 1));
+                }
+                for (int i : entry.getValue()) {
+                    int offsetInPage = indices.get(i) % PAGE_SIZE;
+                    if (offsetInPage < pageRows.size()) {
+                        rows[i] = pageRows.get(offsetInPage);
+                    }
+                }
+            }
+            List<SongRow> songs = new ArrayList<>(rows.length);
+            for (SongRow row : rows) {
+                if (row != null) {
+                    songs.add(row);
+                }
+            }
+            return songs;
+        };
+    }
+
+    /**
+     * @author giser
+     * Aplica amb una sola notificació un canvi de moltes cançons a partir d'una posició, com una eliminació o un
+     * canvi d'àlbum massius: la llista passa a tenir la mida indicada i les pàgines a partir de la de la posició
+     * es descarten perquè es tornin a consultar quan es necessitin. Les anteriors es conserven, i la vista no es mou.
+     * Si la mida nova no arriba a la posició (perquè mentrestant se n'han eliminat més), es descarta des de la pàgina
+     * on acaba la llista.
+     * @param fromIndex la primera posició que pot haver canviat.
+     * @param newSize   el nombre total de cançons després del canvi.
+     */
+    public void reloadFrom(int fromIndex, int newSize) {
+        int page = Math.min(fromIndex, newSize) / PAGE_SIZE;
+        int from = page * PAGE_SIZE;
+        int oldSize = size;
+        cancelPending(page);
+        pages.keySet().removeIf(p -> p >= page);
+        pageEndKeys.tailMap(page, true).clear();
+        size = newSize;
+        if (oldSize > from || newSize > from) {
+            beginChange();
+            nextReplace(from, Math.max(from, newSize), Collections.nCopies(Math.max(0, oldSize - from), null));
+            endChange();
+        }
+    }
+
+    /**
+     * @author giser
+     * Cerca la posició d'una cançó entre les pàgines carregades.
+     * @param songId l'id de la cançó.
+     * @return la posició de la cançó a la llista, o -1 si no està carregada.
+     */
+    private int indexOfSong(int songId) {
+        for (Map.Entry<Integer, List<SongRow>> entry : pages.entrySet()) {
+            List<SongRow> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).id() == songId) {
+                    return entry.getKey() * PAGE_SIZE + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @author giser
+     * Cancel·la les consultes pendents de les pàgines a partir de la indicada, perquè el seu resultat ja no és vàlid.
+     * @param fromPage la primera pàgina afectada.
+     */
+    private void cancelPending(int fromPage) {
+        Iterator<Map.Entry<Integer, AsyncDataAccess.Request>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, AsyncDataAccess.Request> entry = it.next();
+            if (entry.getKey() >= fromPage) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Demana la càrrega d'una pàgina en segon pla, si no s'està carregant ja.
+     * La consulta continua a partir de l'última clau coneguda anterior a la pàgina; si no és la de la pàgina
+     * immediatament anterior, el DAO busca la clau on comença la pàgina recorrent només l'índex de l'ordre.
+     * @param page el número de pàgina.
+     */
+    private void requestPage(int page) {
+        if (disposed || pending.containsKey(page)) {
+            return;
+        }
+        Map.Entry<Integer, SongRow> known = pageEndKeys.floorEntry(page - 1);
+        SongRow after = known != null ? known.getValue() : null;
+        int offset = (page - (known != null ? known.getKey() + 1 : 0)) * PAGE_SIZE;
+
+        pending.put(page, loader.load(after, offset, rows -> pageLoaded(page, rows), e -> pending.remove(page)));
+
+        // Si l'usuari es desplaça ràpidament, les pàgines demanades fa més temps ja no són visibles
+        if (pending.size() > MAX_PENDING) {
+            Iterator<Map.Entry<Integer, AsyncDataAccess.Request>> it = pending.entrySet().iterator();
+            it.next().getValue().cancel();
+            it.remove();
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix una pàgina de la consulta. S'executa en segon pla.
+     * @param query  la consulta.
+     * @param after  l'última cançó coneguda anterior a la pàgina, o <code>null</code> si no n'hi ha cap.
+     * @param offset el nombre de cançons que se salten després de <code>after</code>.
+     * @return les cançons de la pàgina.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static List<SongRow> loadPage(SongQuery query, SongRow after, int offset) throws SQLException {
+        // Si l'índex en memòria està construït, les pàgines de la consulta per defecte no accedeixen a la base de dades
+        List<SongRow> rows = query.isDefault() ? SongIndex.page(query.artistId(), query.albumId(),
+                after != null ? after.id() : Integer.MIN_VALUE, offset, PAGE_SIZE) : null;
+        return rows != null ? rows : MusicDAO.getSongsPage(query, after, offset, PAGE_SIZE);
+    }
+
+    /**
+     * @author giser
+     * Guarda una pàgina carregada, allibera les pàgines menys utilitzades i notifica el canvi a la vista.
+     * Si la pàgina té menys cançons de les esperades, la consulta ja no en té més (per exemple, perquè una altra
+     * aplicació n'ha eliminat): la llista s'acaba a la darrera cançó de la pàgina i es descarten les pàgines següents.
+     * @param page el número de pàgina.
+     * @param rows les cançons de la pàgina.
+     */
+    private void pageLoaded(int page, List<SongRow> rows) {
+        pending.remove(page);
+        if (disposed) {
+            return;
+        }
+        pages.put(page, rows);
+        if (!rows.isEmpty()) {
+            pageEndKeys.put(page, rows.get(rows.size() - 1));
+        }
+
+        int from = page * PAGE_SIZE;
+        int to = Math.max(from, Math.min(from + PAGE_SIZE, size));
+        int oldSize = size;
+        if (rows.size() < to - from) {
+            size = from + rows.size();
+            to = size;
+            cancelPending(page + 1);
+            pages.keySet().removeIf(p -> p > page);
+            pageEndKeys.tailMap(page, false).clear();
+            if (rows.isEmpty()) {
+                pages.remove(page);
+                pageEndKeys.remove(page);
+            }
+        }
+
+        // Les files de la pàgina passen de "carregant" (null) a la cançó, i les que ja no existeixen es treuen
+        beginChange();
+        if (to > from) {
+            nextReplace(from, to, Collections.nCopies(to - from, null));
+        }
+        if (size < oldSize) {
+            nextRemove(size, Collections.nCopies(oldSize - size, null));
+        }
+        endChange();
+
+        trimPages();
+    }
+
+    /**
+     * @author giser
+     * Manté acotat el nombre de files en memòria: les pàgines menys utilitzades s'alliberen i tornen a ser "carregant".
+     * Primer es treuen del mapa i després es notifica, perquè la vista pot tornar a consultar la llista.
+     */
+    private void trimPages() {
+        List<Map.Entry<Integer, List<SongRow>>> evicted = new ArrayList<>();
+        Iterator<Map.Entry<Integer, List<SongRow>>> it = pages.entrySet().iterator();
+        while (pages.size() > MAX_PAGES) {
+            evicted.add(it.next());
+            it.remove();
+        }
+        for (Map.Entry<Integer, List<SongRow>> entry : evicted) {
+            pageUnloaded(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @author giser
+     * Notifica a la vista que les files d'una pàgina que ja no està carregada tornen a ser "carregant" (null),
+     * perquè les cel·les visibles les tornin a demanar.
+     * @param page el número de pàgina.
+     * @param rows les cançons que tenia la pàgina.
+     */
+    private void pageUnloaded(int page, List<SongRow> rows) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, size);
+        if (to <= from) {
+            return;
+        }
+        List<SongRow> removed = new ArrayList<>(rows);
+        while (removed.size() < to - from) {
+            removed.add(null);
+        }
+        beginChange();
+        nextReplace(from, to, removed.subList(0, to - from));
+        endChange();
+    }
+}
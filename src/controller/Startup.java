@@ -0,0 +1,256 @@
+package controller;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import model.DatabaseChangeWatcher;
+import model.DatabaseConnection;
+import model.DatabaseInitializer;
+import model.ReferenceData;
+import model.SongIndex;
+
+/**
+ * @author giser
+ * Arrencada de l'aplicació en paral·lel.
+ * La preparació de la base de dades (crear-la a partir de la imatge si cal, obrir les connexions, crear o migrar
+ * l'esquema i carregar les dades de referència) s'executa en un fil propi mentre el fil de JavaFX carrega el FXML
+ * i mostra la finestra, que s'omple a mesura que arriben les dades. Les peticions de {@link AsyncDataAccess} esperen que la base de dades estigui preparada.
+ * Es mesura cada fase (en quin fil s'ha executat, quan ha començat i quant ha durat) i es registra com a
+ * esdeveniment JFR ("projectedam.StartupPhase"). Amb <code>-Dmusic.startupReport=true</code>, quan la finestra ja té
+ * les dades, també se n'escriu el resum per consola.
+ */
+public class Startup {
+
+    // Elements de la finestra que s'han d'omplir perquè l'arrencada es consideri acabada.
+    static final String VIEW_SONGS = "llista de cançons";
+    static final String VIEW_FILTERS = "ComboBox d'artistes i àlbums";
+
+    // Indica si s'escriu el resum de l'arrencada per consola.
+    private static final boolean REPORT = Boolean.getBoolean("music.startupReport");
+
+    /**
+     * @author giser
+     * Fase de l'arrencada, amb els temps en nanosegons des de l'inici del procés.
+     */
+    private record Phase(String name, String thread, long start, long end) {
+    }
+
+    /**
+     * Esdeveniment JFR d'una fase de l'arrencada. Els temps són des de l'inici del procés, com els del resum.
+     */
+    @Name("projectedam.StartupPhase")
+    @Label("Fase de l'arrencada")
+    @Category({"Music", "Arrencada"})
+    @Description("Fase de l'arrencada de l'aplicació")
+    static class StartupPhaseEvent extends Event {
+        @Label("Fase")
+        String phase;
+
+        @Label("Fil")
+        String thread;
+
+        @Label("Inici")
+        @Timespan(Timespan.NANOSECONDS)
+        long start;
+
+        @Label("Durada")
+        @Timespan(Timespan.NANOSECONDS)
+        long duration;
+    }
+
+    // Origen dels temps: l'inici del procés si el sistema el coneix, o la càrrega d'aquesta classe si no.
+    private static final long ORIGIN = System.nanoTime() - ProcessHandle.current().info().startInstant()
+            .map(start -> Duration.between(start, Instant.now()).toNanos())
+            .orElse(0L);
+
+    // Fases mesurades, en l'ordre en què acaben; el resum les ordena per l'inici.
+    private static final List<Phase> phases = new ArrayList<>();
+
+    // Elements de la finestra que encara no s'han omplert.
+    private static final Set<String> pendingViews = new HashSet<>(Set.of(VIEW_SONGS, VIEW_FILTERS));
+
+    // Base de dades preparada (connexions obertes i esquema al dia) i dades de referència carregades.
+    private static CompletableFuture<Void> database;
+    private static CompletableFuture<Void> referenceData;
+
+    /**
+     * @author giser
+     * Comença a preparar la base de dades en un fil de fons, si encara no s'havia començat.
+     * Es crida tan aviat com es pot (abans d'inicialitzar JavaFX), perquè com més aviat comenci, més temps se solapa.
+     */
+    static synchronized void begin() {
+        if (database != null) {
+            return;
+        }
+        mark("inici de la preparació");
+        database = new CompletableFuture<>();
+        referenceData = new CompletableFuture<>();
+        Thread thread = new Thread(Startup::prepareDatabase, "music-startup");
+        thread.setDaemon(true);
+        thread.start();
+        AsyncDataAccess.waitFor(database);
+    }
+
+    /**
+     * @author giser
+     * Prepara la base de dades: la crea a partir de la imatge si encara no existeix, obre les connexions
+     * d'escriptura i de lectura, crea o migra l'esquema, inicia el vigilant de canvis d'altres aplicacions
+     * i carrega les dades de referència i l'índex de cançons. Cada pas allibera els que l'esperen tan bon punt acaba.
+     */
+    private static void prepareDatabase() {
+        try {
+            // En la primera execució, la base de dades es crea copiant la imatge del build (abans d'obrir-la)
+            long start = System.nanoTime();
+            if (DatabaseInitializer.installSnapshot()) {
+                phase("copiar la imatge", start);
+            }
+            // La connexió d'escriptura activa el mode WAL; la de lectura és la que farà servir la primera consulta
+            start = System.nanoTime();
+            DatabaseConnection.write(conn -> null);
+            DatabaseConnection.read(conn -> null);
+            phase("obrir connexions", start);
+            // Un error en l'script o en les migracions fa fallar l'arrencada en lloc de deixar l'esquema a mitges
+            start = System.nanoTime();
+            DatabaseInitializer.createSchema();
+            phase("esquema i migracions", start);
+            // El vigilant pren l'estat de la base de dades abans de carregar-la a memòria, perquè no se li escapi
+            // cap canvi d'una altra aplicació fet mentre es carrega
+            start = System.nanoTime();
+            try {
+                DatabaseChangeWatcher.start();
+                phase("vigilant de canvis", start);
+            } catch (SQLException e) {
+                System.err.println("No s'ha pogut iniciar el vigilant de canvis: " + e.getMessage());
+            }
+            database.complete(null);
+        } catch (Exception e) {
+            database.completeExceptionally(e);
+            referenceData.completeExceptionally(e);
+            return;
+        }
+        // Les consultes de la llista de cançons ja poden començar mentre es carreguen els artistes i els àlbums
+        try {
+            long start = System.nanoTime();
+            ReferenceData.load();
+            phase("dades de referència", start);
+            referenceData.complete(null);
+        } catch (Exception e) {
+            referenceData.completeExceptionally(e);
+        }
+        // L'índex en memòria és opcional: mentre no està construït, la llista es llegeix de la base de dades
+        try {
+            long start = System.nanoTime();
+            if (SongIndex.build()) {
+                phase("índex de cançons", start);
+            }
+        } catch (Exception e) {
+            System.err.println("No s'ha pogut construir l'índex de cançons: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna la càrrega de les dades de referència de l'arrencada, que acaba quan {@link ReferenceData} ja les té.
+     * @return la tasca de càrrega.
+     */
+    static synchronized CompletableFuture<Void> referenceData() {
+        begin();
+        return referenceData;
+    }
+
+    /**
+     * @author giser
+     * Guarda una fase de l'arrencada que acaba ara, executada en el fil actual.
+     * @param name  el nom de la fase.
+     * @param start el moment d'inici de la fase, de {@link System#nanoTime()}.
+     */
+    static void phase(String name, long start) {
+        record(name, start, System.nanoTime());
+    }
+
+    /**
+     * @author giser
+     * Guarda un moment de l'arrencada (una fase sense durada).
+     * @param name el nom del moment.
+     */
+    static void mark(String name) {
+        long now = System.nanoTime();
+        record(name, now, now);
+    }
+
+    /**
+     * @author giser
+     * Indica que un element de la finestra ja mostra les dades. Quan s'han omplert tots i s'ha demanat
+     * (<code>-Dmusic.startupReport=true</code>), s'escriu el resum de l'arrencada. Les crides posteriors (recàrregues) no fan res.
+     * @param view l'element omplert ({@link #VIEW_SONGS} o {@link #VIEW_FILTERS}).
+     */
+    static void viewFilled(String view) {
+        boolean last;
+        synchronized (Startup.class) {
+            if (!pendingViews.remove(view)) {
+                return;
+            }
+            last = pendingViews.isEmpty();
+        }
+        mark(view);
+        if (last && REPORT) {
+            System.out.print(report());
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna l'error d'una tasca de l'arrencada sense l'embolcall de {@link CompletableFuture}.
+     * @param error l'error rebut.
+     * @return l'error original.
+     */
+    static Throwable cause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * @author giser
+     * Guarda una fase i en registra l'esdeveniment JFR, si hi ha un enregistrament actiu.
+     */
+    private static synchronized void record(String name, long start, long end) {
+        Phase phase = new Phase(name, Thread.currentThread().getName(), start - ORIGIN, end - ORIGIN);
+        phases.add(phase);
+        StartupPhaseEvent event = new StartupPhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.thread = phase.thread();
+            event.start = phase.start();
+            event.duration = phase.end() - phase.start();
+            event.commit();
+        }
+    }
+
+    /**
+     * @author giser
+     * Construeix el resum de l'arrencada: una línia per fase amb el fil, el moment d'inici i la durada en mil·lisegons.
+     * @return el resum.
+     */
+    private static synchronized String report() {
+        phases.sort(Comparator.comparingLong(Phase::start));
+        StringBuilder sb = new StringBuilder("Arrencada (ms des de l'inici del procés):\n");
+        sb.append(String.format("  %-30s %-22s %8s %8s%n", "fase", "fil", "inici", "durada"));
+        for (Phase phase : phases) {
+            sb.append(String.format("  %-30s %-22s %8.1f %8s%n", phase.name(), phase.thread(), phase.start() / 1e6,
+                    phase.end() == phase.start() ? "" : String.format("%.1f", (phase.end() - phase.start()) / 1e6)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,11 @@
+-- Migració 1: índexs per a les unions de MusicDAO
+-- Els índexs UNIQUE (artist_id, name) i (album_id, name) també comencen per la clau forana,
+-- però estan ordenats per nom i la paginació per id necessita ordenar amb un B-tree temporal.
+-- Aquests índexs només contenen la clau i l'id (rowid), en ordre d'id, i permeten cercar
+-- directament "album_id = ? AND id > ?" sense ordenar.
+
+-- Filtre per artista: album.artist_id = artist.id
+CREATE INDEX IF NOT EXISTS idx_album_artist_id ON album (artist_id);
+
+-- Filtre per àlbum i unió de cançons amb àlbums: song.album_id = album.id
+CREATE INDEX IF NOT EXISTS idx_song_album_id ON song (album_id);
@@ -0,0 +1,90 @@
+-- Migració 2: cerca de text complet (FTS5) sobre els noms de cançons, àlbums i artistes
+-- Cada fila de song_search correspon a una cançó (rowid = song.id) amb el seu títol, àlbum i artista.
+-- Els noms es normalitzen sense accents i es guarden índexs de prefixos de 2 i 3 caràcters
+-- perquè les cerques mentre s'escriu ("met*") no hagin de recórrer tots els termes.
+CREATE VIRTUAL TABLE IF NOT EXISTS song_search USING fts5 (
+    title,
+    album,
+    artist,
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3'
+);
+
+-- Ordenació per rellevància (bm25): el títol pesa més que l'àlbum i l'àlbum més que l'artista
+INSERT INTO song_search (song_search, rank) VALUES ('rank', 'bm25(4.0, 2.0, 1.0)');
+
+-- Contingut inicial
+INSERT INTO song_search (rowid, title, album, artist)
+SELECT s.id, s.name, al.name, ar.name
+FROM song s
+JOIN album al ON s.album_id = al.id
+JOIN artist ar ON al.artist_id = ar.id;
+
+INSERT INTO song_search (song_search) VALUES ('optimize');
+
+---------------------------------------------------
+-- Triggers que mantenen song_search sincronitzada
+---------------------------------------------------
+
+-- Cançó nova
+CREATE TRIGGER IF NOT EXISTS song_search_insert AFTER INSERT ON song
+BEGIN
+    INSERT INTO song_search (rowid, title, album, artist)
+    SELECT new.id, new.name, al.name, ar.name
+    FROM album al
+    JOIN artist ar ON al.artist_id = ar.id
+    WHERE al.id = new.album_id;
+END;
+
+-- Cançó eliminada
+CREATE TRIGGER IF NOT EXISTS song_search_delete AFTER DELETE ON song
+BEGIN
+    DELETE FROM song_search WHERE rowid = old.id;
+END;
+
+-- Cançó modificada (nom o àlbum)
+CREATE TRIGGER IF NOT EXISTS song_search_update AFTER UPDATE OF id, name, album_id ON song
+BEGIN
+    DELETE FROM song_search WHERE rowid = old.id;
+    INSERT INTO song_search (rowid, title, album, artist)
+    SELECT new.id, new.name, al.name, ar.name
+    FROM album al
+    JOIN artist ar ON al.artist_id = ar.id
+    WHERE al.id = new.album_id;
+END;
+
+-- Àlbum modificat (nom o artista): es tornen a indexar les seves cançons
+CREATE TRIGGER IF NOT EXISTS album_search_update AFTER UPDATE OF name, artist_id ON album
+BEGIN
+    DELETE FROM song_search WHERE rowid IN (SELECT id FROM song WHERE album_id = old.id);
+    INSERT INTO song_search (rowid, title, album, artist)
+    SELECT s.id, s.name, new.name, ar.name
+    FROM song s
+    JOIN artist ar ON ar.id = new.artist_id
+    WHERE s.album_id = new.id;
+END;
+
+-- Àlbum eliminat: les seves cançons deixen de ser visibles
+CREATE TRIGGER IF NOT EXISTS album_search_delete AFTER DELETE ON album
+BEGIN
+    DELETE FROM song_search WHERE rowid IN (SELECT id FROM song WHERE album_id = old.id);
+END;
+
+-- Artista modificat: es tornen a indexar les cançons dels seus àlbums
+CREATE TRIGGER IF NOT EXISTS artist_search_update AFTER UPDATE OF name ON artist
+BEGIN
+    DELETE FROM song_search WHERE rowid IN (
+        SELECT s.id FROM song s JOIN album al ON s.album_id = al.id WHERE al.artist_id = old.id);
+    INSERT INTO song_search (rowid, title, album, artist)
+    SELECT s.id, s.name, al.name, new.name
+    FROM song s
+    JOIN album al ON s.album_id = al.id
+    WHERE al.artist_id = new.id;
+END;
+
+-- Artista eliminat: les cançons dels seus àlbums deixen de ser visibles
+CREATE TRIGGER IF NOT EXISTS artist_search_delete AFTER DELETE ON artist
+BEGIN
+    DELETE FROM song_search WHERE rowid IN (
+        SELECT s.id FROM song s JOIN album al ON s.album_id = al.id WHERE al.artist_id = old.id);
+END;
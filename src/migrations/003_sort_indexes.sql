@@ -0,0 +1,22 @@
+-- Migració 3: índexs per ordenar la llista de cançons per títol, durada, àlbum o artista
+-- Cada índex conté la columna i l'id (rowid), en aquest ordre: SQLite recorre l'índex en l'ordre de la llista
+-- (endavant o enrere) i continua la paginació a partir de l'última fila, sense ordenar la taula sencera.
+-- L'índex de durada també serveix per al filtre per interval de durada.
+
+-- Ordre per títol: ORDER BY s.name, s.id
+CREATE INDEX IF NOT EXISTS idx_song_name ON song (name);
+
+-- Ordre i filtre per durada: ORDER BY s.duration, s.id i s.duration BETWEEN ? AND ?
+CREATE INDEX IF NOT EXISTS idx_song_duration ON song (duration);
+
+-- Ordre per àlbum: ORDER BY al.name, al.id, s.id (les cançons de cada àlbum, amb idx_song_album_id)
+CREATE INDEX IF NOT EXISTS idx_album_name ON album (name);
+
+-- Ordre per artista: ORDER BY ar.name, ar.id, al.id, s.id (els àlbums de cada artista, amb idx_album_artist_id)
+CREATE INDEX IF NOT EXISTS idx_artist_name ON artist (name);
+
+-- Estadístiques dels índexs nous, perquè el planificador els triï per ordenar les llistes grans
+ANALYZE idx_song_name;
+ANALYZE idx_song_duration;
+ANALYZE idx_album_name;
+ANALYZE idx_artist_name;
@@ -0,0 +1,30 @@
+-- Migració 4: registre de canvis de cançons, perquè cada aplicació que obre la base de dades pugui saber
+-- quines cançons han modificat o eliminat les altres (DatabaseChangeWatcher) sense tornar a llegir la llista sencera.
+-- Cada fila és una cançó modificada o eliminada amb l'àlbum que tenia abans del canvi.
+-- Les insercions no es registren: les cançons noves es troben pel seu id, més gran que l'últim conegut,
+-- de manera que les importacions massives no escriuen cap fila de més.
+CREATE TABLE IF NOT EXISTS song_change (
+    seq INTEGER NOT NULL,
+    song_id INTEGER NOT NULL,
+    album_id INTEGER NOT NULL,
+    PRIMARY KEY (seq)
+);
+
+-- Cançó modificada (si en canvia l'id, també es registra el nou)
+CREATE TRIGGER IF NOT EXISTS song_change_update AFTER UPDATE ON song
+BEGIN
+    INSERT INTO song_change (song_id, album_id) VALUES (old.id, old.album_id);
+    INSERT INTO song_change (song_id, album_id) SELECT new.id, new.album_id WHERE new.id <> old.id;
+END;
+
+-- Cançó eliminada
+CREATE TRIGGER IF NOT EXISTS song_change_delete AFTER DELETE ON song
+BEGIN
+    INSERT INTO song_change (song_id, album_id) VALUES (old.id, old.album_id);
+END;
+
+-- El registre només guarda els últims 10000 canvis; una aplicació que n'ha perdut algun torna a llegir-ho tot
+CREATE TRIGGER IF NOT EXISTS song_change_trim AFTER INSERT ON song_change
+BEGIN
+    DELETE FROM song_change WHERE seq <= new.seq - 10000;
+END;
@@ -0,0 +1,26 @@
+-- Migració 5: indexació diferida de la cerca de text complet en les càrregues massives (SongSearchIndex)
+-- Cada fila de song_search_pending és un rang de cançons inserides per una càrrega massiva que encara no s'han
+-- afegit a song_search. La càrrega hi obre un rang (last_id nul) al començament de cada transacció i el tanca
+-- abans de confirmar-la; mentre hi ha un rang obert, el trigger d'inserció no indexa les cançons una a una.
+-- Els rangs tancats s'indexen al final de la càrrega o, si l'aplicació s'ha aturat abans, en tornar-la a obrir.
+-- Només s'escriuen files: a diferència d'eliminar i tornar a crear el trigger, no canvia l'esquema
+-- i les sentències preparades de les altres connexions continuen sent vàlides.
+CREATE TABLE IF NOT EXISTS song_search_pending (
+    id INTEGER NOT NULL,
+    first_id INTEGER NOT NULL,
+    last_id INTEGER,
+    PRIMARY KEY (id)
+);
+
+-- Cançó nova, excepte dins d'una càrrega massiva
+DROP TRIGGER IF EXISTS song_search_insert;
+
+CREATE TRIGGER song_search_insert AFTER INSERT ON song
+WHEN NOT EXISTS (SELECT 1 FROM song_search_pending WHERE last_id IS NULL)
+BEGIN
+    INSERT INTO song_search (rowid, title, album, artist)
+    SELECT new.id, new.name, al.name, ar.name
+    FROM album al
+    JOIN artist ar ON al.artist_id = ar.id
+    WHERE al.id = new.album_id;
+END;
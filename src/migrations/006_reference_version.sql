@@ -0,0 +1,45 @@
+-- Migració 6: versió de les dades de referència (artistes i àlbums), perquè cada aplicació que obre la base de dades
+-- sàpiga si les altres els han canviat (DatabaseChangeWatcher) sense tornar a llegir les taules.
+-- La mida i l'últim id de les taules no detecten els canvis de nom ni una eliminació seguida d'una inserció;
+-- aquí cada inserció incrementa "inserted" i cada modificació o eliminació, "changed". Les files de cançons en memòria
+-- porten el nom de l'àlbum i de l'artista: una inserció no les afecta, però un canvi de nom o una eliminació sí.
+CREATE TABLE IF NOT EXISTS reference_version (
+    id INTEGER NOT NULL,
+    inserted INTEGER NOT NULL,
+    changed INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT OR IGNORE INTO reference_version (id, inserted, changed) VALUES (1, 0, 0);
+
+-- Artista nou, modificat o eliminat
+CREATE TRIGGER IF NOT EXISTS artist_version_insert AFTER INSERT ON artist
+BEGIN
+    UPDATE reference_version SET inserted = inserted + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS artist_version_update AFTER UPDATE ON artist
+BEGIN
+    UPDATE reference_version SET changed = changed + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS artist_version_delete AFTER DELETE ON artist
+BEGIN
+    UPDATE reference_version SET changed = changed + 1 WHERE id = 1;
+END;
+
+-- Àlbum nou, modificat o eliminat
+CREATE TRIGGER IF NOT EXISTS album_version_insert AFTER INSERT ON album
+BEGIN
+    UPDATE reference_version SET inserted = inserted + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS album_version_update AFTER UPDATE ON album
+BEGIN
+    UPDATE reference_version SET changed = changed + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS album_version_delete AFTER DELETE ON album
+BEGIN
+    UPDATE reference_version SET changed = changed + 1 WHERE id = 1;
+END;
@@ -0,0 +1,11 @@
+package model;
+
+/**
+ * @author giser
+ * Representa un àlbum de la taula "album".
+ * @param id       l'identificador de l'àlbum.
+ * @param artistId l'identificador de l'artista de l'àlbum.
+ * @param title    el títol de l'àlbum.
+ */
+public record Album(int id, int artistId, String title) {
+}
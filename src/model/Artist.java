@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * @author giser
+ * Representa un artista de la taula "artist".
+ * @param id   l'identificador de l'artista.
+ * @param name el nom de l'artista.
+ */
+public record Artist(int id, String name) {
+}
@@ -0,0 +1,524 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * @author giser
+ * Exportació del catàleg de cançons a un fitxer en format CSV, JSON Lines o binari.
+ * Les cançons es llegeixen amb un cursor que només avança, de {@link #FETCH_SIZE} en {@link #FETCH_SIZE} files,
+ * i es codifiquen directament en UTF-8 a un buffer que s'escriu al fitxer amb un {@link FileChannel} quan és ple:
+ * la memòria utilitzada no depèn de la mida del catàleg.
+ * L'exportació es fa amb una sola connexió de lectura, de manera que el fitxer és una imatge coherent de la base de dades
+ * (en mode WAL, les escriptures posteriors no s'hi veuen). S'escriu primer en un fitxer temporal i només substitueix
+ * el fitxer de destí si acaba bé.
+ * Els fitxers CSV i JSON Lines tenen els mateixos camps que llegeix {@link CatalogImporter}, de manera que es poden tornar a importar.
+ * L'any 0 (àlbums importats sense any) s'hi escriu buit (CSV) o <code>null</code> (JSON), perquè l'importador no l'accepta.
+ */
+public class CatalogExporter {
+
+    // Nombre de files que es demanen al controlador JDBC en cada lectura.
+    private static final int FETCH_SIZE = 1000;
+
+    // Mida del buffer d'escriptura.
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // Cada quantes cançons s'informa del progrés.
+    private static final int PROGRESS_ROWS = 50_000;
+
+    // Capçalera dels fitxers binaris: "MDBX" i la versió del format.
+    private static final byte[] BINARY_MAGIC = {'M', 'D', 'B', 'X'};
+    private static final byte BINARY_VERSION = 1;
+
+    // Tipus dels registres del format binari.
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_ALBUM = 1;
+    private static final byte RECORD_SONG = 2;
+
+    // Cançons amb el seu àlbum, artista i segell. S'ordenen per àlbum perquè així es recorre l'índex únic (album_id, name)
+    // sense ordenar res en memòria, i les cançons de cada àlbum queden juntes (el format binari només n'escriu l'àlbum una vegada).
+    private static final String EXPORT_SONGS =
+            "SELECT s.album_id, rl.name, ar.name, al.name, al.year, s.name, s.duration " +
+            "FROM song s " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id " +
+            "JOIN record_label rl ON ar.record_label_id = rl.id " +
+            "ORDER BY s.album_id, s.name";
+
+    /**
+     * @author giser
+     * Formats d'exportació.
+     */
+    public enum Format {
+        /** Text separat per comes (RFC 4180) amb capçalera. */
+        CSV("csv"),
+        /** Un objecte JSON per línia. */
+        JSONL("jsonl"),
+        /**
+         * Format binari compacte (extensió ".mdbx", versió 1):
+         * <pre>
+         * fitxer   = "MDBX" (4D 44 42 58) versió (1 byte, 01) registre* final
+         * registre = 01 text:segell text:artista text:àlbum varint:any     (àlbum)
+         *          | 02 text:títol double:durada                          (cançó)
+         * final    = 00 long:cançons
+         * text     = varint:longitud en bytes, i els bytes en UTF-8
+         * </pre>
+         * Cada registre comença pel seu tipus (1 byte). Un registre d'àlbum s'aplica a tots els registres de cançó que el
+         * segueixen, fins al següent àlbum; les cançons surten ordenades per àlbum i títol, i cada àlbum només s'escriu
+         * una vegada. Els enters de mida variable (varint) són no negatius i es codifiquen de 7 en 7 bits, començant pels
+         * de menys pes, amb el bit alt de cada byte a 1 si en segueix un altre (com a molt 5 bytes); l'any 0 vol dir que
+         * no se sap. Els <code>double</code> (IEEE 754) i els <code>long</code> ocupen 8 bytes en ordre big-endian.
+         * El registre final porta el nombre de cançons del fitxer i no el segueix res més. Els caràcters substituts
+         * sense parella, que no es poden codificar en UTF-8, s'escriuen com a '?' (la base de dades ja els desa així).
+         */
+        BINARY("mdbx");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @author giser
+         * Retorna l'extensió dels fitxers d'aquest format, sense el punt.
+         * @return l'extensió.
+         */
+        public String extension() {
+            return extension;
+        }
+
+        /**
+         * @author giser
+         * Dedueix el format a partir de l'extensió del fitxer: ".jsonl" o ".json" per a JSON Lines,
+         * ".mdbx" per al format binari i la resta com a CSV.
+         * @param file el fitxer.
+         * @return el format.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return JSONL;
+            }
+            return name.endsWith("." + BINARY.extension) ? BINARY : CSV;
+        }
+    }
+
+    /**
+     * @author giser
+     * Resultat d'una exportació.
+     * @param songs  el nombre de cançons exportades.
+     * @param bytes  la mida del fitxer.
+     * @param millis el temps total en mil·lisegons.
+     */
+    public record Result(long songs, long bytes, long millis) {
+    }
+
+    /**
+     * @author giser
+     * Rep el nombre de cançons exportades fins ara, periòdicament durant l'exportació.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(long songs);
+    }
+
+    /**
+     * @author giser
+     * Exporta totes les cançons al fitxer indicat. La tasca s'atura si s'interromp el fil, i llavors no es crea el fitxer.
+     * @param file     el fitxer de destí; si ja existeix, se substitueix.
+     * @param format   el format del fitxer.
+     * @param listener l'objecte que rep el progrés; pot ser <code>null</code>.
+     * @return el resultat de l'exportació.
+     * @throws IOException  si no es pot escriure el fitxer o s'ha interromput l'exportació.
+     * @throws SQLException si es produeix un error en llegir la base de dades.
+     */
+    public static Result exportFile(Path file, Format format, ProgressListener listener) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling("." + target.getFileName() + ".tmp");
+        try {
+            long songs;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                Output out = new Output(channel);
+                songs = QueryMetrics.time("export:" + format.extension(), Long::intValue,
+                        () -> DatabaseConnection.read(conn -> writeSongs(conn, format, out, listener)));
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Result(songs, Files.size(target), (System.nanoTime() - start) / 1_000_000);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix les cançons amb la connexió indicada i les escriu al buffer en el format demanat.
+     * @param conn     la connexió prestada per {@link DatabaseConnection}.
+     * @param format   el format del fitxer.
+     * @param out      el buffer de sortida.
+     * @param listener l'objecte que rep el progrés; pot ser <code>null</code>.
+     * @return el nombre de cançons escrites.
+     * @throws SQLException si es produeix un error en llegir la base de dades.
+     */
+    private static long writeSongs(Connection conn, Format format, Output out, ProgressListener listener) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, EXPORT_SONGS);
+        pstmt.setFetchSize(FETCH_SIZE);
+        long songs = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            // Els errors d'escriptura es porten fins a exportFile dins d'una UncheckedIOException,
+            // perquè les tasques de DatabaseConnection només poden llençar SQLException
+            try {
+                writeHeader(format, out);
+                int lastAlbumId = -1;
+                while (rs.next()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("S'ha interromput l'exportació");
+                    }
+                    int albumId = rs.getInt(1);
+                    String label = rs.getString(2);
+                    String artist = rs.getString(3);
+                    String album = rs.getString(4);
+                    int year = rs.getInt(5);
+                    String title = rs.getString(6);
+                    double duration = rs.getDouble(7);
+                    switch (format) {
+                        case CSV -> writeCsv(out, label, artist, album, year, title, duration);
+                        case JSONL -> writeJson(out, label, artist, album, year, title, duration);
+                        case BINARY -> {
+                            if (albumId != lastAlbumId) {
+                                out.put(RECORD_ALBUM);
+                                out.putString(label);
+                                out.putString(artist);
+                                out.putString(album);
+                                out.putVarint(year);
+                                lastAlbumId = albumId;
+                            }
+                            out.put(RECORD_SONG);
+                            out.putString(title);
+                            out.putDouble(duration);
+                        }
+                    }
+                    songs++;
+                    if (listener != null && songs % PROGRESS_ROWS == 0) {
+                        listener.progress(songs);
+                    }
+                }
+                if (format == Format.BINARY) {
+                    out.put(RECORD_END);
+                    out.putLong(songs);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (listener != null) {
+            listener.progress(songs);
+        }
+        return songs;
+    }
+
+    /**
+     * @author giser
+     * Escriu la capçalera del fitxer: els noms de les columnes en CSV i la marca i la versió en binari.
+     * @param format el format del fitxer.
+     * @param out    el buffer de sortida.
+     * @throws IOException si es produeix un error d'escriptura.
+     */
+    private static void writeHeader(Format format, Output out) throws IOException {
+        if (format == Format.CSV) {
+            out.putText("label,artist,album,year,title,duration\n");
+        } else if (format == Format.BINARY) {
+            for (byte b : BINARY_MAGIC) {
+                out.put(b);
+            }
+            out.put(BINARY_VERSION);
+        }
+    }
+
+    /**
+     * @author giser
+     * Escriu una cançó com una línia CSV. Els textos només van entre cometes si contenen comes, cometes o salts de línia,
+     * i l'any 0 es deixa buit.
+     * @throws IOException si es produeix un error d'escriptura.
+     */
+    private static void writeCsv(Output out, String label, String artist, String album, int year, String title, double duration) throws IOException {
+        putCsvField(out, label);
+        out.put((byte) ',');
+        putCsvField(out, artist);
+        out.put((byte) ',');
+        putCsvField(out, album);
+        out.put((byte) ',');
+        if (year != 0) {
+            out.putText(Integer.toString(year));
+        }
+        out.put((byte) ',');
+        putCsvField(out, title);
+        out.put((byte) ',');
+        out.putText(Double.toString(duration));
+        out.put((byte) '\n');
+    }
+
+    /**
+     * @author giser
+     * Escriu un camp de text CSV, entre cometes i amb les cometes duplicades si cal.
+     * @param out   el buffer de sortida.
+     * @param value el text.
+     * @throws IOException si es produeix un error d'escriptura.
+     */
+    private static void putCsvField(Output out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.putText(value);
+            return;
+        }
+        out.put((byte) '"');
+        out.putText(value.replace("\"", "\"\""));
+        out.put((byte) '"');
+    }
+
+    /**
+     * @author giser
+     * Escriu una cançó com un objecte JSON en una línia; l'any 0 s'escriu com a <code>null</code>.
+     * @throws IOException si es produeix un error d'escriptura.
+     */
+    private static void writeJson(Output out, String label, String artist, String album, int year, String title, double duration) throws IOException {
+        out.putText("{\"label\":");
+        putJsonString(out, label);
+        out.putText(",\"artist\":");
+        putJsonString(out, artist);
+        out.putText(",\"album\":");
+        putJsonString(out, album);
+        out.putText(",\"year\":");
+        out.putText(year == 0 ? "null" : Integer.toString(year));
+        out.putText(",\"title\":");
+        putJsonString(out, title);
+        out.putText(",\"duration\":");
+        out.putText(Double.toString(duration));
+        out.putText("}\n");
+    }
+
+    /**
+     * @author giser
+     * Escriu una cadena JSON, amb les cometes, les barres i els caràcters de control escapats.
+     * @param out   el buffer de sortida.
+     * @param value el text.
+     * @throws IOException si es produeix un error d'escriptura.
+     */
+    private static void putJsonString(Output out, String value) throws IOException {
+        out.put((byte) '"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            // S'escriu el tros sense escapar i després el caràcter escapat
+            out.putText(value, start, i);
+            switch (c) {
+                case '"' -> out.putText("\\\"");
+                case '\\' -> out.putText("\\\\");
+                case '\n' -> out.putText("\\n");
+                case '\r' -> out.putText("\\r");
+                case '\t' -> out.putText("\\t");
+                default -> out.putText(String.format("\\u%04x", (int) c));
+            }
+            start = i + 1;
+        }
+        out.putText(value, start, value.length());
+        out.put((byte) '"');
+    }
+
+    /**
+     * @author giser
+     * Exporta el catàleg des de la línia d'ordres. El format es dedueix de l'extensió del fitxer.
+     * @param args el fitxer de la base de dades i el fitxer de destí.
+     * @throws IOException  si no es pot escriure el fitxer.
+     * @throws SQLException si es produeix un error en la base de dades.
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 2) {
+            System.err.println("Ús: java model.CatalogExporter fitxer.db cançons.csv|cançons.jsonl|cançons.mdbx");
+            System.exit(2);
+        }
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + args[0]);
+        try {
+            DatabaseInitializer.initialize();
+            Path file = Path.of(args[1]);
+            Result result = exportFile(file, Format.of(file), songs -> System.out.println(songs + " cançons exportades"));
+            System.out.println("Exportació acabada: " + result);
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    /**
+     * @author giser
+     * Buffer d'escriptura en UTF-8 sobre un canal: els textos es codifiquen directament al buffer, sense crear
+     * cadenes de bytes intermèdies, i el buffer s'escriu al canal cada vegada que s'omple.
+     */
+    private static final class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @author giser
+         * Escriu un byte.
+         */
+        void put(byte b) throws IOException {
+            ensure(1);
+            buffer.put(b);
+        }
+
+        /**
+         * @author giser
+         * Escriu un long en 8 bytes (big-endian).
+         */
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * @author giser
+         * Escriu un double en 8 bytes (big-endian).
+         */
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        /**
+         * @author giser
+         * Escriu un enter no negatiu de mida variable: 7 bits per byte, amb el bit alt indicant que en segueixen més.
+         */
+        void putVarint(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        /**
+         * @author giser
+         * Escriu un text amb la seva longitud en bytes al davant (format binari).
+         */
+        void putString(String value) throws IOException {
+            putVarint(utf8Length(value));
+            putText(value, 0, value.length());
+        }
+
+        /**
+         * @author giser
+         * Escriu un text en UTF-8.
+         */
+        void putText(String value) throws IOException {
+            putText(value, 0, value.length());
+        }
+
+        /**
+         * @author giser
+         * Escriu en UTF-8 els caràcters d'un text entre les posicions indicades.
+         */
+        void putText(String value, int from, int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    ensure(1);
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    ensure(2);
+                    buffer.put((byte) (0xC0 | c >> 6));
+                    buffer.put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    ensure(4);
+                    buffer.put((byte) (0xF0 | cp >> 18));
+                    buffer.put((byte) (0x80 | cp >> 12 & 0x3F));
+                    buffer.put((byte) (0x80 | cp >> 6 & 0x3F));
+                    buffer.put((byte) (0x80 | cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // Els substituts sense parella es codifiquen com '?', igual que String.getBytes
+                    ensure(1);
+                    buffer.put((byte) '?');
+                } else {
+                    ensure(3);
+                    buffer.put((byte) (0xE0 | c >> 12));
+                    buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                    buffer.put((byte) (0x80 | c & 0x3F));
+                }
+            }
+        }
+
+        /**
+         * @author giser
+         * Calcula la longitud en bytes d'un text codificat en UTF-8, amb els mateixos criteris que {@link #putText}.
+         */
+        private static int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += Character.isSurrogate(c) ? 1 : 3;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * @author giser
+         * Escriu el buffer al canal si no hi caben els bytes indicats.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * @author giser
+         * Escriu al canal tot el contingut del buffer.
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * @author giser
+ * Generador de catàlegs sintètics per provar l'aplicació a escala.
+ * Omple les taules "record_label", "artist", "album" i "song" amb el nombre de files indicat i una distribució
+ * esbiaixada (Zipf): uns pocs artistes tenen discografies enormes i la majoria en tenen una de petita, i el mateix
+ * passa amb les cançons de cada àlbum. Els noms combinen paraules comunes i síl·labes de diversos alfabets
+ * (accents, ciríl·lic, grec, japonès, xinès) amb una llargada de cua llarga.
+ * Les files s'insereixen en lots dins de transaccions grans i s'afegeixen a les que ja hi hagués.
+ * Es pot fer servir com a biblioteca ({@link #generate(Options)}) o des de la línia d'ordres:
+ * <pre>java model.CatalogGenerator fitxer.db [cançons] [--artists N] [--albums N] [--labels N] [--skew S] [--seed S]</pre>
+ */
+public class CatalogGenerator {
+
+    // Nombre de files que s'insereixen en cada transacció.
+    private static final int TRANSACTION_ROWS = 500_000;
+
+    // Nombre de files de cada lot de la sentència preparada.
+    private static final int BATCH_ROWS = 1000;
+
+    // Llargada màxima dels noms (les columnes són VARCHAR(50)).
+    private static final int MAX_NAME_LENGTH = 50;
+
+    // Paraules comunes, perquè la cerca per prefix trobi moltes coincidències com en un catàleg real.
+    private static final String[] WORDS = {
+            "love", "night", "fire", "heart", "dream", "road", "blue", "black", "light", "rain", "song", "city",
+            "time", "star", "river", "ghost", "summer", "gold", "wild", "home", "cor", "nit", "mar", "cel",
+            "amor", "vida", "sol", "llum", "noche", "fuego", "liebe", "nacht", "licht"
+    };
+
+    // Síl·labes de cada alfabet per construir paraules inventades.
+    private static final String[][] SYLLABLES = {
+            {"ka", "ri", "to", "na", "me", "lo", "sa", "vi", "du", "ra", "el", "an", "or", "is", "ben", "tor", "mic", "zen"},
+            {"ça", "là", "l·l", "nyo", "rè", "gü", "xe", "mà", "ïs", "tò", "né", "ció", "ña", "ão"},
+            {"ä", "ö", "ü", "ber", "stra", "ße", "grü", "kö", "schn", "wä", "ølv", "å"},
+            {"ми", "ла", "ро", "ва", "ко", "ст", "ин", "жу", "ша"},
+            {"λα", "μπ", "ρο", "θε", "ξι", "νο", "ψυ", "ωμ"},
+            {"さ", "く", "ら", "の", "み", "た", "か", "ぜ", "ゆ", "め"},
+            {"王", "李", "风", "雨", "山", "海", "夜", "光", "心"}
+    };
+
+    // Probabilitat acumulada de cada alfabet de SYLLABLES (la majoria de noms són llatins).
+    private static final double[] SCRIPT_WEIGHTS = {0.70, 0.80, 0.86, 0.91, 0.94, 0.97, 1.0};
+
+    // Símbols que apareixen de tant en tant al final dels noms.
+    private static final String[] SYMBOLS = {"🎸", "🔥", "★", "♪", "(Live)", "(Remastered)", "feat. ΔΣ", "Pt. II"};
+
+    /**
+     * Opcions de generació.
+     * @param labels  el nombre de segells discogràfics.
+     * @param artists el nombre d'artistes.
+     * @param albums  el nombre d'àlbums (com a mínim un per artista).
+     * @param songs   el nombre de cançons (com a mínim una per àlbum).
+     * @param skew    l'exponent de la distribució de Zipf dels àlbums per artista (les cançons per àlbum en fan servir
+     *                la meitat): 0 és uniforme, valors més grans concentren més les dades.
+     * @param seed    la llavor del generador aleatori, perquè el catàleg sigui reproduïble.
+     */
+    public record Options(int labels, int artists, int albums, int songs, double skew, long seed) {
+
+        /**
+         * @author giser
+         * Opcions per a un catàleg del nombre de cançons indicat, amb proporcions semblants a les d'un catàleg real:
+         * una mitjana de 12 cançons per àlbum i 8 àlbums per artista.
+         * @param songs el nombre de cançons.
+         * @return les opcions.
+         */
+        public static Options forSongs(int songs) {
+            int albums = Math.max(1, songs / 12);
+            int artists = Math.max(1, albums / 8);
+            int labels = Math.max(1, artists / 200);
+            return new Options(labels, artists, albums, songs, 1.1, 42);
+        }
+    }
+
+    /**
+     * Resultat de la generació: els rangs d'ids inserits (consecutius) i el temps emprat.
+     * @param firstArtistId el primer id d'artista inserit.
+     * @param artists       el nombre d'artistes inserits.
+     * @param firstAlbumId  el primer id d'àlbum inserit.
+     * @param albums        el nombre d'àlbums inserits.
+     * @param firstSongId   el primer id de cançó inserit.
+     * @param songs         el nombre de cançons inserides.
+     * @param millis        el temps total en mil·lisegons.
+     */
+    public record Result(int firstArtistId, int artists, int firstAlbumId, int albums, int firstSongId, int songs, long millis) {
+    }
+
+    /**
+     * Posició de la generació entre transaccions: el grup actual (artista o àlbum), la posició dins el grup,
+     * l'id següent i els noms ja utilitzats dins el grup.
+     */
+    private static class Cursor {
+        int group = 0;
+        int position = 0;
+        int nextId;
+        Set<String> names = new HashSet<>();
+
+        Cursor(int firstId) {
+            nextId = firstId;
+        }
+
+        /**
+         * @author giser
+         * Avança a l'element següent i, si s'acaba el grup, passa al grup següent.
+         * @param groupSizes el nombre d'elements de cada grup.
+         */
+        void advance(int[] groupSizes) {
+            if (++position == groupSizes[group]) {
+                group++;
+                position = 0;
+                // Un conjunt nou evita buidar la taula sobredimensionada que deixen els grups enormes
+                names = new HashSet<>();
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Genera un catàleg a la base de dades actual de {@link DatabaseConnection}, que ha d'estar inicialitzada.
+     * Les files noves s'afegeixen a continuació dels ids existents. En acabar s'invaliden les memòries cau.
+     * @param options les opcions de generació.
+     * @return els rangs d'ids inserits.
+     * @throws SQLException si es produeix un error en inserir les dades.
+     */
+    public static Result generate(Options options) throws SQLException {
+        if (options.albums() < options.artists() || options.songs() < options.albums()) {
+            throw new IllegalArgumentException("Cal com a mínim un àlbum per artista i una cançó per àlbum");
+        }
+        long start = System.nanoTime();
+        Random random = new Random(options.seed());
+        int firstLabelId = DatabaseConnection.read(conn -> maxId(conn, "record_label")) + 1;
+        int firstArtistId = DatabaseConnection.read(conn -> maxId(conn, "artist")) + 1;
+        int firstAlbumId = DatabaseConnection.read(conn -> maxId(conn, "album")) + 1;
+        int firstSongId = DatabaseConnection.read(conn -> maxId(conn, "song")) + 1;
+
+        // Repartiment esbiaixat: àlbums per artista i cançons per àlbum
+        int[] albumsPerArtist = zipfCounts(options.artists(), options.albums(), options.skew(), random);
+        // Els àlbums enormes són menys habituals que els artistes prolífics: s'hi aplica la meitat del biaix
+        int[] songsPerAlbum = zipfCounts(options.albums(), options.songs(), options.skew() / 2, random);
+
+        insertLabels(options.labels(), firstLabelId, random);
+        insertArtists(options.artists(), firstArtistId, firstLabelId, options.labels(), random);
+        insertAlbums(albumsPerArtist, firstAlbumId, firstArtistId, random);
+        insertSongs(songsPerAlbum, firstSongId, firstAlbumId, random);
+        SongSearchIndex.indexPending();
+
+        // Les dades que hi hagués en memòria ja no són vàlides
+        ReferenceData.invalidate();
+        SongQueryCache.invalidateAll();
+        SongIndex.invalidate();
+        return new Result(firstArtistId, options.artists(), firstAlbumId, options.albums(), firstSongId, options.songs(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @author giser
+     * Genera un catàleg des de la línia d'ordres.
+     * Crea (o inicialitza) la base de dades indicada i hi afegeix el catàleg.
+     * @param args el fitxer de la base de dades, el nombre de cançons (1.000.000 per defecte) i opcions.
+     * @throws SQLException si es produeix un error en la base de dades.
+     */
+    public static void main(String[] args) throws SQLException {
+        if (args.length == 0) {
+            System.err.println("Ús: java model.CatalogGenerator fitxer.db [cançons] [--artists N] [--albums N] [--labels N] [--skew S] [--seed S]");
+            System.exit(2);
+        }
+        int songs = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : 1_000_000;
+        Options defaults = Options.forSongs(songs);
+        int labels = defaults.labels();
+        int artists = defaults.artists();
+        int albums = defaults.albums();
+        double skew = defaults.skew();
+        long seed = defaults.seed();
+        for (int i = 1; i < args.length - 1; i++) {
+            switch (args[i]) {
+                case "--artists" -> artists = Integer.parseInt(args[++i]);
+                case "--albums" -> albums = Integer.parseInt(args[++i]);
+                case "--labels" -> labels = Integer.parseInt(args[++i]);
+                case "--skew" -> skew = Double.parseDouble(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> {
+                    // El nombre de cançons ja s'ha llegit
+                }
+            }
+        }
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + args[0]);
+        try {
+            DatabaseInitializer.initialize();
+            Result result = generate(new Options(labels, artists, albums, songs, skew, seed));
+            System.out.println("Catàleg generat en " + result.millis() + " ms: " + result.artists() + " artistes, "
+                    + result.albums() + " àlbums, " + result.songs() + " cançons.");
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    /**
+     * @author giser
+     * Insereix els segells discogràfics.
+     * @param count   el nombre de segells.
+     * @param firstId el primer id.
+     * @param random  el generador aleatori.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static void insertLabels(int count, int firstId, Random random) throws SQLException {
+        DatabaseConnection.transaction(conn -> {
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, "INSERT INTO record_label (id, name) VALUES (?, ?)");
+            // El nom dels segells és únic a tota la taula; els existents poden coincidir amb els nous
+            Set<String> names = existingNames(conn, "record_label");
+            for (int i = 0; i < count; i++) {
+                pstmt.setInt(1, firstId + i);
+                pstmt.setString(2, uniqueName(names, randomName(random, 1, 3) + " Records", i));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            return null;
+        });
+    }
+
+    /**
+     * @author giser
+     * Insereix els artistes, repartits entre els segells nous.
+     * @param count        el nombre d'artistes.
+     * @param firstId      el primer id d'artista.
+     * @param firstLabelId el primer id de segell.
+     * @param labels       el nombre de segells.
+     * @param random       el generador aleatori.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static void insertArtists(int count, int firstId, int firstLabelId, int labels, Random random) throws SQLException {
+        // El nom és únic per segell; com que els segells són nous, n'hi ha prou de controlar-ho globalment
+        Set<String> names = new HashSet<>();
+        for (int from = 0; from < count; from += TRANSACTION_ROWS) {
+            final int chunkStart = from;
+            DatabaseConnection.transaction(conn -> {
+                PreparedStatement pstmt = DatabaseConnection.prepare(conn, "INSERT INTO artist (id, record_label_id, name) VALUES (?, ?, ?)");
+                int end = Math.min(count, chunkStart + TRANSACTION_ROWS);
+                for (int i = chunkStart; i < end; i++) {
+                    pstmt.setInt(1, firstId + i);
+                    pstmt.setInt(2, firstLabelId + random.nextInt(labels));
+                    pstmt.setString(3, uniqueName(names, randomName(random, 1, 3), i));
+                    pstmt.addBatch();
+                    if ((i + 1) % BATCH_ROWS == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @author giser
+     * Insereix els àlbums de cada artista, amb ids consecutius per artista.
+     * @param albumsPerArtist el nombre d'àlbums de cada artista.
+     * @param firstId         el primer id d'àlbum.
+     * @param firstArtistId   el primer id d'artista.
+     * @param random          el generador aleatori.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static void insertAlbums(int[] albumsPerArtist, int firstId, int firstArtistId, Random random) throws SQLException {
+        Cursor cursor = new Cursor(firstId);
+        while (cursor.group < albumsPerArtist.length) {
+            DatabaseConnection.transaction(conn -> {
+                PreparedStatement pstmt = DatabaseConnection.prepare(conn, "INSERT INTO album (id, artist_id, name, year) VALUES (?, ?, ?, ?)");
+                int rows = 0;
+                while (cursor.group < albumsPerArtist.length && rows < TRANSACTION_ROWS) {
+                    pstmt.setInt(1, cursor.nextId++);
+                    pstmt.setInt(2, firstArtistId + cursor.group);
+                    // El nom de l'àlbum és únic per artista
+                    pstmt.setString(3, uniqueName(cursor.names, randomName(random, 1, 4), cursor.position));
+                    pstmt.setInt(4, 1960 + random.nextInt(66));
+                    pstmt.addBatch();
+                    if (++rows % BATCH_ROWS == 0) {
+                        pstmt.executeBatch();
+                    }
+                    cursor.advance(albumsPerArtist);
+                }
+                pstmt.executeBatch();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @author giser
+     * Insereix les cançons de cada àlbum, amb ids consecutius per àlbum.
+     * @param songsPerAlbum el nombre de cançons de cada àlbum.
+     * @param firstId       el primer id de cançó.
+     * @param firstAlbumId  el primer id d'àlbum.
+     * @param random        el generador aleatori.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static void insertSongs(int[] songsPerAlbum, int firstId, int firstAlbumId, Random random) throws SQLException {
+        Cursor cursor = new Cursor(firstId);
+        while (cursor.group < songsPerAlbum.length) {
+            // Indexar cada cançó amb el trigger és molt més lent que indexar-les totes en acabar
+            DatabaseConnection.transaction(transaction -> SongSearchIndex.bulkInsert(transaction, conn -> {
+                PreparedStatement pstmt = DatabaseConnection.prepare(conn, "INSERT INTO song (id, album_id, name, duration) VALUES (?, ?, ?, ?)");
+                int rows = 0;
+                while (cursor.group < songsPerAlbum.length && rows < TRANSACTION_ROWS) {
+                    pstmt.setInt(1, cursor.nextId++);
+                    pstmt.setInt(2, firstAlbumId + cursor.group);
+                    // El títol de la cançó és únic per àlbum
+                    pstmt.setString(3, uniqueName(cursor.names, randomName(random, 1, 6), cursor.position));
+                    // Durada al voltant de 4 minuts, amb dues xifres decimals
+                    double duration = Math.max(0.5, Math.min(20, 4 + random.nextGaussian() * 1.5));
+                    pstmt.setDouble(4, Math.round(duration * 100) / 100.0);
+                    pstmt.addBatch();
+                    if (++rows % BATCH_ROWS == 0) {
+                        pstmt.executeBatch();
+                    }
+                    cursor.advance(songsPerAlbum);
+                }
+                pstmt.executeBatch();
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * @author giser
+     * Reparteix <code>total</code> elements entre <code>items</code> grups seguint una distribució de Zipf:
+     * cada grup en té com a mínim un i la resta es reparteix proporcionalment a 1/rang^skew.
+     * L'ordre dels grups es barreja perquè els més grans no siguin sempre els primers ids.
+     * @param items  el nombre de grups.
+     * @param total  el nombre total d'elements (com a mínim <code>items</code>).
+     * @param skew   l'exponent de la distribució.
+     * @param random el generador aleatori.
+     * @return el nombre d'elements de cada grup.
+     */
+    static int[] zipfCounts(int items, int total, double skew, Random random) {
+        double[] weights = new double[items];
+        double sum = 0;
+        for (int k = 0; k < items; k++) {
+            weights[k] = 1.0 / Math.pow(k + 1, skew);
+            sum += weights[k];
+        }
+        int remainder = total - items;
+        int[] counts = new int[items];
+        int assigned = 0;
+        for (int k = 0; k < items; k++) {
+            counts[k] = 1 + (int) (remainder * weights[k] / sum);
+            assigned += counts[k];
+        }
+        // Els elements que queden per l'arrodoniment van als grups més grans
+        for (int k = 0; assigned < total; k = (k + 1) % items) {
+            counts[k]++;
+            assigned++;
+        }
+        // Barreja (Fisher-Yates)
+        for (int i = items - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = counts[i];
+            counts[i] = counts[j];
+            counts[j] = tmp;
+        }
+        return counts;
+    }
+
+    /**
+     * @author giser
+     * Construeix un nom aleatori d'entre <code>minWords</code> i <code>maxWords</code> paraules.
+     * El nombre de paraules segueix una distribució de cua llarga: la majoria de noms són curts i uns pocs, llargs.
+     * @param random   el generador aleatori.
+     * @param minWords el nombre mínim de paraules.
+     * @param maxWords el nombre màxim de paraules.
+     * @return el nom, de com a màxim {@value #MAX_NAME_LENGTH} caràcters.
+     */
+    static String randomName(Random random, int minWords, int maxWords) {
+        int words = minWords;
+        while (words < maxWords && random.nextDouble() < 0.45) {
+            words++;
+        }
+        StringBuilder name = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                name.append(' ');
+            }
+            if (random.nextBoolean()) {
+                name.append(capitalize(WORDS[random.nextInt(WORDS.length)]));
+            } else {
+                name.append(inventedWord(random));
+            }
+        }
+        if (random.nextInt(100) == 0) {
+            name.append(' ').append(SYMBOLS[random.nextInt(SYMBOLS.length)]);
+        }
+        return truncate(name.toString());
+    }
+
+    /**
+     * @author giser
+     * Construeix una paraula inventada amb síl·labes d'un alfabet triat a l'atzar.
+     * @param random el generador aleatori.
+     * @return la paraula.
+     */
+    private static String inventedWord(Random random) {
+        double r = random.nextDouble();
+        int script = 0;
+        while (r > SCRIPT_WEIGHTS[script]) {
+            script++;
+        }
+        String[] syllables = SYLLABLES[script];
+        int count = 1 + random.nextInt(3);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            word.append(syllables[random.nextInt(syllables.length)]);
+        }
+        return capitalize(word.toString());
+    }
+
+    /**
+     * @author giser
+     * Posa en majúscula la primera lletra d'una paraula (si l'alfabet en té).
+     * @param word la paraula.
+     * @return la paraula amb la primera lletra en majúscula.
+     */
+    private static String capitalize(String word) {
+        int first = word.codePointAt(0);
+        return new StringBuilder().appendCodePoint(Character.toUpperCase(first))
+                .append(word, Character.charCount(first), word.length()).toString();
+    }
+
+    /**
+     * @author giser
+     * Retorna un nom que no és al conjunt i l'hi afegeix; si ja hi és, s'hi afegeix un número.
+     * @param names    els noms ja utilitzats en l'àmbit de la restricció UNIQUE.
+     * @param name     el nom proposat.
+     * @param ordinal  la posició de l'element, per fer el nom únic.
+     * @return el nom únic.
+     */
+    private static String uniqueName(Set<String> names, String name, int ordinal) {
+        if (names.add(name)) {
+            return name;
+        }
+        String suffix = " " + (ordinal + 1);
+        String unique = truncate(name, MAX_NAME_LENGTH - suffix.length()) + suffix;
+        for (int n = 2; !names.add(unique); n++) {
+            suffix = " " + (ordinal + 1) + "." + n;
+            unique = truncate(name, MAX_NAME_LENGTH - suffix.length()) + suffix;
+        }
+        return unique;
+    }
+
+    /**
+     * @author giser
+     * Retalla un nom a la llargada màxima de les columnes, sense partir cap caràcter.
+     * @param name el nom.
+     * @return el nom retallat.
+     */
+    private static String truncate(String name) {
+        return truncate(name, MAX_NAME_LENGTH);
+    }
+
+    /**
+     * @author giser
+     * Retalla un text a un nombre màxim de caràcters (punts de codi), sense partir cap caràcter.
+     * @param text   el text.
+     * @param length el nombre màxim de caràcters.
+     * @return el text retallat.
+     */
+    private static String truncate(String text, int length) {
+        if (text.codePointCount(0, text.length()) <= length) {
+            return text;
+        }
+        return text.substring(0, text.offsetByCodePoints(0, length)).trim();
+    }
+
+    /**
+     * @author giser
+     * Retorna l'id més gran d'una taula.
+     * @param conn  la connexió.
+     * @param table el nom de la taula.
+     * @return l'id més gran, o 0 si és buida.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static int maxId(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna els noms que ja hi ha en una taula.
+     * @param conn  la connexió.
+     * @param table el nom de la taula.
+     * @return els noms.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static Set<String> existingNames(Connection conn, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM " + table)) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,578 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * @author giser
+ * Importa cançons en massa des d'un fitxer CSV o JSON (vegeu {@link ImportReader}).
+ * La importació és un procés en etapes:
+ * <ol>
+ * <li>lectura i validació: un fil llegeix el fitxer en streaming, valida cada fila i les agrupa en blocs;</li>
+ * <li>resolució: els artistes, àlbums i segells es busquen pel nom en una memòria cau carregada a l'inici
+ *     i els que no existeixen es creen;</li>
+ * <li>escriptura: cada bloc es copia en lots a una taula temporal i se n'insereixen les cançons amb una sola sentència,
+ *     dins d'una sola transacció;</li>
+ * <li>indexació: en acabar, s'afegeixen totes les cançons noves a la cerca de text complet ({@link SongSearchIndex}).</li>
+ * </ol>
+ * La lectura i l'escriptura van en paral·lel, però com a molt hi ha {@value #QUEUE_CHUNKS} blocs esperant,
+ * de manera que la memòria no depèn de la mida del fitxer. Les files incorrectes es descarten (se'n guarden
+ * els primers {@value #MAX_REPORTED_ERRORS} errors) i les cançons que l'àlbum ja té (mateix títol) s'ometen.
+ * Si la importació falla, els blocs ja confirmats es mantenen.
+ * Es pot fer servir com a biblioteca ({@link #importFile}) o des de la línia d'ordres:
+ * <pre>java model.CatalogImporter fitxer.db cançons.csv|cançons.json [--chunk N]</pre>
+ */
+public class CatalogImporter {
+
+    // Nombre de files per defecte de cada bloc (i de cada transacció).
+    public static final int DEFAULT_CHUNK_SIZE = 50_000;
+
+    // Nombre màxim de blocs llegits que esperen a ser escrits.
+    private static final int QUEUE_CHUNKS = 2;
+
+    // Nombre de files de cada lot de la sentència preparada.
+    private static final int BATCH_ROWS = 1000;
+
+    // Nombre màxim d'errors de validació que es guarden per informar-ne.
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    // Llargada màxima dels noms (les columnes són VARCHAR(50)).
+    private static final int MAX_NAME_LENGTH = 50;
+
+    // Segell dels artistes nous quan el fitxer no n'indica cap.
+    private static final String DEFAULT_LABEL = "Sense segell";
+
+    // Taula temporal (de la connexió d'escriptura) on es copien les cançons d'un bloc abans d'inserir-les.
+    // Inserir-les a song una a una costa més: amb el trigger de la cerca, SQLite obre un diari de sentència per a cada fila.
+    private static final String CREATE_STAGING =
+            "CREATE TEMP TABLE IF NOT EXISTS import_song (album_id INTEGER NOT NULL, name TEXT NOT NULL, duration REAL NOT NULL)";
+    private static final String STAGE_SONG = "INSERT INTO temp.import_song (album_id, name, duration) VALUES (?, ?, ?)";
+
+    // Inserció de les cançons del bloc en l'ordre de la taula temporal: si l'àlbum ja té una cançó amb el mateix
+    // títol, s'omet ("WHERE true" evita que l'ON CONFLICT es llegeixi com una clàusula del SELECT).
+    private static final String INSERT_SONGS =
+            "INSERT INTO song (album_id, name, duration) SELECT album_id, name, duration FROM temp.import_song WHERE true " +
+            "ORDER BY rowid ON CONFLICT (album_id, name) DO NOTHING";
+
+    // Inserció de segells, artistes i àlbums nous, que retornen l'id assignat.
+    private static final String INSERT_LABEL = "INSERT INTO record_label (name) VALUES (?) RETURNING id";
+    private static final String INSERT_ARTIST = "INSERT INTO artist (record_label_id, name) VALUES (?, ?) RETURNING id";
+    private static final String INSERT_ALBUM = "INSERT INTO album (artist_id, name, year) VALUES (?, ?, ?) RETURNING id";
+
+    /**
+     * Estat de la importació.
+     * @param read       les files llegides del fitxer.
+     * @param imported   les cançons inserides.
+     * @param duplicates les cançons omeses perquè l'àlbum ja en tenia una amb el mateix títol.
+     * @param rejected   les files descartades per errors de validació.
+     * @param artists    els artistes creats.
+     * @param albums     els àlbums creats.
+     * @param millis     el temps transcorregut en mil·lisegons.
+     */
+    public record Progress(long read, long imported, long duplicates, long rejected, int artists, int albums, long millis) {
+
+        /**
+         * @author giser
+         * Retorna la velocitat de la importació.
+         * @return les files llegides per segon.
+         */
+        public long rowsPerSecond() {
+            return millis == 0 ? read : read * 1000 / millis;
+        }
+    }
+
+    /**
+     * Resultat d'una importació.
+     * @param totals      l'estat final de la lectura i l'escriptura, sense la indexació.
+     * @param errors      els primers errors de validació, amb la línia de cada fila descartada.
+     * @param indexMillis el temps que ha costat afegir les cançons noves a la cerca, en mil·lisegons.
+     */
+    public record Result(Progress totals, List<String> errors, long indexMillis) {
+    }
+
+    /**
+     * @author giser
+     * Rep l'estat de la importació després de cada bloc escrit, des del fil que importa.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(Progress progress);
+    }
+
+    /**
+     * Fila validada, amb els camps convertits.
+     */
+    private record ValidRow(String label, String artist, String album, int year, String title, double duration) {
+    }
+
+    /**
+     * Bloc de files validades que passa de la lectura a l'escriptura.
+     * L'últim bloc té <code>last</code> a cert; si la lectura ha fallat, porta l'error.
+     */
+    private record Chunk(List<ValidRow> rows, long read, long rejected, List<String> errors, boolean last, IOException failure) {
+    }
+
+    /**
+     * Ids dels segells, artistes i àlbums pel nom, per no haver-los de consultar per a cada fila.
+     * Els artistes es busquen per segell i nom (la restricció UNIQUE) o, si la fila no indica segell, només pel nom.
+     */
+    private static class Resolver {
+        final Map<String, Integer> labels = new HashMap<>();
+        final Map<String, Integer> artistsByLabel = new HashMap<>();
+        final Map<String, Integer> artistsByName = new HashMap<>();
+        final Map<String, Integer> albums = new HashMap<>();
+        int createdArtists = 0;
+        int createdAlbums = 0;
+    }
+
+    /**
+     * @author giser
+     * Importa un fitxer a la base de dades actual de {@link DatabaseConnection}, que ha d'estar inicialitzada.
+     * En confirmar cada bloc s'invaliden les memòries cau de dades de referència i de consultes, i en acabar
+     * s'indexen les cançons noves per a la cerca; fins aleshores no es poden trobar cercant-les.
+     * @param file      el fitxer CSV o JSON.
+     * @param chunkSize el nombre de files de cada bloc i transacció.
+     * @param listener  l'objecte que rep l'estat després de cada bloc; pot ser <code>null</code>.
+     * @return el resultat de la importació.
+     * @throws IOException  si no es pot llegir el fitxer o el seu format és incorrecte.
+     * @throws SQLException si es produeix un error en escriure a la base de dades.
+     */
+    public static Result importFile(Path file, int chunkSize, ProgressListener listener) throws IOException, SQLException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("La mida del bloc ha de ser positiva");
+        }
+        long start = System.nanoTime();
+        // Es comprova el format abans de crear el fil, perquè l'error arribi directament
+        ImportReader reader = ImportReader.open(file);
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+        Thread parser = new Thread(() -> parse(reader, chunkSize, queue), "music-import");
+        parser.setDaemon(true);
+        parser.start();
+
+        long read = 0;
+        long imported = 0;
+        long duplicates = 0;
+        long rejected = 0;
+        List<String> errors = new ArrayList<>();
+        try {
+            Resolver resolver = DatabaseConnection.read(CatalogImporter::loadResolver);
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk.failure() != null) {
+                    throw chunk.failure();
+                }
+                if (!chunk.rows().isEmpty()) {
+                    int inserted = QueryMetrics.time("importChunk", Integer::intValue, () -> DatabaseConnection.transaction(
+                            transaction -> SongSearchIndex.bulkInsert(transaction, conn -> writeChunk(conn, chunk.rows(), resolver))));
+                    imported += inserted;
+                    duplicates += chunk.rows().size() - inserted;
+                }
+                read = chunk.read();
+                rejected = chunk.rejected();
+                for (String error : chunk.errors()) {
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add(error);
+                    }
+                }
+                Progress progress = new Progress(read, imported, duplicates, rejected, resolver.createdArtists,
+                        resolver.createdAlbums, (System.nanoTime() - start) / 1_000_000);
+                if (listener != null) {
+                    listener.progress(progress);
+                }
+                if (chunk.last()) {
+                    long indexStart = System.nanoTime();
+                    SongSearchIndex.indexPending();
+                    return new Result(progress, errors, (System.nanoTime() - indexStart) / 1_000_000);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S'ha interromput la importació");
+        } finally {
+            // Si l'escriptura s'atura abans d'hora, s'atura també la lectura
+            parser.interrupt();
+            reader.close();
+        }
+    }
+
+    /**
+     * @author giser
+     * Importa un fitxer des de la línia d'ordres i mostra el progrés.
+     * @param args el fitxer de la base de dades, el fitxer a importar i, opcionalment, <code>--chunk N</code>.
+     * @throws IOException  si no es pot llegir el fitxer.
+     * @throws SQLException si es produeix un error en la base de dades.
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 2) {
+            System.err.println("Ús: java model.CatalogImporter fitxer.db cançons.csv|cançons.json [--chunk N]");
+            System.exit(2);
+        }
+        int chunkSize = args.length > 3 && args[2].equals("--chunk") ? Integer.parseInt(args[3]) : DEFAULT_CHUNK_SIZE;
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + args[0]);
+        try {
+            DatabaseInitializer.initialize();
+            Result result = importFile(Path.of(args[1]), chunkSize, progress ->
+                    System.out.println(progress.read() + " files llegides, " + progress.imported() + " importades ("
+                            + progress.rowsPerSecond() + " files/s)"));
+            for (String error : result.errors()) {
+                System.err.println(error);
+            }
+            System.out.println("Importació acabada: " + result.totals() + ", indexació de la cerca: " + result.indexMillis() + " ms");
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    /**
+     * @author giser
+     * Etapa de lectura i validació: llegeix el fitxer i posa els blocs de files vàlides a la cua.
+     * S'executa en un fil propi; si la cua és plena, espera que l'escriptura n'agafi un bloc.
+     * @param reader    el lector del fitxer.
+     * @param chunkSize el nombre de files de cada bloc.
+     * @param queue     la cua de blocs cap a l'escriptura.
+     */
+    private static void parse(ImportReader reader, int chunkSize, BlockingQueue<Chunk> queue) {
+        long read = 0;
+        long rejected = 0;
+        List<ValidRow> rows = new ArrayList<>(chunkSize);
+        List<String> errors = new ArrayList<>();
+        try {
+            ImportRow row;
+            while ((row = reader.next()) != null) {
+                read++;
+                String error = validate(row);
+                if (error != null) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add("Línia " + row.line() + ": " + error);
+                    }
+                    continue;
+                }
+                rows.add(toValidRow(row));
+                if (rows.size() == chunkSize) {
+                    queue.put(new Chunk(rows, read, rejected, errors, false, null));
+                    rows = new ArrayList<>(chunkSize);
+                    errors = new ArrayList<>();
+                }
+            }
+            queue.put(new Chunk(rows, read, rejected, errors, true, null));
+        } catch (IOException e) {
+            // La cua només és plena si l'escriptura ja s'ha aturat; en aquest cas l'error no cal
+            queue.offer(new Chunk(List.of(), read, rejected, errors, true, e));
+        } catch (InterruptedException e) {
+            // L'escriptura s'ha aturat: no cal continuar llegint
+        }
+    }
+
+    /**
+     * @author giser
+     * Etapa de validació: comprova que una fila tingui els camps obligatoris i que els valors siguin correctes.
+     * @param row la fila llegida.
+     * @return la descripció de l'error, o <code>null</code> si la fila és correcta.
+     */
+    static String validate(ImportRow row) {
+        String error = checkName("l'artista", row.artist(), true);
+        if (error == null) {
+            error = checkName("l'àlbum", row.album(), true);
+        }
+        if (error == null) {
+            error = checkName("la cançó", row.title(), true);
+        }
+        if (error == null) {
+            error = checkName("el segell", row.label(), false);
+        }
+        if (error != null) {
+            return error;
+        }
+        if (row.duration() == null || row.duration().isBlank()) {
+            return "falta la durada";
+        }
+        try {
+            double duration = parseDuration(row.duration());
+            if (!(duration > 0) || Double.isInfinite(duration)) {
+                return "la durada ha de ser un número positiu";
+            }
+        } catch (NumberFormatException e) {
+            return "la durada ha de ser un número (" + row.duration() + ")";
+        }
+        if (row.year() != null && !row.year().isBlank()) {
+            try {
+                int year = Integer.parseInt(row.year().trim());
+                if (year < 1000 || year > 9999) {
+                    return "l'any ha de tenir quatre xifres (" + row.year() + ")";
+                }
+            } catch (NumberFormatException e) {
+                return "l'any ha de ser un número (" + row.year() + ")";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @author giser
+     * Comprova un nom de la fila.
+     * @param what     la descripció del camp, per al missatge.
+     * @param name     el valor del camp.
+     * @param required indica si el camp és obligatori.
+     * @return la descripció de l'error, o <code>null</code> si és correcte.
+     */
+    private static String checkName(String what, String name, boolean required) {
+        if (name == null || name.isBlank()) {
+            return required ? "falta el nom de " + what : null;
+        }
+        String trimmed = name.trim();
+        if (trimmed.codePointCount(0, trimmed.length()) > MAX_NAME_LENGTH) {
+            return "el nom de " + what + " té més de " + MAX_NAME_LENGTH + " caràcters";
+        }
+        return null;
+    }
+
+    /**
+     * @author giser
+     * Converteix una fila ja validada.
+     * @param row la fila.
+     * @return la fila amb els noms retallats i els números convertits; l'any és 0 si no s'indica.
+     */
+    private static ValidRow toValidRow(ImportRow row) {
+        String label = row.label() == null || row.label().isBlank() ? null : row.label().trim();
+        int year = row.year() == null || row.year().isBlank() ? 0 : Integer.parseInt(row.year().trim());
+        return new ValidRow(label, row.artist().trim(), row.album().trim(), year, row.title().trim(),
+                parseDuration(row.duration()));
+    }
+
+    /**
+     * @author giser
+     * Converteix la durada, admetent la coma com a separador decimal.
+     * @param duration el text de la durada.
+     * @return la durada.
+     * @throws NumberFormatException si no és un número.
+     */
+    private static double parseDuration(String duration) {
+        return Double.parseDouble(duration.trim().replace(',', '.'));
+    }
+
+    /**
+     * @author giser
+     * Carrega els ids de tots els segells, artistes i àlbums existents.
+     * @param conn la connexió de lectura.
+     * @return la memòria cau de resolució.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static Resolver loadResolver(Connection conn) throws SQLException {
+        Resolver resolver = new Resolver();
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT id, name FROM record_label")) {
+                while (rs.next()) {
+                    resolver.labels.put(rs.getString(2), rs.getInt(1));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, record_label_id, name FROM artist ORDER BY id")) {
+                while (rs.next()) {
+                    resolver.artistsByLabel.put(key(rs.getInt(2), rs.getString(3)), rs.getInt(1));
+                    resolver.artistsByName.putIfAbsent(rs.getString(3), rs.getInt(1));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, artist_id, name FROM album")) {
+                while (rs.next()) {
+                    resolver.albums.put(key(rs.getInt(2), rs.getString(3)), rs.getInt(1));
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * @author giser
+     * Etapes de resolució i escriptura d'un bloc, dins de la transacció oberta.
+     * @param conn     la connexió d'escriptura.
+     * @param rows     les files del bloc.
+     * @param resolver la memòria cau de resolució; s'hi afegeixen els artistes i àlbums creats.
+     * @return el nombre de cançons inserides.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static int writeChunk(Connection conn, List<ValidRow> rows, Resolver resolver) throws SQLException {
+        // Els ids creats no es guarden a la memòria cau fins que la transacció es confirma: si falla, es descarta tot
+        Resolver created = new Resolver();
+        try (Statement stmt = conn.createStatement()) {
+            // Si la taula ja existeix, no es modifica l'esquema (temporal) de la connexió
+            stmt.execute(CREATE_STAGING);
+        }
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, STAGE_SONG);
+        int batched = 0;
+        // Cada element és l'id de l'àlbum (32 bits alts) i la posició de la fila (32 bits baixos)
+        long[] order = new long[rows.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (long) resolveAlbum(conn, rows.get(i), resolver, created) << 32 | i;
+        }
+        // En ordre d'àlbum, les insercions als índexs de song per àlbum van a pàgines consecutives
+        Arrays.sort(order);
+        for (long entry : order) {
+            ValidRow row = rows.get((int) entry);
+            pstmt.setInt(1, (int) (entry >>> 32));
+            pstmt.setString(2, row.title());
+            pstmt.setDouble(3, row.duration());
+            pstmt.addBatch();
+            if (++batched == BATCH_ROWS) {
+                pstmt.executeBatch();
+                batched = 0;
+            }
+        }
+        pstmt.executeBatch();
+        int inserted = DatabaseConnection.prepare(conn, INSERT_SONGS).executeUpdate();
+        DatabaseConnection.prepare(conn, "DELETE FROM temp.import_song").executeUpdate();
+        if (inserted > 0 || !created.albums.isEmpty()) {
+            // Les dades en memòria deixen de ser vàlides des del primer bloc confirmat, no només en acabar
+            DatabaseConnection.afterCommit(() -> {
+                ReferenceData.invalidate();
+                SongQueryCache.invalidateAll();
+                SongIndex.invalidate();
+            });
+        }
+        // Només s'arriba aquí si no hi ha hagut cap error; el bloc es confirma tot seguit
+        resolver.labels.putAll(created.labels);
+        resolver.artistsByLabel.putAll(created.artistsByLabel);
+        created.artistsByName.forEach(resolver.artistsByName::putIfAbsent);
+        resolver.albums.putAll(created.albums);
+        resolver.createdArtists += created.createdArtists;
+        resolver.createdAlbums += created.createdAlbums;
+        return inserted;
+    }
+
+    /**
+     * @author giser
+     * Etapa de resolució: retorna l'id de l'àlbum d'una fila i crea l'àlbum, l'artista o el segell si no existeixen.
+     * @param conn     la connexió d'escriptura.
+     * @param row      la fila.
+     * @param resolver la memòria cau amb els ids confirmats.
+     * @param created  la memòria cau amb els ids creats en la transacció actual.
+     * @return l'id de l'àlbum.
+     * @throws SQLException si es produeix un error en crear-los.
+     */
+    private static int resolveAlbum(Connection conn, ValidRow row, Resolver resolver, Resolver created) throws SQLException {
+        int artistId = resolveArtist(conn, row, resolver, created);
+        String albumKey = key(artistId, row.album());
+        Integer albumId = lookup(resolver.albums, created.albums, albumKey);
+        if (albumId == null) {
+            albumId = insertReturningId(conn, INSERT_ALBUM, artistId, row.album(), row.year());
+            created.albums.put(albumKey, albumId);
+            created.createdAlbums++;
+        }
+        return albumId;
+    }
+
+    /**
+     * @author giser
+     * Retorna l'id de l'artista d'una fila i el crea (amb el seu segell) si no existeix.
+     * @param conn     la connexió d'escriptura.
+     * @param row      la fila.
+     * @param resolver la memòria cau amb els ids confirmats.
+     * @param created  la memòria cau amb els ids creats en la transacció actual.
+     * @return l'id de l'artista.
+     * @throws SQLException si es produeix un error en crear-lo.
+     */
+    private static int resolveArtist(Connection conn, ValidRow row, Resolver resolver, Resolver created) throws SQLException {
+        Integer artistId;
+        if (row.label() == null) {
+            // Sense segell, serveix qualsevol artista amb aquest nom
+            artistId = lookup(resolver.artistsByName, created.artistsByName, row.artist());
+            if (artistId != null) {
+                return artistId;
+            }
+        }
+        int labelId = resolveLabel(conn, row.label() == null ? DEFAULT_LABEL : row.label(), resolver, created);
+        String artistKey = key(labelId, row.artist());
+        artistId = lookup(resolver.artistsByLabel, created.artistsByLabel, artistKey);
+        if (artistId == null) {
+            artistId = insertReturningId(conn, INSERT_ARTIST, labelId, row.artist(), null);
+            created.artistsByLabel.put(artistKey, artistId);
+            created.artistsByName.putIfAbsent(row.artist(), artistId);
+            created.createdArtists++;
+        }
+        return artistId;
+    }
+
+    /**
+     * @author giser
+     * Retorna l'id d'un segell i el crea si no existeix.
+     * @param conn     la connexió d'escriptura.
+     * @param name     el nom del segell.
+     * @param resolver la memòria cau amb els ids confirmats.
+     * @param created  la memòria cau amb els ids creats en la transacció actual.
+     * @return l'id del segell.
+     * @throws SQLException si es produeix un error en crear-lo.
+     */
+    private static int resolveLabel(Connection conn, String name, Resolver resolver, Resolver created) throws SQLException {
+        Integer labelId = lookup(resolver.labels, created.labels, name);
+        if (labelId == null) {
+            labelId = insertReturningId(conn, INSERT_LABEL, null, name, null);
+            created.labels.put(name, labelId);
+        }
+        return labelId;
+    }
+
+    /**
+     * @author giser
+     * Busca un id primer entre els confirmats i després entre els creats en la transacció actual.
+     * @param committed els ids confirmats.
+     * @param pending   els ids creats en la transacció actual.
+     * @param key       la clau.
+     * @return l'id, o <code>null</code> si no hi és.
+     */
+    private static Integer lookup(Map<String, Integer> committed, Map<String, Integer> pending, String key) {
+        Integer id = committed.get(key);
+        return id != null ? id : pending.get(key);
+    }
+
+    /**
+     * @author giser
+     * Insereix un segell, un artista o un àlbum i en retorna l'id.
+     * @param conn   la connexió d'escriptura.
+     * @param sql    la sentència d'inserció, amb RETURNING id.
+     * @param parent l'id del segell o l'artista, o <code>null</code> si la sentència no en té.
+     * @param name   el nom.
+     * @param year   l'any de l'àlbum, o <code>null</code> si la sentència no en té.
+     * @return l'id assignat.
+     * @throws SQLException si es produeix un error en la inserció.
+     */
+    private static int insertReturningId(Connection conn, String sql, Integer parent, String name, Integer year) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, sql);
+        int index = 1;
+        if (parent != null) {
+            pstmt.setInt(index++, parent);
+        }
+        pstmt.setString(index++, name);
+        if (year != null) {
+            pstmt.setInt(index, year);
+        }
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("La inserció no ha retornat cap id: " + sql);
+            }
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * @author giser
+     * Construeix la clau d'un nom dins del seu àmbit (l'artista dins el segell o l'àlbum dins l'artista).
+     * @param parentId l'id de l'àmbit.
+     * @param name     el nom.
+     * @return la clau.
+     */
+    private static String key(int parentId, String name) {
+        return parentId + "\0" + name;
+    }
+}
@@ -0,0 +1,176 @@
+package model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author giser
+ * Lector de fitxers CSV d'importació (RFC 4180): la primera línia és la capçalera amb els noms de les columnes.
+ * Els camps es separen per comes (o per punts i comes, si la capçalera en té i no té comes) i es poden posar
+ * entre cometes dobles, dins de les quals hi pot haver separadors, salts de línia i cometes duplicades ("").
+ * Les columnes desconegudes s'ignoren i les línies buides se salten.
+ */
+class CsvImportReader implements ImportReader {
+
+    // Mida del buffer de lectura.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    // Separador de camps.
+    private final char separator;
+
+    // Camp de ImportRow de cada columna (-1 si s'ignora).
+    private final int[] columns;
+
+    // Línia actual del fitxer (la capçalera és la 1).
+    private long line = 1;
+
+    // Camps de la fila que s'està llegint; es reutilitzen entre files.
+    private final List<String> values = new ArrayList<>();
+    private final StringBuilder value = new StringBuilder();
+
+    /**
+     * @author giser
+     * Crea el lector i en llegeix la capçalera.
+     * @param reader el text del fitxer.
+     * @throws IOException si el fitxer és buit o la capçalera no té les columnes obligatòries.
+     */
+    CsvImportReader(Reader reader) throws IOException {
+        this.reader = reader;
+        // Es mira la primera línia per decidir el separador
+        fill();
+        int comma = 0;
+        int semicolon = 0;
+        for (int i = 0; i < limit && buffer[i] != '\n'; i++) {
+            if (buffer[i] == ',') {
+                comma++;
+            } else if (buffer[i] == ';') {
+                semicolon++;
+            }
+        }
+        separator = semicolon > 0 && comma == 0 ? ';' : ',';
+        // Es salta la marca d'ordre de bytes que afegeixen alguns editors
+        if (limit > 0 && buffer[0] == '\uFEFF') {
+            position = 1;
+        }
+        if (!readRecord()) {
+            throw new IOException("El fitxer CSV és buit");
+        }
+        columns = new int[values.size()];
+        boolean[] present = new boolean[6];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = ImportReader.field(values.get(c));
+            if (columns[c] >= 0) {
+                present[columns[c]] = true;
+            }
+        }
+        if (!present[1] || !present[2] || !present[4] || !present[5]) {
+            throw new IOException("La capçalera del CSV ha de tenir les columnes artist, album, title i duration");
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix la fila següent.
+     * @return la fila, o <code>null</code> al final del fitxer.
+     * @throws IOException si es produeix un error de lectura o hi ha unes cometes sense tancar.
+     */
+    @Override
+    public ImportRow next() throws IOException {
+        long start;
+        do {
+            start = line;
+            if (!readRecord()) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).isEmpty());
+        String[] fields = new String[6];
+        for (int c = 0; c < columns.length && c < values.size(); c++) {
+            if (columns[c] >= 0) {
+                fields[columns[c]] = values.get(c);
+            }
+        }
+        return ImportReader.row(start, fields);
+    }
+
+    /**
+     * @author giser
+     * Llegeix els camps d'un registre (una línia, o més si hi ha salts de línia entre cometes) a {@link #values}.
+     * @return <code>false</code> si s'ha arribat al final del fitxer sense llegir cap registre.
+     * @throws IOException si es produeix un error de lectura o hi ha unes cometes sense tancar.
+     */
+    private boolean readRecord() throws IOException {
+        values.clear();
+        value.setLength(0);
+        if (position == limit && !fill()) {
+            return false;
+        }
+        boolean quoted = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (quoted) {
+                    throw new IOException("Cometes sense tancar a la línia " + line);
+                }
+                values.add(value.toString());
+                return true;
+            }
+            char c = buffer[position++];
+            if (quoted) {
+                if (c == '"') {
+                    // Unes cometes duplicades són unes cometes dins el camp
+                    if ((position < limit || fill()) && buffer[position] == '"') {
+                        value.append('"');
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    value.append(c);
+                }
+            } else if (c == '"' && value.length() == 0) {
+                quoted = true;
+            } else if (c == separator) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n') {
+                line++;
+                values.add(value.toString());
+                return true;
+            } else if (c != '\r') {
+                value.append(c);
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Omple el buffer amb el text següent del fitxer.
+     * @return <code>false</code> si s'ha arribat al final del fitxer.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * @author giser
+     * Tanca el fitxer.
+     * @throws IOException si es produeix un error en tancar-lo.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,321 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author giser
+ * Vigila els canvis que altres aplicacions (altres processos que obren la mateixa base de dades) fan a les cançons,
+ * els artistes i els àlbums, i actualitza només les dades en memòria afectades.
+ * Un fil de fons consulta cada {@value #POLL_INTERVAL_MS} ms el <code>PRAGMA data_version</code> de la connexió
+ * d'escriptura, que només canvia quan una altra connexió confirma una transacció: com que totes les escriptures
+ * d'aquesta aplicació passen per aquesta connexió, els canvis propis no es detecten. Quan canvia, es llegeixen
+ * les cançons modificades o eliminades del registre <code>song_change</code> (migració 4) i les cançons noves
+ * (les d'id més gran que l'últim conegut), i s'apliquen a {@link SongIndex} i {@link SongQueryCache}. Els artistes
+ * i els àlbums es tornen a carregar a {@link ReferenceData} si ha canviat la seva versió (migració 6).
+ * Si hi ha massa canvis, el registre ja no conté tots els que falten, o s'ha modificat o eliminat algun artista o
+ * àlbum (les files de cançons en porten els noms), es descarta tot.
+ * La llista de la interfície s'actualitza amb l'oient ({@link #setListener(Consumer)}).
+ */
+public class DatabaseChangeWatcher {
+
+    // Temps (en mil·lisegons) entre dues comprovacions.
+    public static final long POLL_INTERVAL_MS = 1000;
+
+    // Nombre màxim de cançons canviades que s'apliquen una a una; amb més, es descarten les dades en memòria.
+    public static final int MAX_CHANGES = 1000;
+
+    /**
+     * Canvi d'una cançó fet per una altra aplicació.
+     * @param songId   l'identificador de la cançó.
+     * @param oldAlbum l'àlbum que tenia abans del canvi, o <code>null</code> si la cançó és nova.
+     * @param song     la cançó tal com és ara, o <code>null</code> si s'ha eliminat.
+     */
+    public record SongChange(int songId, Album oldAlbum, SongRow song) {
+    }
+
+    /**
+     * Canvis detectats en una comprovació.
+     * @param referenceData si han canviat els artistes o els àlbums (ja recarregats a {@link ReferenceData}
+     *                      quan l'oient rep els canvis).
+     * @param all           si s'han descartat totes les dades en memòria i cal tornar a llegir les llistes.
+     * @param songs         les cançons canviades, si no s'ha descartat tot.
+     */
+    public record Changes(boolean referenceData, boolean all, List<SongChange> songs) {
+    }
+
+    // Versió de les dades de la connexió d'escriptura: canvia quan una altra connexió confirma una transacció.
+    private static final String DATA_VERSION = "PRAGMA data_version";
+
+    // Últim canvi registrat i primer canvi que encara es conserva al registre.
+    private static final String LAST_CHANGE = "SELECT COALESCE(MAX(seq), 0) FROM song_change";
+    private static final String FIRST_CHANGE = "SELECT COALESCE(MIN(seq), 0) FROM song_change";
+
+    // Canvis registrats entre dues posicions del registre.
+    private static final String CHANGES_BETWEEN = "SELECT song_id, album_id FROM song_change WHERE seq > ? AND seq <= ? ORDER BY seq";
+
+    // Últim id de cançó i cançons noves (amb un id més gran que l'últim conegut).
+    private static final String LAST_SONG = "SELECT COALESCE(MAX(id), 0) FROM song";
+    private static final String SONGS_BETWEEN = "SELECT id FROM song WHERE id > ? AND id <= ? ORDER BY id";
+
+    // Versió dels artistes i els àlbums: els triggers de la migració 6 incrementen un comptador a cada inserció
+    // i un altre a cada modificació o eliminació.
+    private static final String REFERENCE_INSERTED = "SELECT inserted FROM reference_version WHERE id = 1";
+    private static final String REFERENCE_CHANGED = "SELECT changed FROM reference_version WHERE id = 1";
+
+    // Fil de les comprovacions, o null si el vigilant està aturat.
+    private static ScheduledExecutorService executor = null;
+
+    // Oient que rep els canvis, o null si no n'hi ha cap.
+    private static volatile Consumer<Changes> listener = null;
+
+    // Estat conegut de la base de dades. Només el fa servir el fil de les comprovacions, amb la connexió d'escriptura.
+    private static long dataVersion;
+    private static long lastChange;
+    private static long lastSong;
+    private static long referenceInserts;
+    private static long referenceChanges;
+
+    /**
+     * @author giser
+     * Inicia el vigilant. Llegeix l'estat actual de la base de dades, de manera que els canvis posteriors es detecten
+     * encara que la primera comprovació arribi més tard. S'ha de cridar després de les migracions i abans de carregar
+     * les dades en memòria. Si ja està iniciat, no fa res.
+     * @throws SQLException si es produeix un error en llegir l'estat de la base de dades.
+     */
+    public static synchronized void start() throws SQLException {
+        if (executor != null) {
+            return;
+        }
+        DatabaseConnection.write(conn -> snapshot(conn, snapshotConn -> {
+            dataVersion = queryLong(snapshotConn, DATA_VERSION);
+            lastChange = queryLong(snapshotConn, LAST_CHANGE);
+            lastSong = queryLong(snapshotConn, LAST_SONG);
+            referenceInserts = queryLong(snapshotConn, REFERENCE_INSERTED);
+            referenceChanges = queryLong(snapshotConn, REFERENCE_CHANGED);
+            return null;
+        }));
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "music-watcher");
+            // Fil dimoni perquè no impedeixi tancar l'aplicació
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(DatabaseChangeWatcher::poll, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @author giser
+     * Estableix l'oient que rep els canvis detectats. Es crida des del fil del vigilant, després d'aplicar els canvis
+     * a les dades en memòria.
+     * @param changesListener l'oient, o <code>null</code> per no avisar ningú.
+     */
+    public static void setListener(Consumer<Changes> changesListener) {
+        listener = changesListener;
+    }
+
+    /**
+     * @author giser
+     * Atura el vigilant i espera que acabi la comprovació en curs. S'ha de cridar abans de tancar les connexions.
+     */
+    public static synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * @author giser
+     * Comprovació periòdica: aplica els canvis d'altres aplicacions i n'avisa l'oient.
+     * Un error no atura el vigilant; es torna a provar a la comprovació següent.
+     */
+    private static void poll() {
+        try {
+            Changes changes = QueryMetrics.time("watchChanges", found -> found != null ? found.songs().size() : 0,
+                    () -> DatabaseConnection.write(conn -> snapshot(conn, DatabaseChangeWatcher::check)));
+            if (changes == null) {
+                return;
+            }
+            // Les dades de referència es tornen a carregar fora del bloqueig d'escriptura, amb les connexions de lectura,
+            // com l'índex; si falla, es descarten perquè es llegeixin la propera vegada que es demanin
+            if (changes.referenceData()) {
+                try {
+                    ReferenceData.load();
+                } catch (SQLException e) {
+                    ReferenceData.invalidate();
+                    throw e;
+                }
+            }
+            Consumer<Changes> current = listener;
+            if (current != null) {
+                current.accept(changes);
+            }
+            // L'índex descartat es reconstrueix aquí, fora del bloqueig d'escriptura
+            if (changes.all()) {
+                SongIndex.build();
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error en comprovar els canvis d'altres aplicacions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @author giser
+     * Comprova si altres aplicacions han canviat la base de dades i aplica els canvis a les dades en memòria.
+     * S'executa amb la connexió d'escriptura, de manera que cap escriptura d'aquesta aplicació s'hi intercala,
+     * i dins d'una transacció de lectura ({@link #snapshot}), de manera que totes les consultes veuen el mateix estat.
+     * @param conn la connexió d'escriptura.
+     * @return els canvis, o <code>null</code> si no n'hi ha cap.
+     * @throws SQLException si es produeix un error en les consultes.
+     */
+    private static Changes check(Connection conn) throws SQLException {
+        // La versió, la posició del registre i l'últim id són del mateix estat de la base de dades: un canvi extern
+        // confirmat després d'iniciar la transacció no hi és i canvia la versió, de manera que es veurà a la
+        // comprovació següent
+        long version = queryLong(conn, DATA_VERSION);
+        long currentChange = queryLong(conn, LAST_CHANGE);
+        long currentSong = queryLong(conn, LAST_SONG);
+        if (version == dataVersion) {
+            // Cap altra aplicació havia confirmat res: els canvis nous són d'aquesta, que ja els ha aplicat
+            lastChange = currentChange;
+            lastSong = currentSong;
+            return null;
+        }
+        dataVersion = version;
+
+        long currentInserted = queryLong(conn, REFERENCE_INSERTED);
+        long currentChanged = queryLong(conn, REFERENCE_CHANGED);
+        // Un artista o àlbum reanomenat o eliminat canvia les files de cançons que en porten el nom
+        boolean renamed = currentChanged != referenceChanges;
+        boolean referenceChanged = renamed || currentInserted != referenceInserts;
+        referenceInserts = currentInserted;
+        referenceChanges = currentChanged;
+
+        long firstChange = queryLong(conn, FIRST_CHANGE);
+        boolean missed = renamed || currentChange - lastChange > MAX_CHANGES || currentSong - lastSong > MAX_CHANGES
+                // El registre ja no conserva alguns dels canvis que falten
+                || (currentChange > lastChange && firstChange > lastChange + 1);
+        Map<Integer, Album> changed = missed ? Map.of() : changedSongs(conn, currentChange, currentSong);
+        if (changed == null) {
+            missed = true;
+        }
+        lastChange = currentChange;
+        lastSong = currentSong;
+        if (missed) {
+            SongIndex.invalidate();
+            SongQueryCache.invalidateAll();
+            return new Changes(referenceChanged, true, List.of());
+        }
+
+        List<SongChange> songs = new ArrayList<>(changed.size());
+        for (Map.Entry<Integer, Album> entry : changed.entrySet()) {
+            int songId = entry.getKey();
+            Album oldAlbum = entry.getValue();
+            SongRow song = MusicDAO.getSong(conn, songId).orElse(null);
+            if (oldAlbum != null) {
+                SongQueryCache.invalidateAlbum(oldAlbum.artistId(), oldAlbum.id());
+            }
+            if (song != null) {
+                SongQueryCache.invalidateSong(song);
+                SongIndex.songChanged(song);
+            } else {
+                SongIndex.songDeleted(songId);
+            }
+            songs.add(new SongChange(songId, oldAlbum, song));
+        }
+        return songs.isEmpty() && !referenceChanged ? null : new Changes(referenceChanged, false, songs);
+    }
+
+    /**
+     * @author giser
+     * Executa una tasca dins d'una transacció de lectura (BEGIN diferit): totes les consultes de la tasca veuen
+     * el mateix estat de la base de dades, encara que altres aplicacions hi confirmin canvis mentrestant.
+     * A diferència de {@link DatabaseConnection#transaction}, no reserva el bloqueig d'escriptura del fitxer.
+     * @param conn la connexió d'escriptura, en mode autocommit.
+     * @param task la tasca a executar.
+     * @param <T>  el tipus del resultat de la tasca.
+     * @return el resultat de la tasca.
+     * @throws SQLException si es produeix un error en la transacció o en la tasca.
+     */
+    private static <T> T snapshot(Connection conn, DatabaseConnection.ConnectionTask<T> task) throws SQLException {
+        DatabaseConnection.prepare(conn, "BEGIN").execute();
+        try {
+            return task.apply(conn);
+        } finally {
+            // La transacció no ha escrit res: COMMIT només allibera l'estat llegit
+            DatabaseConnection.prepare(conn, "COMMIT").execute();
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix les cançons canviades des de l'última comprovació: les del registre, amb l'àlbum que tenien abans
+     * del primer canvi, i les noves, sense àlbum anterior.
+     * @param conn          la connexió d'escriptura.
+     * @param currentChange la posició actual del registre.
+     * @param currentSong   l'últim id de cançó actual.
+     * @return l'àlbum anterior de cada cançó canviada, o <code>null</code> si algun àlbum anterior ja no existeix.
+     * @throws SQLException si es produeix un error en les consultes.
+     */
+    private static Map<Integer, Album> changedSongs(Connection conn, long currentChange, long currentSong) throws SQLException {
+        Map<Integer, Album> changed = new LinkedHashMap<>();
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, CHANGES_BETWEEN);
+        pstmt.setLong(1, lastChange);
+        pstmt.setLong(2, currentChange);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int songId = rs.getInt("song_id");
+                if (!changed.containsKey(songId)) {
+                    Album oldAlbum = ReferenceData.album(rs.getInt("album_id"));
+                    if (oldAlbum == null) {
+                        // Sense l'àlbum no se sap a quin artista pertanyia la cançó
+                        return null;
+                    }
+                    changed.put(songId, oldAlbum);
+                }
+            }
+        }
+        pstmt = DatabaseConnection.prepare(conn, SONGS_BETWEEN);
+        pstmt.setLong(1, lastSong);
+        pstmt.setLong(2, currentSong);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                changed.putIfAbsent(rs.getInt("id"), null);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @author giser
+     * Executa una consulta que retorna un sol número.
+     * @param conn la connexió.
+     * @param sql  la consulta.
+     * @return el número.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (ResultSet rs = DatabaseConnection.prepare(conn, sql).executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
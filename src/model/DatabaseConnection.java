@@ -1,35 +1,434 @@
 package model;
 
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author giser
- * Gestiona la connexió a la base de dades SQLite.
+ * Gestiona les connexions a la base de dades SQLite.
+ * Manté un petit pool de connexions de lectura i una única connexió d'escriptura dedicada.
+ * La base de dades s'obre en mode WAL, de manera que les lectures es poden executar alhora que les escriptures.
  */
 public class DatabaseConnection {
 
 	//URL de connexió per a la base de dades SQLite.
-    private static final String DB_URL = "jdbc:sqlite:music.db";
-    
-    // Emmagatzema la connexió activa a la base de dades.
-    private static Connection connection = null;
-    
+    private static String dbUrl = "jdbc:sqlite:music.db";
+
+    // Nombre màxim de connexions de lectura del pool.
+    public static final int READER_POOL_SIZE = 4;
+
+    // Temps màxim (en segons) que s'espera per obtenir una connexió de lectura lliure.
+    private static final int ACQUIRE_TIMEOUT_SECONDS = 10;
+
+    // Temps màxim (en mil·lisegons) que SQLite espera quan la base de dades està bloquejada per un altre procés.
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    // Connexions de lectura lliures.
+    private static final BlockingQueue<Connection> idleReaders = new ArrayBlockingQueue<>(READER_POOL_SIZE);
+
+    // Totes les connexions de lectura obertes, per poder-les tancar en aturar l'aplicació.
+    private static final List<Connection> allReaders = new ArrayList<>();
+
+    // Connexió d'escriptura dedicada i el bloqueig que en garanteix l'ús exclusiu.
+    private static Connection writer = null;
+    private static final ReentrantLock writerLock = new ReentrantLock();
+
+    // Indica si hi ha una transacció oberta a la connexió d'escriptura; només es consulta amb el bloqueig adquirit.
+    private static boolean inTransaction = false;
+
+    // Accions que s'executaran quan es confirmi la transacció oberta; només es consulten amb el bloqueig adquirit.
+    private static final List<Runnable> afterCommit = new ArrayList<>();
+
+    // Sentències preparades de cada connexió oberta.
+    private static final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    // Indica si ja s'ha obert la connexió d'escriptura i, per tant, s'ha activat el mode WAL.
+    private static volatile boolean walEnabled = false;
+
+    // Indica si el gestor s'ha aturat.
+    private static volatile boolean closed = false;
+
+    /**
+     * @author giser
+     * Tasca que s'executa amb una connexió prestada pel gestor.
+     * La connexió no s'ha de tancar ni guardar fora de la tasca.
+     * @param <T> el tipus del resultat de la tasca.
+     */
+    @FunctionalInterface
+    public interface ConnectionTask<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * @author giser
+     * Estableix l'URL de la base de dades. S'ha de cridar abans d'obrir cap connexió,
+     * o després de {@link #shutdown()} per tornar a obrir el gestor amb una altra base de dades.
+     * @param url l'URL JDBC de la base de dades SQLite, per exemple "jdbc:sqlite:music.db".
+     */
+    public static void setDatabaseUrl(String url) {
+        dbUrl = url;
+        closed = false;
+    }
+
+    /**
+     * @author giser
+     * Retorna el fitxer de la base de dades de l'URL actual.
+     * @return el fitxer, o <code>null</code> si la base de dades és en memòria.
+     */
+    public static Path databaseFile() {
+        String name = dbUrl.substring("jdbc:sqlite:".length());
+        int options = name.indexOf('?');
+        if (options >= 0) {
+            name = name.substring(0, options);
+        }
+        if (name.startsWith("file:")) {
+            name = name.substring("file:".length());
+        }
+        return name.isEmpty() || name.startsWith(":memory:") ? null : Path.of(name);
+    }
+
+    /**
+     * @author giser
+     * Retorna la sentència preparada per a l'SQL indicat, reutilitzant la que ja s'havia preparat
+     * en aquesta connexió si n'hi ha. La sentència no s'ha de tancar.
+     * Només es pot cridar des de dins d'una tasca, amb una connexió prestada pel gestor.
+     * @param conn la connexió prestada.
+     * @param sql  el text SQL de la sentència.
+     * @return la sentència preparada, sense paràmetres assignats.
+     * @throws SQLException si es produeix un error en preparar la sentència.
+     */
+    public static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return statementCaches.computeIfAbsent(conn, StatementCache::new).prepare(sql);
+    }
+
+    /**
+     * @author giser
+     * Executa una tasca de lectura amb una connexió del pool de lectors.
+     * Diverses lectures es poden executar alhora, i també mentre hi ha una escriptura en curs.
+     * @param task la tasca a executar.
+     * @param <T>  el tipus del resultat de la tasca.
+     * @return el resultat de la tasca.
+     * @throws SQLException si no es pot obtenir una connexió o la tasca falla.
+     */
+    public static <T> T read(ConnectionTask<T> task) throws SQLException {
+        Connection conn = acquireReader();
+        try {
+            return task.apply(conn);
+        } finally {
+            // Retornem la connexió al pool perquè la pugui fer servir una altra lectura
+            releaseReader(conn);
+        }
+    }
+
+    /**
+     * @author giser
+     * Executa una tasca amb la connexió d'escriptura, en mode autocommit.
+     * Només un fil alhora pot utilitzar la connexió d'escriptura.
+     * @param task la tasca a executar.
+     * @param <T>  el tipus del resultat de la tasca.
+     * @return el resultat de la tasca.
+     * @throws SQLException si no es pot obtenir la connexió o la tasca falla.
+     */
+    public static <T> T write(ConnectionTask<T> task) throws SQLException {
+        writerLock.lock();
+        try {
+            return task.apply(getWriter());
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Executa una tasca amb la connexió d'escriptura dins d'una única transacció.
+     * Si la tasca acaba correctament es confirma la transacció; si falla, es desfà.
+     * Si ja hi ha una transacció oberta en el mateix fil, la tasca s'hi afegeix: només la transacció
+     * exterior fa COMMIT o ROLLBACK, de manera que diverses operacions del DAO es poden agrupar en una sola transacció.
+     * @param task la tasca a executar.
+     * @param <T>  el tipus del resultat de la tasca.
+     * @return el resultat de la tasca.
+     * @throws SQLException si no es pot obtenir la connexió o la tasca falla.
+     */
+    public static <T> T transaction(ConnectionTask<T> task) throws SQLException {
+        return write(conn -> {
+            // Transacció niada: s'executa dins de l'exterior
+            if (inTransaction) {
+                return task.apply(conn);
+            }
+            // BEGIN IMMEDIATE reserva el bloqueig d'escriptura des del principi i evita interbloquejos amb altres processos
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("BEGIN IMMEDIATE");
+            }
+            inTransaction = true;
+            boolean committed = false;
+            try {
+                T result = task.apply(conn);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("COMMIT");
+                }
+                committed = true;
+                runAfterCommit();
+                return result;
+            } finally {
+                inTransaction = false;
+                afterCommit.clear();
+                if (!committed) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("ROLLBACK");
+                    } catch (SQLException e) {
+                        System.err.println("Error al desfer la transacció: " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @author giser
+     * Executa una part d'una transacció dins d'un punt de desament (SAVEPOINT): si la tasca falla, només es desfan
+     * els seus canvis (i es descarten les seves accions {@link #afterCommit(Runnable)}) i la transacció continua oberta.
+     * S'ha de cridar dins de {@link #transaction(ConnectionTask)}.
+     * @param task la tasca a executar.
+     * @param <T>  el tipus del resultat de la tasca.
+     * @return el resultat de la tasca.
+     * @throws SQLException l'error de la tasca, després de desfer-ne els canvis.
+     */
+    public static <T> T savepoint(ConnectionTask<T> task) throws SQLException {
+        return write(conn -> {
+            if (!inTransaction) {
+                throw new SQLException("Els punts de desament només es poden fer dins d'una transacció.");
+            }
+            prepare(conn, "SAVEPOINT task").execute();
+            int actions = afterCommit.size();
+            try {
+                T result = task.apply(conn);
+                prepare(conn, "RELEASE task").execute();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                prepare(conn, "ROLLBACK TO task").execute();
+                prepare(conn, "RELEASE task").execute();
+                afterCommit.subList(actions, afterCommit.size()).clear();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * @author giser
+     * Programa una acció per quan els canvis d'escriptura actuals siguin definitius: en confirmar la transacció oberta
+     * o, si no n'hi ha cap (mode autocommit), immediatament. Si la transacció es desfà, l'acció no s'executa.
+     * Serveix per actualitzar estructures en memòria només amb dades confirmades.
+     * S'ha de cridar des d'una tasca d'escriptura, amb la connexió d'escriptura prestada.
+     * @param action l'acció; no ha d'accedir a la base de dades ni llençar excepcions.
+     */
+    public static void afterCommit(Runnable action) {
+        if (!writerLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("afterCommit només es pot cridar des d'una tasca d'escriptura.");
+        }
+        if (inTransaction) {
+            afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * @author giser
+     * Executa les accions programades per a la transacció que s'acaba de confirmar.
+     * Un error en una acció no afecta les altres, perquè els canvis ja són definitius.
+     */
+    private static void runAfterCommit() {
+        List<Runnable> actions = new ArrayList<>(afterCommit);
+        afterCommit.clear();
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error en una acció posterior a la transacció: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Atura el gestor de connexions: tanca la connexió d'escriptura i totes les connexions de lectura.
+     * S'ha de cridar en tancar l'aplicació.
+     */
+    public static void shutdown() {
+        closed = true;
+        writerLock.lock();
+        try {
+            if (writer != null) {
+                try (Statement stmt = writer.createStatement()) {
+                    // Actualitza les estadístiques del planificador abans de tancar
+                    stmt.execute("PRAGMA optimize");
+                } catch (SQLException e) {
+                    System.err.println("Error al optimitzar la base de dades: " + e.getMessage());
+                }
+                closeQuietly(writer);
+                writer = null;
+            }
+            walEnabled = false;
+        } finally {
+            writerLock.unlock();
+        }
+        synchronized (allReaders) {
+            for (Connection conn : allReaders) {
+                closeQuietly(conn);
+            }
+            allReaders.clear();
+            idleReaders.clear();
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna la connexió d'escriptura, obrint-la si encara no existeix.
+     * S'ha de cridar amb el bloqueig d'escriptura adquirit.
+     * @return la connexió d'escriptura.
+     * @throws SQLException si es produeix algun error en establir la connexió.
+     */
+    private static Connection getWriter() throws SQLException {
+        checkOpen();
+        if (writer == null || writer.isClosed()) {
+            writer = open(false);
+            walEnabled = true;
+        }
+        return writer;
+    }
+
+    /**
+     * @author giser
+     * Obté una connexió de lectura lliure. Si no n'hi ha cap i el pool encara no és ple, n'obre una de nova;
+     * si el pool és ple, espera que se n'alliberi una.
+     * @return una connexió de lectura.
+     * @throws SQLException si no es pot obtenir cap connexió dins del temps màxim.
+     */
+    private static Connection acquireReader() throws SQLException {
+        checkOpen();
+        Connection conn = idleReaders.poll();
+        if (conn != null) {
+            return conn;
+        }
+        if (!walEnabled) {
+            // La primera connexió ha de ser la d'escriptura, que és la que activa el mode WAL
+            write(DatabaseConnection::noop);
+        }
+        synchronized (allReaders) {
+            if (allReaders.size() < READER_POOL_SIZE) {
+                conn = open(true);
+                allReaders.add(conn);
+                return conn;
+            }
+        }
+        try {
+            conn = idleReaders.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("S'ha interromput l'espera d'una connexió de lectura.", e);
+        }
+        if (conn == null) {
+            throw new SQLException("No hi ha cap connexió de lectura disponible.");
+        }
+        return conn;
+    }
+
     /**
      * @author giser
-     * Retorna una connexió activa a la base de dades.
-     * Si la connexió no existeix o està tancada, s'estableix una nova connexió utilitzant l'URL definit.
+     * Retorna una connexió de lectura al pool. Si el gestor s'ha aturat, la tanca.
+     * @param conn la connexió de lectura.
+     */
+    private static void releaseReader(Connection conn) {
+        if (closed) {
+            closeQuietly(conn);
+        } else if (!idleReaders.offer(conn)) {
+            closeQuietly(conn);
+        }
+    }
 
-     * @return una instància de {@link Connection} de la connexió activa.
+    /**
+     * @author giser
+     * Obre una nova connexió i hi aplica els PRAGMA de configuració.
+     * @param readOnly indica si la connexió només s'utilitzarà per llegir.
+     * @return la connexió oberta.
      * @throws SQLException si es produeix algun error en establir la connexió.
      */
-    public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            // Estableix la connexió a la base de dades utilitzant el URL definit
-            connection = DriverManager.getConnection(DB_URL);
+    private static Connection open(boolean readOnly) throws SQLException {
+        // Estableix la connexió a la base de dades utilitzant el URL definit
+        Connection conn = DriverManager.getConnection(dbUrl);
+        try (Statement stmt = conn.createStatement()) {
+            // Espera en lloc de fallar immediatament si un altre procés té la base de dades bloquejada
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            if (!readOnly) {
+                // El mode WAL és persistent: permet lectures concurrents amb l'escriptura
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
+            // En mode WAL, NORMAL és segur davant errors de l'aplicació i evita un fsync per transacció
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            // Memòria cau de pàgines de 16 MB (valor negatiu = KiB)
+            stmt.execute("PRAGMA cache_size = -16000");
+            // Lectura del fitxer mitjançant memòria mapejada (256 MB)
+            stmt.execute("PRAGMA mmap_size = 268435456");
+            stmt.execute("PRAGMA temp_store = MEMORY");
+            if (readOnly) {
+                // Les connexions de lectura no poden modificar la base de dades per error
+                stmt.execute("PRAGMA query_only = 1");
+            }
+        } catch (SQLException e) {
+            closeQuietly(conn);
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * @author giser
+     * Comprova que el gestor no s'hagi aturat.
+     * @throws SQLException si el gestor ja s'ha aturat.
+     */
+    private static void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("El gestor de connexions està tancat.");
+        }
+    }
+
+    /**
+     * @author giser
+     * Tasca buida que només serveix per obrir la connexió d'escriptura.
+     * @param conn la connexió d'escriptura.
+     * @return sempre <code>null</code>.
+     */
+    private static Void noop(Connection conn) {
+        return null;
+    }
+
+    /**
+     * @author giser
+     * Tanca una connexió ignorant els errors.
+     * @param conn la connexió a tancar.
+     */
+    private static void closeQuietly(Connection conn) {
+        // Primer es tanquen les sentències preparades de la connexió
+        StatementCache cache = statementCaches.remove(conn);
+        if (cache != null) {
+            cache.clear();
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error al tancar la connexió: " + e.getMessage());
         }
-        // Retorna la connexió activa
-        return connection;
     }
 }
@@ -1,83 +1,250 @@
 package model;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HexFormat;
 
 /**
  * @author giser
  * Encarregada d'inicialitzar la base de dades.
  * Llegeix les sentències SQL del fitxer "/musicdb.sql" i les executa per establir l'estructura
  * i les dades inicials de la base de dades.
+ * Si el build ha generat la imatge de la base de dades inicial ("/musicdb.sqlite", amb la seva suma SHA-256 a
+ * "/musicdb.sqlite.sha256"), la primera execució només copia aquest fitxer en lloc de tornar a executar l'script.
  */
 public class DatabaseInitializer {
+
+    // Nombre de sentències que s'envien a la base de dades en cada lot.
+    private static final int BATCH_SIZE = 1000;
+
+    // Imatge de la base de dades inicial (script i migracions ja aplicats) i la seva suma SHA-256 en hexadecimal.
+    private static final String SNAPSHOT_RESOURCE = "/musicdb.sqlite";
+    private static final String SNAPSHOT_CHECKSUM = "/musicdb.sqlite.sha256";
     
     /**
      * @author giser
      * Inicialitza la base de dades executant les sentències SQL contingudes en el fitxer "/musicdb.sql".
-     * El mètode llegeix el fitxer SQL, ignora les línies que són comentaris o estan buides,
-     * separa les consultes per punt i coma i les executa una per una.
+     * El mètode llegeix el fitxer SQL sentència a sentència (respectant les cadenes i ignorant els comentaris)
+     * i les executa en lots dins d'una sola transacció.
      * Amb aquesta modificació, s'executa la inicialització només si la taula "song" no existeix.
+     * Després s'apliquen les migracions d'esquema pendents ({@link SchemaMigrations}), tant a les bases de dades noves
+     * com a les existents.
+     * Si el fitxer de la base de dades encara no existeix, primer s'intenta crear a partir de la imatge ({@link #installSnapshot()}).
+     * Els errors només s'escriuen per consola; qui hagi de saber si la base de dades ha quedat preparada
+     * (com l'arrencada de l'aplicació) ha de cridar {@link #installSnapshot()} i {@link #createSchema()}.
      */
     public static void initialize() {
-        // Utilitzem un try-with-resources per assegurar-nos que la connexió es tanca adequadament
-        try (Connection conn = DatabaseConnection.getConnection()){
-            
-            // Comprovem si la taula "song" existeix (assumeix que la base de dades ja està inicialitzada si existeix)
-            boolean isInitialized = false;
-            java.sql.DatabaseMetaData meta = conn.getMetaData();
-            try (ResultSet rs = meta.getTables(null, null, "song", new String[] {"TABLE"})) {
-                if(rs.next()){
-                    isInitialized = true;
-                }
-            }
-            if (isInitialized) {
-                System.out.println("Base de dades ja inicialitzada, saltant inicialització.");
-                return;
+        // Utilitzem la connexió d'escriptura del gestor dins d'una sola transacció: si alguna sentència falla no queda res a mitges
+        try {
+            installSnapshot();
+            createSchema();
+        } catch (Exception e) {
+            // En cas de qualsevol error, s'imprimeix un missatge i la pila d'excepcions
+            System.err.println("Error al inicialitzar la base de dades: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @author giser
+     * Crea l'esquema i les dades inicials amb l'script, si no existeixen, i aplica les migracions pendents.
+     * També indexa per a la cerca les cançons d'una càrrega massiva interrompuda ({@link SongSearchIndex#indexPending()}).
+     * A diferència de {@link #initialize()}, els errors es propaguen.
+     * @throws SQLException si es produeix un error en l'script o en les migracions.
+     */
+    public static void createSchema() throws SQLException {
+        // Es mesuren per separat la creació de l'esquema i les migracions (files = migracions aplicades)
+        QueryMetrics.run("initialize", () -> DatabaseConnection.transaction(DatabaseInitializer::initialize));
+        QueryMetrics.time("migrate", Integer::intValue, SchemaMigrations::migrate);
+        SongSearchIndex.indexPending();
+    }
+
+    /**
+     * @author giser
+     * Crea el fitxer de la base de dades copiant la imatge generada pel build, si el fitxer encara no existeix.
+     * La imatge es copia a un fitxer temporal mentre se'n calcula la suma SHA-256, i només es posa al seu lloc si
+     * coincideix amb l'esperada; en qualsevol altre cas (sense imatge, imatge corrompuda o error d'escriptura)
+     * no es fa res i {@link #initialize()} crea la base de dades amb l'script.
+     * S'ha de cridar abans d'obrir cap connexió a la base de dades, perquè obrir-la ja en crea el fitxer.
+     * @return <code>true</code> si s'ha creat la base de dades a partir de la imatge.
+     */
+    public static boolean installSnapshot() {
+        Path file = DatabaseConnection.databaseFile();
+        try {
+            if (file == null || (Files.exists(file) && Files.size(file) > 0)) {
+                return false;
             }
-            
-            // Obte les dades del fitxer SQL ubicat dins del directori de recursos
-            InputStream is = DatabaseInitializer.class.getResourceAsStream("/musicdb.sql");
-            if (is == null) {
-                // Si no es troba el fitxer, s'informa de l'error i surt del mètode
-                System.err.println("No s'ha trobat l'arxiu a /musicdb.sql");
-                return;
+        } catch (IOException e) {
+            return false;
+        }
+        try (InputStream image = DatabaseInitializer.class.getResourceAsStream(SNAPSHOT_RESOURCE);
+             InputStream checksum = DatabaseInitializer.class.getResourceAsStream(SNAPSHOT_CHECKSUM)) {
+            if (image == null || checksum == null) {
+                return false;
             }
-            // Llegeix el fitxer
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sqlBuilder = new StringBuilder();
-            String line;
-            
-            // Iterem per cada línia del fitxer
-            while ((line = reader.readLine()) != null) {
-                // Ignorem les línies que són comentaris (comencen amb "--") o que estan buides
-                if (!line.trim().startsWith("--") && !line.trim().isEmpty()) {
-                    // Afegim la línia al StringBuilder i una nova línia per separar les sentències
-                    sqlBuilder.append(line).append("\n");
+            long start = System.nanoTime();
+            String expected = new String(checksum.readAllBytes(), StandardCharsets.US_ASCII).trim();
+            Path temp = file.toAbsolutePath().resolveSibling(file.getFileName() + ".tmp");
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                long size = Files.copy(new DigestInputStream(image, digest), temp, StandardCopyOption.REPLACE_EXISTING);
+                String actual = HexFormat.of().formatHex(digest.digest());
+                if (!actual.equalsIgnoreCase(expected)) {
+                    System.err.println("La imatge de la base de dades no és vàlida (SHA-256 " + actual + "), s'utilitzarà l'script.");
+                    return false;
                 }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Base de dades creada a partir de la imatge (" + size / 1024 + " KB en "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms).");
+                return true;
+            } finally {
+                Files.deleteIfExists(temp);
             }
-            reader.close();
-            
-            // Separamos les sentències SQL per punt i coma
-            String[] queries = sqlBuilder.toString().split(";");
-            // Creem un statement per executar les consultes
-            Statement stmt = conn.createStatement();
-            // Iterem sobre cada consulta
-            for (String query : queries) {
-                // Si la consulta no està buida, la executem
-                if (!query.trim().isEmpty()) {
-                    stmt.execute(query);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.err.println("Error al copiar la imatge de la base de dades, s'utilitzarà l'script: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @author giser
+     * Genera la imatge de la base de dades inicial: executa l'script i les migracions en una base de dades nova,
+     * la compacta en un sol fitxer (sense WAL) i n'escriu la suma SHA-256. El build la crida en compilar l'aplicació.
+     * @param directory el directori on s'escriuen "musicdb.sqlite" i "musicdb.sqlite.sha256".
+     * @throws IOException  si no es poden escriure els fitxers.
+     * @throws SQLException si falla l'script o alguna migració.
+     */
+    static void buildSnapshot(Path directory) throws IOException, SQLException {
+        Path image = directory.resolve(SNAPSHOT_RESOURCE.substring(1));
+        Path temp = directory.resolve(image.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        DatabaseConnection.setDatabaseUrl("jdbc:sqlite:" + temp);
+        try {
+            createSchema();
+        } finally {
+            // En tancar, el gestor actualitza les estadístiques del planificador (PRAGMA optimize), que també queden a la imatge
+            DatabaseConnection.shutdown();
+        }
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + temp);
+             Statement stmt = conn.createStatement()) {
+            // La imatge ha de ser un sol fitxer: en obrir-la, l'aplicació hi torna a activar el mode WAL
+            stmt.execute("PRAGMA journal_mode = DELETE");
+            stmt.execute("VACUUM");
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(temp), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        Files.move(temp, image, StandardCopyOption.REPLACE_EXISTING);
+        Files.writeString(directory.resolve(SNAPSHOT_CHECKSUM.substring(1)),
+                HexFormat.of().formatHex(digest.digest()) + "\n", StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @author giser
+     * Genera la imatge de la base de dades inicial des de la línia d'ordres (el build l'executa després de compilar).
+     * @param args el directori de destí de la imatge.
+     * @throws IOException  si no es poden escriure els fitxers.
+     * @throws SQLException si falla l'script o alguna migració.
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 1) {
+            System.err.println("Ús: java model.DatabaseInitializer directori");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        buildSnapshot(Path.of(args[0]));
+        System.out.println("Imatge de la base de dades generada a " + args[0] + " en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    /**
+     * @author giser
+     * Executa la inicialització amb la connexió d'escriptura indicada, dins de la transacció oberta.
+     * @param conn la connexió d'escriptura.
+     * @return sempre <code>null</code>.
+     * @throws SQLException si es produeix un error en executar les sentències o en llegir el fitxer SQL.
+     */
+    private static Void initialize(Connection conn) throws SQLException {
+        // Comprovem si la taula "song" existeix (assumeix que la base de dades ja està inicialitzada si existeix)
+        boolean isInitialized = false;
+        java.sql.DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(null, null, "song", new String[] {"TABLE"})) {
+            if(rs.next()){
+                isInitialized = true;
+            }
+        }
+        if (isInitialized) {
+            System.out.println("Base de dades ja inicialitzada, saltant inicialització.");
+            return null;
+        }
+        
+        // Obte les dades del fitxer SQL ubicat dins del directori de recursos
+        InputStream is = DatabaseInitializer.class.getResourceAsStream("/musicdb.sql");
+        if (is == null) {
+            // Si no es troba el fitxer, s'informa de l'error i surt del mètode
+            System.err.println("No s'ha trobat l'arxiu a /musicdb.sql");
+            return null;
+        }
+        // Executem l'script amb la transacció ja oberta, de manera que només hi ha un fsync en confirmar-la
+        long start = System.nanoTime();
+        int count = executeScript(conn, is);
+        System.out.println("Base de dades inicialitzada correctament (" + count + " sentències en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms).");
+        return null;
+    }
+
+    /**
+     * @author giser
+     * Executa totes les sentències d'un script SQL amb la connexió indicada, agrupades en lots.
+     * El fitxer es llegeix en streaming: només es guarda en memòria el lot que s'està preparant.
+     * S'ha de cridar dins d'una transacció perquè totes les sentències es confirmin alhora.
+     * @param conn   la connexió d'escriptura.
+     * @param script el contingut de l'script en UTF-8; es tanca en acabar.
+     * @return el nombre de sentències executades.
+     * @throws SQLException si es produeix un error en executar les sentències o en llegir l'script.
+     */
+    public static int executeScript(Connection conn, InputStream script) throws SQLException {
+        int count = 0;
+        int batched = 0;
+        try (SqlScriptReader reader = new SqlScriptReader(new InputStreamReader(script, StandardCharsets.UTF_8));
+             Statement stmt = conn.createStatement()) {
+            String sql;
+            // Iterem per cada sentència de l'script
+            while ((sql = reader.next()) != null) {
+                stmt.addBatch(sql);
+                count++;
+                // Executem el lot quan arriba a la mida màxima, per no acumular tot l'script en memòria
+                if (++batched == BATCH_SIZE) {
+                    stmt.executeBatch();
+                    batched = 0;
                 }
             }
-            stmt.close();
-            System.out.println("Base de dades inicialitzada correctament.");
-        } catch (Exception e) {
-            // En cas de qualsevol error, s'imprimeix un missatge i la pila d'excepcions
-            System.err.println("Error al inicialitzar la base de dades: " + e.getMessage());
-            e.printStackTrace();
+            if (batched > 0) {
+                stmt.executeBatch();
+            }
+            return count;
+        } catch (IOException e) {
+            throw new SQLException("Error al llegir l'script SQL", e);
         }
     }
 }
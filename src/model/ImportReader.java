@@ -0,0 +1,76 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * @author giser
+ * Lector en streaming de les files d'un fitxer d'importació: només es guarda en memòria la fila actual.
+ * Els camps es reconeixen pel nom de la columna (CSV) o de la propietat (JSON), en anglès o en català.
+ */
+public interface ImportReader extends Closeable {
+
+    /**
+     * @author giser
+     * Llegeix la fila següent.
+     * @return la fila, o <code>null</code> si s'ha arribat al final del fitxer.
+     * @throws IOException si es produeix un error de lectura o el format del fitxer és incorrecte.
+     */
+    ImportRow next() throws IOException;
+
+    /**
+     * @author giser
+     * Obre un fitxer d'importació segons la seva extensió: ".json" o ".jsonl" per a JSON i la resta com a CSV.
+     * El fitxer s'ha de codificar en UTF-8.
+     * @param file el fitxer.
+     * @return el lector.
+     * @throws IOException si no es pot obrir el fitxer o llegir-ne la capçalera.
+     */
+    static ImportReader open(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            if (name.endsWith(".json") || name.endsWith(".jsonl")) {
+                return new JsonImportReader(reader);
+            }
+            return new CsvImportReader(reader);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna el camp de {@link ImportRow} que correspon al nom d'una columna o propietat.
+     * @param name el nom, sense distingir majúscules.
+     * @return la posició del camp (0 segell, 1 artista, 2 àlbum, 3 any, 4 títol, 5 durada), o -1 si no és cap camp conegut.
+     */
+    static int field(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "label", "record_label", "segell" -> 0;
+            case "artist", "artista" -> 1;
+            case "album", "àlbum" -> 2;
+            case "year", "any" -> 3;
+            case "title", "song", "name", "títol", "cançó" -> 4;
+            case "duration", "durada" -> 5;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @author giser
+     * Construeix una fila a partir dels seus camps, ordenats com a {@link #field(String)}.
+     * @param line   la línia o el número d'objecte.
+     * @param fields els camps.
+     * @return la fila.
+     */
+    static ImportRow row(long line, String[] fields) {
+        return new ImportRow(line, fields[0], fields[1], fields[2], fields[3], fields[4], fields[5]);
+    }
+}
@@ -0,0 +1,16 @@
+package model;
+
+/**
+ * @author giser
+ * Fila d'un fitxer d'importació tal com s'ha llegit, abans de validar-la: tots els camps són text.
+ * Els camps que no apareixen al fitxer són <code>null</code>.
+ * @param line     la línia (CSV) o el número d'objecte (JSON) de la fila, per als missatges d'error.
+ * @param label    el nom del segell discogràfic; opcional.
+ * @param artist   el nom de l'artista.
+ * @param album    el títol de l'àlbum.
+ * @param year     l'any de l'àlbum; opcional.
+ * @param title    el títol de la cançó.
+ * @param duration la durada de la cançó.
+ */
+public record ImportRow(long line, String label, String artist, String album, String year, String title, String duration) {
+}
@@ -0,0 +1,208 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author giser
+ * Mapa de claus <code>int</code> a objectes, sense convertir les claus a {@link Integer}.
+ * Utilitza adreçament obert amb sondeig lineal sobre dos vectors (claus i valors), de manera que
+ * cada entrada ocupa només una posició de cada vector i les cerques no creen objectes.
+ * Els valors no poden ser <code>null</code>. No és segur per a fils.
+ * @param <V> el tipus dels valors.
+ */
+public class IntMap<V> {
+
+    // Proporció màxima d'ocupació abans de fer créixer els vectors.
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    /**
+     * @author giser
+     * Crea un mapa buit.
+     */
+    public IntMap() {
+        this(16);
+    }
+
+    /**
+     * @author giser
+     * Crea un mapa buit amb capacitat per al nombre d'entrades indicat sense haver de créixer.
+     * @param expectedSize el nombre d'entrades previst.
+     */
+    public IntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @author giser
+     * Retorna el valor associat a una clau.
+     * @param key la clau.
+     * @return el valor, o <code>null</code> si la clau no hi és.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @author giser
+     * Indica si el mapa conté la clau.
+     * @param key la clau.
+     * @return <code>true</code> si la clau hi és.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @author giser
+     * Associa un valor a una clau, substituint el valor anterior si n'hi havia.
+     * @param key   la clau.
+     * @param value el valor; no pot ser <code>null</code>.
+     * @return el valor anterior, o <code>null</code> si la clau no hi era.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("El valor no pot ser null");
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @author giser
+     * Elimina una clau del mapa.
+     * Les entrades següents de la mateixa seqüència de sondeig es desplacen enrere perquè les cerques continuïn funcionant.
+     * @param key la clau.
+     * @return el valor eliminat, o <code>null</code> si la clau no hi era.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                break;
+            }
+        }
+        if (values[i] == null) {
+            return null;
+        }
+        V old = (V) values[i];
+        // Desplaçament enrere de les entrades que ocupaven una posició posterior a la seva posició ideal
+        int hole = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int ideal = hash(keys[j]) & mask;
+            if (((j - ideal) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * @author giser
+     * Retorna el nombre d'entrades del mapa.
+     * @return el nombre d'entrades.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @author giser
+     * Substitueix cada valor del mapa pel resultat d'aplicar-hi la funció, sense canviar les claus.
+     * @param function la funció; no pot retornar <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public void replaceValues(UnaryOperator<V> function) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                V value = function.apply((V) values[i]);
+                if (value == null) {
+                    throw new IllegalArgumentException("El valor no pot ser null");
+                }
+                values[i] = value;
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Elimina totes les entrades del mapa.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @author giser
+     * Crea els vectors buits amb la capacitat indicada (potència de 2).
+     * @param capacity la capacitat.
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @author giser
+     * Fa créixer els vectors i torna a inserir totes les entrades.
+     * @param capacity la nova capacitat (potència de 2).
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Barreja els bits de la clau perquè els ids consecutius es reparteixin per tot el vector.
+     * @param key la clau.
+     * @return el valor de dispersió.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,291 @@
+package model;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author giser
+ * Lector de fitxers JSON d'importació. Accepta una llista d'objectes (<code>[{...}, {...}]</code>) o
+ * un objecte per línia (JSON Lines). Cada objecte és una fila i les seves propietats, els camps; els valors
+ * poden ser textos, números, booleans o <code>null</code>, i les propietats desconegudes (de qualsevol tipus) s'ignoren.
+ * El fitxer es llegeix caràcter a caràcter sense construir-ne l'arbre, de manera que la memòria no depèn de la seva mida.
+ */
+class JsonImportReader implements ImportReader {
+
+    // Mida del buffer de lectura.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    // Línia actual del fitxer.
+    private long line = 1;
+
+    // Indica si les files són dins d'una llista i si ja se n'ha llegit el final.
+    private boolean inArray = false;
+    private boolean finished = false;
+
+    // Text de la cadena o el valor que s'està llegint; es reutilitza.
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * @author giser
+     * Crea el lector i comprova l'inici del fitxer.
+     * @param reader el text del fitxer.
+     * @throws IOException si el fitxer no comença per una llista o un objecte.
+     */
+    JsonImportReader(Reader reader) throws IOException {
+        this.reader = reader;
+        int c = skipWhitespace();
+        if (c == '\uFEFF') {
+            position++;
+            c = skipWhitespace();
+        }
+        if (c == '[') {
+            position++;
+            inArray = true;
+        } else if (c != '{' && c != -1) {
+            throw error("S'esperava una llista o un objecte");
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix l'objecte següent.
+     * @return la fila, o <code>null</code> al final del fitxer (o de la llista).
+     * @throws IOException si es produeix un error de lectura o el JSON és incorrecte.
+     */
+    @Override
+    public ImportRow next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int c = skipWhitespace();
+        if (inArray && c == ',') {
+            position++;
+            c = skipWhitespace();
+        }
+        if (c == -1 || (inArray && c == ']')) {
+            finished = true;
+            return null;
+        }
+        if (c != '{') {
+            throw error("S'esperava un objecte");
+        }
+        long start = line;
+        position++;
+        String[] fields = new String[6];
+        c = skipWhitespace();
+        if (c == '}') {
+            position++;
+            return ImportReader.row(start, fields);
+        }
+        while (true) {
+            if (skipWhitespace() != '"') {
+                throw error("S'esperava el nom d'una propietat");
+            }
+            position++;
+            int field = ImportReader.field(readString());
+            expect(':');
+            String value = readValue();
+            if (field >= 0) {
+                fields[field] = value;
+            }
+            c = skipWhitespace();
+            position++;
+            if (c == '}') {
+                return ImportReader.row(start, fields);
+            }
+            if (c != ',') {
+                throw error("S'esperava ',' o '}'");
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Llegeix un valor. Els objectes i les llistes se salten i retornen <code>null</code>.
+     * @return el valor com a text, o <code>null</code> si és <code>null</code>, un objecte o una llista.
+     * @throws IOException si el valor és incorrecte.
+     */
+    private String readValue() throws IOException {
+        int c = skipWhitespace();
+        if (c == '"') {
+            position++;
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            skipNested();
+            return null;
+        }
+        // Número, true, false o null: es llegeix fins al separador següent
+        text.setLength(0);
+        while (true) {
+            c = peek();
+            if (c == -1 || c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            text.append((char) c);
+            position++;
+        }
+        if (text.isEmpty()) {
+            throw error("S'esperava un valor");
+        }
+        String value = text.toString();
+        return value.equals("null") ? null : value;
+    }
+
+    /**
+     * @author giser
+     * Llegeix una cadena, amb les cometes inicials ja consumides, i en resol les seqüències d'escapament.
+     * @return el text de la cadena.
+     * @throws IOException si la cadena no es tanca o té un escapament incorrecte.
+     */
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1 || c == '\n') {
+                throw error("Cadena sense tancar");
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            int escaped = read();
+            switch (escaped) {
+                case '"', '\\', '/' -> text.append((char) escaped);
+                case 'b' -> text.append('\b');
+                case 'f' -> text.append('\f');
+                case 'n' -> text.append('\n');
+                case 'r' -> text.append('\r');
+                case 't' -> text.append('\t');
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw error("Escapament \\u incorrecte");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                }
+                default -> throw error("Escapament incorrecte");
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Salta un objecte o una llista sencers, amb tot el que contenen.
+     * @throws IOException si el fitxer s'acaba abans de tancar-los.
+     */
+    private void skipNested() throws IOException {
+        int depth = 0;
+        do {
+            int c = read();
+            if (c == -1) {
+                throw error("Objecte o llista sense tancar");
+            }
+            if (c == '"') {
+                readString();
+            } else if (c == '\n') {
+                line++;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * @author giser
+     * Comprova que el següent caràcter significatiu sigui l'indicat i el consumeix.
+     * @param expected el caràcter esperat.
+     * @throws IOException si el caràcter és un altre.
+     */
+    private void expect(char expected) throws IOException {
+        if (skipWhitespace() != expected) {
+            throw error("S'esperava '" + expected + "'");
+        }
+        position++;
+    }
+
+    /**
+     * @author giser
+     * Salta els espais i salts de línia i retorna el caràcter següent sense consumir-lo.
+     * @return el caràcter, o -1 al final del fitxer.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == -1 || !Character.isWhitespace(c)) {
+                return c;
+            }
+            if (c == '\n') {
+                line++;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna el caràcter següent sense consumir-lo.
+     * @return el caràcter, o -1 al final del fitxer.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            int read = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            limit = Math.max(read, 0);
+            if (read <= 0) {
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    /**
+     * @author giser
+     * Llegeix i consumeix el caràcter següent.
+     * @return el caràcter, o -1 al final del fitxer.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    /**
+     * @author giser
+     * Crea l'excepció d'un error de format amb la línia on s'ha produït.
+     * @param message la descripció de l'error.
+     * @return l'excepció.
+     */
+    private IOException error(String message) {
+        return new IOException(message + " a la línia " + line + " del JSON");
+    }
+
+    /**
+     * @author giser
+     * Tanca el fitxer.
+     * @throws IOException si es produeix un error en tancar-lo.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
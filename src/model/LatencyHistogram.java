@@ -0,0 +1,135 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author giser
+ * Histograma de latències en nanosegons, segur per a diversos fils i sense bloquejos.
+ * Els intervals són logarítmics: cada potència de dos es divideix en {@value #SUB_BUCKETS} intervals iguals,
+ * de manera que l'error relatiu dels percentils és com a màxim del 25% amb qualsevol magnitud (de ns a minuts)
+ * i el histograma ocupa sempre la mateixa memòria (256 comptadors).
+ */
+public class LatencyHistogram {
+
+    // Bits de subdivisió de cada potència de dos.
+    private static final int SUB_BITS = 2;
+
+    // Intervals per potència de dos.
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // Nombre total d'intervals: cobreix tots els valors positius d'un long.
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    // Nombre de valors de cada interval.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    // Nombre de valors, suma i màxim.
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Resum del histograma en un moment donat, en nanosegons.
+     * @param count el nombre de valors.
+     * @param mean  la mitjana.
+     * @param p50   la mediana.
+     * @param p95   el percentil 95.
+     * @param p99   el percentil 99.
+     * @param max   el valor màxim.
+     */
+    public record Summary(long count, long mean, long p50, long p95, long p99, long max) {
+    }
+
+    /**
+     * @author giser
+     * Afegeix un valor al histograma.
+     * @param nanos la latència en nanosegons; els valors negatius es compten com a 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @author giser
+     * Calcula el resum del histograma. Els percentils són el límit superior del seu interval.
+     * Si s'hi afegeixen valors mentre es calcula, el resum pot no incloure'ls tots.
+     * @return el resum.
+     */
+    public Summary summary() {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long maxValue = max.get();
+        if (total == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0);
+        }
+        return new Summary(total, sum.sum() / Math.max(1, count.sum()),
+                percentile(snapshot, total, 0.50, maxValue),
+                percentile(snapshot, total, 0.95, maxValue),
+                percentile(snapshot, total, 0.99, maxValue),
+                maxValue);
+    }
+
+    /**
+     * @author giser
+     * Calcula un percentil a partir dels comptadors dels intervals.
+     * @param snapshot els comptadors.
+     * @param total    el nombre total de valors.
+     * @param fraction el percentil, entre 0 i 1.
+     * @param maxValue el valor màxim, que limita el resultat.
+     * @return el límit superior de l'interval que conté el percentil.
+     */
+    private static long percentile(long[] snapshot, long total, double fraction, long maxValue) {
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * @author giser
+     * Retorna l'interval d'un valor: els valors petits tenen un interval propi i la resta es reparteixen
+     * en {@value #SUB_BUCKETS} intervals per potència de dos.
+     * @param value el valor, no negatiu.
+     * @return l'índex de l'interval.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @author giser
+     * Retorna el valor més gran que pertany a un interval.
+     * @param bucket l'índex de l'interval.
+     * @return el límit superior (inclòs) de l'interval.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        long width = 1L << (exponent - SUB_BITS);
+        return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+    }
+}
@@ -1,92 +1,963 @@
 package model;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.sqlite.ProgressHandler;
 
 /**
  * @author giser
  * Classe Data Access Object (DAO) per accedir a les dades relacionades amb la música.
  * Proporciona mètodes estàtics per obtenir artistes, àlbums i cançons des de la base de dades.
+ * Els resultats es retornen com a objectes immutables ({@link Artist}, {@link Album}, {@link SongRow}) i
+ * els recursos JDBC es tanquen sempre abans de retornar, fins i tot si es produeix un error.
+ * Cada crida es mesura amb {@link QueryMetrics} (latència, files i errors per tipus de consulta).
  */
 public class MusicDAO {
-    
+
+    // Nombre de files que es demanen al controlador JDBC en cada lectura per defecte.
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    // Temps màxim d'execució (en segons) de les consultes.
+    private static final int QUERY_TIMEOUT_SECONDS = 5;
+
+    // Taules de la consulta de cançons: cada cançó amb el seu àlbum i el seu artista.
+    private static final String SONG_FROM =
+            "FROM song s " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id";
+
+    // Columnes de la consulta de cançons, amb el nom de l'àlbum i de l'artista.
+    private static final String SONG_COLUMNS =
+            "SELECT s.id, s.album_id, al.artist_id, s.name AS title, s.duration, al.name AS album, ar.name AS artist ";
+
+    // Consulta bàsica de cançons, amb el nom de l'àlbum i de l'artista.
+    private static final String SONG_SELECT = SONG_COLUMNS + SONG_FROM;
+
+    // Condicions WHERE parametritzades per a cada combinació de filtres, indexades per filterVariant().
+    private static final String[] FILTER_WHERE = {
+            "",
+            " WHERE ar.id = ?",
+            " WHERE al.id = ?",
+            " WHERE ar.id = ? AND al.id = ?"
+    };
+
+    // Sufix del nom de les mètriques de cada combinació de filtres, indexat per filterVariant().
+    private static final String[] FILTER_METRIC = {"", ":artist", ":album", ":artist+album"};
+
+    // Els mateixos filtres sobre les taules mínimes, per a la cerca de la clau on comença una pàgina (veure SONG_SEEK).
+    // Les cançons sempre tenen àlbum i els àlbums artista, de manera que els JOIN de més no descarten cap fila.
+    private static final String[] SEEK_WHERE = {
+            "",
+            " JOIN album al ON s.album_id = al.id WHERE al.artist_id = ?",
+            " WHERE s.album_id = ?",
+            " JOIN album al ON s.album_id = al.id WHERE al.artist_id = ? AND s.album_id = ?"
+    };
+
+    // Variants de la consulta de cançons, del recompte i de la consulta paginada per a cada combinació de filtres.
+    private static final String[] SONGS = new String[FILTER_WHERE.length];
+    private static final String[] SONG_COUNT = new String[FILTER_WHERE.length];
+    private static final String[] SONG_PAGE = new String[FILTER_WHERE.length];
+    private static final String[] SONG_SEEK = new String[FILTER_WHERE.length];
+
+    static {
+        for (int v = 0; v < FILTER_WHERE.length; v++) {
+            SONGS[v] = SONG_SELECT + FILTER_WHERE[v];
+            SONG_COUNT[v] = "SELECT COUNT(*) " + SONG_FROM + FILTER_WHERE[v];
+            // Paginació per clau (keyset): es continua a partir de l'últim id de la pàgina anterior
+            SONG_PAGE[v] = SONGS[v] + (v == 0 ? " WHERE" : " AND") + " s.id > ? ORDER BY s.id LIMIT ?";
+            // Id de l'última cançó abans d'una pàgina llunyana: les files que se salten només es llegeixen de l'índex
+            SONG_SEEK[v] = "SELECT s.id FROM song s" + SEEK_WHERE[v] + (v == 0 ? " WHERE" : " AND")
+                    + " s.id > ? ORDER BY s.id LIMIT 1 OFFSET ?";
+        }
+    }
+
+    // Consulta d'una cançó pel seu identificador.
+    private static final String SONG_BY_ID = SONG_SELECT + " WHERE s.id = ?";
+
+    // Inserció d'una cançó: SQLite n'assigna l'id i el retorna en la mateixa sentència.
+    private static final String INSERT_SONG = "INSERT INTO song (album_id, name, duration) VALUES (?, ?, ?) RETURNING id";
+
+    // Modificació i eliminació d'una cançó pel seu identificador.
+    private static final String UPDATE_SONG = "UPDATE song SET name = ?, duration = ?, album_id = ? WHERE id = ?";
+    private static final String DELETE_SONG = "DELETE FROM song WHERE id = ?";
+
+    // Canvi d'àlbum d'una cançó, per moure'n moltes alhora.
+    private static final String MOVE_SONG = "UPDATE song SET album_id = ? WHERE id = ?";
+
+    // Àlbum actual d'una cançó, per invalidar els filtres que la contenen abans de modificar-la o eliminar-la.
+    private static final String SONG_ALBUM = "SELECT album_id FROM song WHERE id = ?";
+
+    // Cerca de text complet: primer es trien les cançons més rellevants a l'índex FTS5 (ja limitades)
+    // i després només se n'afegeixen les dades de l'àlbum i l'artista.
+    // FTS5 puntua totes les coincidències i només en guarda les millors (ORDER BY rank LIMIT).
+    private static final String SONG_SEARCH =
+            SONG_COLUMNS +
+            "FROM (SELECT rowid, rank FROM song_search WHERE song_search MATCH ? ORDER BY rank LIMIT ?) f " +
+            "JOIN song s ON s.id = f.rowid " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id " +
+            "ORDER BY f.rank";
+
+    // Variant per a les paraules més curtes que els índexs de prefixos: coincideixen amb gairebé tot el catàleg,
+    // per tant només es puntuen els primers candidats (puntuar-les totes són segons amb milions de cançons).
+    private static final String SONG_SEARCH_CANDIDATES =
+            SONG_COLUMNS +
+            "FROM (SELECT rowid, rank FROM (SELECT rowid, rank FROM song_search WHERE song_search MATCH ? LIMIT ?) " +
+            "ORDER BY rank LIMIT ?) f " +
+            "JOIN song s ON s.id = f.rowid " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id " +
+            "ORDER BY f.rank";
+
+    // Nombre màxim de coincidències que es puntuen per rellevància en una cerca amb paraules curtes.
+    private static final int SEARCH_CANDIDATES = 2000;
+
+    // Llargada del prefix més curt indexat a song_search (prefix = '2 3', migració 2).
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    // Nombre d'instruccions de SQLite entre comprovacions de cancel·lació durant una cerca.
+    private static final int SEARCH_PROGRESS_STEPS = 1000;
+
+    /**
+     * @author giser
+     * Retorna les consultes de cançons amb filtre d'artista o àlbum, per comprovar-ne el pla d'execució.
+     * @return les variants filtrades del recompte i de la consulta paginada.
+     */
+    static List<String> filteredSongQueries() {
+        List<String> queries = new ArrayList<>();
+        // La variant 0 (sense filtre) recorre totes les cançons per definició
+        for (int v = 1; v < FILTER_WHERE.length; v++) {
+            queries.add(SONG_COUNT[v]);
+            queries.add(SONG_PAGE[v]);
+            queries.add(SONG_SEEK[v]);
+        }
+        return queries;
+    }
+
     /**
      * @author giser
      * Obté la llista d'artistes des de la base de dades.
-     * @return un {@link ResultSet} que conté els camps "id" i "name" de la taula "artist".
+     * @return la llista d'artistes.
      * @throws SQLException si es produeix un error en l'execució de la consulta.
      */
-    public static ResultSet getArtists() throws SQLException {
-        // Obtenim la connexió a la base de dades
-        Connection conn = DatabaseConnection.getConnection();
-        // Creem un statement per executar consultes SQL
-        Statement stmt = conn.createStatement();
-        // Establim un temps màxim d'execució (timeout) de 5 segons per a la consulta
-        stmt.setQueryTimeout(5);
-      
-        // Executem la consulta per obtenir els camps "id" i "name" de la taula "artist"
-        return stmt.executeQuery("SELECT id, name FROM artist");
+    public static List<Artist> getArtists() throws SQLException {
+        return QueryMetrics.time("getArtists", List::size, () -> DatabaseConnection.read(conn -> {
+            List<Artist> artists = new ArrayList<>();
+            // Creem un statement per executar consultes SQL; es tanca automàticament en acabar
+            try (Statement stmt = conn.createStatement()) {
+                // Establim un temps màxim d'execució (timeout) de 5 segons per a la consulta
+                stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                // Executem la consulta per obtenir els camps "id" i "name" de la taula "artist"
+                try (ResultSet rs = stmt.executeQuery("SELECT id, name FROM artist")) {
+                    while (rs.next()) {
+                        artists.add(new Artist(rs.getInt("id"), rs.getString("name")));
+                    }
+                }
+            }
+            return artists;
+        }));
     }
-    
+
     /**
      * @author giser
      * Obté la llista d'àlbums des de la base de dades.
-     * @return un {@link ResultSet} que conté els camps "id" i "name", renombrat com a "title", de la taula "album".
+     * @return la llista d'àlbums.
      * @throws SQLException si es produeix un error en l'execució de la consulta.
      */
-    public static ResultSet getAlbums() throws SQLException {
-        // Obtenim la connexió a la base de dades
-        Connection conn = DatabaseConnection.getConnection();
-        // Creem un statement per executar consultes SQL
-        Statement stmt = conn.createStatement();
-        // Establim el timeout a 5 segons
-        stmt.setQueryTimeout(5);
-    
-        // Executem la consulta per obtenir els camps "id" i "name" de la taula "album"
-        return stmt.executeQuery("SELECT id, name AS title FROM album");
+    public static List<Album> getAlbums() throws SQLException {
+        return QueryMetrics.time("getAlbums", List::size, () -> DatabaseConnection.read(conn -> {
+            List<Album> albums = new ArrayList<>();
+            try (Statement stmt = conn.createStatement()) {
+                // Establim el timeout a 5 segons
+                stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                // Executem la consulta per obtenir els camps "id", "artist_id" i "name" de la taula "album"
+                try (ResultSet rs = stmt.executeQuery("SELECT id, artist_id, name AS title FROM album")) {
+                    while (rs.next()) {
+                        albums.add(new Album(rs.getInt("id"), rs.getInt("artist_id"), rs.getString("title")));
+                    }
+                }
+            }
+            return albums;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Obté una cançó pel seu identificador.
+     * @param songId l'identificador de la cançó.
+     * @return la cançó, o un {@link Optional} buit si no existeix.
+     * @throws SQLException si es produeix un error en l'execució de la consulta.
+     */
+    public static Optional<SongRow> getSong(int songId) throws SQLException {
+        return QueryMetrics.time("getSong", song -> song.isPresent() ? 1 : 0,
+                () -> DatabaseConnection.read(conn -> getSong(conn, songId)));
+    }
+
+    /**
+     * @author giser
+     * Obté una cançó pel seu identificador amb la connexió indicada.
+     * @param conn   la connexió.
+     * @param songId l'identificador de la cançó.
+     * @return la cançó, o un {@link Optional} buit si no existeix.
+     * @throws SQLException si es produeix un error en l'execució de la consulta.
+     */
+    static Optional<SongRow> getSong(Connection conn, int songId) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, SONG_BY_ID);
+        pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        pstmt.setInt(1, songId);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? Optional.of(readSongRow(rs)) : Optional.<SongRow>empty();
+        }
+    }
+
+    /**
+     * @author giser
+     * Insereix una cançó nova i la retorna amb el nom del seu àlbum i artista.
+     * L'id el tria SQLite (el següent rowid) i es recupera amb <code>RETURNING</code> en la mateixa sentència,
+     * de manera que dos escriptors, encara que siguin d'aplicacions diferents, no poden obtenir el mateix id.
+     * La inserció i la lectura de la fila nova es fan dins d'una mateixa transacció d'escriptura.
+     * @param albumId  l'identificador de l'àlbum.
+     * @param title    el títol de la cançó.
+     * @param duration la durada de la cançó.
+     * @return la cançó inserida.
+     * @throws SQLException si es produeix un error en la inserció (per exemple, si l'àlbum ja té una cançó amb el mateix títol).
+     */
+    public static SongRow insertSong(int albumId, String title, double duration) throws SQLException {
+        return QueryMetrics.time("insertSong", song -> 1, () -> DatabaseConnection.transaction(conn -> {
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, INSERT_SONG);
+            pstmt.setInt(1, albumId);
+            pstmt.setString(2, title);
+            pstmt.setDouble(3, duration);
+            int songId;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("La inserció no ha retornat l'id de la cançó");
+                }
+                songId = rs.getInt(1);
+            }
+            SongRow song = getSong(conn, songId)
+                    .orElseThrow(() -> new SQLException("No s'ha trobat la cançó inserida " + songId));
+            DatabaseConnection.afterCommit(() -> {
+                SongIndex.songInserted(song);
+                SongQueryCache.invalidateSong(song);
+            });
+            return song;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Modifica el títol, la durada i l'àlbum d'una cançó.
+     * @param songId   l'identificador de la cançó.
+     * @param albumId  l'identificador del nou àlbum.
+     * @param title    el nou títol.
+     * @param duration la nova durada.
+     * @return <code>true</code> si s'ha modificat; <code>false</code> si la cançó no existeix.
+     * @throws SQLException si es produeix un error en la modificació.
+     */
+    public static boolean updateSong(int songId, int albumId, String title, double duration) throws SQLException {
+        return QueryMetrics.time("updateSong", updated -> updated ? 1 : 0, () -> DatabaseConnection.write(conn -> {
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, UPDATE_SONG);
+            pstmt.setString(1, title);
+            pstmt.setDouble(2, duration);
+            pstmt.setInt(3, albumId);
+            pstmt.setInt(4, songId);
+            Integer oldAlbumId = albumOf(conn, songId);
+            boolean updated = pstmt.executeUpdate() > 0;
+            if (updated) {
+                DatabaseConnection.afterCommit(() -> {
+                    SongIndex.songUpdated(songId, albumId, title, duration);
+                    // Els filtres de l'àlbum anterior i del nou
+                    invalidateCachedAlbum(oldAlbumId);
+                    invalidateCachedAlbum(albumId);
+                });
+            }
+            return updated;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Modifica el títol, la durada i l'àlbum d'una cançó i la retorna amb el nom del seu àlbum i artista.
+     * La modificació i la lectura de la fila es fan dins d'una mateixa transacció d'escriptura, de manera que
+     * la fila retornada és la que s'ha escrit encara que la transacció formi part d'un grup més gran ({@link SongWriteQueue}).
+     * @param songId   l'identificador de la cançó.
+     * @param albumId  l'identificador del nou àlbum.
+     * @param title    el nou títol.
+     * @param duration la nova durada.
+     * @return la cançó modificada, o buit si la cançó no existeix.
+     * @throws SQLException si es produeix un error en la modificació.
+     */
+    public static Optional<SongRow> updateSongAndGet(int songId, int albumId, String title, double duration) throws SQLException {
+        return DatabaseConnection.transaction(conn ->
+                updateSong(songId, albumId, title, duration) ? getSong(conn, songId) : Optional.<SongRow>empty());
+    }
+
+    /**
+     * @author giser
+     * Elimina una cançó.
+     * @param songId l'identificador de la cançó.
+     * @return <code>true</code> si s'ha eliminat; <code>false</code> si la cançó no existeix.
+     * @throws SQLException si es produeix un error en l'eliminació.
+     */
+    public static boolean deleteSong(int songId) throws SQLException {
+        return QueryMetrics.time("deleteSong", deleted -> deleted ? 1 : 0, () -> DatabaseConnection.write(conn -> {
+            Integer oldAlbumId = albumOf(conn, songId);
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, DELETE_SONG);
+            pstmt.setInt(1, songId);
+            boolean deleted = pstmt.executeUpdate() > 0;
+            if (deleted) {
+                DatabaseConnection.afterCommit(() -> {
+                    SongIndex.songDeleted(songId);
+                    invalidateCachedAlbum(oldAlbumId);
+                });
+            }
+            return deleted;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Elimina moltes cançons alhora: les eliminacions s'envien en un sol lot (batch) dins d'una única transacció,
+     * de manera que o s'eliminen totes o, si alguna falla, no se n'elimina cap.
+     * @param songIds els identificadors de les cançons.
+     * @return el nombre de cançons eliminades; les que ja no existien no compten.
+     * @throws SQLException si es produeix un error en l'eliminació.
+     */
+    public static int deleteSongs(List<Integer> songIds) throws SQLException {
+        return QueryMetrics.time("deleteSongs", deleted -> deleted, () -> DatabaseConnection.transaction(conn -> {
+            Integer[] oldAlbumIds = new Integer[songIds.size()];
+            for (int i = 0; i < oldAlbumIds.length; i++) {
+                oldAlbumIds[i] = albumOf(conn, songIds.get(i));
+            }
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, DELETE_SONG);
+            int[] counts;
+            try {
+                for (int songId : songIds) {
+                    pstmt.setInt(1, songId);
+                    pstmt.addBatch();
+                }
+                counts = pstmt.executeBatch();
+            } finally {
+                // La sentència és de la memòria cau: no pot quedar amb un lot a mitges si falla
+                pstmt.clearBatch();
+            }
+            int deleted = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    int songId = songIds.get(i);
+                    Integer oldAlbumId = oldAlbumIds[i];
+                    DatabaseConnection.afterCommit(() -> {
+                        SongIndex.songDeleted(songId);
+                        invalidateCachedAlbum(oldAlbumId);
+                    });
+                    deleted++;
+                }
+            }
+            return deleted;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Mou moltes cançons a un altre àlbum alhora i les retorna amb el nom del nou àlbum i artista.
+     * Els canvis s'envien en un sol lot (batch) dins d'una única transacció: si alguna cançó no es pot moure
+     * (per exemple, perquè l'àlbum ja té una cançó amb el mateix títol), no se'n mou cap.
+     * @param songIds els identificadors de les cançons.
+     * @param albumId l'identificador de l'àlbum de destinació.
+     * @return les cançons mogudes; les que ja no existien no hi són.
+     * @throws SQLException si es produeix un error en la modificació.
+     */
+    public static List<SongRow> moveSongs(List<Integer> songIds, int albumId) throws SQLException {
+        return QueryMetrics.time("moveSongs", List::size, () -> DatabaseConnection.transaction(conn -> {
+            Integer[] oldAlbumIds = new Integer[songIds.size()];
+            for (int i = 0; i < oldAlbumIds.length; i++) {
+                oldAlbumIds[i] = albumOf(conn, songIds.get(i));
+            }
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, MOVE_SONG);
+            int[] counts;
+            try {
+                for (int songId : songIds) {
+                    pstmt.setInt(1, albumId);
+                    pstmt.setInt(2, songId);
+                    pstmt.addBatch();
+                }
+                counts = pstmt.executeBatch();
+            } finally {
+                // La sentència és de la memòria cau: no pot quedar amb un lot a mitges si falla
+                pstmt.clearBatch();
+            }
+            List<SongRow> moved = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    int songId = songIds.get(i);
+                    SongRow song = getSong(conn, songId)
+                            .orElseThrow(() -> new SQLException("No s'ha trobat la cançó moguda " + songId));
+                    Integer oldAlbumId = oldAlbumIds[i];
+                    DatabaseConnection.afterCommit(() -> {
+                        SongIndex.songUpdated(songId, albumId, song.title(), song.duration());
+                        invalidateCachedAlbum(oldAlbumId);
+                        SongQueryCache.invalidateSong(song);
+                    });
+                    moved.add(song);
+                }
+            }
+            return moved;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Llegeix l'àlbum actual d'una cançó.
+     * @param conn   la connexió d'escriptura.
+     * @param songId l'identificador de la cançó.
+     * @return l'identificador de l'àlbum, o <code>null</code> si la cançó no existeix.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static Integer albumOf(Connection conn, int songId) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, SONG_ALBUM);
+        pstmt.setInt(1, songId);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+
+    /**
+     * @author giser
+     * Invalida a {@link SongQueryCache} els filtres que poden contenir les cançons d'un àlbum. Es crida quan
+     * el canvi ja s'ha confirmat, perquè una consulta en curs no torni a omplir la memòria cau amb dades antigues.
+     * Si l'àlbum no és a {@link ReferenceData} (i, per tant, no se'n sap l'artista), s'invalida tota la memòria cau.
+     * @param albumId l'identificador de l'àlbum, o <code>null</code> si no n'hi ha cap.
+     */
+    private static void invalidateCachedAlbum(Integer albumId) {
+        if (albumId == null) {
+            return;
+        }
+        Album album = ReferenceData.album(albumId);
+        if (album != null) {
+            SongQueryCache.invalidateAlbum(album.artistId(), albumId);
+        } else {
+            SongQueryCache.invalidateAll();
+        }
     }
-    
+
     /**
      * @author giser
      * Obté la llista de cançons de la base de dades aplicant opcionalment filtres per artista i/o àlbum.
+     * Com a màxim es retornen <code>maxRows</code> cançons, de manera que la llista sempre té una mida acotada.
+     * @param artistId l'identificador de l'artista; pot ser <code>null</code> per ometre aquest filtre.
+     * @param albumId  l'identificador de l'àlbum; pot ser <code>null</code> per ometre aquest filtre.
+     * @param maxRows  el nombre màxim de cançons a retornar.
+     * @return la llista de cançons que compleixen els filtres indicats.
+     * @throws SQLException si es produeix un error en l'execució de la consulta.
+     */
+    public static List<SongRow> getSongs(Integer artistId, Integer albumId, int maxRows) throws SQLException {
+        return QueryMetrics.time(metricName("getSongs", artistId, albumId), List::size, () -> DatabaseConnection.read(conn -> {
+            List<SongRow> songs = new ArrayList<>();
+            forEachSong(conn, artistId, albumId, Math.min(maxRows, DEFAULT_FETCH_SIZE), row -> {
+                songs.add(row);
+                return songs.size() < maxRows;
+            });
+            return songs;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Recorre les cançons de la base de dades aplicant opcionalment filtres per artista i/o àlbum.
      * Si es proporciona un identificador d'artista i d'àlbum, la consulta retorna només les cançons que compleixen amb ambdós filtres.
      * Si només es proporciona un filtre, retorna les cançons que compleixen amb aquest filtre.
      * Si no es proporciona cap filtre, retorna totes les cançons.
+     * Les files es lliuren una a una al <code>handler</code> a mesura que es llegeixen, sense guardar-les totes en memòria.
+     * La lectura s'atura quan el <code>handler</code> retorna <code>false</code> o quan s'interromp el fil.
+     * @param artistId  l'identificador de l'artista; pot ser <code>null</code> per ometre aquest filtre.
+     * @param albumId   l'identificador de l'àlbum; pot ser <code>null</code> per ometre aquest filtre.
+     * @param fetchSize el nombre de files que es demanen al controlador JDBC en cada lectura.
+     * @param handler   l'objecte que rep cada cançó.
+     * @throws SQLException si es produeix un error en l'execució de la consulta o en processar una fila.
+     */
+    public static void forEachSong(Integer artistId, Integer albumId, int fetchSize, RowHandler<SongRow> handler) throws SQLException {
+        QueryMetrics.time(metricName("forEachSong", artistId, albumId), Integer::intValue, () -> DatabaseConnection.read(conn -> {
+            // Es compten les files lliurades al handler
+            int[] rows = {0};
+            forEachSong(conn, artistId, albumId, fetchSize, row -> {
+                rows[0]++;
+                return handler.handle(row);
+            });
+            return rows[0];
+        }));
+    }
+
+    /**
+     * @author giser
+     * Recorre les cançons amb la connexió indicada. Veure {@link #forEachSong(Integer, Integer, int, RowHandler)}.
+     * @param conn      la connexió prestada per {@link DatabaseConnection}.
+     * @param artistId  l'identificador de l'artista; pot ser <code>null</code> per ometre aquest filtre.
+     * @param albumId   l'identificador de l'àlbum; pot ser <code>null</code> per ometre aquest filtre.
+     * @param fetchSize el nombre de files que es demanen al controlador JDBC en cada lectura.
+     * @param handler   l'objecte que rep cada cançó.
+     * @throws SQLException si es produeix un error en l'execució de la consulta o en processar una fila.
+     */
+    private static void forEachSong(Connection conn, Integer artistId, Integer albumId, int fetchSize, RowHandler<SongRow> handler) throws SQLException {
+        // Escollim la variant parametritzada segons els filtres seleccionats; cada variant es prepara una sola vegada per connexió
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, SONGS[filterVariant(artistId, albumId)]);
+        bindFilter(pstmt, artistId, albumId);
+
+        // Establim el timeout a 5 segons
+        pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        pstmt.setFetchSize(fetchSize);
+        // Executem la consulta i lliurem les cançons trobades una a una; la sentència queda a la memòria cau
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                if (Thread.currentThread().isInterrupted() || !handler.handle(readSongRow(rs))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Compta les cançons que compleixen els filtres d'artista i/o àlbum, sense llegir-ne les dades.
      * @param artistId l'identificador de l'artista; pot ser <code>null</code> per ometre aquest filtre.
      * @param albumId  l'identificador de l'àlbum; pot ser <code>null</code> per ometre aquest filtre.
-     * @return un {@link ResultSet} amb les cançons que compleixen els filtres indicats.
+     * @return el nombre de cançons.
      * @throws SQLException si es produeix un error en l'execució de la consulta.
      */
-    public static ResultSet getSongs(Integer artistId, Integer albumId) throws SQLException {
-        // Obtenim la connexió a la base de dades
-        Connection conn = DatabaseConnection.getConnection();
-        // Creem un statement per executar la consulta SQL
-        Statement stmt = conn.createStatement();
-        // Establim el timeout a 5 segons
-        stmt.setQueryTimeout(5);
+    public static int countSongs(Integer artistId, Integer albumId) throws SQLException {
+        return QueryMetrics.time(metricName("countSongs", artistId, albumId), count -> 1, () -> DatabaseConnection.read(conn -> {
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, SONG_COUNT[filterVariant(artistId, albumId)]);
+            pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            bindFilter(pstmt, artistId, albumId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }));
+    }
 
-        // Construïm la consulta bàsica que uneix les taules "song", "album" i "artist"
-        String query = 
-            "SELECT s.id, s.name AS title, s.duration, al.name AS album, ar.name AS artist " +
-            "FROM song s " +
-            "JOIN album al ON s.album_id = al.id " +
-            "JOIN artist ar ON al.artist_id = ar.id";
-        
-        // Afegim condicions WHERE segons els filtres seleccionats
-        if (artistId != null && albumId != null) {
-            // Si s'han seleccionat tant artista com àlbum, es filtren les dues condicions
-            query += " WHERE ar.id = " + artistId + " AND al.id = " + albumId;
-        } else if (artistId != null) {
-            // Si només s'ha seleccionat un artista, es filtra per artista
-            query += " WHERE ar.id = " + artistId;
-        } else if (albumId != null) {
-            // Si només s'ha seleccionat un àlbum, es filtra per àlbum
-            query += " WHERE al.id = " + albumId;
-        }
-        
-        // Executem la consulta i retornem el ResultSet amb les cançons trobades
-        return stmt.executeQuery(query);
+    /**
+     * @author giser
+     * Obté una pàgina de cançons ordenades per id, aplicant opcionalment filtres per artista i/o àlbum.
+     * La pàgina comença després de la cançó amb id <code>afterId</code> (paginació per clau), de manera que
+     * SQLite salta directament a la posició amb l'índex de la clau primària en lloc de recórrer les files anteriors.
+     * Si no es coneix l'últim id de la pàgina anterior, es pot indicar un <code>offset</code> a partir de l'última clau
+     * coneguda: primer se'n busca l'id de la cançó anterior a la pàgina recorrent només l'índex (sense llegir
+     * els àlbums ni els artistes de les files que se salten) i la pàgina continua a partir d'aquest id.
+     * @param artistId l'identificador de l'artista; pot ser <code>null</code> per ometre aquest filtre.
+     * @param albumId  l'identificador de l'àlbum; pot ser <code>null</code> per ometre aquest filtre.
+     * @param afterId  l'id de l'última cançó coneguda; {@link Integer#MIN_VALUE} per començar des del principi.
+     * @param offset   el nombre de cançons a saltar després de <code>afterId</code>.
+     * @param limit    el nombre màxim de cançons de la pàgina.
+     * @return les cançons de la pàgina, ordenades per id.
+     * @throws SQLException si es produeix un error en l'execució de la consulta.
+     */
+    public static List<SongRow> getSongsPage(Integer artistId, Integer albumId, int afterId, int offset, int limit) throws SQLException {
+        return QueryMetrics.time(metricName("getSongsPage", artistId, albumId), List::size, () -> DatabaseConnection.read(conn -> {
+            int variant = filterVariant(artistId, albumId);
+            int startId = afterId;
+            if (offset > 0) {
+                PreparedStatement seek = DatabaseConnection.prepare(conn, SONG_SEEK[variant]);
+                seek.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                int index = bindFilter(seek, artistId, albumId);
+                seek.setInt(index++, afterId);
+                seek.setInt(index, offset - 1);
+                try (ResultSet rs = seek.executeQuery()) {
+                    if (!rs.next()) {
+                        return new ArrayList<SongRow>();
+                    }
+                    startId = rs.getInt(1);
+                }
+            }
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, SONG_PAGE[variant]);
+            pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            int index = bindFilter(pstmt, artistId, albumId);
+            pstmt.setInt(index++, startId);
+            pstmt.setInt(index, limit);
+            List<SongRow> songs = new ArrayList<>(limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(readSongRow(rs));
+                }
+            }
+            return songs;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Compta les cançons d'una consulta amb filtres d'artista, àlbum i durada.
+     * @param query la consulta; el seu ordre no afecta el recompte.
+     * @return el nombre de cançons.
+     * @throws SQLException si es produeix un error en l'execució de la consulta.
+     */
+    public static int countSongs(SongQuery query) throws SQLException {
+        String sql = "SELECT COUNT(*) " + SONG_FROM + where(query, false);
+        return QueryMetrics.time(metricName("countSongs", query), count -> 1, () -> DatabaseConnection.read(conn -> {
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, sql);
+            pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            bindQuery(pstmt, query, null);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }));
+    }
+
+    /**
+     * @author giser
+     * Obté una pàgina de cançons d'una consulta, en l'ordre de la consulta.
+     * L'ordenació i els filtres es fan a SQLite amb els índexs de títol, durada, àlbum i artista, que ja estan en
+     * l'ordre demanat: la consulta no ordena la llista sencera, només en llegeix les files de la pàgina.
+     * La pàgina comença després de la fila <code>after</code> (paginació per clau sobre les columnes de l'ordre,
+     * veure {@link SongSort}) i se'n salten <code>offset</code> files més. Les files que se salten no es llegeixen
+     * amb la consulta de la pàgina: primer se'n busca la clau de l'última ({@link #seekSql}), que només recorre l'índex
+     * de l'ordre, i la pàgina continua a partir d'aquesta clau.
+     * @param query  la consulta.
+     * @param after  l'última fila coneguda, o <code>null</code> per començar des del principi.
+     * @param offset el nombre de cançons a saltar després de <code>after</code>.
+     * @param limit  el nombre màxim de cançons de la pàgina.
+     * @return les cançons de la pàgina, en l'ordre de la consulta.
+     * @throws SQLException si es produeix un error en l'execució de la consulta.
+     */
+    public static List<SongRow> getSongsPage(SongQuery query, SongRow after, int offset, int limit) throws SQLException {
+        return QueryMetrics.time(metricName("getSongsPage", query), List::size, () -> DatabaseConnection.read(conn -> {
+            Object[] key = after != null ? query.sort().keyOf(after) : null;
+            if (offset > 0) {
+                PreparedStatement seek = DatabaseConnection.prepare(conn, seekSql(query, key != null));
+                seek.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                int index = bindQuery(seek, query, key);
+                seek.setInt(index, offset - 1);
+                try (ResultSet rs = seek.executeQuery()) {
+                    if (!rs.next()) {
+                        return new ArrayList<SongRow>();
+                    }
+                    key = new Object[query.sort().columns().length];
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = rs.getObject(i + 1);
+                    }
+                }
+            }
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn, pageSql(query, key != null));
+            pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            int index = bindQuery(pstmt, query, key);
+            pstmt.setInt(index, limit);
+            List<SongRow> songs = new ArrayList<>(limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(readSongRow(rs));
+                }
+            }
+            return songs;
+        }));
+    }
+
+    /**
+     * @author giser
+     * Retorna les consultes de la primera pàgina de cada ordre sense filtres, i les de la cerca de la clau d'una pàgina
+     * llunyana, per comprovar que no ordenen amb un B-tree temporal.
+     * @return dues consultes per ordre i sentit.
+     */
+    static List<String> sortedSongQueries() {
+        List<String> queries = new ArrayList<>();
+        for (SongSort sort : SongSort.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                SongQuery query = new SongQuery(null, null, null, null, sort, descending);
+                queries.add(pageSql(query, false));
+                queries.add(seekSql(query, false));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * @author giser
+     * Construeix la consulta paginada d'una consulta de cançons.
+     * @param query  la consulta.
+     * @param keyset si la pàgina continua a partir d'una fila coneguda.
+     * @return la sentència SQL, amb els paràmetres en l'ordre de {@link #bindQuery} i el límit.
+     */
+    private static String pageSql(SongQuery query, boolean keyset) {
+        return SONG_SELECT + where(query, keyset) + orderBy(query) + " LIMIT ?";
+    }
+
+    /**
+     * @author giser
+     * Construeix la consulta que busca la clau de l'última fila abans d'una pàgina llunyana.
+     * Només en retorna les columnes de l'ordre i només uneix l'àlbum i l'artista si l'ordre o els filtres els fan servir:
+     * ordenant per títol o per durada, les files que se salten es llegeixen només de l'índex de l'ordre, que ja conté
+     * la columna i l'id, en lloc de buscar cada cançó a la taula i el seu àlbum i artista.
+     * @param query  la consulta.
+     * @param keyset si la cerca comença a partir d'una fila coneguda.
+     * @return la sentència SQL, amb els paràmetres en l'ordre de {@link #bindQuery} i el nombre de files a saltar.
+     */
+    private static String seekSql(SongQuery query, boolean keyset) {
+        boolean artist = query.sort() == SongSort.ARTIST || query.artistId() != null;
+        boolean album = artist || query.sort() == SongSort.ALBUM || query.albumId() != null;
+        return "SELECT " + String.join(", ", query.sort().columns()) + " FROM song s"
+                + (album ? " JOIN album al ON s.album_id = al.id" : "")
+                + (artist ? " JOIN artist ar ON al.artist_id = ar.id" : "")
+                + where(query, keyset) + orderBy(query) + " LIMIT 1 OFFSET ?";
+    }
+
+    /**
+     * @author giser
+     * Construeix la clàusula ORDER BY d'una consulta de cançons, amb les columnes del seu ordre.
+     * @param query la consulta.
+     * @return la clàusula, començant per " ORDER BY".
+     */
+    private static String orderBy(SongQuery query) {
+        StringBuilder sql = new StringBuilder(" ORDER BY ");
+        String[] columns = query.sort().columns();
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(columns[i]).append(query.descending() ? " DESC" : "");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @author giser
+     * Construeix la condició WHERE dels filtres d'una consulta de cançons i, si cal, de la seva clau de paginació.
+     * La clau es compara columna a columna, "(a > ? OR (a = ? AND b > ?))", en lloc de amb un valor de fila
+     * "(a, b) > (?, ?)": amb el valor de fila, SQLite no fa servir l'índex de l'ordre i acaba ordenant la taula.
+     * @param query  la consulta.
+     * @param keyset si s'hi ha d'afegir la condició de la clau de paginació.
+     * @return la condició, començant per " WHERE", o una cadena buida si no n'hi ha cap.
+     */
+    private static String where(SongQuery query, boolean keyset) {
+        List<String> conditions = new ArrayList<>(5);
+        if (query.artistId() != null) {
+            conditions.add("ar.id = ?");
+        }
+        if (query.albumId() != null) {
+            conditions.add("al.id = ?");
+        }
+        // Si la llista no s'ordena per durada, el "+" impedeix que SQLite triï l'índex de durada per al filtre:
+        // amb un interval ample hauria d'ordenar totes les cançons de l'interval per a cada pàgina, mentre que
+        // recorrent l'índex de l'ordre n'hi ha prou de llegir files fins a omplir la pàgina
+        String duration = query.sort() == SongSort.DURATION ? "s.duration" : "+s.duration";
+        if (query.minDuration() != null) {
+            conditions.add(duration + " >= ?");
+        }
+        if (query.maxDuration() != null) {
+            conditions.add(duration + " <= ?");
+        }
+        if (keyset) {
+            String[] columns = query.sort().columns();
+            String after = query.descending() ? " < ?" : " > ?";
+            String condition = columns[columns.length - 1] + after;
+            for (int i = columns.length - 2; i >= 0; i--) {
+                condition = "(" + columns[i] + after + " OR (" + columns[i] + " = ? AND " + condition + "))";
+            }
+            conditions.add(condition);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    /**
+     * @author giser
+     * Assigna els paràmetres d'una consulta de cançons construïda amb {@link #where(SongQuery, boolean)}.
+     * @param pstmt la sentència preparada.
+     * @param query la consulta.
+     * @param key   els valors de l'ordre de l'última fila coneguda ({@link SongSort#keyOf}), o <code>null</code>
+     *              si la consulta no té clau de paginació.
+     * @return l'índex del següent paràmetre lliure.
+     * @throws SQLException si es produeix un error en assignar els paràmetres.
+     */
+    private static int bindQuery(PreparedStatement pstmt, SongQuery query, Object[] key) throws SQLException {
+        int index = bindFilter(pstmt, query.artistId(), query.albumId());
+        if (query.minDuration() != null) {
+            pstmt.setDouble(index++, query.minDuration());
+        }
+        if (query.maxDuration() != null) {
+            pstmt.setDouble(index++, query.maxDuration());
+        }
+        if (key != null) {
+            // Cada columna de la clau apareix dues vegades (">" i "="), excepte l'última
+            for (int i = 0; i < key.length; i++) {
+                pstmt.setObject(index++, key[i]);
+                if (i < key.length - 1) {
+                    pstmt.setObject(index++, key[i]);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @author giser
+     * Cerca cançons pel títol, l'àlbum o l'artista amb l'índex de text complet.
+     * Cada paraula del text es busca com a prefix (per exemple "met mast" troba "Master of Puppets" de Metallica) i
+     * totes les paraules han d'aparèixer. Els resultats s'ordenen per rellevància entre totes les coincidències, excepte
+     * si alguna paraula és més curta que els índexs de prefixos ({@value #MIN_PREFIX_LENGTH} caràcters): llavors només
+     * es puntuen les primeres {@link #SEARCH_CANDIDATES}, perquè la cerca sigui immediata mentre s'escriu.
+     * Si el fil s'interromp (perquè la cerca s'ha substituït per una de més nova), la consulta s'avorta a SQLite
+     * en lloc d'esperar que acabi.
+     * @param text  el text escrit per l'usuari.
+     * @param limit el nombre màxim de resultats.
+     * @return les cançons trobades, de més a menys rellevant; buida si el text no té cap paraula.
+     * @throws SQLException si es produeix un error en la consulta o s'ha interromput.
+     */
+    public static List<SongRow> searchSongs(String text, int limit) throws SQLException {
+        String match = toMatchExpression(text);
+        if (match.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return QueryMetrics.time("searchSongs", List::size, () -> DatabaseConnection.read(conn -> {
+            // SQLite crida el gestor de progrés des del mateix fil que executa la consulta
+            ProgressHandler.setHandler(conn, SEARCH_PROGRESS_STEPS, new ProgressHandler() {
+                @Override
+                protected int progress() {
+                    return Thread.currentThread().isInterrupted() ? 1 : 0;
+                }
+            });
+            try {
+                PreparedStatement pstmt;
+                if (shortestWord(match) < MIN_PREFIX_LENGTH) {
+                    pstmt = DatabaseConnection.prepare(conn, SONG_SEARCH_CANDIDATES);
+                    pstmt.setString(1, match);
+                    pstmt.setInt(2, Math.max(SEARCH_CANDIDATES, limit));
+                    pstmt.setInt(3, limit);
+                } else {
+                    pstmt = DatabaseConnection.prepare(conn, SONG_SEARCH);
+                    pstmt.setString(1, match);
+                    pstmt.setInt(2, limit);
+                }
+                pstmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                List<SongRow> songs = new ArrayList<>(limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        songs.add(readSongRow(rs));
+                    }
+                }
+                return songs;
+            } finally {
+                ProgressHandler.clearHandler(conn);
+            }
+        }));
+    }
+
+    /**
+     * @author giser
+     * Converteix el text escrit per l'usuari en una expressió MATCH de FTS5.
+     * Cada paraula (lletres i dígits) es posa entre cometes, perquè els signes no s'interpretin com a operadors,
+     * i s'hi afegeix "*" per buscar-la com a prefix.
+     * @param text el text escrit per l'usuari.
+     * @return l'expressió, o una cadena buida si el text no té cap paraula.
+     */
+    static String toMatchExpression(String text) {
+        StringBuilder match = new StringBuilder();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // Saltem els separadors
+            while (i < length && !Character.isLetterOrDigit(text.codePointAt(i))) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.codePointAt(i))) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+            if (i > start) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append('"').append(text, start, i).append("\"*");
+            }
+        }
+        return match.toString();
+    }
+
+    /**
+     * @author giser
+     * Retorna la llargada (en caràcters) de la paraula més curta d'una expressió de {@link #toMatchExpression(String)}.
+     * @param match l'expressió, amb cada paraula entre cometes i seguida de "*".
+     * @return la llargada de la paraula més curta.
+     */
+    private static int shortestWord(String match) {
+        int shortest = Integer.MAX_VALUE;
+        for (String word : match.split(" ")) {
+            shortest = Math.min(shortest, word.codePointCount(1, word.length() - 2));
+        }
+        return shortest;
+    }
+
+    /**
+     * @author giser
+     * Retorna la variant de consulta que correspon a la combinació de filtres (índex de {@link #FILTER_WHERE}).
+     * @param artistId l'identificador de l'artista, o <code>null</code>.
+     * @param albumId  l'identificador de l'àlbum, o <code>null</code>.
+     * @return 0 sense filtres, 1 per artista, 2 per àlbum i 3 per artista i àlbum.
+     */
+    private static int filterVariant(Integer artistId, Integer albumId) {
+        return (artistId != null ? 1 : 0) + (albumId != null ? 2 : 0);
+    }
+
+    /**
+     * @author giser
+     * Retorna el nom de la mètrica d'una consulta de cançons, amb la combinació de filtres,
+     * perquè cada variant té un pla d'execució diferent.
+     * @param method   el nom del mètode.
+     * @param artistId l'identificador de l'artista, o <code>null</code>.
+     * @param albumId  l'identificador de l'àlbum, o <code>null</code>.
+     * @return el nom de la mètrica, per exemple "countSongs:album".
+     */
+    private static String metricName(String method, Integer artistId, Integer albumId) {
+        return method + FILTER_METRIC[filterVariant(artistId, albumId)];
+    }
+
+    /**
+     * @author giser
+     * Retorna el nom de la mètrica d'una consulta de cançons, amb els filtres i l'ordre,
+     * per exemple "getSongsPage:album:duration:title desc".
+     * @param method el nom del mètode.
+     * @param query  la consulta.
+     * @return el nom de la mètrica.
+     */
+    private static String metricName(String method, SongQuery query) {
+        String name = metricName(method, query.artistId(), query.albumId());
+        if (query.minDuration() != null || query.maxDuration() != null) {
+            name += ":duration";
+        }
+        if (!query.isOrderedById()) {
+            name += ":" + query.sort().name().toLowerCase() + (query.descending() ? " desc" : "");
+        }
+        return name;
+    }
+
+    /**
+     * @author giser
+     * Assigna els paràmetres dels filtres d'artista i/o àlbum a una sentència preparada amb {@link #filterVariant}.
+     * @param pstmt    la sentència preparada.
+     * @param artistId l'identificador de l'artista, o <code>null</code>.
+     * @param albumId  l'identificador de l'àlbum, o <code>null</code>.
+     * @return l'índex del següent paràmetre lliure.
+     * @throws SQLException si es produeix un error en assignar els paràmetres.
+     */
+    private static int bindFilter(PreparedStatement pstmt, Integer artistId, Integer albumId) throws SQLException {
+        int index = 1;
+        if (artistId != null) {
+            pstmt.setInt(index++, artistId);
+        }
+        if (albumId != null) {
+            pstmt.setInt(index++, albumId);
+        }
+        return index;
+    }
+
+    /**
+     * @author giser
+     * Llegeix la fila actual d'un {@link ResultSet} de cançons.
+     * @param rs el ResultSet posicionat sobre una fila.
+     * @return la cançó llegida.
+     * @throws SQLException si es produeix un error en llegir les columnes.
+     */
+    private static SongRow readSongRow(ResultSet rs) throws SQLException {
+        return new SongRow(rs.getInt("id"), rs.getInt("album_id"), rs.getInt("artist_id"), rs.getString("title"),
+                rs.getDouble("duration"), rs.getString("album"), rs.getString("artist"));
     }
 }
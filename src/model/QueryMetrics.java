@@ -0,0 +1,229 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+/**
+ * @author giser
+ * Mesura les crides d'accés a dades: per a cada tipus de consulta guarda un histograma de latències
+ * i els comptadors de crides, files i errors.
+ * Cada crida també genera un esdeveniment JFR ("projectedam.Query"), de manera que en un enregistrament
+ * de Java Flight Recorder les consultes lentes apareixen al costat dels bloquejos del fil de JavaFX.
+ * A cada fragment d'un enregistrament (també en bolcar-lo amb <code>jcmd &lt;pid&gt; JFR.dump</code>) s'hi afegeix
+ * el resum acumulat de cada consulta ("projectedam.QueryStats").
+ * El resum també es pot obtenir en qualsevol moment amb {@link #snapshot()} o {@link #dump()}.
+ */
+public class QueryMetrics {
+
+    // Mètriques de cada tipus de consulta.
+    private static final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    static {
+        // El resum només es calcula si hi ha un enregistrament que el demana
+        FlightRecorder.addPeriodicEvent(QueryStatsEvent.class, QueryMetrics::emitStats);
+    }
+
+    /**
+     * @author giser
+     * Crida d'accés a dades que es mesura.
+     * @param <T> el tipus del resultat.
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * Resum de les mètriques d'un tipus de consulta. Les latències són en microsegons.
+     * @param query  el nom de la consulta.
+     * @param calls  el nombre de crides.
+     * @param errors el nombre de crides que han acabat amb error.
+     * @param rows   el nombre total de files llegides o modificades.
+     * @param mean   la latència mitjana.
+     * @param p50    la mediana de la latència.
+     * @param p95    el percentil 95 de la latència.
+     * @param p99    el percentil 99 de la latència.
+     * @param max    la latència màxima.
+     */
+    public record Stats(String query, long calls, long errors, long rows, long mean, long p50, long p95, long p99, long max) {
+    }
+
+    /**
+     * Comptadors d'un tipus de consulta.
+     */
+    private static class Metric {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+    }
+
+    /**
+     * Esdeveniment JFR d'una crida d'accés a dades. La durada és la de la crida i el fil, el que l'ha feta.
+     */
+    @Name("projectedam.Query")
+    @Label("Consulta")
+    @Category({"Music", "Base de dades"})
+    @Description("Crida d'accés a dades")
+    static class QueryEvent extends Event {
+        @Label("Consulta")
+        String query;
+
+        @Label("Files")
+        int rows;
+
+        @Label("Error")
+        String error;
+    }
+
+    /**
+     * Esdeveniment JFR amb el resum acumulat d'un tipus de consulta, al principi i al final de cada fragment.
+     */
+    @Name("projectedam.QueryStats")
+    @Label("Estadístiques de consultes")
+    @Category({"Music", "Base de dades"})
+    @Description("Resum acumulat de les crides d'un tipus de consulta")
+    @Period("everyChunk")
+    static class QueryStatsEvent extends Event {
+        @Label("Consulta")
+        String query;
+
+        @Label("Crides")
+        long calls;
+
+        @Label("Errors")
+        long errors;
+
+        @Label("Files")
+        long rows;
+
+        @Label("Mediana")
+        @Timespan(Timespan.NANOSECONDS)
+        long p50;
+
+        @Label("Percentil 99")
+        @Timespan(Timespan.NANOSECONDS)
+        long p99;
+
+        @Label("Màxim")
+        @Timespan(Timespan.NANOSECONDS)
+        long max;
+    }
+
+    /**
+     * @author giser
+     * Executa i mesura una crida d'accés a dades.
+     * @param query el nom del tipus de consulta.
+     * @param rows  la funció que calcula el nombre de files del resultat.
+     * @param call  la crida.
+     * @param <T>   el tipus del resultat.
+     * @return el resultat de la crida.
+     * @throws SQLException si la crida falla; es compta com a error.
+     */
+    public static <T> T time(String query, ToIntFunction<T> rows, Call<T> call) throws SQLException {
+        Metric metric = metrics.computeIfAbsent(query, name -> new Metric());
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            int count = rows.applyAsInt(result);
+            metric.rows.add(count);
+            event.rows = count;
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            metric.errors.increment();
+            event.error = e.toString();
+            throw e;
+        } finally {
+            metric.latency.record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.query = query;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Executa i mesura una crida que no retorna cap resultat; es compta una fila per crida.
+     * @param query el nom del tipus de consulta.
+     * @param call  la crida.
+     * @throws SQLException si la crida falla; es compta com a error.
+     */
+    public static void run(String query, Call<?> call) throws SQLException {
+        time(query, result -> 1, call);
+    }
+
+    /**
+     * @author giser
+     * Retorna el resum de totes les consultes mesurades, de més a menys temps total.
+     * @return els resums.
+     */
+    public static List<Stats> snapshot() {
+        List<Stats> stats = new ArrayList<>();
+        metrics.forEach((query, metric) -> {
+            LatencyHistogram.Summary latency = metric.latency.summary();
+            stats.add(new Stats(query, latency.count(), metric.errors.sum(), metric.rows.sum(),
+                    latency.mean() / 1000, latency.p50() / 1000, latency.p95() / 1000, latency.p99() / 1000, latency.max() / 1000));
+        });
+        stats.sort(Comparator.comparingLong((Stats s) -> s.calls() * s.mean()).reversed());
+        return stats;
+    }
+
+    /**
+     * @author giser
+     * Retorna el resum de totes les consultes com a taula de text, per mostrar-lo per consola o desar-lo.
+     * @return la taula, amb una fila per consulta i les latències en microsegons.
+     */
+    public static String dump() {
+        StringBuilder text = new StringBuilder(String.format("%-22s %8s %6s %10s %9s %9s %9s %9s %10s%n",
+                "consulta", "crides", "errors", "files", "mitj µs", "p50 µs", "p95 µs", "p99 µs", "màx µs"));
+        for (Stats s : snapshot()) {
+            text.append(String.format("%-22s %8d %6d %10d %9d %9d %9d %9d %10d%n",
+                    s.query(), s.calls(), s.errors(), s.rows(), s.mean(), s.p50(), s.p95(), s.p99(), s.max()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @author giser
+     * Esborra totes les mètriques acumulades.
+     */
+    public static void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * @author giser
+     * Genera un esdeveniment JFR amb el resum de cada tipus de consulta. El crida JFR a cada fragment de l'enregistrament.
+     */
+    private static void emitStats() {
+        metrics.forEach((query, metric) -> {
+            LatencyHistogram.Summary latency = metric.latency.summary();
+            QueryStatsEvent event = new QueryStatsEvent();
+            event.query = query;
+            event.calls = latency.count();
+            event.errors = metric.errors.sum();
+            event.rows = metric.rows.sum();
+            event.p50 = latency.p50();
+            event.p99 = latency.p99();
+            event.max = latency.max();
+            event.commit();
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author giser
+ * Memòria cau de les dades de referència: els artistes i els àlbums.
+ * Es carreguen una sola vegada de la base de dades i es guarden en mapes indexats per l'id (<code>int</code>)
+ * i en llistes ordenades per omplir els ComboBox, de manera que obrir un diàleg no fa cap consulta.
+ * Els àlbums també s'indexen per artista, per omplir el ComboBox d'àlbums amb només els de l'artista seleccionat.
+ * Les dades es publiquen com una instantània immutable: les lectures no necessiten cap bloqueig i qualsevol
+ * canvi (o invalidació) substitueix la instantània sencera.
+ */
+public class ReferenceData {
+
+    /**
+     * Instantània immutable de les dades de referència.
+     */
+    private record Snapshot(IntMap<Artist> artistsById, IntMap<Album> albumsById, IntMap<List<Album>> albumsByArtist,
+                            List<Artist> artists, List<Album> albums) {
+    }
+
+    // Instantània actual, o null si encara no s'ha carregat o s'ha invalidat.
+    private static volatile Snapshot snapshot = null;
+
+    /**
+     * @author giser
+     * Carrega els artistes i els àlbums de la base de dades, substituint les dades que hi hagués.
+     * Fa consultes a la base de dades, per tant no s'ha de cridar des del fil de JavaFX.
+     * @throws SQLException si es produeix un error en les consultes.
+     */
+    public static void load() throws SQLException {
+        snapshot = build(MusicDAO.getArtists(), MusicDAO.getAlbums());
+    }
+
+    /**
+     * @author giser
+     * Carrega les dades de referència només si no estan carregades.
+     * @throws SQLException si es produeix un error en les consultes.
+     */
+    public static void ensureLoaded() throws SQLException {
+        if (snapshot == null) {
+            load();
+        }
+    }
+
+    /**
+     * @author giser
+     * Indica si les dades de referència estan carregades i es poden consultar sense accedir a la base de dades.
+     * @return <code>true</code> si estan carregades.
+     */
+    public static boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * @author giser
+     * Descarta les dades carregades perquè es tornin a llegir de la base de dades la propera vegada.
+     * S'ha de cridar quan canvien les taules "artist" o "album" per una via que no actualitza la memòria cau.
+     */
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * @author giser
+     * Retorna la llista d'artistes carregada.
+     * @return la llista d'artistes, o una llista buida si no estan carregats.
+     */
+    public static List<Artist> artists() {
+        Snapshot current = snapshot;
+        return current != null ? current.artists() : Collections.emptyList();
+    }
+
+    /**
+     * @author giser
+     * Retorna la llista d'àlbums carregada.
+     * @return la llista d'àlbums, o una llista buida si no estan carregats.
+     */
+    public static List<Album> albums() {
+        Snapshot current = snapshot;
+        return current != null ? current.albums() : Collections.emptyList();
+    }
+
+    /**
+     * @author giser
+     * Retorna els àlbums d'un artista, en el mateix ordre que {@link #albums()}, sense accedir a la base de dades.
+     * @param artistId l'id de l'artista.
+     * @return la llista d'àlbums de l'artista, o una llista buida si no en té o les dades no estan carregades.
+     */
+    public static List<Album> albumsOf(int artistId) {
+        Snapshot current = snapshot;
+        List<Album> albums = current != null ? current.albumsByArtist().get(artistId) : null;
+        return albums != null ? albums : Collections.emptyList();
+    }
+
+    /**
+     * @author giser
+     * Retorna un artista pel seu id.
+     * @param id l'id de l'artista.
+     * @return l'artista, o <code>null</code> si no existeix o les dades no estan carregades.
+     */
+    public static Artist artist(int id) {
+        Snapshot current = snapshot;
+        return current != null ? current.artistsById().get(id) : null;
+    }
+
+    /**
+     * @author giser
+     * Retorna un àlbum pel seu id.
+     * @param id l'id de l'àlbum.
+     * @return l'àlbum, o <code>null</code> si no existeix o les dades no estan carregades.
+     */
+    public static Album album(int id) {
+        Snapshot current = snapshot;
+        return current != null ? current.albumsById().get(id) : null;
+    }
+
+    /**
+     * @author giser
+     * Construeix una instantània a partir de les llistes d'artistes i àlbums.
+     * @param artists la llista d'artistes.
+     * @param albums  la llista d'àlbums.
+     * @return la instantània.
+     */
+    private static Snapshot build(List<Artist> artists, List<Album> albums) {
+        IntMap<Artist> artistsById = new IntMap<>(artists.size());
+        for (Artist artist : artists) {
+            artistsById.put(artist.id(), artist);
+        }
+        IntMap<Album> albumsById = new IntMap<>(albums.size());
+        IntMap<List<Album>> albumsByArtist = new IntMap<>(artists.size());
+        for (Album album : albums) {
+            albumsById.put(album.id(), album);
+            List<Album> artistAlbums = albumsByArtist.get(album.artistId());
+            if (artistAlbums == null) {
+                artistAlbums = new ArrayList<>();
+                albumsByArtist.put(album.artistId(), artistAlbums);
+            }
+            artistAlbums.add(album);
+        }
+        // Les llistes per artista es publiquen immutables, com la resta de la instantània
+        for (Artist artist : artists) {
+            List<Album> artistAlbums = albumsByArtist.get(artist.id());
+            if (artistAlbums != null) {
+                albumsByArtist.put(artist.id(), Collections.unmodifiableList(artistAlbums));
+            }
+        }
+        return new Snapshot(artistsById, albumsById, albumsByArtist, List.copyOf(artists), List.copyOf(albums));
+    }
+}
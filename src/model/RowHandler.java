@@ -0,0 +1,21 @@
+package model;
+
+import java.sql.SQLException;
+
+/**
+ * @author giser
+ * Rep les files d'una consulta una a una, a mesura que es llegeixen de la base de dades.
+ * @param <T> el tipus de les files.
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+
+    /**
+     * @author giser
+     * Processa una fila.
+     * @param row la fila llegida.
+     * @return <code>true</code> per continuar llegint, <code>false</code> per aturar la lectura.
+     * @throws SQLException si es produeix un error en processar la fila.
+     */
+    boolean handle(T row) throws SQLException;
+}
@@ -0,0 +1,102 @@
+package model;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * @author giser
+ * Aplica els canvis d'esquema pendents a la base de dades.
+ * La versió de l'esquema es guarda a <code>PRAGMA user_version</code>: cada migració és un script SQL
+ * de la carpeta "/migrations" i la seva versió és la seva posició a la llista (la primera és la versió 1).
+ * Cada migració s'executa en una transacció pròpia juntament amb el canvi de versió, de manera que
+ * o s'aplica sencera o no s'aplica.
+ * Les migracions noves s'afegeixen al final de la llista; mai s'han de modificar ni reordenar les existents.
+ */
+public class SchemaMigrations {
+
+    // Scripts de migració, en ordre de versió.
+    private static final String[] MIGRATIONS = {
+            "/migrations/001_indexes.sql",
+            "/migrations/002_song_search.sql",
+            "/migrations/003_sort_indexes.sql",
+            "/migrations/004_song_changes.sql",
+            "/migrations/005_song_search_pending.sql",
+            "/migrations/006_reference_version.sql"
+    };
+
+    /**
+     * @author giser
+     * Retorna la versió de l'esquema que correspon a totes les migracions aplicades.
+     * @return la darrera versió de l'esquema.
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.length;
+    }
+
+    /**
+     * @author giser
+     * Aplica a la base de dades totes les migracions posteriors a la seva versió actual.
+     * @return el nombre de migracions aplicades.
+     * @throws SQLException si alguna migració falla; les anteriors queden aplicades i la que ha fallat es desfà.
+     */
+    public static int migrate() throws SQLException {
+        int current = DatabaseConnection.read(SchemaMigrations::currentVersion);
+        if (current > MIGRATIONS.length) {
+            throw new SQLException("La base de dades té la versió d'esquema " + current
+                    + ", més nova que la de l'aplicació (" + MIGRATIONS.length + ")");
+        }
+        int applied = 0;
+        for (int version = current + 1; version <= MIGRATIONS.length; version++) {
+            final int target = version;
+            boolean done = DatabaseConnection.transaction(conn -> apply(conn, target));
+            if (done) {
+                System.out.println("Migració d'esquema " + target + " aplicada (" + MIGRATIONS[target - 1] + ").");
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * @author giser
+     * Llegeix la versió actual de l'esquema.
+     * @param conn la connexió.
+     * @return el valor de <code>PRAGMA user_version</code>.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @author giser
+     * Aplica una migració dins de la transacció oberta i hi actualitza la versió.
+     * Es torna a comprovar la versió dins la transacció, per si un altre procés ja l'ha aplicada.
+     * @param conn    la connexió d'escriptura, amb la transacció oberta.
+     * @param version la versió de la migració.
+     * @return <code>true</code> si s'ha aplicat; <code>false</code> si ja estava aplicada.
+     * @throws SQLException si es produeix un error en executar la migració o no es troba l'script.
+     */
+    private static boolean apply(Connection conn, int version) throws SQLException {
+        if (currentVersion(conn) >= version) {
+            return false;
+        }
+        String resource = MIGRATIONS[version - 1];
+        InputStream script = SchemaMigrations.class.getResourceAsStream(resource);
+        if (script == null) {
+            throw new SQLException("No s'ha trobat la migració " + resource);
+        }
+        DatabaseInitializer.executeScript(conn, script);
+        try (Statement stmt = conn.createStatement()) {
+            // PRAGMA no admet paràmetres; la versió és un enter, per tant es pot concatenar
+            stmt.execute("PRAGMA user_version = " + version);
+        }
+        return true;
+    }
+}
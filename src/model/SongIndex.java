@@ -0,0 +1,664 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @author giser
+ * Índex en memòria de la llista de cançons, per filtrar per artista i àlbum sense consultar SQLite.
+ * Es construeix una sola vegada a partir de la consulta de cançons ({@link #build()}) i es guarda per columnes:
+ * vectors d'<code>int</code> per als ids de cançó, àlbum i artista, un vector de <code>double</code> per a les durades
+ * i una taula de textos en UTF-8 (els noms d'àlbums i artistes, sense repeticions) per als títols i els noms.
+ * Per a cada artista i cada àlbum hi ha la llista ordenada de les posicions de les seves cançons, de manera que
+ * comptar les cançons d'un filtre és llegir-ne la mida i llegir-ne una pàgina és una cerca binària i un recorregut
+ * del vector, sense crear cap objecte fins a construir les {@link SongRow} de la pàgina.
+ * Les insercions, modificacions i eliminacions de {@link MusicDAO} s'hi apliquen quan es confirmen; les
+ * escriptures massives (importació, generació) l'invaliden i s'ha de tornar a construir.
+ * És opcional: amb <code>-Dmusic.songIndex=false</code> no es construeix i la llista es continua llegint de SQLite.
+ * Ocupa uns 75 bytes per cançó, comptant els títols en UTF-8 i les llistes de posicions (uns 145 MB per a dos milions de cançons).
+ * És segur per a fils: les consultes comparteixen un bloqueig de lectura i les modificacions en prenen el d'escriptura.
+ */
+public class SongIndex {
+
+    // Indica si s'ha de fer servir l'índex.
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("music.songIndex"));
+
+    // Nombre d'intents de construcció si les dades canvien mentre es llegeixen.
+    private static final int BUILD_ATTEMPTS = 3;
+
+    // Nombre de files que es demanen al controlador JDBC en cada lectura.
+    private static final int FETCH_SIZE = 1000;
+
+    // Totes les cançons amb el seu àlbum i artista, en l'ordre de la llista (per id).
+    private static final String INDEX_SONGS =
+            "SELECT s.id, s.album_id, al.artist_id, s.name, s.duration, al.name, ar.name " +
+            "FROM song s " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id " +
+            "ORDER BY s.id";
+
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Índex actual, o null si no s'ha construït o s'ha invalidat.
+    private static Columns current = null;
+
+    // Nombre de canvis confirmats (o invalidacions) sense índex; una construcció que n'ha vist algun es descarta.
+    private static long missedChanges = 0;
+
+    /**
+     * @author giser
+     * Construeix l'índex a partir de la base de dades i el publica, si està activat.
+     * Si mentre es llegeix es confirma algun canvi que l'índex no podria reflectir, es torna a llegir.
+     * Fa consultes a la base de dades, per tant no s'ha de cridar des del fil de JavaFX.
+     * @return <code>true</code> si l'índex s'ha construït.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    public static boolean build() throws SQLException {
+        if (!ENABLED) {
+            return false;
+        }
+        for (int attempt = 0; attempt < BUILD_ATTEMPTS; attempt++) {
+            long changesBefore;
+            lock.readLock().lock();
+            try {
+                changesBefore = missedChanges;
+            } finally {
+                lock.readLock().unlock();
+            }
+            Columns columns = QueryMetrics.time("buildSongIndex", built -> built.size,
+                    () -> DatabaseConnection.read(SongIndex::load));
+            lock.writeLock().lock();
+            try {
+                if (missedChanges == changesBefore) {
+                    current = columns;
+                    return true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @author giser
+     * Indica si l'índex està construït i es pot consultar.
+     * @return <code>true</code> si l'índex està construït.
+     */
+    public static boolean isBuilt() {
+        lock.readLock().lock();
+        try {
+            return current != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Descarta l'índex, per exemple després d'una escriptura massiva que no indica quines cançons han canviat.
+     */
+    public static void invalidate() {
+        lock.writeLock().lock();
+        try {
+            current = null;
+            missedChanges++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna el nombre de cançons i la primera pàgina d'un filtre, com {@link SongQueryCache#load(Integer, Integer, int)}.
+     * @param artistId      l'identificador de l'artista, o <code>null</code> per a tots.
+     * @param albumId       l'identificador de l'àlbum, o <code>null</code> per a tots.
+     * @param firstPageSize el nombre de cançons de la primera pàgina.
+     * @return el resultat, o <code>null</code> si l'índex no està construït.
+     */
+    public static SongQueryCache.Result firstPage(Integer artistId, Integer albumId, int firstPageSize) {
+        lock.readLock().lock();
+        try {
+            if (current == null) {
+                return null;
+            }
+            int count = current.count(artistId, albumId);
+            return new SongQueryCache.Result(count, current.page(artistId, albumId, Integer.MIN_VALUE, 0, firstPageSize));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Retorna una pàgina de cançons d'un filtre, amb la mateixa paginació per clau que
+     * {@link MusicDAO#getSongsPage(Integer, Integer, int, int, int)}.
+     * @param artistId l'identificador de l'artista, o <code>null</code> per a tots.
+     * @param albumId  l'identificador de l'àlbum, o <code>null</code> per a tots.
+     * @param afterId  l'id de l'última cançó de la pàgina anterior.
+     * @param offset   el nombre de cançons que se salten després de <code>afterId</code>.
+     * @param limit    el nombre màxim de cançons.
+     * @return les cançons, o <code>null</code> si l'índex no està construït.
+     */
+    public static List<SongRow> page(Integer artistId, Integer albumId, int afterId, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            return current != null ? current.page(artistId, albumId, afterId, offset, limit) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Afegeix una cançó inserida. La crida {@link MusicDAO} quan la inserció s'ha confirmat.
+     * @param song la cançó inserida.
+     */
+    static void songInserted(SongRow song) {
+        lock.writeLock().lock();
+        try {
+            if (current == null || !current.append(song)) {
+                discard();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Aplica la modificació d'una cançó. La crida {@link MusicDAO} quan la modificació s'ha confirmat.
+     * @param songId   l'identificador de la cançó.
+     * @param albumId  l'identificador del nou àlbum.
+     * @param title    el nou títol.
+     * @param duration la nova durada.
+     */
+    static void songUpdated(int songId, int albumId, String title, double duration) {
+        lock.writeLock().lock();
+        try {
+            if (current == null || !current.update(songId, albumId, title, duration)) {
+                discard();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Aplica l'estat actual d'una cançó que ha canviat en una altra aplicació, sense saber si és nova o modificada.
+     * La crida {@link DatabaseChangeWatcher}. Si la cançó ja és a l'índex amb les mateixes dades, no es toca.
+     * @param song la cançó, tal com és ara a la base de dades.
+     */
+    static void songChanged(SongRow song) {
+        lock.writeLock().lock();
+        try {
+            if (current == null) {
+                missedChanges++;
+                return;
+            }
+            int position = current.position(song.id());
+            if (position >= 0) {
+                SongRow indexed = current.row(position);
+                boolean same = indexed.albumId() == song.albumId() && indexed.title().equals(song.title())
+                        && indexed.duration() == song.duration();
+                if (!same && !current.update(song.id(), song.albumId(), song.title(), song.duration())) {
+                    discard();
+                }
+            } else if (!current.append(song)) {
+                // Una cançó nova amb un id més petit que l'últim de l'índex no es pot situar
+                discard();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Treu una cançó eliminada. La crida {@link MusicDAO} quan l'eliminació s'ha confirmat.
+     * @param songId l'identificador de la cançó.
+     */
+    static void songDeleted(int songId) {
+        lock.writeLock().lock();
+        try {
+            if (current == null) {
+                missedChanges++;
+            } else {
+                current.delete(songId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @author giser
+     * Descarta l'índex perquè no pot reflectir un canvi. S'ha de cridar amb el bloqueig d'escriptura.
+     */
+    private static void discard() {
+        current = null;
+        missedChanges++;
+    }
+
+    /**
+     * @author giser
+     * Llegeix totes les cançons i en construeix les columnes.
+     * @param conn la connexió de lectura.
+     * @return les columnes.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static Columns load(Connection conn) throws SQLException {
+        Columns columns = new Columns();
+        // Els noms d'àlbums i artistes es repeteixen a cada cançó: es guarden una sola vegada
+        Map<String, Integer> names = new HashMap<>();
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, INDEX_SONGS);
+        pstmt.setFetchSize(FETCH_SIZE);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int albumId = rs.getInt(2);
+                int artistId = rs.getInt(3);
+                columns.add(rs.getInt(1), albumId, artistId, columns.strings.add(rs.getString(4)), rs.getDouble(5));
+                if (!columns.albumNames.containsKey(albumId)) {
+                    columns.albumNames.put(albumId, names.computeIfAbsent(rs.getString(6), columns.strings::add));
+                }
+                if (!columns.artistNames.containsKey(artistId)) {
+                    columns.artistNames.put(artistId, names.computeIfAbsent(rs.getString(7), columns.strings::add));
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @author giser
+     * Columnes de l'índex. Cada cançó ocupa una posició de tots els vectors, en ordre d'id; les cançons eliminades
+     * es marquen i es treuen de les llistes de posicions, però mantenen la posició perquè l'ordre no canviï.
+     * No és segur per a fils: s'accedeix sempre amb el bloqueig de {@link SongIndex}.
+     */
+    private static final class Columns {
+
+        private int size = 0;
+        private int live = 0;
+        private int[] ids = new int[1024];
+        private int[] albumIds = new int[1024];
+        private int[] artistIds = new int[1024];
+        private int[] titles = new int[1024];
+        private double[] durations = new double[1024];
+        private final BitSet deleted = new BitSet();
+
+        // Textos (títols i noms) i el nom de cada àlbum i artista, com a posició a la taula de textos.
+        private StringTable strings = new StringTable();
+        private final IntMap<Integer> albumNames = new IntMap<>();
+        private final IntMap<Integer> artistNames = new IntMap<>();
+
+        // Posicions de les cançons de cada àlbum i de cada artista, en ordre creixent.
+        private final IntMap<Postings> byAlbum = new IntMap<>();
+        private final IntMap<Postings> byArtist = new IntMap<>();
+
+        /**
+         * @author giser
+         * Afegeix una cançó al final de les columnes.
+         */
+        void add(int id, int albumId, int artistId, int title, double duration) {
+            if (size == ids.length) {
+                int capacity = size + (size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                albumIds = Arrays.copyOf(albumIds, capacity);
+                artistIds = Arrays.copyOf(artistIds, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+            }
+            ids[size] = id;
+            albumIds[size] = albumId;
+            artistIds[size] = artistId;
+            titles[size] = title;
+            durations[size] = duration;
+            postings(byAlbum, albumId).insert(size);
+            postings(byArtist, artistId).insert(size);
+            size++;
+            live++;
+        }
+
+        /**
+         * @author giser
+         * Afegeix una cançó inserida, que ha de tenir un id més gran que totes les de l'índex.
+         * @return <code>false</code> si no es pot afegir al final i cal reconstruir l'índex.
+         */
+        boolean append(SongRow song) {
+            if (size > 0 && song.id() <= ids[size - 1]) {
+                return false;
+            }
+            rememberNames(song.albumId(), song.album(), song.artistId(), song.artist());
+            add(song.id(), song.albumId(), song.artistId(), strings.add(song.title()), song.duration());
+            return true;
+        }
+
+        /**
+         * @author giser
+         * Aplica la modificació d'una cançó; si canvia d'àlbum, es mou a les llistes de posicions del nou àlbum i artista.
+         * L'artista del nou àlbum es treu de l'índex mateix o, si l'àlbum encara no hi té cançons, de {@link ReferenceData}.
+         * @return <code>false</code> si no es coneix el nou àlbum i cal reconstruir l'índex.
+         */
+        boolean update(int songId, int albumId, String title, double duration) {
+            int position = position(songId);
+            if (position < 0) {
+                // La cançó no hi és (per exemple, ja s'ha eliminat): no hi ha res a canviar
+                return true;
+            }
+            if (albumId != albumIds[position]) {
+                int artistId;
+                Postings albumSongs = byAlbum.get(albumId);
+                if (albumSongs != null && albumSongs.size > 0) {
+                    artistId = artistIds[albumSongs.positions[0]];
+                } else {
+                    Album album = ReferenceData.album(albumId);
+                    Artist artist = album != null ? ReferenceData.artist(album.artistId()) : null;
+                    if (artist == null) {
+                        return false;
+                    }
+                    rememberNames(albumId, album.title(), artist.id(), artist.name());
+                    artistId = artist.id();
+                }
+                byAlbum.get(albumIds[position]).remove(position);
+                byArtist.get(artistIds[position]).remove(position);
+                albumIds[position] = albumId;
+                artistIds[position] = artistId;
+                postings(byAlbum, albumId).insert(position);
+                postings(byArtist, artistId).insert(position);
+            }
+            // El títol només s'afegeix a la taula si ha canviat; l'anterior queda com a espai perdut
+            if (!strings.equals(titles[position], title)) {
+                strings.release(titles[position]);
+                titles[position] = strings.add(title);
+                compactIfWasteful();
+            }
+            durations[position] = duration;
+            return true;
+        }
+
+        /**
+         * @author giser
+         * Treu una cançó eliminada de les llistes de posicions.
+         */
+        void delete(int songId) {
+            int position = position(songId);
+            if (position < 0) {
+                return;
+            }
+            deleted.set(position);
+            byAlbum.get(albumIds[position]).remove(position);
+            byArtist.get(artistIds[position]).remove(position);
+            live--;
+            strings.release(titles[position]);
+            compactIfWasteful();
+        }
+
+        /**
+         * @author giser
+         * Torna a construir la taula de textos amb només els textos en ús (els títols de les cançons no eliminades
+         * i els noms), si més de la meitat de la taula és espai perdut per títols modificats o cançons eliminades.
+         */
+        private void compactIfWasteful() {
+            if (!strings.isWasteful()) {
+                return;
+            }
+            StringTable compacted = new StringTable();
+            for (int position = 0; position < size; position++) {
+                if (!deleted.get(position)) {
+                    titles[position] = compacted.add(strings.get(titles[position]));
+                }
+            }
+            // Els noms es comparteixen entre àlbums i artistes amb el mateix nom: es tornen a guardar una sola vegada
+            Map<Integer, Integer> names = new HashMap<>();
+            for (IntMap<Integer> nameMap : List.of(albumNames, artistNames)) {
+                nameMap.replaceValues(name -> names.computeIfAbsent(name, old -> compacted.add(strings.get(old))));
+            }
+            strings = compacted;
+        }
+
+        /**
+         * @author giser
+         * Compta les cançons d'un filtre.
+         */
+        int count(Integer artistId, Integer albumId) {
+            if (albumId == null) {
+                if (artistId == null) {
+                    return live;
+                }
+                Postings artistSongs = byArtist.get(artistId);
+                return artistSongs != null ? artistSongs.size : 0;
+            }
+            Postings albumSongs = byAlbum.get(albumId);
+            if (albumSongs == null) {
+                return 0;
+            }
+            if (artistId == null) {
+                return albumSongs.size;
+            }
+            // Intersecció: les cançons de l'àlbum que són de l'artista
+            int count = 0;
+            for (int i = 0; i < albumSongs.size; i++) {
+                if (artistIds[albumSongs.positions[i]] == artistId) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @author giser
+         * Retorna una pàgina d'un filtre: les cançons amb id més gran que <code>afterId</code>, saltant-ne <code>offset</code>.
+         * Es recorre la llista de posicions més petita que aplica (l'àlbum, l'artista o totes les cançons).
+         */
+        List<SongRow> page(Integer artistId, Integer albumId, int afterId, int offset, int limit) {
+            List<SongRow> rows = new ArrayList<>(Math.min(limit, 256));
+            if (albumId == null && artistId == null) {
+                for (int position = firstAfter(afterId); position < size && rows.size() < limit; position++) {
+                    if (!deleted.get(position) && offset-- <= 0) {
+                        rows.add(row(position));
+                    }
+                }
+                return rows;
+            }
+            Postings postings = albumId != null ? byAlbum.get(albumId) : byArtist.get(artistId);
+            if (postings == null) {
+                return rows;
+            }
+            for (int i = postings.firstAfter(ids, afterId); i < postings.size && rows.size() < limit; i++) {
+                int position = postings.positions[i];
+                if ((artistId == null || albumId == null || artistIds[position] == artistId) && offset-- <= 0) {
+                    rows.add(row(position));
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * @author giser
+         * Construeix la fila de la llista d'una posició.
+         */
+        private SongRow row(int position) {
+            return new SongRow(ids[position], albumIds[position], artistIds[position], strings.get(titles[position]),
+                    durations[position],
+                    strings.get(albumNames.get(albumIds[position])), strings.get(artistNames.get(artistIds[position])));
+        }
+
+        /**
+         * @author giser
+         * Guarda els noms d'un àlbum i el seu artista si encara no hi són.
+         */
+        private void rememberNames(int albumId, String album, int artistId, String artist) {
+            if (!albumNames.containsKey(albumId)) {
+                albumNames.put(albumId, strings.add(album));
+            }
+            if (!artistNames.containsKey(artistId)) {
+                artistNames.put(artistId, strings.add(artist));
+            }
+        }
+
+        /**
+         * @author giser
+         * Cerca la posició d'una cançó pel seu id.
+         * @return la posició, o -1 si no hi és o s'ha eliminat.
+         */
+        private int position(int songId) {
+            int position = Arrays.binarySearch(ids, 0, size, songId);
+            return position >= 0 && !deleted.get(position) ? position : -1;
+        }
+
+        /**
+         * @author giser
+         * Retorna la primera posició amb un id més gran que l'indicat.
+         */
+        private int firstAfter(int afterId) {
+            int position = Arrays.binarySearch(ids, 0, size, afterId);
+            return position >= 0 ? position + 1 : -position - 1;
+        }
+
+        /**
+         * @author giser
+         * Retorna la llista de posicions d'una clau, creant-la si no existeix.
+         */
+        private static Postings postings(IntMap<Postings> map, int key) {
+            Postings postings = map.get(key);
+            if (postings == null) {
+                postings = new Postings();
+                map.put(key, postings);
+            }
+            return postings;
+        }
+    }
+
+    /**
+     * @author giser
+     * Llista ordenada de posicions de cançons d'un àlbum o d'un artista.
+     */
+    private static final class Postings {
+
+        private int[] positions = new int[4];
+        private int size = 0;
+
+        /**
+         * @author giser
+         * Afegeix una posició mantenint l'ordre (normalment al final).
+         */
+        void insert(int position) {
+            int index = size == 0 || positions[size - 1] < position ? size : -Arrays.binarySearch(positions, 0, size, position) - 1;
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            System.arraycopy(positions, index, positions, index + 1, size - index);
+            positions[index] = position;
+            size++;
+        }
+
+        /**
+         * @author giser
+         * Treu una posició.
+         */
+        void remove(int position) {
+            int index = Arrays.binarySearch(positions, 0, size, position);
+            if (index >= 0) {
+                System.arraycopy(positions, index + 1, positions, index, size - index - 1);
+                size--;
+            }
+        }
+
+        /**
+         * @author giser
+         * Retorna el primer índex de la llista amb una cançó d'id més gran que l'indicat.
+         * Com que les posicions segueixen l'ordre dels ids, es pot fer una cerca binària sobre els ids.
+         */
+        int firstAfter(int[] ids, int afterId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids[positions[middle]] <= afterId) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * @author giser
+     * Taula de textos guardats en UTF-8 en un sol vector de bytes; cada text s'identifica per la seva posició.
+     */
+    private static final class StringTable {
+
+        private byte[] bytes = new byte[64 * 1024];
+        private int length = 0;
+        // Inici de cada text al vector de bytes; el final és l'inici del següent.
+        private int[] offsets = new int[1025];
+        private int count = 0;
+        // Bytes de textos que ja no es fan servir (títols substituïts o de cançons eliminades).
+        private long wasted = 0;
+
+        /**
+         * @author giser
+         * Afegeix un text.
+         * @return la posició del text.
+         */
+        int add(String text) {
+            byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+            if (length + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + encoded.length, bytes.length + (bytes.length >> 1)));
+            }
+            if (count + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1));
+            }
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+            offsets[count + 1] = length;
+            return count++;
+        }
+
+        /**
+         * @author giser
+         * Indica si un text guardat és igual a l'indicat, sense descodificar-lo.
+         */
+        boolean equals(int index, String text) {
+            byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+            return Arrays.equals(bytes, offsets[index], offsets[index + 1], encoded, 0, encoded.length);
+        }
+
+        /**
+         * @author giser
+         * Marca un text com a no utilitzat. L'espai no es recupera fins que es compacta la taula.
+         */
+        void release(int index) {
+            wasted += offsets[index + 1] - offsets[index] + Integer.BYTES;
+        }
+
+        /**
+         * @author giser
+         * Indica si val la pena compactar la taula: més d'1 MB i més de la meitat dels bytes són textos no utilitzats.
+         */
+        boolean isWasteful() {
+            return wasted > (1 << 20) && wasted * 2 > length + (long) count * Integer.BYTES;
+        }
+
+        /**
+         * @author giser
+         * Retorna un text.
+         */
+        String get(int index) {
+            return new String(bytes, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+        }
+    }
+}
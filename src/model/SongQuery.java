@@ -0,0 +1,59 @@
+package model;
+
+/**
+ * @author giser
+ * Consulta de la llista de cançons: filtres d'artista, àlbum i interval de durada, i ordre.
+ * Els filtres <code>null</code> no s'apliquen. Els límits de durada són inclusius.
+ * @param artistId    l'identificador de l'artista, o <code>null</code>.
+ * @param albumId     l'identificador de l'àlbum, o <code>null</code>.
+ * @param minDuration la durada mínima, o <code>null</code>.
+ * @param maxDuration la durada màxima, o <code>null</code>.
+ * @param sort        l'ordre de la llista.
+ * @param descending  si l'ordre és descendent.
+ */
+public record SongQuery(Integer artistId, Integer albumId, Double minDuration, Double maxDuration,
+                        SongSort sort, boolean descending) {
+
+    /**
+     * @author giser
+     * Crea la consulta per defecte d'un filtre d'artista i àlbum: sense límits de durada i ordenada per id.
+     * @param artistId l'identificador de l'artista, o <code>null</code>.
+     * @param albumId  l'identificador de l'àlbum, o <code>null</code>.
+     * @return la consulta.
+     */
+    public static SongQuery of(Integer artistId, Integer albumId) {
+        return new SongQuery(artistId, albumId, null, null, SongSort.ID, false);
+    }
+
+    /**
+     * @author giser
+     * Indica si és la consulta per defecte d'un filtre d'artista i àlbum, l'única que poden servir
+     * {@link SongIndex} i {@link SongQueryCache}.
+     * @return <code>true</code> si no té límits de durada i està ordenada per id ascendent.
+     */
+    public boolean isDefault() {
+        return minDuration == null && maxDuration == null && isOrderedById();
+    }
+
+    /**
+     * @author giser
+     * Indica si la llista està ordenada per id ascendent, de manera que les cançons noves van al final.
+     * @return <code>true</code> si està ordenada per id ascendent.
+     */
+    public boolean isOrderedById() {
+        return sort == SongSort.ID && !descending;
+    }
+
+    /**
+     * @author giser
+     * Indica si una cançó compleix els filtres de la consulta.
+     * @param song la cançó.
+     * @return <code>true</code> si la cançó pertany a la llista.
+     */
+    public boolean matches(SongRow song) {
+        return (artistId == null || artistId == song.artistId())
+                && (albumId == null || albumId == song.albumId())
+                && (minDuration == null || song.duration() >= minDuration)
+                && (maxDuration == null || song.duration() <= maxDuration);
+    }
+}
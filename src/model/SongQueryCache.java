@@ -0,0 +1,177 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author giser
+ * Memòria cau dels resultats de la llista de cançons per a cada filtre d'artista i àlbum.
+ * Per a cada filtre es guarda una instantània compacta: el nombre total de cançons i la primera pàgina,
+ * que és tot el que cal per tornar a mostrar la llista sense consultar la base de dades; la resta de pàgines
+ * es continuen llegint quan es necessiten. El nombre de filtres guardats és limitat i es descarten els utilitzats fa més temps (LRU).
+ * Quan s'insereix, es modifica o s'elimina una cançó només s'invaliden els filtres que la poden contenir; ho fa {@link MusicDAO}
+ * en confirmar l'escriptura, igual que l'actualització de {@link SongIndex}.
+ * És segura per a fils.
+ */
+public class SongQueryCache {
+
+    // Nombre màxim de filtres que es guarden.
+    public static final int MAX_ENTRIES = 64;
+
+    /**
+     * Instantània del resultat d'un filtre: el nombre total de cançons i les cançons de la primera pàgina.
+     */
+    public record Result(int count, List<SongRow> firstPage) {
+    }
+
+    /**
+     * Comptadors de la memòria cau, per poder-ne ajustar la mida.
+     */
+    public record Stats(long hits, long misses, long evictions, long invalidations, int size) {
+    }
+
+    /**
+     * Clau d'un filtre; els valors <code>null</code> volen dir "tots".
+     */
+    private record Key(Integer artistId, Integer albumId) {
+    }
+
+    // Resultats per filtre, ordenats per ús (LRU).
+    private static final Map<Key, Result> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Nombre d'invalidacions fetes; una consulta iniciada abans d'una invalidació no es guarda.
+    private static long generation = 0;
+
+    // Comptadors.
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+    private static long invalidations = 0;
+
+    /**
+     * @author giser
+     * Cerca el resultat d'un filtre a la memòria cau, sense accedir a la base de dades.
+     * Compta com a encert o fallada.
+     * @param artistId l'identificador de l'artista, o <code>null</code> per a tots.
+     * @param albumId  l'identificador de l'àlbum, o <code>null</code> per a tots.
+     * @return el resultat guardat, o <code>null</code> si no hi és.
+     */
+    public static synchronized Result lookup(Integer artistId, Integer albumId) {
+        Result result = entries.get(new Key(artistId, albumId));
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * @author giser
+     * Consulta el resultat d'un filtre a la base de dades i el guarda a la memòria cau.
+     * Si mentrestant s'ha invalidat alguna entrada, el resultat es retorna però no es guarda, perquè podria ser antic.
+     * Fa consultes a la base de dades, per tant no s'ha de cridar des del fil de JavaFX.
+     * @param artistId      l'identificador de l'artista, o <code>null</code> per a tots.
+     * @param albumId       l'identificador de l'àlbum, o <code>null</code> per a tots.
+     * @param firstPageSize el nombre de cançons de la primera pàgina.
+     * @return el resultat del filtre.
+     * @throws SQLException si es produeix un error en les consultes.
+     */
+    public static Result load(Integer artistId, Integer albumId, int firstPageSize) throws SQLException {
+        long startGeneration;
+        synchronized (SongQueryCache.class) {
+            startGeneration = generation;
+        }
+        int count = MusicDAO.countSongs(artistId, albumId);
+        List<SongRow> firstPage = count > 0
+                ? List.copyOf(MusicDAO.getSongsPage(artistId, albumId, Integer.MIN_VALUE, 0, firstPageSize))
+                : List.of();
+        Result result = new Result(count, firstPage);
+        synchronized (SongQueryCache.class) {
+            if (generation == startGeneration) {
+                entries.put(new Key(artistId, albumId), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @author giser
+     * Consulta i guarda el resultat d'un filtre si encara no és a la memòria cau, per avançar-se a una selecció probable.
+     * No compta com a encert ni com a fallada.
+     * Fa consultes a la base de dades, per tant no s'ha de cridar des del fil de JavaFX.
+     * @param artistId      l'identificador de l'artista, o <code>null</code> per a tots.
+     * @param albumId       l'identificador de l'àlbum, o <code>null</code> per a tots.
+     * @param firstPageSize el nombre de cançons de la primera pàgina.
+     * @return <code>true</code> si s'ha consultat; <code>false</code> si ja hi era.
+     * @throws SQLException si es produeix un error en les consultes.
+     */
+    public static boolean prefetch(Integer artistId, Integer albumId, int firstPageSize) throws SQLException {
+        synchronized (SongQueryCache.class) {
+            if (entries.containsKey(new Key(artistId, albumId))) {
+                return false;
+            }
+        }
+        load(artistId, albumId, firstPageSize);
+        return true;
+    }
+
+    /**
+     * @author giser
+     * Invalida els filtres que poden contenir una cançó, després d'inserir-la, modificar-la o eliminar-la.
+     * Només s'esborren les entrades de "totes les cançons", de l'artista i de l'àlbum de la cançó.
+     * Quan una cançó canvia d'àlbum, s'ha de cridar amb la versió anterior i amb la nova.
+     * @param song la cançó afectada.
+     */
+    public static void invalidateSong(SongRow song) {
+        invalidateAlbum(song.artistId(), song.albumId());
+    }
+
+    /**
+     * @author giser
+     * Invalida els filtres que poden contenir les cançons d'un àlbum: "totes les cançons", l'artista i l'àlbum.
+     * @param artistId l'identificador de l'artista de l'àlbum.
+     * @param albumId  l'identificador de l'àlbum.
+     */
+    public static synchronized void invalidateAlbum(int artistId, int albumId) {
+        generation++;
+        entries.keySet().removeIf(key -> {
+            boolean affected = (key.artistId() == null || key.artistId() == artistId)
+                    && (key.albumId() == null || key.albumId() == albumId);
+            if (affected) {
+                invalidations++;
+            }
+            return affected;
+        });
+    }
+
+    /**
+     * @author giser
+     * Buida tota la memòria cau, per exemple quan les dades canvien per una via que no indica quines cançons.
+     */
+    public static synchronized void invalidateAll() {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    /**
+     * @author giser
+     * Retorna els comptadors actuals de la memòria cau.
+     * @return els encerts, fallades, descarts per mida, invalidacions i el nombre d'entrades.
+     */
+    public static synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size());
+    }
+}
@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * @author giser
+ * Representa una fila de la llista de cançons: la cançó juntament amb el nom del seu àlbum i del seu artista.
+ * @param id       l'identificador de la cançó.
+ * @param albumId  l'identificador de l'àlbum de la cançó.
+ * @param artistId l'identificador de l'artista de l'àlbum.
+ * @param title    el títol de la cançó.
+ * @param duration la durada de la cançó.
+ * @param album    el títol de l'àlbum.
+ * @param artist   el nom de l'artista.
+ */
+public record SongRow(int id, int albumId, int artistId, String title, double duration, String album, String artist) {
+}
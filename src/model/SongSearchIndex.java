@@ -0,0 +1,151 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author giser
+ * Insercions massives de cançons amb la cerca de text complet (taula "song_search", migració 2).
+ * El trigger "song_search_insert" indexa les cançons una a una, cosa que en una càrrega massiva costa més que
+ * la mateixa inserció. {@link #bulkInsert} registra les cançons de cada transacció com un rang pendent a la taula
+ * "song_search_pending" (migració 5), que mentre és obert atura el trigger, i {@link #indexPending()} n'indexa els rangs
+ * pendents al final de la càrrega, cadascun amb una sola sentència. Els rangs es confirmen amb les cançons: si
+ * l'aplicació s'atura abans d'indexar-los, {@link DatabaseInitializer#createSchema()} ho fa en tornar-la a obrir.
+ * No es modifica mai l'esquema, de manera que les sentències preparades de les altres connexions continuen sent vàlides.
+ */
+class SongSearchIndex {
+
+    // Indexa les cançons d'un rang d'ids, igual que el trigger. Les que ja hi són (perquè s'han modificat
+    // mentre el rang era pendent i els triggers d'actualització les han indexades) se substitueixen.
+    private static final String INDEX_SONGS =
+            "INSERT OR REPLACE INTO song_search (rowid, title, album, artist) " +
+            "SELECT s.id, s.name, al.name, ar.name " +
+            "FROM song s " +
+            "JOIN album al ON s.album_id = al.id " +
+            "JOIN artist ar ON al.artist_id = ar.id " +
+            "WHERE s.id BETWEEN ? AND ?";
+
+    /**
+     * @author giser
+     * Executa una inserció massiva de cançons sense el trigger de la cerca i en registra les cançons noves com a
+     * pendents d'indexar. Les cançons noves han de tenir ids més grans que els existents (com els que assigna SQLite)
+     * i la tasca no pot modificar ni eliminar cançons existents. Les cançons no es poden trobar amb la cerca fins que
+     * s'executa {@link #indexPending()}. Si la base de dades no té la cerca, la tasca s'executa tal qual.
+     * @param conn la connexió d'escriptura, amb la transacció oberta.
+     * @param task la inserció.
+     * @param <T>  el tipus del resultat de la tasca.
+     * @return el resultat de la tasca.
+     * @throws SQLException si es produeix un error; en desfer la transacció també es desfà el rang.
+     */
+    static <T> T bulkInsert(Connection conn, DatabaseConnection.ConnectionTask<T> task) throws SQLException {
+        if (!hasPendingTable(conn)) {
+            return task.apply(conn);
+        }
+        int lastId = maxSongId(conn);
+        // Rang obert: el trigger d'inserció no indexa les cançons mentre existeix
+        int range;
+        PreparedStatement open = DatabaseConnection.prepare(conn,
+                "INSERT INTO song_search_pending (first_id) VALUES (?) RETURNING id");
+        open.setInt(1, lastId + 1);
+        try (ResultSet rs = open.executeQuery()) {
+            rs.next();
+            range = rs.getInt(1);
+        }
+        T result = task.apply(conn);
+        int newLastId = maxSongId(conn);
+        if (newLastId > lastId) {
+            PreparedStatement close = DatabaseConnection.prepare(conn, "UPDATE song_search_pending SET last_id = ? WHERE id = ?");
+            close.setInt(1, newLastId);
+            close.setInt(2, range);
+            close.executeUpdate();
+        } else {
+            deleteRange(conn, range);
+        }
+        return result;
+    }
+
+    /**
+     * @author giser
+     * Indexa les cançons de tots els rangs pendents que han deixat les insercions massives confirmades.
+     * Cada rang s'indexa en una transacció pròpia, de manera que les altres escriptures no esperen tota la indexació.
+     * Si un altre procés ja ha indexat un rang, s'omet.
+     * @return el nombre de cançons indexades.
+     * @throws SQLException si es produeix un error; els rangs ja indexats no es tornen a indexar.
+     */
+    static int indexPending() throws SQLException {
+        List<int[]> ranges = DatabaseConnection.read(conn -> {
+            List<int[]> pending = new ArrayList<>();
+            if (!hasPendingTable(conn)) {
+                return pending;
+            }
+            PreparedStatement pstmt = DatabaseConnection.prepare(conn,
+                    "SELECT id, first_id, last_id FROM song_search_pending WHERE last_id IS NOT NULL ORDER BY id");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    pending.add(new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)});
+                }
+            }
+            return pending;
+        });
+        int indexed = 0;
+        for (int[] range : ranges) {
+            indexed += QueryMetrics.time("indexSearch", Integer::intValue, () -> DatabaseConnection.transaction(conn -> {
+                if (deleteRange(conn, range[0]) == 0) {
+                    return 0;
+                }
+                PreparedStatement index = DatabaseConnection.prepare(conn, INDEX_SONGS);
+                index.setInt(1, range[1]);
+                index.setInt(2, range[2]);
+                return index.executeUpdate();
+            }));
+        }
+        return indexed;
+    }
+
+    /**
+     * @author giser
+     * Comprova si la base de dades té la taula de rangs pendents (migració 5).
+     * @param conn la connexió.
+     * @return <code>true</code> si la taula existeix.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static boolean hasPendingTable(Connection conn) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn,
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'song_search_pending'");
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * @author giser
+     * Obté l'id de cançó més gran.
+     * @param conn la connexió.
+     * @return l'id més gran, o 0 si no hi ha cançons.
+     * @throws SQLException si es produeix un error en la consulta.
+     */
+    private static int maxSongId(Connection conn) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, "SELECT COALESCE(MAX(id), 0) FROM song");
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @author giser
+     * Elimina un rang pendent.
+     * @param conn  la connexió d'escriptura.
+     * @param range l'id del rang.
+     * @return el nombre de files eliminades (0 si ja no hi era).
+     * @throws SQLException si es produeix un error en l'eliminació.
+     */
+    private static int deleteRange(Connection conn, int range) throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepare(conn, "DELETE FROM song_search_pending WHERE id = ?");
+        pstmt.setInt(1, range);
+        return pstmt.executeUpdate();
+    }
+}
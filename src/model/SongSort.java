@@ -0,0 +1,70 @@
+package model;
+
+import java.util.Comparator;
+
+/**
+ * @author giser
+ * Ordre de la llista de cançons. Cada ordre és una llista de columnes que acaba en una clau única, de manera que
+ * l'ordre és total i la paginació per clau ({@link MusicDAO#getSongsPage(SongQuery, SongRow, int, int)}) pot continuar
+ * des de l'última fila d'una pàgina. Les columnes segueixen els índexs de l'esquema (migració 3): SQLite recorre
+ * l'índex en l'ordre demanat i no ha d'ordenar la llista.
+ */
+public enum SongSort {
+
+    // Per id de cançó (l'ordre d'inserció).
+    ID(Comparator.comparingInt(SongRow::id), "s.id"),
+    // Per títol de la cançó.
+    TITLE(Comparator.comparing(SongRow::title).thenComparingInt(SongRow::id), "s.name", "s.id"),
+    // Per durada de la cançó.
+    DURATION(Comparator.comparingDouble(SongRow::duration).thenComparingInt(SongRow::id), "s.duration", "s.id"),
+    // Per títol de l'àlbum; les cançons d'un mateix àlbum, per id.
+    ALBUM(Comparator.comparing(SongRow::album).thenComparingInt(SongRow::albumId).thenComparingInt(SongRow::id),
+            "al.name", "al.id", "s.id"),
+    // Per nom de l'artista; els àlbums d'un mateix artista i les seves cançons, per id.
+    ARTIST(Comparator.comparing(SongRow::artist).thenComparingInt(SongRow::artistId)
+            .thenComparingInt(SongRow::albumId).thenComparingInt(SongRow::id),
+            "ar.name", "ar.id", "al.id", "s.id");
+
+    private final Comparator<SongRow> comparator;
+    private final String[] columns;
+
+    SongSort(Comparator<SongRow> comparator, String... columns) {
+        this.comparator = comparator;
+        this.columns = columns;
+    }
+
+    /**
+     * @author giser
+     * Retorna les columnes de l'ordre, de la consulta de cançons de {@link MusicDAO}.
+     * @return les columnes, de la més significativa a la clau única.
+     */
+    String[] columns() {
+        return columns;
+    }
+
+    /**
+     * @author giser
+     * Retorna els valors de les columnes de l'ordre d'una fila, en el mateix ordre que {@link #columns()}.
+     * @param song la fila.
+     * @return els valors de la clau de l'ordre.
+     */
+    Object[] keyOf(SongRow song) {
+        return switch (this) {
+            case ID -> new Object[]{song.id()};
+            case TITLE -> new Object[]{song.title(), song.id()};
+            case DURATION -> new Object[]{song.duration(), song.id()};
+            case ALBUM -> new Object[]{song.album(), song.albumId(), song.id()};
+            case ARTIST -> new Object[]{song.artist(), song.artistId(), song.albumId(), song.id()};
+        };
+    }
+
+    /**
+     * @author giser
+     * Retorna un comparador de files en aquest ordre (ascendent).
+     * Només s'ha de fer servir per a llistes petites, com els resultats d'una cerca.
+     * @return el comparador.
+     */
+    public Comparator<SongRow> comparator() {
+        return comparator;
+    }
+}
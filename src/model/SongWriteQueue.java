@@ -0,0 +1,290 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author giser
+ * Cua d'escriptures de cançons amb confirmació agrupada (group commit).
+ * Les insercions, modificacions i eliminacions es posen a la cua i un únic fil escriptor les executa en grups:
+ * agafa la primera operació pendent i hi afegeix les que arriben durant els {@value #MAX_GROUP_DELAY_MS} ms següents,
+ * fins a {@value #MAX_GROUP_OPERATIONS} operacions, i les confirma totes en una sola transacció.
+ * Les transaccions de la cua es confirmen amb <code>synchronous = FULL</code>: quan el futur d'una operació acaba,
+ * el canvi ja és al disc. Com que el fsync és un per grup, el rendiment creix amb la mida del grup en lloc
+ * d'estar limitat per la latència del disc.
+ * Cada operació s'executa dins d'un SAVEPOINT: si una falla (per exemple, un títol repetit), només es desfà aquella
+ * i el seu futur acaba amb l'error, mentre que la resta del grup es confirma igualment.
+ * Cap futur queda sense acabar: les operacions que no s'arriben a escriure perquè el fil escriptor s'atura
+ * acaben amb un error.
+ */
+public class SongWriteQueue {
+
+    // Nombre màxim d'operacions que es confirmen en una sola transacció.
+    public static final int MAX_GROUP_OPERATIONS = 256;
+
+    // Temps màxim (en mil·lisegons) que s'espera a completar un grup des que arriba la primera operació.
+    public static final long MAX_GROUP_DELAY_MS = 5;
+
+    /**
+     * @author giser
+     * Operació d'escriptura que s'executa dins de la transacció del grup.
+     * @param <T> el tipus del resultat.
+     */
+    @FunctionalInterface
+    private interface Operation<T> {
+        T apply() throws SQLException;
+    }
+
+    /**
+     * @author giser
+     * Operació pendent amb el futur que rep el resultat quan el grup s'ha confirmat.
+     * Una operació <code>null</code> indica al fil escriptor que s'ha d'aturar.
+     */
+    private record Pending<T>(Operation<T> operation, CompletableFuture<T> future) {
+    }
+
+    /**
+     * Fil escriptor amb la seva cua d'operacions pendents. Cada fil té la seva cua: les operacions que arriben
+     * mentre un fil s'atura van a la cua del fil següent, de manera que l'ordre d'aturar-se sempre és l'última.
+     */
+    private record Writer(Thread thread, BlockingQueue<Pending<?>> queue) {
+    }
+
+    // Fil escriptor actual, o null si no s'ha iniciat o s'ha aturat.
+    private static Writer writer = null;
+
+    /**
+     * @author giser
+     * Posa a la cua la inserció d'una cançó. Veure {@link MusicDAO#insertSong(int, String, double)}.
+     * @param albumId  l'identificador de l'àlbum.
+     * @param title    el títol de la cançó.
+     * @param duration la durada de la cançó.
+     * @return el futur que rep la cançó inserida quan la transacció s'ha confirmat.
+     */
+    public static CompletableFuture<SongRow> insert(int albumId, String title, double duration) {
+        return submit(() -> MusicDAO.insertSong(albumId, title, duration));
+    }
+
+    /**
+     * @author giser
+     * Posa a la cua la modificació d'una cançó. Veure {@link MusicDAO#updateSongAndGet(int, int, String, double)}.
+     * @param songId   l'identificador de la cançó.
+     * @param albumId  l'identificador del nou àlbum.
+     * @param title    el nou títol.
+     * @param duration la nova durada.
+     * @return el futur que rep la cançó modificada (o buit si no existeix) quan la transacció s'ha confirmat.
+     */
+    public static CompletableFuture<Optional<SongRow>> update(int songId, int albumId, String title, double duration) {
+        return submit(() -> MusicDAO.updateSongAndGet(songId, albumId, title, duration));
+    }
+
+    /**
+     * @author giser
+     * Posa a la cua l'eliminació d'una cançó. Veure {@link MusicDAO#deleteSong(int)}.
+     * @param songId l'identificador de la cançó.
+     * @return el futur que rep si s'ha eliminat quan la transacció s'ha confirmat.
+     */
+    public static CompletableFuture<Boolean> delete(int songId) {
+        return submit(() -> MusicDAO.deleteSong(songId));
+    }
+
+    /**
+     * @author giser
+     * Posa a la cua l'eliminació de moltes cançons, que s'executa com una sola operació.
+     * Veure {@link MusicDAO#deleteSongs(List)}.
+     * @param songIds els identificadors de les cançons.
+     * @return el futur que rep el nombre de cançons eliminades quan la transacció s'ha confirmat.
+     */
+    public static CompletableFuture<Integer> deleteSongs(List<Integer> songIds) {
+        return submit(() -> MusicDAO.deleteSongs(songIds));
+    }
+
+    /**
+     * @author giser
+     * Posa a la cua el canvi d'àlbum de moltes cançons, que s'executa com una sola operació.
+     * Veure {@link MusicDAO#moveSongs(List, int)}.
+     * @param songIds els identificadors de les cançons.
+     * @param albumId l'identificador de l'àlbum de destinació.
+     * @return el futur que rep les cançons mogudes quan la transacció s'ha confirmat.
+     */
+    public static CompletableFuture<List<SongRow>> moveSongs(List<Integer> songIds, int albumId) {
+        return submit(() -> MusicDAO.moveSongs(songIds, albumId));
+    }
+
+    /**
+     * @author giser
+     * Atura el fil escriptor després d'escriure totes les operacions pendents.
+     * S'ha de cridar en tancar l'aplicació, abans de tancar les connexions. Si després s'afegeixen operacions noves,
+     * el fil es torna a iniciar. Si el fil no acaba en 10 segons, les operacions que encara no ha agafat acaben
+     * amb un error i el fil s'interromp.
+     */
+    public static void shutdown() {
+        Writer stopping;
+        synchronized (SongWriteQueue.class) {
+            stopping = writer;
+            writer = null;
+            if (stopping == null) {
+                return;
+            }
+            stopping.queue().add(new Pending<>(null, null));
+        }
+        try {
+            stopping.thread().join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopping.thread().isAlive()) {
+            failPending(stopping.queue());
+            stopping.thread().interrupt();
+        }
+    }
+
+    /**
+     * @author giser
+     * Posa una operació a la cua i inicia el fil escriptor si cal.
+     * @param operation l'operació.
+     * @param <T>       el tipus del resultat.
+     * @return el futur de l'operació.
+     */
+    private static <T> CompletableFuture<T> submit(Operation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (SongWriteQueue.class) {
+            if (writer == null) {
+                BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+                Thread thread = new Thread(() -> run(queue), "music-writer");
+                // Fil dimoni perquè no impedeixi tancar l'aplicació; shutdown() n'escriu les operacions pendents
+                thread.setDaemon(true);
+                writer = new Writer(thread, queue);
+                thread.start();
+            }
+            writer.queue().add(new Pending<>(operation, future));
+        }
+        return future;
+    }
+
+    /**
+     * @author giser
+     * Bucle del fil escriptor: forma els grups d'operacions i els escriu, fins que rep l'ordre d'aturar-se
+     * o s'interromp. En acabar, les operacions que queden a la cua acaben amb un error.
+     * @param queue la cua del fil.
+     */
+    private static void run(BlockingQueue<Pending<?>> queue) {
+        List<Pending<?>> group = new ArrayList<>(MAX_GROUP_OPERATIONS);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                // Esperem la primera operació i hi afegim les que arribin dins del termini o fins que el grup és ple
+                Pending<?> next = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_GROUP_DELAY_MS);
+                while (next != null) {
+                    if (next.operation() == null) {
+                        stop = true;
+                        break;
+                    }
+                    group.add(next);
+                    if (group.size() == MAX_GROUP_OPERATIONS) {
+                        break;
+                    }
+                    next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                stop = true;
+            }
+            if (!group.isEmpty()) {
+                writeGroup(group);
+                group.clear();
+            }
+        }
+        failPending(queue);
+    }
+
+    /**
+     * @author giser
+     * Treu de la cua les operacions que no s'han escrit i les acaba amb un error.
+     * @param queue la cua d'un fil escriptor que s'atura.
+     */
+    private static void failPending(BlockingQueue<Pending<?>> queue) {
+        Pending<?> pending;
+        while ((pending = queue.poll()) != null) {
+            if (pending.operation() != null) {
+                pending.future().completeExceptionally(
+                        new SQLException("La cua d'escriptures s'ha aturat abans d'escriure l'operació"));
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Escriu un grup d'operacions en una sola transacció i, un cop confirmada, completa el futur de cadascuna.
+     * Si falla la transacció sencera (per exemple, en confirmar-la), totes les operacions acaben amb l'error.
+     * @param group les operacions del grup.
+     */
+    private static void writeGroup(List<Pending<?>> group) {
+        Object[] results = new Object[group.size()];
+        Exception[] errors = new Exception[group.size()];
+        try {
+            QueryMetrics.time("writeGroup", ignored -> group.size(), () -> DatabaseConnection.write(conn -> {
+                // Cada confirmació de la cua sincronitza el WAL al disc; la resta de l'aplicació continua amb NORMAL
+                setSynchronous(conn, "FULL");
+                try {
+                    return DatabaseConnection.transaction(tx -> {
+                        for (int i = 0; i < group.size(); i++) {
+                            Operation<?> operation = group.get(i).operation();
+                            try {
+                                results[i] = DatabaseConnection.savepoint(savepointConn -> operation.apply());
+                            } catch (SQLException | RuntimeException e) {
+                                // Un error inesperat d'una operació tampoc afecta la resta del grup
+                                errors[i] = e;
+                            }
+                        }
+                        return null;
+                    });
+                } finally {
+                    setSynchronous(conn, "NORMAL");
+                }
+            }));
+        } catch (SQLException | RuntimeException e) {
+            for (Pending<?> pending : group) {
+                pending.future().completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            complete(group.get(i), results[i], errors[i]);
+        }
+    }
+
+    /**
+     * @author giser
+     * Completa el futur d'una operació amb el seu resultat o el seu error.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void complete(Pending<T> pending, Object result, Exception error) {
+        if (error != null) {
+            pending.future().completeExceptionally(error);
+        } else {
+            pending.future().complete((T) result);
+        }
+    }
+
+    /**
+     * @author giser
+     * Canvia el mode de sincronització de la connexió d'escriptura. S'ha de fer fora de les transaccions.
+     * @param conn la connexió d'escriptura.
+     * @param mode el mode ("FULL" o "NORMAL").
+     * @throws SQLException si es produeix un error en canviar-lo.
+     */
+    private static void setSynchronous(Connection conn, String mode) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA synchronous = " + mode);
+        }
+    }
+}
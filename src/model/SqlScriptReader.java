@@ -0,0 +1,238 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author giser
+ * Lector d'scripts SQL que retorna les sentències una a una, sense carregar tot el fitxer en memòria.
+ * Les sentències se separen per punt i coma, excepte quan el punt i coma és dins d'una cadena ('...'),
+ * d'un identificador entre cometes ("...", `...` o [...]), d'un comentari (-- o /* *&#47;) o del cos d'un
+ * <code>CREATE TRIGGER ... BEGIN ... END</code>. Dins d'un trigger es compten els blocs oberts (BEGIN i CASE, que
+ * també acaba en END), de manera que un <code>CASE ... END;</code> del cos no l'acaba. Els comentaris es descarten.
+ */
+public class SqlScriptReader implements Closeable {
+
+    // Mida del buffer de lectura.
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    // Text de la sentència que s'està llegint.
+    private final StringBuilder statement = new StringBuilder();
+
+    // Paraula que s'està llegint fora de cadenes i comentaris.
+    private final StringBuilder word = new StringBuilder();
+
+    // Primera paraula i nombre de paraules de la sentència actual.
+    private String firstWord;
+    private int wordCount;
+
+    // Indica si la sentència actual és un CREATE TRIGGER, que només acaba en un punt i coma fora de tots els blocs.
+    private boolean trigger;
+
+    // Blocs BEGIN i CASE oberts (sense el seu END) de la sentència actual, si és un trigger.
+    private int depth;
+
+    /**
+     * @author giser
+     * Crea el lector sobre el text indicat.
+     * @param reader el text de l'script; es tanca en tancar aquest lector.
+     */
+    public SqlScriptReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @author giser
+     * Llegeix la sentència següent de l'script.
+     * @return el text de la sentència sense el punt i coma final, o <code>null</code> si s'ha acabat l'script.
+     * @throws IOException si es produeix un error de lectura o l'script acaba dins d'una cadena o un comentari.
+     */
+    public String next() throws IOException {
+        statement.setLength(0);
+        firstWord = null;
+        wordCount = 0;
+        trigger = false;
+        depth = 0;
+
+        int c;
+        while ((c = read()) != -1) {
+            char ch = (char) c;
+            if (ch == '\'' || ch == '"' || ch == '`' || ch == '[') {
+                endWord();
+                readQuoted(ch == '[' ? ']' : ch);
+            } else if (ch == '-' && peek() == '-') {
+                endWord();
+                skipLineComment();
+            } else if (ch == '/' && peek() == '*') {
+                endWord();
+                skipBlockComment();
+            } else if (ch == ';') {
+                endWord();
+                // El cos d'un trigger conté punts i comes; la sentència acaba en el que segueix a l'END del cos
+                if (trigger && depth > 0) {
+                    statement.append(ch);
+                    continue;
+                }
+                String sql = statement.toString().trim();
+                if (!sql.isEmpty()) {
+                    return sql;
+                }
+                statement.setLength(0);
+            } else {
+                if (Character.isLetterOrDigit(ch) || ch == '_') {
+                    word.append(ch);
+                } else {
+                    endWord();
+                }
+                statement.append(ch);
+            }
+        }
+        endWord();
+        // L'última sentència pot no acabar en punt i coma
+        String sql = statement.toString().trim();
+        return sql.isEmpty() ? null : sql;
+    }
+
+    /**
+     * @author giser
+     * Tanca el text de l'script.
+     * @throws IOException si es produeix un error en tancar-lo.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * @author giser
+     * Acaba la paraula actual i actualitza l'estat de la sentència (primera paraula, si és un trigger i els blocs oberts).
+     */
+    private void endWord() {
+        if (word.length() == 0) {
+            return;
+        }
+        String upper = word.toString().toUpperCase();
+        word.setLength(0);
+        wordCount++;
+        if (firstWord == null) {
+            firstWord = upper;
+        }
+        // CREATE [TEMP|TEMPORARY] TRIGGER
+        if ("CREATE".equals(firstWord) && wordCount <= 3 && "TRIGGER".equals(upper)) {
+            trigger = true;
+        } else if (trigger) {
+            switch (upper) {
+                case "BEGIN", "CASE" -> depth++;
+                case "END" -> depth--;
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * @author giser
+     * Copia a la sentència una cadena o un identificador entre cometes, inclosos els delimitadors.
+     * Dos delimitadors seguits dins la cadena representen el caràcter mateix.
+     * @param quote el delimitador de tancament.
+     * @throws IOException si l'script acaba abans de tancar la cadena.
+     */
+    private void readQuoted(char quote) throws IOException {
+        statement.append(quote == ']' ? '[' : quote);
+        int c;
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == quote) {
+                if (quote != ']' && peek() == quote) {
+                    statement.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+        throw new IOException("Cadena sense tancar a l'script SQL");
+    }
+
+    /**
+     * @author giser
+     * Salta un comentari de línia (-- fins al final de la línia).
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private void skipLineComment() throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            // Ignorem el contingut del comentari
+        }
+        statement.append('\n');
+    }
+
+    /**
+     * @author giser
+     * Salta un comentari de bloc (/* fins a *&#47;).
+     * @throws IOException si l'script acaba abans de tancar el comentari.
+     */
+    private void skipBlockComment() throws IOException {
+        read();
+        int previous = -1;
+        int c;
+        while ((c = read()) != -1) {
+            if (previous == '*' && c == '/') {
+                statement.append(' ');
+                return;
+            }
+            previous = c;
+        }
+        throw new IOException("Comentari sense tancar a l'script SQL");
+    }
+
+    /**
+     * @author giser
+     * Llegeix el caràcter següent del buffer, omplint-lo si cal.
+     * @return el caràcter, o -1 al final de l'script.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * @author giser
+     * Retorna el caràcter següent sense consumir-lo.
+     * @return el caràcter, o -1 al final de l'script.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * @author giser
+     * Omple el buffer amb el text següent de l'script.
+     * @return <code>false</code> si s'ha arribat al final.
+     * @throws IOException si es produeix un error de lectura.
+     */
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
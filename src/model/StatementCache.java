@@ -0,0 +1,89 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author giser
+ * Memòria cau de sentències preparades d'una connexió.
+ * Cada consulta SQL es prepara una sola vegada per connexió i es reutilitza en les crides següents,
+ * de manera que SQLite no l'ha de tornar a analitzar ni planificar.
+ * Quan se supera la mida màxima, es tanca la sentència utilitzada fa més temps.
+ * No és segura per a fils: només l'ha d'utilitzar el fil que té la connexió prestada.
+ */
+public class StatementCache {
+
+    // Nombre màxim de sentències preparades que es guarden per connexió.
+    private static final int MAX_STATEMENTS = 32;
+
+    // Connexió propietària de les sentències.
+    private final Connection conn;
+
+    // Sentències preparades per text SQL, ordenades per ús (LRU).
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() > MAX_STATEMENTS) {
+                close(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * @author giser
+     * Crea una memòria cau buida per a la connexió indicada.
+     * @param conn la connexió propietària de les sentències.
+     */
+    public StatementCache(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * @author giser
+     * Retorna la sentència preparada per a l'SQL indicat, preparant-la si és la primera vegada.
+     * Els paràmetres de la sentència s'esborren abans de retornar-la.
+     * La sentència no s'ha de tancar: la tanca la memòria cau.
+     * @param sql el text SQL de la sentència.
+     * @return la sentència preparada.
+     * @throws SQLException si es produeix un error en preparar la sentència.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt == null || pstmt.isClosed()) {
+            pstmt = conn.prepareStatement(sql);
+            statements.put(sql, pstmt);
+        } else {
+            pstmt.clearParameters();
+        }
+        return pstmt;
+    }
+
+    /**
+     * @author giser
+     * Tanca totes les sentències preparades de la memòria cau.
+     */
+    public void clear() {
+        for (PreparedStatement pstmt : statements.values()) {
+            close(pstmt);
+        }
+        statements.clear();
+    }
+
+    /**
+     * @author giser
+     * Tanca una sentència ignorant els errors.
+     * @param pstmt la sentència a tancar.
+     */
+    private static void close(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error al tancar la sentència: " + e.getMessage());
+        }
+    }
+}